@@ -342,7 +342,7 @@ public abstract class AbstractDrawContainer extends JPanel {
         // scale the camera origin to the voxel space
         origin.scalarMul(1 / VitcoSettings.VOXEL_SIZE);
         // test if we do hit a voxel
-        short[] hit = world.hitTest(origin, dir);
+        int[] hit = world.hitTest(origin, dir);
         if (hit != null) { // something hit
             voxelPos = new int[] {
                     hit[0], hit[1], hit[2]
@@ -447,7 +447,7 @@ public abstract class AbstractDrawContainer extends JPanel {
     }
 
     // do hit detection with shifted selection
-    public final short[] getShiftedCollisionVoxel(Point p) {
+    public final int[] getShiftedCollisionVoxel(Point p) {
         return selectedVoxelsWorld.getShiftedCollisionVoxel(
                 this.getDirection(p.x, p.y)
         );
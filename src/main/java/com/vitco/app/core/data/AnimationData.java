@@ -40,19 +40,32 @@ public abstract class AnimationData extends GeneralData implements AnimationData
             public void onFrozenUnapply() {
                 notifier.onFrozenUndo();
             }
+
+            @Override
+            public void onTrimmed(int count) {
+                notifier.onHistoryTrimmed();
+            }
         });
     }
 
     // invalidate cache
     protected final void invalidateA() {
-        lineBufferValid = false;
-        pointBufferValid = false;
-        frameBufferValid = false;
-        notifier.onAnimationDataChanged();
+        writeLock.lock();
+        try {
+            lineBufferValid = false;
+            pointBufferValid = false;
+            frameBufferValid = false;
+            notifier.onAnimationDataChanged();
+        } finally {
+            writeLock.unlock();
+        }
     }
 
+    // guards the buffers (they are updated by concurrent reads)
+    private final Object bufferSync = new Object();
+
     // history manager
-    protected final HistoryManager<BasicActionIntent> historyManagerA = new HistoryManager<BasicActionIntent>();
+    protected final HistoryManager<BasicActionIntent> historyManagerA = new HistoryManager<BasicActionIntent>(writeLock, VitcoSettings.HISTORY_MEMORY_BUDGET);
 
     // ###################### PRIVATE HELPER CLASSES
     // "add point" intent
@@ -483,8 +496,11 @@ public abstract class AnimationData extends GeneralData implements AnimationData
 
     @Override
     public final boolean isValid(int pointId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return dataContainer.points.containsKey(pointId);
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -528,8 +544,11 @@ public abstract class AnimationData extends GeneralData implements AnimationData
 
     @Override
     public final boolean areConnected(int id1, int id2) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return dataContainer.lines.containsKey(Math.min(id1, id2) + "_" + Math.max(id1, id2));
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -571,7 +590,8 @@ public abstract class AnimationData extends GeneralData implements AnimationData
 
     @Override
     public final ExtendedVector getPoint(int pointId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             if (dataContainer.activeFrame != -1) { // return frame point if defined
                 ExtendedVector point = dataContainer.frames.get(dataContainer.activeFrame).getPoint(pointId);
                 if (point != null) {
@@ -579,6 +599,8 @@ public abstract class AnimationData extends GeneralData implements AnimationData
                 }
             }
             return dataContainer.points.get(pointId);
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -586,18 +608,23 @@ public abstract class AnimationData extends GeneralData implements AnimationData
     private boolean pointBufferValid = false;
     @Override
     public final ExtendedVector[] getPoints() {
-        synchronized (VitcoSettings.SYNC) {
-            if (!pointBufferValid) {
-                if (pointBuffer.length != dataContainer.points.size()) {
-                    pointBuffer = new ExtendedVector[dataContainer.points.size()];
-                }
-                int i = 0;
-                for (int pointId : dataContainer.points.keySet()) {
-                    pointBuffer[i++] = getPoint(pointId);
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                if (!pointBufferValid) {
+                    if (pointBuffer.length != dataContainer.points.size()) {
+                        pointBuffer = new ExtendedVector[dataContainer.points.size()];
+                    }
+                    int i = 0;
+                    for (int pointId : dataContainer.points.keySet()) {
+                        pointBuffer[i++] = getPoint(pointId);
+                    }
+                    pointBufferValid = true;
                 }
-                pointBufferValid = true;
+                return pointBuffer.clone();
             }
-            return pointBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -605,20 +632,25 @@ public abstract class AnimationData extends GeneralData implements AnimationData
     private boolean lineBufferValid = false;
     @Override
     public final ExtendedVector[][] getLines() {
-        synchronized (VitcoSettings.SYNC) {
-            if (!lineBufferValid) {
-                if (lineBuffer.length != dataContainer.lines.size()) {
-                    lineBuffer = new ExtendedVector[dataContainer.lines.size()][2];
-                }
-                int i = 0;
-                for (ExtendedLine line : dataContainer.lines.values()) {
-                    lineBuffer[i][0] = getPoint(line.point1);
-                    lineBuffer[i][1] = getPoint(line.point2);
-                    i++;
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                if (!lineBufferValid) {
+                    if (lineBuffer.length != dataContainer.lines.size()) {
+                        lineBuffer = new ExtendedVector[dataContainer.lines.size()][2];
+                    }
+                    int i = 0;
+                    for (ExtendedLine line : dataContainer.lines.values()) {
+                        lineBuffer[i][0] = getPoint(line.point1);
+                        lineBuffer[i][1] = getPoint(line.point2);
+                        i++;
+                    }
+                    lineBufferValid = true;
                 }
-                lineBufferValid = true;
+                return lineBuffer.clone();
             }
-            return lineBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -664,8 +696,11 @@ public abstract class AnimationData extends GeneralData implements AnimationData
 
     @Override
     public final int getSelectedFrame() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return dataContainer.activeFrame;
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -706,15 +741,20 @@ public abstract class AnimationData extends GeneralData implements AnimationData
     private boolean frameBufferValid = false;
     @Override
     public final Integer[] getFrames() {
-        synchronized (VitcoSettings.SYNC) {
-            if (!frameBufferValid) {
-                if (frameBuffer.length != dataContainer.frames.size()) {
-                    frameBuffer = new Integer[dataContainer.frames.size()];
+        readLock.lock();
+        try {
+            synchronized (bufferSync) {
+                if (!frameBufferValid) {
+                    if (frameBuffer.length != dataContainer.frames.size()) {
+                        frameBuffer = new Integer[dataContainer.frames.size()];
+                    }
+                    dataContainer.frames.keySet().toArray(frameBuffer);
+                    frameBufferValid = true;
                 }
-                dataContainer.frames.keySet().toArray(frameBuffer);
-                frameBufferValid = true;
+                return frameBuffer.clone();
             }
-            return frameBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -732,11 +772,14 @@ public abstract class AnimationData extends GeneralData implements AnimationData
 
     @Override
     public final String getFrameName(int frameId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             if (dataContainer.frames.containsKey(frameId)) {
                 return dataContainer.frames.get(frameId).getName();
             }
             return null;
+        } finally {
+            readLock.unlock();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+package com.vitco.app.core.data;
+
+import com.vitco.app.low.LongCubeIndexer;
+import gnu.trove.set.hash.TLongHashSet;
+
+/**
+ * Append only journal of changed positions.
+ *
+ * Every change gets a sequence number. Consumers remember the sequence number they have
+ * read up to and obtain the positions that changed since then. The positions are kept in
+ * a ring buffer, a consumer that falls behind further than the capacity (or that reads
+ * across a reset) needs to refresh completely.
+ *
+ * Changes need to be exclusive (write lock), reads can run concurrently.
+ */
+final class ChangeJournal {
+
+    // the changed positions (indexed by sequence number)
+    private final long[] entries;
+    private final int mask;
+    // the sequence number of the next entry
+    private long end = 0;
+    // the first sequence number that can still be read
+    private long start = 0;
+
+    // constructor (the capacity needs to be a power of two)
+    ChangeJournal(int capacity) {
+        assert Integer.bitCount(capacity) == 1;
+        entries = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    // add a changed position
+    public final void append(long posId) {
+        entries[(int) (end & mask)] = posId;
+        end++;
+        if (end - start > entries.length) {
+            start = end - entries.length;
+        }
+    }
+
+    // forget all changes (all consumers need to refresh completely)
+    public final void reset() {
+        // skip a sequence number, so consumers that have read everything refresh as well
+        end++;
+        start = end;
+    }
+
+    // the sequence number a consumer has read up to after reading all changes
+    public final long end() {
+        return end;
+    }
+
+    // helper - get the coordinate of a position on an axis
+    private static int getCoordinate(long posId, int axis) {
+        switch (axis) {
+            case 0: return LongCubeIndexer.getX(posId);
+            case 1: return LongCubeIndexer.getY(posId);
+            default: return LongCubeIndexer.getZ(posId);
+        }
+    }
+
+    // add the positions that changed since a sequence number to the result
+    // (axis 0, 1, 2 restricts the result to the x, y or z plane, -1 returns all positions)
+    // returns false if these changes are no longer known
+    public final boolean read(long from, int axis, int plane, TLongHashSet result) {
+        if (from < start) {
+            return false;
+        }
+        for (long seq = from; seq < end; seq++) {
+            long posId = entries[(int) (seq & mask)];
+            if (axis == -1 || getCoordinate(posId, axis) == plane) {
+                result.add(posId);
+            }
+        }
+        return true;
+    }
+}
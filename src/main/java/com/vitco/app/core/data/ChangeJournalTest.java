@@ -0,0 +1,84 @@
+package com.vitco.app.core.data;
+
+import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.low.LongCubeIndexer;
+import gnu.trove.set.hash.TLongHashSet;
+import org.junit.Test;
+
+import java.awt.*;
+
+/**
+ * Test the change journal and the consumers that read from it.
+ */
+public class ChangeJournalTest {
+
+    @Test
+    public void testJournal() throws Exception {
+        ChangeJournal journal = new ChangeJournal(8);
+        long cursor = journal.end();
+        journal.append(LongCubeIndexer.getId(1, 2, 3));
+        journal.append(LongCubeIndexer.getId(1, 2, 3));
+        journal.append(LongCubeIndexer.getId(4, 5, 6));
+        TLongHashSet changed = new TLongHashSet();
+        assert journal.read(cursor, -1, 0, changed);
+        assert changed.size() == 2;
+        // restricted to a plane
+        changed.clear();
+        assert journal.read(cursor, 2, 6, changed);
+        assert changed.size() == 1 && changed.contains(LongCubeIndexer.getId(4, 5, 6));
+        // nothing changed since the end
+        changed.clear();
+        assert journal.read(journal.end(), -1, 0, changed);
+        assert changed.isEmpty();
+        // overwritten changes can not be read
+        for (int i = 0; i < 6; i++) {
+            journal.append(LongCubeIndexer.getId(i, i, i));
+        }
+        assert !journal.read(cursor, -1, 0, changed);
+        assert journal.read(journal.end() - 8, -1, 0, changed);
+        // reset
+        long before = journal.end();
+        journal.reset();
+        assert !journal.read(before - 1, -1, 0, changed);
+        // consumers that had read everything refresh as well
+        assert !journal.read(before, -1, 0, changed);
+        assert journal.read(journal.end(), -1, 0, changed);
+    }
+
+    @Test
+    public void testConsumers() throws Exception {
+        Data data = new Data();
+        int id = data.addVoxel(Color.RED, null, new int[] {1, 2, 3});
+        // the first request refreshes completely
+        assert data.getNewVisibleLayerVoxel("a")[0] == null;
+        assert data.getNewSideVoxel("a", 0, 3)[0] == null;
+        assert data.getNewVisibleLayerVoxel("a")[1].length == 0;
+        // every consumer reads the changes
+        data.setColor(id, Color.BLUE);
+        assert data.getNewVisibleLayerVoxel("a")[1][0].getColor().equals(Color.BLUE);
+        assert data.getNewVisibleLayerVoxel("b")[0] == null;
+        Voxel[][] side = data.getNewSideVoxel("a", 0, 3);
+        assert side[0].length == 0 && side[1].length == 1;
+        // removed positions
+        data.removeVoxel(id);
+        Voxel[][] changed = data.getNewVisibleLayerVoxel("a");
+        assert changed[1].length == 0 && changed[0][0].posId == LongCubeIndexer.getId(1, 2, 3);
+        // changes in other planes are not reported
+        data.addVoxel(Color.RED, null, new int[] {1, 2, 4});
+        side = data.getNewSideVoxel("a", 0, 3);
+        assert side[0].length == 1 && side[1].length == 0;
+        assert data.getNewSideVoxel("a", 0, 3)[0].length == 0;
+        // invalidated planes refresh completely
+        data.invalidateSideViewBuffer("a", 0, 3);
+        assert data.getNewSideVoxel("a", 0, 3)[0] == null;
+        // replacing a color only reports the voxels of that color
+        data.addVoxel(Color.GREEN, null, new int[] {5, 5, 5});
+        data.getNewVisibleLayerVoxel("a");
+        assert data.replaceColor(Color.GREEN, Color.YELLOW);
+        changed = data.getNewVisibleLayerVoxel("a");
+        assert changed[0].length == 0 && changed[1].length == 1;
+        assert changed[1][0].getColor().equals(Color.YELLOW);
+        data.undoV();
+        assert data.getNewVisibleLayerVoxel("a")[1][0].getColor().equals(Color.GREEN);
+    }
+}
@@ -1,14 +1,21 @@
 package com.vitco.app.core.data;
 
 import com.vitco.app.core.data.container.DataContainer;
+import com.vitco.app.core.data.container.EditJournal;
+import com.vitco.app.core.data.container.MappedVsdFile;
+import com.vitco.app.core.data.history.BasicActionIntent;
+import com.vitco.app.core.data.history.HistoryChangeAdapter;
+import com.vitco.app.core.data.history.VoxelActionIntent;
 import com.vitco.app.manager.error.ErrorHandlerInterface;
 import com.vitco.app.settings.VitcoSettings;
-import com.vitco.app.util.file.FileTools;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import javax.swing.*;
+import javax.annotation.PreDestroy;
 import java.io.File;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 
 /**
  * Data class that puts everything together and defines general data interaction (e.g. save/load)
@@ -30,6 +37,18 @@ public final class Data extends VoxelHighlighting implements DataInterface {
     }
 
     public final void setFrozen(boolean flag) {
+        synchronized (VitcoSettings.SYNC) {
+            frozen = flag;
+            updateFrozen();
+        }
+    }
+
+    // true if frozen by setFrozen()
+    private boolean frozen = false;
+
+    // helper - the data is frozen while a file is loaded in the background
+    private void updateFrozen() {
+        boolean flag = frozen || loadingFile != null;
         historyManagerA.setFrozen(flag);
         historyManagerV.setFrozen(flag);
     }
@@ -43,6 +62,23 @@ public final class Data extends VoxelHighlighting implements DataInterface {
 
     public Data() {
         super();
+        // record the changes in the journal
+        historyManagerV.addChangeListener(new HistoryChangeAdapter<VoxelActionIntent>() {
+            @Override
+            public void onChange(VoxelActionIntent action) {
+                if (journal != null && action != null) {
+                    journal.recordVoxels(dataContainer, action.effected(), action.effectsTexture());
+                }
+            }
+        });
+        historyManagerA.addChangeListener(new HistoryChangeAdapter<BasicActionIntent>() {
+            @Override
+            public void onChange(BasicActionIntent action) {
+                if (journal != null && action != null) {
+                    journal.recordAnimation(dataContainer);
+                }
+            }
+        });
         freshStart();
     }
 
@@ -57,63 +93,323 @@ public final class Data extends VoxelHighlighting implements DataInterface {
     @Override
     public final void freshStart() {
         synchronized (VitcoSettings.SYNC) {
-            // reset
-            dataContainer = new DataContainer();
-            // create initial layer and select it
-            selectLayerSoft(createLayer("Layer"));
-            // remove history
+            writeLock.lock();
+            try {
+                stopLoading();
+                stopJournal();
+                // reset
+                dataContainer = new DataContainer();
+                rebuildVoxelIndex();
+                // create initial layer and select it
+                selectLayerSoft(createLayer("Layer"));
+                // remove history
+                clearHistoryA();
+                clearHistoryV();
+                initialNotification();
+                // file has not changed yet
+                hasChanged = false;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public final boolean loadFromFile(File file) {
+        synchronized (VitcoSettings.SYNC) {
+            // the file is read before the write lock is taken (reads are not blocked meanwhile)
+            DataContainer loaded = null;
+            // recover the changes that were not saved (if the program was not closed properly)
+            File recoveryBase = getRecoveryBase(file);
+            if (recoveryBase != null) {
+                loaded = DataContainer.load(recoveryBase, errorHandler);
+                try {
+                    if (loaded != null) {
+                        EditJournal.replay(file, loaded);
+                    }
+                } catch (IOException e) {
+                    errorHandler.handle(e);
+                    loaded = null;
+                }
+            }
+            boolean recovered = loaded != null;
+            if (!recovered) {
+                loaded = DataContainer.load(file, errorHandler);
+            }
+            if (loaded == null) {
+                return false;
+            }
+            setDataContainer(loaded);
+            // the recovered changes are not saved yet
+            hasChanged = recovered;
+            startJournal(file, recovered);
+            return true;
+        }
+    }
+
+    // helper - replace the data
+    private void setDataContainer(DataContainer loaded) {
+        writeLock.lock();
+        try {
+            stopLoading();
+            stopJournal();
             clearHistoryA();
             clearHistoryV();
+            dataContainer = loaded;
+            rebuildVoxelIndex();
+            invalidateA();
+            invalidateV(null);
             initialNotification();
             // file has not changed yet
             hasChanged = false;
+        } finally {
+            writeLock.unlock();
         }
     }
 
+    // ----------------
+
+    // the amount of voxels that are decoded at once when loading in the background
+    private static final int LOADING_BATCH_SIZE = 65536;
+
+    // the file that is loaded in the background (null if none)
+    private MappedVsdFile loadingFile = null;
+    // the chunks of the file in the order they are decoded and the next chunk
+    private int[] loadingChunks = null;
+    private int nextLoadingChunk = 0;
+
     @Override
-    public final boolean loadFromFile(File file) {
+    public final boolean loadFromFileInBackground(File file) {
+        final MappedVsdFile mapped;
+        DataContainer loaded;
+        try {
+            synchronized (VitcoSettings.SYNC) {
+                if (getRecoveryBase(file) != null) {
+                    // the changes that were not saved are recovered
+                    return loadFromFile(file);
+                }
+            }
+            mapped = MappedVsdFile.open(file);
+            if (mapped == null) {
+                // old file format
+                return loadFromFile(file);
+            }
+            try {
+                loaded = new DataContainer(mapped, false);
+            } catch (IOException e) {
+                mapped.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            errorHandler.handle(e);
+            return false;
+        }
         synchronized (VitcoSettings.SYNC) {
-            boolean result = false;
-            // VSD file format
-            DataContainer loaded = new DataContainer(file, errorHandler);
-            if (loaded.hasLoaded) {
-                clearHistoryA();
-                clearHistoryV();
-                dataContainer = loaded;
+            // the layers, textures and animation are shown right away
+            setDataContainer(loaded);
+            startJournal(file, false);
+            loadingFile = mapped;
+            loadingChunks = getLoadingOrder(mapped);
+            nextLoadingChunk = 0;
+            updateFrozen();
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (loadNextChunks(mapped)) {
+                    Thread.yield();
+                }
+            }
+        }, "Vsd Loader");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
 
-                result = true;
-            } else { // todo remove legacy support (later)
-                // old file format
-                Object loadedLegacy = FileTools.loadFromFile(file, errorHandler);
-                if (loadedLegacy != null) {
-                    clearHistoryA();
-                    clearHistoryV();
-                    dataContainer = (DataContainer) loadedLegacy;
-                    if (dataContainer.textures == null) {
-                        dataContainer.textures = new HashMap<Integer, ImageIcon>();
-                    }
-                    result = true;
+    // helper - the chunks are decoded by distance to the center (the area that is shown first)
+    private static int[] getLoadingOrder(MappedVsdFile file) {
+        long[] keys = new long[file.getChunkCount()];
+        for (int chunk = 0; chunk < keys.length; chunk++) {
+            int[] origin = file.getChunkOrigin(chunk);
+            long distance = Math.abs((long) origin[0]) + Math.abs((long) origin[1]) + Math.abs((long) origin[2]);
+            keys[chunk] = (distance << 32) | chunk;
+        }
+        Arrays.sort(keys);
+        int[] result = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            result[i] = (int) keys[i];
+        }
+        return result;
+    }
+
+    // helper - decode the next chunks of a file that is loaded in the background
+    // (returns false when there is nothing left to decode)
+    private boolean loadNextChunks(MappedVsdFile file) {
+        synchronized (VitcoSettings.SYNC) {
+            if (loadingFile != file) {
+                return false; // a different file was loaded meanwhile
+            }
+            writeLock.lock();
+            try {
+                int end = nextLoadingChunk;
+                int voxelCount = 0;
+                while (end < loadingChunks.length && voxelCount < LOADING_BATCH_SIZE) {
+                    voxelCount += file.getChunkVoxelCount(loadingChunks[end++]);
                 }
+                // loading does not change the file
+                boolean changed = hasChanged;
+                try {
+                    decodeChunks(file, loadingChunks, nextLoadingChunk, end);
+                    nextLoadingChunk = end;
+                } catch (IOException e) {
+                    errorHandler.handle(e);
+                    end = loadingChunks.length;
+                }
+                hasChanged = changed;
+                if (end == loadingChunks.length) {
+                    // all chunks are decoded
+                    finishDecoding();
+                    stopLoading();
+                    return false;
+                }
+                return true;
+            } finally {
+                writeLock.unlock();
             }
-            if (result) {
-                invalidateA();
-                invalidateV(null);
-                initialNotification();
-                // file has not changed yet
-                hasChanged = false;
+        }
+    }
+
+    // helper - stop loading in the background
+    private void stopLoading() {
+        if (loadingFile != null) {
+            loadingFile.close();
+            loadingFile = null;
+            loadingChunks = null;
+            updateFrozen();
+        }
+    }
+
+    @Override
+    public final boolean isLoading() {
+        synchronized (VitcoSettings.SYNC) {
+            return loadingFile != null;
+        }
+    }
+
+    @Override
+    public final void finishLoading() {
+        synchronized (VitcoSettings.SYNC) {
+            MappedVsdFile file = loadingFile;
+            if (file != null) {
+                while (loadNextChunks(file)) {
+                    // decode the remaining chunks
+                }
             }
-            return result;
         }
     }
 
     @Override
     public final boolean saveToFile(File file) {
+        return saveToFile(file, DataContainer.COMPRESSION_FAST);
+    }
+
+    @Override
+    public final boolean saveToFile(File file, int compression) {
         synchronized (VitcoSettings.SYNC) {
-            boolean result = dataContainer.saveToVsdFile(file, errorHandler);
+            // all voxels need to be known
+            finishLoading();
+            // the data is written to a temporary file first, the journal might still read the
+            // project file (when folding its changes into the snapshot)
+            File tmp = new File(file.getPath() + ".tmp");
+            boolean result = dataContainer.saveToVsdFile(tmp, compression, errorHandler);
+            File journalProject = null;
+            if (result) {
+                // the journal is stopped before the file is replaced (its files are kept
+                // until the file was replaced)
+                if (journal != null) {
+                    journalProject = journal.getProject();
+                    journal.close(false);
+                    journal = null;
+                }
+                try {
+                    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    errorHandler.handle(e);
+                    result = false;
+                }
+            }
             if (result) {
                 hasChanged = false;
+                // the journal starts from the saved file
+                startJournal(file, false);
+            } else {
+                tmp.delete();
+                if (journalProject != null) {
+                    // the changes are recorded in the existing journal again
+                    startJournal(journalProject, true);
+                }
             }
             return result;
         }
     }
+
+    // ----------------
+
+    // true if the changes are recorded in a journal next to the project file
+    private boolean journalEnabled = false;
+    // the journal of the current project file (null if none)
+    private EditJournal journal = null;
+
+    @Override
+    public final void setJournalEnabled(boolean flag) {
+        synchronized (VitcoSettings.SYNC) {
+            journalEnabled = flag;
+            if (!flag) {
+                stopJournal();
+            }
+        }
+    }
+
+    // helper - record the changes of a project file from now on
+    private void startJournal(File file, boolean append) {
+        stopJournal();
+        if (journalEnabled) {
+            try {
+                journal = EditJournal.start(file, dataContainer, append, errorHandler);
+            } catch (IOException e) {
+                errorHandler.handle(e);
+            }
+        }
+    }
+
+    // helper - get the file the journal of a project needs to be replayed onto (null if there
+    // is nothing to recover), the journal of the current document is never recovered as its
+    // changes are discarded when the file is loaded again
+    private File getRecoveryBase(File file) {
+        if (!journalEnabled || (journal != null && journal.getProject().equals(file.getAbsoluteFile()))) {
+            return null;
+        }
+        return EditJournal.getRecoveryBase(file);
+    }
+
+    // helper - stop recording the changes (the journal is deleted)
+    private void stopJournal() {
+        if (journal != null) {
+            journal.close(true);
+            journal = null;
+        }
+    }
+
+    // the journal of the current project file (null if none)
+    final EditJournal getJournal() {
+        return journal;
+    }
+
+    // the program is closed normally, the journal is no longer needed
+    @PreDestroy
+    public final void finish() {
+        synchronized (VitcoSettings.SYNC) {
+            stopJournal();
+        }
+    }
 }
@@ -0,0 +1,136 @@
+package com.vitco.app.core.data;
+
+import com.vitco.app.core.data.container.DataContainer;
+import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.settings.VitcoSettings;
+import org.junit.Test;
+
+import java.awt.*;
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contention test: four views read the data while the tool thread edits and saves.
+ *
+ * Checks that the reads are not blocked by VitcoSettings.SYNC and that the views read
+ * consistent data while the tool thread writes. The amount of reads with the read/write lock
+ * and with reads that are synchronized to VitcoSettings.SYNC (as all reads were before) is
+ * printed for comparison, but does not decide the outcome (it depends on the machine).
+ */
+public class DataContentionTest {
+
+    private static final int DURATION = 2000;
+
+    // helper - the reads of one view (the main view and three side views)
+    private static void readView(Data data, int view, int plane) {
+        if (view == 0) {
+            data.getNewVisibleLayerVoxel("main");
+            data.getVisibleLayerVoxel();
+        } else {
+            data.getNewSideVoxel("side" + view, view - 1, plane);
+            data.getVoxelsXY(plane);
+        }
+        data.searchVoxel(new int[] {plane, plane, plane}, false);
+    }
+
+    // helper - run the views and the tool thread, returns {reads, max read latency in ms}
+    private static long[] run(final Data data, final boolean serialized) throws Exception {
+        final File file = File.createTempFile("contention", ".vsd");
+        file.deleteOnExit();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong reads = new AtomicLong();
+        final AtomicLong maxLatency = new AtomicLong();
+        final Throwable[] error = new Throwable[1];
+
+        Thread[] views = new Thread[4];
+        for (int i = 0; i < views.length; i++) {
+            final int view = i;
+            views[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        int plane = 0;
+                        while (running.get()) {
+                            long time = System.nanoTime();
+                            if (serialized) {
+                                synchronized (VitcoSettings.SYNC) {
+                                    readView(data, view, plane);
+                                }
+                            } else {
+                                readView(data, view, plane);
+                            }
+                            long latency = (System.nanoTime() - time) / 1000000;
+                            if (latency > maxLatency.get()) {
+                                maxLatency.set(latency);
+                            }
+                            reads.incrementAndGet();
+                            plane = (plane + 1) % 20;
+                        }
+                    } catch (Throwable e) {
+                        error[0] = e;
+                    }
+                }
+            };
+            views[i].start();
+        }
+
+        // the tool thread edits and saves the file
+        Random rand = new Random(0);
+        long end = System.currentTimeMillis() + DURATION;
+        while (System.currentTimeMillis() < end) {
+            Voxel[] voxels = data.getLayerVoxels(data.getSelectedLayer());
+            data.setColor(voxels[rand.nextInt(voxels.length)].id, new Color(rand.nextInt(0xFFFFFF)));
+            boolean saved = data.saveToFile(file, DataContainer.COMPRESSION_NONE);
+            assert saved;
+        }
+        running.set(false);
+        for (Thread view : views) {
+            view.join();
+        }
+        assert error[0] == null : error[0];
+        return new long[] {reads.get(), maxLatency.get()};
+    }
+
+    @Test
+    public void testFourViews() throws Exception {
+        Data data = new Data();
+        data.selectLayer(data.createLayer("layer"));
+        Voxel[] voxels = new Voxel[8000];
+        for (int i = 0; i < voxels.length; i++) {
+            voxels[i] = new Voxel(-1, new int[] {i % 20, (i / 20) % 20, i / 400}, Color.RED, false, null, 0);
+        }
+        boolean added = data.massAddVoxel(voxels);
+        assert added;
+
+        long[] serialized = run(data, true);
+        long[] concurrent = run(data, false);
+        System.out.println("Reads with SYNC: " + serialized[0] + " (max latency " + serialized[1] + "ms)");
+        System.out.println("Reads with read lock: " + concurrent[0] + " (max latency " + concurrent[1] + "ms)");
+        // the edits only changed colors
+        assert data.getVisibleLayerVoxel().length == voxels.length;
+    }
+
+    @Test
+    public void testReadWhileSynchronized() throws Exception {
+        final Data data = new Data();
+        data.addVoxel(Color.RED, null, new int[] {1, 1, 1});
+        final Voxel[] found = new Voxel[1];
+        Thread view = new Thread() {
+            @Override
+            public void run() {
+                found[0] = data.searchVoxel(new int[] {1, 1, 1}, false);
+                data.getVisibleLayerVoxel();
+                data.getVoxelsXY(1);
+            }
+        };
+        // the reads finish while the tool thread holds the lock
+        synchronized (VitcoSettings.SYNC) {
+            view.start();
+            view.join(60000);
+            assert !view.isAlive();
+        }
+        assert found[0] != null && found[0].getColor().equals(Color.RED);
+    }
+}
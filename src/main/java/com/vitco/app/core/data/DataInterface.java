@@ -8,14 +8,27 @@ import java.io.File;
 public interface DataInterface {
     // loads all data from file
     boolean loadFromFile(File file);
+    // loads the layers, textures and animation from file, the voxels are loaded in the
+    // background (the data is frozen until all voxels are loaded)
+    boolean loadFromFileInBackground(File file);
+    // true while voxels are loaded in the background
+    boolean isLoading();
+    // load the remaining voxels now (e.g. before the data is exported)
+    void finishLoading();
     // stores all data to file
     boolean saveToFile(File file);
+    // stores all data to file, the voxels are compressed with a level (see DataContainer)
+    boolean saveToFile(File file, int compression);
     // delete all history
     void clearHistoryA();
     void clearHistoryV();
 
     void setFrozen(boolean flag);
 
+    // record the changes in a journal next to the project file (the changes that were
+    // not saved are recovered when the file is loaded after a crash)
+    void setJournalEnabled(boolean flag);
+
     // erase everything and start fresh
     void freshStart();
 }
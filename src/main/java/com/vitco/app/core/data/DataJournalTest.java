@@ -0,0 +1,188 @@
+package com.vitco.app.core.data;
+
+import com.threed.jpct.SimpleVector;
+import com.vitco.app.core.data.container.Voxel;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test that the changes that were not saved are recovered from the journal.
+ */
+public class DataJournalTest {
+
+    // helper - check that two documents hold the same data
+    private static void compare(Data expected, Data loaded) {
+        assertArrayEquals(expected.getLayers(), loaded.getLayers());
+        for (Integer layerId : expected.getLayers()) {
+            assertEquals(expected.getLayerName(layerId), loaded.getLayerName(layerId));
+            assertEquals(expected.getLayerVisible(layerId), loaded.getLayerVisible(layerId));
+            HashMap<Integer, Voxel> voxels = new HashMap<Integer, Voxel>();
+            for (Voxel voxel : loaded.getLayerVoxels(layerId)) {
+                voxels.put(voxel.id, voxel);
+            }
+            Voxel[] expectedVoxels = expected.getLayerVoxels(layerId);
+            assertEquals(expectedVoxels.length, voxels.size());
+            for (Voxel voxel : expectedVoxels) {
+                Voxel other = voxels.get(voxel.id);
+                assertEquals(voxel.posId, other.posId);
+                assertEquals(voxel.getRGB(), other.getRGB());
+                assertEquals(voxel.getAlpha(), other.getAlpha());
+                assertArrayEquals(voxel.getTexture(), other.getTexture());
+            }
+        }
+        assertEquals(expected.getSelectedLayer(), loaded.getSelectedLayer());
+        assertArrayEquals(expected.getTextureList(), loaded.getTextureList());
+        assertEquals(expected.getPoints().length, loaded.getPoints().length);
+    }
+
+    // helper - change a document in many ways
+    private static void edit(Data data, Random rand) {
+        int layerId = data.getSelectedLayer();
+        for (int i = 0; i < 300; i++) {
+            data.addVoxel(new Color(rand.nextInt(0xFFFFFF)), null,
+                    new int[] {rand.nextInt(30), rand.nextInt(30), rand.nextInt(30)});
+        }
+        Voxel[] voxels = data.getLayerVoxels(layerId);
+        data.removeVoxel(voxels[0].id);
+        data.setColor(voxels[1].id, Color.GREEN);
+        data.setAlpha(voxels[2].id, 50);
+        data.massMoveVoxel(new Voxel[] {voxels[3], voxels[4]}, new int[] {0, -40, 0});
+        data.massSetColor(new Integer[] {voxels[5].id, voxels[6].id}, Color.BLUE);
+        data.replaceColor(Color.BLUE, Color.ORANGE);
+        // layers
+        int other = data.createLayer("other");
+        data.selectLayer(other);
+        data.addVoxel(Color.RED, null, new int[] {1, 1, 1});
+        data.renameLayer(other, "renamed");
+        data.setVisible(layerId, false);
+        data.deleteLayer(layerId);
+        data.undoV();
+        data.moveLayerUp(other);
+        // textures
+        BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(3, 4, 0xFF00FF);
+        data.addTexture(image);
+        data.setTexture(data.getLayerVoxels(other)[0].id, 2, data.getTextureList()[0]);
+        // animation
+        int p1 = data.addPoint(new SimpleVector(1, 2, 3));
+        int p2 = data.addPoint(new SimpleVector(4, 5, 6));
+        data.connect(p1, p2);
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        File file = File.createTempFile("vsd", ".vsd");
+        File journalFile = new File(file.getPath() + ".journal");
+        try {
+            Random rand = new Random(0);
+            Data data = new Data();
+            data.setJournalEnabled(true);
+            boolean success = data.saveToFile(file);
+            assertTrue(success);
+            assertTrue(journalFile.exists());
+            edit(data, rand);
+            // crash (the journal is kept)
+            data.getJournal().close(false);
+
+            Data recovered = new Data();
+            recovered.setJournalEnabled(true);
+            success = recovered.loadFromFile(file);
+            assertTrue(success);
+            compare(data, recovered);
+            assertTrue(recovered.hasChanged());
+
+            // the recovered document continues the journal
+            edit(recovered, rand);
+            recovered.getJournal().close(false);
+            // a partially written record is ignored
+            FileOutputStream out = new FileOutputStream(journalFile, true);
+            try {
+                out.write(new byte[] {0x56, 0x4F, 0x58, 0x4C, 0, 0, 1});
+            } finally {
+                out.close();
+            }
+            Data again = new Data();
+            again.setJournalEnabled(true);
+            success = again.loadFromFileInBackground(file);
+            assertTrue(success);
+            assertFalse(again.isLoading());
+            compare(recovered, again);
+
+            // the journal is removed when the program is closed normally
+            again.finish();
+            assertFalse(journalFile.exists());
+            Data saved = new Data();
+            saved.setJournalEnabled(true);
+            success = saved.loadFromFile(file);
+            assertTrue(success);
+            assertFalse(saved.hasChanged());
+            assertEquals(1, saved.getLayers().length);
+            assertEquals(0, saved.getLayerVoxels(saved.getLayers()[0]).length);
+            saved.finish();
+        } finally {
+            boolean deleted = file.delete();
+            assertTrue(deleted);
+        }
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        File file = File.createTempFile("vsd", ".vsd");
+        File snapshotFile = new File(file.getPath() + ".autosave");
+        try {
+            Random rand = new Random(1);
+            Data data = new Data();
+            data.setJournalEnabled(true);
+            boolean success = data.saveToFile(file);
+            assertTrue(success);
+            edit(data, rand);
+            // the journal starts from a file with voxels
+            success = data.saveToFile(file);
+            assertTrue(success);
+            edit(data, rand);
+            // fold the journal into a snapshot (chunk by chunk)
+            data.getJournal().compact(60000);
+            assertTrue(snapshotFile.exists());
+            assertFalse(new File(file.getPath() + ".journal.old").exists());
+            edit(data, rand);
+            // fold again (the start is the snapshot)
+            data.getJournal().compact(60000);
+            assertFalse(new File(file.getPath() + ".journal.old").exists());
+            edit(data, rand);
+            data.getJournal().close(false);
+
+            Data recovered = new Data();
+            recovered.setJournalEnabled(true);
+            success = recovered.loadFromFile(file);
+            assertTrue(success);
+            compare(data, recovered);
+
+            // saving starts a new journal from the saved file
+            success = recovered.saveToFile(file);
+            assertTrue(success);
+            assertFalse(snapshotFile.exists());
+            recovered.getJournal().close(false);
+            Data saved = new Data();
+            saved.setJournalEnabled(true);
+            success = saved.loadFromFile(file);
+            assertTrue(success);
+            assertFalse(saved.hasChanged());
+            compare(data, saved);
+            saved.finish();
+        } finally {
+            boolean deleted = file.delete();
+            assertTrue(deleted);
+        }
+    }
+}
@@ -4,6 +4,9 @@ import com.vitco.app.core.data.container.DataContainer;
 import com.vitco.app.core.data.notification.DataChangeAdapter;
 import com.vitco.app.settings.VitcoSettings;
 
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 /**
  * Manages everything that has to do with general data
  */
@@ -12,6 +15,13 @@ public class GeneralData extends ListenerData implements GeneralDataInterface {
     // main data container
     protected DataContainer dataContainer = new DataContainer();
 
+    // guards the data container: reads share the read lock, changes hold the write lock.
+    // Changes are always made while synchronized to VitcoSettings.SYNC (so a sequence of
+    // changes can still be made atomic), reads do not touch SYNC and never block each other.
+    private final ReentrantReadWriteLock dataLock = new ReentrantReadWriteLock();
+    protected final Lock readLock = dataLock.readLock();
+    protected final Lock writeLock = dataLock.writeLock();
+
     // ######################
 
     // true if the data has changed since last save
@@ -0,0 +1,68 @@
+package com.vitco.app.core.data;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Hands out free ids in constant time.
+ *
+ * Ids are never handed out twice (they might still be referenced by the history), except
+ * for the gaps between the ids that exist when the allocator is rebuilt (e.g. after a file
+ * was loaded). The gaps are kept as ranges, the lowest gap is used first.
+ */
+final class IdAllocator {
+
+    // all ids from here on were never used
+    private int highWaterMark = 0;
+    // ranges of free ids below the high water mark (start and end (exclusive) pairs,
+    // the lowest range is stored last)
+    private final TIntArrayList free = new TIntArrayList();
+
+    // get a free id
+    public final int next() {
+        int size = free.size();
+        if (size == 0) {
+            return highWaterMark++;
+        }
+        int start = free.get(size - 2);
+        if (start + 1 == free.get(size - 1)) {
+            free.remove(size - 2, 2);
+        } else {
+            free.set(size - 2, start + 1);
+        }
+        return start;
+    }
+
+    // rebuild from the ids that are in use (negative ids are ignored)
+    public final void rebuild(int[] usedIds) {
+        int[] ids = usedIds.clone();
+        Arrays.sort(ids);
+        free.resetQuick();
+        int expected = 0;
+        for (int id : ids) {
+            if (id > expected) {
+                free.add(expected);
+                free.add(id);
+            }
+            if (id >= expected) {
+                expected = id + 1;
+            }
+        }
+        highWaterMark = expected;
+        // the lowest range is used first
+        for (int i = 0, j = free.size() - 2; i < j; i += 2, j -= 2) {
+            int start = free.get(i);
+            int end = free.get(i + 1);
+            free.set(i, free.get(j));
+            free.set(i + 1, free.get(j + 1));
+            free.set(j, start);
+            free.set(j + 1, end);
+        }
+    }
+
+    // the amount of free ranges below the high water mark
+    public final int getFreeRangeCount() {
+        return free.size() / 2;
+    }
+}
@@ -0,0 +1,49 @@
+package com.vitco.app.core.data;
+
+import gnu.trove.set.hash.TIntHashSet;
+import org.junit.Test;
+
+/**
+ * Test the id allocation.
+ */
+public class IdAllocatorTest {
+
+    @Test
+    public void testAllocation() throws Exception {
+        IdAllocator allocator = new IdAllocator();
+        for (int i = 0; i < 10; i++) {
+            assert allocator.next() == i;
+        }
+
+        // the gaps are used first (lowest first), then new ids
+        allocator.rebuild(new int[] {7, 2, 3, -1, 10, 3});
+        int[] expected = new int[] {0, 1, 4, 5, 6, 8, 9, 11, 12};
+        for (int id : expected) {
+            assert allocator.next() == id;
+        }
+        assert allocator.getFreeRangeCount() == 0;
+
+        allocator.rebuild(new int[0]);
+        assert allocator.next() == 0;
+    }
+
+    @Test
+    public void testSparseIds() throws Exception {
+        // very sparse ids are handled in constant time per id
+        int count = 200000;
+        int[] used = new int[count];
+        for (int i = 0; i < count; i++) {
+            used[i] = i * 1000;
+        }
+        IdAllocator allocator = new IdAllocator();
+        long time = System.currentTimeMillis();
+        allocator.rebuild(used);
+        assert allocator.getFreeRangeCount() == count - 1;
+        TIntHashSet ids = new TIntHashSet(used);
+        for (int i = 0; i < count * 2; i++) {
+            assert ids.add(allocator.next());
+        }
+        System.out.println("Allocated " + count * 2 + " ids in " + (System.currentTimeMillis() - time) + "ms");
+        assert allocator.getFreeRangeCount() == count - 1 - 400;
+    }
+}
@@ -0,0 +1,339 @@
+package com.vitco.app.core.data;
+
+import com.vitco.app.core.data.container.VoxelLayer;
+import com.vitco.app.low.engine.Chunk;
+import com.vitco.app.low.engine.Engine;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.procedure.TIntProcedure;
+import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Composite index over all layers.
+ *
+ * Holds for every position the stack of voxels that occupy it (ordered by the layer order,
+ * top most first) and the id of the top most voxel that is in a visible layer. The index is
+ * updated incrementally when voxels are added or removed and when layers change visibility
+ * or order, so visible voxel lookups do not need to walk the layers. The positions that show
+ * a selected voxel and the colors that are visible are tracked as well.
+ *
+ * Not thread safe for changes, reads can run concurrently (as long as there are no changes).
+ */
+final class LayerStackIndex {
+
+    // position -> stack (voxel id * 2 if the position is occupied by a single voxel,
+    // otherwise the id of the overflow stack * 2 + 1)
+    private final Engine stacks = new Engine();
+    // stacks of positions that are occupied by more than one voxel (top most first)
+    private final ArrayList<int[]> overflow = new ArrayList<int[]>();
+    private final TIntArrayList freeOverflow = new TIntArrayList();
+    // position -> id of the top most visible voxel
+    private final Engine visible = new Engine();
+    // the positions where the top most visible voxel is selected
+    private final TLongHashSet visibleSelected = new TLongHashSet();
+    // argb color -> amount of top most visible voxels with that color
+    private final TIntIntHashMap visibleColors = new TIntIntHashMap(16, 0.5f, -1, 0);
+
+    // maps voxel ids to layer ids (shared with the data)
+    private final TIntIntHashMap voxelLayerIds;
+    // the ids of the selected voxels (shared with the data)
+    private final TIntHashSet selectedVoxelIds;
+    // layer id -> position in the layer order (zero is the top most layer)
+    private final TIntIntHashMap ranks = new TIntIntHashMap(10, 0.5f, -1, Integer.MAX_VALUE);
+    // the layers that are not visible
+    private final TIntHashSet hidden = new TIntHashSet();
+    // the layers (set when the layers are updated)
+    private Map<Integer, VoxelLayer> layers = null;
+
+    // constructor
+    LayerStackIndex(TIntIntHashMap voxelLayerIds, TIntHashSet selectedVoxelIds) {
+        this.voxelLayerIds = voxelLayerIds;
+        this.selectedVoxelIds = selectedVoxelIds;
+    }
+
+    // helper - the rank of the layer that contains a voxel
+    private int rank(int voxelId) {
+        return ranks.get(voxelLayerIds.get(voxelId));
+    }
+
+    // helper - obtain the stack of a position (null if the position is free)
+    private int[] getStack(long posId) {
+        int value = stacks.get(posId);
+        if (value == Chunk.EMPTY) {
+            return null;
+        }
+        return (value & 1) == 0 ? new int[] {value >> 1} : overflow.get(value >> 1);
+    }
+
+    // helper - store the stack of a position
+    private void setStack(long posId, int[] stack) {
+        int value = stacks.get(posId);
+        if (value != Chunk.EMPTY && (value & 1) == 1) {
+            // release the old overflow stack
+            overflow.set(value >> 1, null);
+            freeOverflow.add(value >> 1);
+        }
+        if (stack.length == 0) {
+            stacks.remove(posId);
+        } else if (stack.length == 1) {
+            stacks.put(posId, stack[0] << 1);
+        } else {
+            int overflowId;
+            if (freeOverflow.isEmpty()) {
+                overflowId = overflow.size();
+                overflow.add(stack);
+            } else {
+                overflowId = freeOverflow.removeAt(freeOverflow.size() - 1);
+                overflow.set(overflowId, stack);
+            }
+            stacks.put(posId, (overflowId << 1) | 1);
+        }
+    }
+
+    // helper - order a stack by the layer order (stacks are small)
+    private void sort(int[] stack) {
+        for (int i = 1; i < stack.length; i++) {
+            int voxelId = stack[i];
+            int voxelRank = rank(voxelId);
+            int j = i - 1;
+            while (j >= 0 && rank(stack[j]) > voxelRank) {
+                stack[j + 1] = stack[j];
+                j--;
+            }
+            stack[j + 1] = voxelId;
+        }
+    }
+
+    // helper - count a visible color
+    private void countColor(int rgb, int delta) {
+        if (visibleColors.adjustOrPutValue(rgb, delta, delta) == 0) {
+            visibleColors.remove(rgb);
+        }
+    }
+
+    // helper - the color of a voxel
+    private int getColor(int voxelId) {
+        return layers.get(voxelLayerIds.get(voxelId)).getVoxelColor(voxelId);
+    }
+
+    // helper - change the top most visible voxel of a position
+    private void setVisibleVoxel(long posId, int voxelId) {
+        int previous = voxelId == Chunk.EMPTY ? visible.remove(posId) : visible.put(posId, voxelId);
+        if (previous != voxelId) {
+            if (previous != Chunk.EMPTY) {
+                countColor(getColor(previous), -1);
+            }
+            if (voxelId != Chunk.EMPTY) {
+                countColor(getColor(voxelId), 1);
+            }
+        }
+    }
+
+    // helper - find the top most visible voxel of a position
+    private void updateVisible(long posId, int[] stack) {
+        if (stack != null) {
+            for (int voxelId : stack) {
+                if (!hidden.contains(voxelLayerIds.get(voxelId))) {
+                    setVisibleVoxel(posId, voxelId);
+                    if (selectedVoxelIds.contains(voxelId)) {
+                        visibleSelected.add(posId);
+                    } else {
+                        visibleSelected.remove(posId);
+                    }
+                    return;
+                }
+            }
+        }
+        setVisibleVoxel(posId, Chunk.EMPTY);
+        visibleSelected.remove(posId);
+    }
+
+    // update the visible colors (needs to be called when the color of a voxel changes)
+    public final void updateColor(int voxelId, long posId, int previousRgb, int rgb) {
+        if (visible.get(posId) == voxelId) {
+            countColor(previousRgb, -1);
+            countColor(rgb, 1);
+        }
+    }
+
+    // update the visible colors (needs to be called when a color is replaced for all voxels)
+    public final void replaceColor(int fromRgb, int toRgb) {
+        int count = visibleColors.remove(fromRgb);
+        if (count != 0) {
+            countColor(toRgb, count);
+        }
+    }
+
+    // update the selection state of a position (needs to be called when the
+    // selection of a voxel at this position changes)
+    public final void updateSelected(long posId) {
+        int voxelId = visible.get(posId);
+        if (voxelId != Chunk.EMPTY && selectedVoxelIds.contains(voxelId)) {
+            visibleSelected.add(posId);
+        } else {
+            visibleSelected.remove(posId);
+        }
+    }
+
+    // add a voxel (the voxel needs to be known to the voxel layer ids)
+    public final void add(int voxelId, long posId) {
+        int[] stack = getStack(posId);
+        int[] result;
+        if (stack == null) {
+            result = new int[] {voxelId};
+        } else {
+            // insert by layer order
+            int voxelRank = rank(voxelId);
+            result = new int[stack.length + 1];
+            int i = 0;
+            while (i < stack.length && rank(stack[i]) <= voxelRank) {
+                result[i] = stack[i];
+                i++;
+            }
+            result[i] = voxelId;
+            System.arraycopy(stack, i, result, i + 1, stack.length - i);
+        }
+        setStack(posId, result);
+        updateVisible(posId, result);
+    }
+
+    // remove a voxel (the voxel needs to be known to the voxel layer ids)
+    public final void remove(int voxelId, long posId) {
+        int[] stack = getStack(posId);
+        if (stack == null) {
+            return;
+        }
+        int[] result = new int[stack.length - 1];
+        int j = 0;
+        for (int id : stack) {
+            if (id != voxelId) {
+                if (j == result.length) {
+                    return; // not in this stack
+                }
+                result[j++] = id;
+            }
+        }
+        setStack(posId, result);
+        updateVisible(posId, result.length == 0 ? null : result);
+    }
+
+    // update the layer order and visibility when a layer is created or deleted (these layers
+    // are empty, so the order of the stacks does not change and no position is effected)
+    public final void updateLayers(Map<Integer, VoxelLayer> layers, List<Integer> layerOrder) {
+        this.layers = layers;
+        ranks.clear();
+        for (int i = 0, len = layerOrder.size(); i < len; i++) {
+            ranks.put(layerOrder.get(i), i);
+        }
+        hidden.clear();
+        for (VoxelLayer layer : layers.values()) {
+            if (!layer.isVisible()) {
+                hidden.add(layer.id);
+            }
+        }
+    }
+
+    // update the layer order when a layer moved (only the stacks at the positions of
+    // the moved layer can change their order)
+    public final void moveLayer(Map<Integer, VoxelLayer> layers, List<Integer> layerOrder, long[] posIds) {
+        updateLayers(layers, layerOrder);
+        for (long posId : posIds) {
+            int value = stacks.get(posId);
+            if (value != Chunk.EMPTY && (value & 1) == 1) {
+                int[] stack = overflow.get(value >> 1);
+                sort(stack);
+                updateVisible(posId, stack);
+            }
+        }
+    }
+
+    // update the visibility of a layer (the positions of the layer are effected)
+    public final void setVisible(int layerId, boolean b, long[] posIds) {
+        if (b ? hidden.remove(layerId) : hidden.add(layerId)) {
+            for (long posId : posIds) {
+                updateVisible(posId, getStack(posId));
+            }
+        }
+    }
+
+    // rebuild the index from the layers
+    public final void rebuild(Map<Integer, VoxelLayer> layers, List<Integer> layerOrder) {
+        stacks.clear();
+        visible.clear();
+        visibleSelected.clear();
+        visibleColors.clear();
+        overflow.clear();
+        freeOverflow.clear();
+        updateLayers(layers, layerOrder);
+        for (VoxelLayer layer : layers.values()) {
+            int[] voxelIds = layer.getVoxelIds();
+            long[] posIds = layer.getPosIds();
+            for (int i = 0; i < voxelIds.length; i++) {
+                add(voxelIds[i], posIds[i]);
+            }
+        }
+    }
+
+    // get the id of the top most visible voxel at a position (-1 if there is none)
+    public final int getVisible(long posId) {
+        return visible.get(posId);
+    }
+
+    // get the ids of all top most visible voxels
+    // (axis 0, 1, 2 restricts the result to the x, y or z plane, -1 returns all voxels)
+    public final int[] getVisible(int axis, int plane) {
+        switch (axis) {
+            case 0: return visible.getXPlane(plane);
+            case 1: return visible.getYPlane(plane);
+            case 2: return visible.getZPlane(plane);
+            default: return visible.getValues();
+        }
+    }
+
+    // the amount of positions that show a voxel
+    public final int visibleCount() {
+        return visible.size();
+    }
+
+    // get the colors of the top most visible voxels (argb)
+    public final int[] getVisibleColors() {
+        return visibleColors.keys();
+    }
+
+    // the amount of positions that show a selected voxel
+    public final int selectedCount() {
+        return visibleSelected.size();
+    }
+
+    // check if the top most visible voxel at a position is selected
+    public final boolean isSelected(long posId) {
+        return visibleSelected.contains(posId);
+    }
+
+    // get the ids of the top most visible voxels that are selected
+    public final int[] getSelected() {
+        int[] result = new int[visibleSelected.size()];
+        int i = 0;
+        for (TLongIterator it = visibleSelected.iterator(); it.hasNext();) {
+            result[i++] = visible.get(it.next());
+        }
+        return result;
+    }
+
+    // visit the ids of the top most visible voxels that are selected (stops
+    // if the procedure returns false)
+    public final boolean forEachSelected(TIntProcedure procedure) {
+        for (TLongIterator it = visibleSelected.iterator(); it.hasNext();) {
+            if (!procedure.execute(visible.get(it.next()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,33 +1,52 @@
 package com.vitco.app.core.data;
 
+import com.vitco.app.core.data.container.ColorPalette;
+import com.vitco.app.core.data.container.MappedVsdFile;
+import com.vitco.app.core.data.container.PackedVoxels;
+import com.vitco.app.core.data.container.TextureData;
 import com.vitco.app.core.data.container.Voxel;
 import com.vitco.app.core.data.container.VoxelLayer;
+import com.vitco.app.core.data.container.VoxelVisitor;
 import com.vitco.app.core.data.history.HistoryChangeListener;
 import com.vitco.app.core.data.history.HistoryManager;
+import com.vitco.app.core.data.history.HistorySpill;
 import com.vitco.app.core.data.history.VoxelActionIntent;
-import com.vitco.app.low.CubeIndexer;
+import com.vitco.app.low.LongCubeIndexer;
 import com.vitco.app.settings.VitcoSettings;
+import com.vitco.app.util.file.PackedArrayIO;
 import com.vitco.app.util.graphic.GraphicTools;
-import com.vitco.app.util.misc.ArrayUtil;
 import com.vitco.app.util.misc.ColorTools;
 import gnu.trove.iterator.TIntIterator;
-import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.procedure.TIntProcedure;
 import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.set.hash.TLongHashSet;
 
 import javax.swing.*;
 import java.awt.*;
-import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Defines the voxel data interaction (layer, undo, etc)
  */
 public abstract class VoxelData extends AnimationHighlight implements VoxelDataInterface {
 
+    // the estimated memory of a texture that is held by the history (in bytes)
+    private static final long TEXTURE_MEMORY_ESTIMATE = 32 * 32 * 4;
+
     // constructor
     // contains the (history) listener event declaration for voxel and texture
     protected VoxelData() {
@@ -36,7 +55,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         historyManagerV.addChangeListener(new HistoryChangeListener<VoxelActionIntent>() {
             @Override
             public final void onChange(VoxelActionIntent action) {
-                int[][] effectedVoxels = null;
+                long[] effectedVoxels = null;
                 boolean effectsTexture = false;
                 if (action != null) {
                     effectedVoxels = action.effected();
@@ -64,104 +83,82 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             public void onFrozenUnapply() {
                 notifier.onFrozenUndo();
             }
+
+            @Override
+            public void onTrimmed(int count) {
+                notifier.onHistoryTrimmed();
+            }
         });
     }
 
     // holds the voxel positions that are currently selected (so we only notify
     // position where the selection state has actually changed!)
-    private final TIntHashSet currentSelectedVoxel = new TIntHashSet();
+    private final TLongHashSet currentSelectedVoxel = new TLongHashSet();
 
-    // invalidate cache
-    protected final void invalidateV(int[][] effected) {
-        if (effected != null) {
-            // notification of changed visible voxels
-            for (TIntObjectHashMap<int[]> map : changedVisibleVoxel.values()) {
-                if (map != null) {
-                    for (int[] invalid : effected) {
-                        Integer key = CubeIndexer.getId(invalid[0], invalid[1], invalid[2]);
-                        if (!map.containsKey(key)) {
-                            map.put(key, invalid);
-                        }
-                    }
-                }
-            }
+    // the changed visible positions and the positions where the selection has changed,
+    // the consumers (views) remember the sequence number they have read up to
+    private final ChangeJournal visibleJournal = new ChangeJournal(VitcoSettings.CHANGE_JOURNAL_SIZE);
+    private final ChangeJournal selectedJournal = new ChangeJournal(VitcoSettings.CHANGE_JOURNAL_SIZE);
+    private final Map<String, Long> visibleCursors = new ConcurrentHashMap<String, Long>();
+    private final Map<String, Long> selectedCursors = new ConcurrentHashMap<String, Long>();
+    private final Map<String, Long> sideCursors = new ConcurrentHashMap<String, Long>();
 
-            // notification of changed selected voxels
-            TIntObjectHashMap<int[]> invalidSelected = new TIntObjectHashMap<int[]>();
-            for (int[] invalid : effected) {
-                Voxel voxel = searchVoxel(invalid, false);
-                if (voxel == null) {
-                    int key = CubeIndexer.getId(invalid[0], invalid[1], invalid[2]);
-                    if (currentSelectedVoxel.remove(key)) {
-                        invalidSelected.put(key, invalid);
-                    }
-                } else {
-                    int key = voxel.posId;
-                    if (voxel.isSelected()) {
+    // invalidate cache
+    protected final void invalidateV(long[] effected) {
+        writeLock.lock();
+        try {
+            if (effected != null) {
+                for (long key : effected) {
+                    // notification of changed visible voxels
+                    visibleJournal.append(key);
+                    // notification of changed selected voxels
+                    if (layerStacks.isSelected(key)) {
                         if (currentSelectedVoxel.add(key)) {
-                            invalidSelected.put(key, invalid);
+                            selectedJournal.append(key);
                         }
                     } else {
                         if (currentSelectedVoxel.remove(key)) {
-                            invalidSelected.put(key, invalid);
-                        }
-                    }
-                }
-            }
-            for (TIntObjectHashMap<int[]> map : changedSelectedVoxel.values()) {
-                if (map != null) {
-                    map.putAll(invalidSelected);
-                }
-            }
-
-            // notification of changed visible voxel for this plane
-            for (TIntIterator it = changedVisibleVoxelPlane.keySet().iterator(); it.hasNext();) {
-                int side = it.next();
-                int missingSide = 1;
-                switch (side) {
-                    case 0: missingSide = 2; break;
-                    case 2: missingSide = 0; break;
-                    default: break;
-                }
-                for (String requestId : changedVisibleVoxelPlane.get(side).keySet()) {
-                    for (int[] invalid : effected) {
-                        // make sure this is set
-                        if (!changedVisibleVoxelPlane.get(side).get(requestId).containsKey(invalid[missingSide])) {
-                            changedVisibleVoxelPlane.get(side).get(requestId).put(
-                                    invalid[missingSide], new TIntObjectHashMap<int[]>());
-                        }
-                        // fill the details
-                        int key = CubeIndexer.getId(invalid[0], invalid[1], invalid[2]);
-                        if (!changedVisibleVoxelPlane.get(side).get(requestId).get(invalid[missingSide]).containsKey(key)) {
-                            changedVisibleVoxelPlane.get(side).get(requestId).get(invalid[missingSide]).put(key, invalid);
+                            selectedJournal.append(key);
                         }
                     }
                 }
+            } else {
+                currentSelectedVoxel.clear();
+                visibleJournal.reset();
+                selectedJournal.reset();
             }
-        } else {
-            currentSelectedVoxel.clear();
-            changedSelectedVoxel.clear();
-            changedVisibleVoxel.clear();
-            changedVisibleVoxelPlane.clear();
-        }
-        layerBufferValid = false;
-        layerNameBufferValid = false;
-        layerVoxelBufferValid = false;
-        layerVoxelXYBufferValid = false;
-        layerVoxelXZBufferValid = false;
-        layerVoxelYZBufferValid = false;
-        selectedVoxelBufferValid = false;
-        visibleLayerVoxelInternalBufferValid = false;
-        notifier.onVoxelDataChanged();
+            layerBufferValid = false;
+            layerNameBufferValid = false;
+            layerVoxelBufferValid = false;
+            layerVoxelXYBufferValid = false;
+            layerVoxelXZBufferValid = false;
+            layerVoxelYZBufferValid = false;
+            selectedVoxelBufferValid = false;
+            visibleLayerVoxelInternalBufferValid = false;
+            notifier.onVoxelDataChanged();
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     // holds the historyV data
-    protected final HistoryManager<VoxelActionIntent> historyManagerV = new HistoryManager<VoxelActionIntent>();
+    protected final HistoryManager<VoxelActionIntent> historyManagerV = new HistoryManager<VoxelActionIntent>(
+            writeLock, VitcoSettings.HISTORY_MEMORY_BUDGET, new HistorySpill(VitcoSettings.HISTORY_SPILL_LIMIT));
 
     // buffer for the selected voxels
     private Voxel[] selectedVoxelBuffer = new Voxel[0];
     private boolean selectedVoxelBufferValid = false;
 
+    // guard the buffers (they are updated by concurrent reads)
+    private final Object selectedBufferSync = new Object();
+    private final Object layerVoxelBufferSync = new Object();
+    private final Object visibleBufferSync = new Object();
+    private final Object xyBufferSync = new Object();
+    private final Object xzBufferSync = new Object();
+    private final Object yzBufferSync = new Object();
+    private final Object layerBufferSync = new Object();
+    private final Object visibleInternalBufferSync = new Object();
+
     // ===========================================
 
     // ###################### PRIVATE HELPER CLASSES
@@ -179,20 +176,30 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
         @Override
         protected void applyAction() {
-            dataContainer.layers.put(layerId, new VoxelLayer(layerId, layerName));
+            effected = new long[0];
+            dataContainer.layers.put(layerId, new VoxelLayer(layerId, layerName, palette));
             dataContainer.layerOrder.add(0, layerId);
+            layerStacks.updateLayers(dataContainer.layers, dataContainer.layerOrder);
         }
 
         @Override
         protected void unapplyAction() {
+            // remove voxels that were added without history (e.g. imports)
+            VoxelLayer layer = dataContainer.layers.get(layerId);
+            effected = layer.getPosIds();
+            for (int voxelId : layer.getVoxelIds()) {
+                deleteVoxel(voxelId);
+            }
             dataContainer.layers.remove(layerId);
             dataContainer.layerOrder.remove(dataContainer.layerOrder.lastIndexOf(layerId));
+            layerStacks.updateLayers(dataContainer.layers, dataContainer.layerOrder);
         }
 
+        // nothing effected (except for voxels that were added without history)
+        private long[] effected = null;
         @Override
-        public int[][] effected() {
-            // nothing effected
-            return new int[0][];
+        public long[] effected() {
+            return effected;
         }
     }
 
@@ -210,13 +217,13 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         protected void applyAction() {
             if (isFirstCall()) {
                 // remember effected positions
-                effected = new int[dataContainer.layers.get(layerId).getVoxels().length][];
+                effected = new long[dataContainer.layers.get(layerId).getSize()];
                 // remove all points in this layer
                 Voxel[] voxels = dataContainer.layers.get(layerId).getVoxels();
                 for (int i = 0; i < voxels.length; i++) {
                     Voxel voxel = voxels[i];
                     historyManagerV.applyIntent(new RemoveVoxelIntent(voxel.id, true));
-                    effected[i] = voxel.getPosAsInt(); // store
+                    effected[i] = voxel.posId; // store
                 }
                 // remember the position of this layer
                 layerPosition = dataContainer.layerOrder.indexOf(layerId);
@@ -225,17 +232,19 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             }
             dataContainer.layers.remove(layerId);
             dataContainer.layerOrder.remove(layerId);
+            layerStacks.updateLayers(dataContainer.layers, dataContainer.layerOrder);
         }
 
         @Override
         protected void unapplyAction() {
-            dataContainer.layers.put(layerId, new VoxelLayer(layerId, layerName));
+            dataContainer.layers.put(layerId, new VoxelLayer(layerId, layerName, palette));
             dataContainer.layerOrder.add(layerPosition, layerId);
+            layerStacks.updateLayers(dataContainer.layers, dataContainer.layerOrder);
         }
 
-        private int[][] effected = null; // everything effected
+        private long[] effected = null; // everything effected
         @Override
-        public int[][] effected() {
+        public long[] effected() {
             return effected;
         }
     }
@@ -265,9 +274,9 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         }
 
         @Override
-        public int[][] effected() {
+        public long[] effected() {
             // nothing effected
-            return new int[0][];
+            return new long[0];
         }
     }
 
@@ -294,9 +303,9 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         }
 
         @Override
-        public int[][] effected() {
+        public long[] effected() {
             // nothing effected
-            return new int[0][];
+            return new long[0];
         }
     }
 
@@ -316,22 +325,22 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             if (isFirstCall()) {
                 oldVisible = dataContainer.layers.get(layerId).isVisible();
             }
-            dataContainer.layers.get(layerId).setVisible(visible);
+            setLayerVisible(layerId, visible);
         }
 
         @Override
         protected void unapplyAction() {
-            dataContainer.layers.get(layerId).setVisible(oldVisible);
+            setLayerVisible(layerId, oldVisible);
         }
 
-        private int[][] effected = null; // everything effected
+        private long[] effected = null; // everything effected
         @Override
-        public int[][] effected() {
+        public long[] effected() {
             if (effected == null) { // get effected positions
                 Voxel[] voxels = dataContainer.layers.get(layerId).getVoxels();
-                effected = new int[voxels.length][];
+                effected = new long[voxels.length];
                 for (int i = 0, voxelsLength = voxels.length; i < voxelsLength; i++) {
-                    effected[i] = voxels[i].getPosAsInt();
+                    effected[i] = voxels[i].posId;
                 }
             }
             return effected;
@@ -356,6 +365,8 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             } else {
                 Collections.swap(dataContainer.layerOrder, index, index + 1);
             }
+            layerStacks.moveLayer(dataContainer.layers, dataContainer.layerOrder,
+                    dataContainer.layers.get(layerId).getPosIds());
         }
 
         @Override
@@ -366,16 +377,18 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             } else {
                 Collections.swap(dataContainer.layerOrder, index, index - 1);
             }
+            layerStacks.moveLayer(dataContainer.layers, dataContainer.layerOrder,
+                    dataContainer.layers.get(layerId).getPosIds());
         }
 
-        private int[][] effected = null; // everything effected
+        private long[] effected = null; // everything effected
         @Override
-        public int[][] effected() {
+        public long[] effected() {
             if (effected == null) { // get effected positions
                 Voxel[] voxels = dataContainer.layers.get(layerId).getVoxels();
-                effected = new int[voxels.length][];
+                effected = new long[voxels.length];
                 for (int i = 0, voxelsLength = voxels.length; i < voxelsLength; i++) {
-                    effected[i] = voxels[i].getPosAsInt();
+                    effected[i] = voxels[i].posId;
                 }
             }
             return effected;
@@ -394,19 +407,17 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
         @Override
         protected void applyAction() {
-            dataContainer.voxels.put(voxel.id, voxel);
-            dataContainer.layers.get(voxel.getLayerId()).addVoxel(voxel);
+            putVoxel(voxel);
         }
 
         @Override
         protected void unapplyAction() {
-            dataContainer.voxels.remove(voxel.id);
-            dataContainer.layers.get(voxel.getLayerId()).removeVoxel(voxel);
+            deleteVoxel(voxel.id);
         }
 
         @Override
-        public int[][] effected() {
-            return new int[][]{voxel.getPosAsInt()};
+        public long[] effected() {
+            return new long[] {voxel.posId};
         }
     }
 
@@ -422,21 +433,20 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         @Override
         protected void applyAction() {
             if (isFirstCall()) {
-                voxel = dataContainer.voxels.get(voxelId);
+                // remember the voxel data
+                voxel = findVoxel(voxelId);
             }
-            dataContainer.voxels.remove(voxel.id);
-            dataContainer.layers.get(voxel.getLayerId()).removeVoxel(voxel);
+            deleteVoxel(voxelId);
         }
 
         @Override
         protected void unapplyAction() {
-            dataContainer.voxels.put(voxel.id, voxel);
-            dataContainer.layers.get(voxel.getLayerId()).addVoxel(voxel);
+            putVoxel(voxel);
         }
 
         @Override
-        public int[][] effected() {
-            return new int[][]{voxel.getPosAsInt()};
+        public long[] effected() {
+            return new long[] {voxel.posId};
         }
     }
 
@@ -455,20 +465,20 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         @Override
         protected void applyAction() {
             if (isFirstCall()) {
-                voxel = dataContainer.voxels.get(voxelId);
+                voxel = findVoxel(voxelId);
                 prevSelected = voxel.isSelected();
             }
-            voxel.setSelected(selected);
+            setSelected(voxelId, selected);
         }
 
         @Override
         protected void unapplyAction() {
-            voxel.setSelected(prevSelected);
+            setSelected(voxelId, prevSelected);
         }
 
         @Override
-        public int[][] effected() {
-            return new int[][]{voxel.getPosAsInt()};
+        public long[] effected() {
+            return new long[] {voxel.posId};
         }
     }
 
@@ -485,7 +495,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         @Override
         protected void applyAction() {
             if (isFirstCall()) {
-                Voxel voxel = dataContainer.voxels.get(voxelId);
+                Voxel voxel = findVoxel(voxelId);
                 historyManagerV.applyIntent(new RemoveVoxelIntent(voxelId, true));
 
                 // remove if something is at new position in this layer
@@ -498,7 +508,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 historyManagerV.applyIntent(new AddVoxelIntent(voxelId, newPos, voxel.getColor(), voxel.isSelected(), voxel.getTexture(), voxel.getLayerId(), true));
 
                 // what is effected
-                effected = new int[][]{voxel.getPosAsInt(), newPos};
+                effected = new long[] {voxel.posId, LongCubeIndexer.getId(newPos[0], newPos[1], newPos[2])};
             }
         }
 
@@ -507,9 +517,9 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             // nothing to do here
         }
 
-        private int[][] effected = null;
+        private long[] effected = null;
         @Override
-        public int[][] effected() {
+        public long[] effected() {
             return effected;
         }
     }
@@ -521,25 +531,25 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
         protected ColorVoxelIntent(int voxelId, Color newColor, boolean attach) {
             super(attach);
-            this.voxel = dataContainer.voxels.get(voxelId);
+            this.voxel = findVoxel(voxelId);
             this.oldColor = voxel.getColor();
             this.newColor = newColor;
-            this.effected = new int[][]{voxel.getPosAsInt()};
+            this.effected = new long[] {voxel.posId};
         }
 
         @Override
         protected void applyAction() {
-            voxel.setColor(newColor);
+            setColor(voxel.id, newColor.getRGB());
         }
 
         @Override
         protected void unapplyAction() {
-            voxel.setColor(oldColor);
+            setColor(voxel.id, oldColor.getRGB());
         }
 
-        private int[][] effected = null;
+        private long[] effected = null;
         @Override
-        public int[][] effected() {
+        public long[] effected() {
             return effected;
         }
     }
@@ -551,30 +561,25 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
         protected ColorShiftVoxelIntent(int voxelId, float[] hsbOffset, boolean attach) {
             super(attach);
-            this.voxel = dataContainer.voxels.get(voxelId);
+            this.voxel = findVoxel(voxelId);
             this.oldColor = voxel.getColor();
-            float[] currentHSB = ColorTools.colorToHSB(this.oldColor);
-            this.newColor = ColorTools.hsbToColor(new float[] {
-                    (currentHSB[0] + hsbOffset[0] + 2) % 1,
-                    Math.max(0, Math.min(1, currentHSB[1] + hsbOffset[1])),
-                    Math.max(0, Math.min(1, currentHSB[2] + hsbOffset[2]))
-            });
-            this.effected = new int[][]{voxel.getPosAsInt()};
+            this.newColor = new Color(shiftColor(oldColor.getRGB(), hsbOffset));
+            this.effected = new long[] {voxel.posId};
         }
 
         @Override
         protected void applyAction() {
-            voxel.setColor(newColor);
+            setColor(voxel.id, newColor.getRGB());
         }
 
         @Override
         protected void unapplyAction() {
-            voxel.setColor(oldColor);
+            setColor(voxel.id, oldColor.getRGB());
         }
 
-        private int[][] effected = null;
+        private long[] effected = null;
         @Override
-        public int[][] effected() {
+        public long[] effected() {
             return effected;
         }
     }
@@ -594,22 +599,22 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         @Override
         protected void applyAction() {
             if (isFirstCall()) {
-                voxel = dataContainer.voxels.get(voxelId);
+                voxel = findVoxel(voxelId);
                 oldAlpha = voxel.getAlpha();
                 // what is effected
-                effected = new int[][]{voxel.getPosAsInt()};
+                effected = new long[] {voxel.posId};
             }
-            dataContainer.layers.get(voxel.getLayerId()).setVoxelAlpha(voxel, newAlpha);
+            dataContainer.layers.get(voxel.getLayerId()).setVoxelAlpha(voxelId, newAlpha);
         }
 
         @Override
         protected void unapplyAction() {
-            dataContainer.layers.get(voxel.getLayerId()).setVoxelAlpha(voxel, oldAlpha);
+            dataContainer.layers.get(voxel.getLayerId()).setVoxelAlpha(voxelId, oldAlpha);
         }
 
-        private int[][] effected = null;
+        private long[] effected = null;
         @Override
-        public int[][] effected() {
+        public long[] effected() {
             return effected;
         }
     }
@@ -625,17 +630,16 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         @Override
         protected void applyAction() {
             if (isFirstCall()) {
-                ArrayList<int[]> effected = new ArrayList<int[]>();
+                TLongArrayList effected = new TLongArrayList();
 
                 // get all voxels and remove them
                 for (Voxel voxel : dataContainer.layers.get(layerId).getVoxels()) {
-                    effected.add(voxel.getPosAsInt());
+                    effected.add(voxel.posId);
                     historyManagerV.applyIntent(new RemoveVoxelIntent(voxel.id, true));
                 }
 
                 // what is effected
-                this.effected = new int[effected.size()][];
-                effected.toArray(this.effected);
+                this.effected = effected.toArray();
             }
         }
 
@@ -644,9 +648,9 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             // nothing to do
         }
 
-        private int[][] effected = null;
+        private long[] effected = null;
         @Override
-        public int[][] effected() {
+        public long[] effected() {
             return effected;
         }
     }
@@ -660,7 +664,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         @Override
         protected void applyAction() {
             if (isFirstCall()) {
-                ArrayList<int[]> effected = new ArrayList<int[]>();
+                TLongArrayList effected = new TLongArrayList();
 
                 // create new layer
                 int mergedLayerId = getFreeLayerId();
@@ -672,7 +676,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                         Voxel[] voxels = getLayerVoxels(layerId); // get voxels
                         for (Voxel voxel : voxels) {
                             if (dataContainer.layers.get(mergedLayerId).voxelPositionFree(voxel)) { // add if this voxel does not exist
-                                effected.add(voxel.getPosAsInt());
+                                effected.add(voxel.posId);
                                 historyManagerV.applyIntent( // we <need> a new id for this voxel
                                         new AddVoxelIntent(getFreeVoxelId(), voxel.getPosAsInt(),
                                                 voxel.getColor(), voxel.isSelected(), voxel.getTexture(), mergedLayerId, true)
@@ -695,8 +699,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 dataContainer.selectedLayer = mergedLayerId;
 
                 // what is effected
-                this.effected = new int[effected.size()][];
-                effected.toArray(this.effected);
+                this.effected = effected.toArray();
             }
         }
 
@@ -705,19 +708,51 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             // nothing to do
         }
 
-        private int[][] effected = null;
+        private long[] effected = null;
+        @Override
+        public long[] effected() {
+            return effected;
+        }
+    }
+
+    // intent that remembers the effected positions (the data of these
+    // intents can be moved to the spill file of the history)
+    private abstract class EffectedVoxelIntent extends VoxelActionIntent {
+        // the effected positions
+        protected long[] effected = null;
+
+        protected EffectedVoxelIntent(boolean attach) {
+            super(attach);
+        }
+
         @Override
-        public int[][] effected() {
+        public final long[] effected() {
             return effected;
         }
+
+        @Override
+        protected boolean writeData(DataOutput out) throws IOException {
+            PackedArrayIO.writeLongs(out, effected);
+            return true;
+        }
+
+        @Override
+        protected void readData(DataInput in) throws IOException {
+            effected = PackedArrayIO.readLongs(in);
+        }
+
+        @Override
+        protected void releaseData() {
+            effected = null;
+        }
     }
 
     // texture intents
     private final class AddTextureIntent extends VoxelActionIntent {
-        private final ImageIcon texture;
+        private final TextureData texture;
         private final int textureId;
 
-        protected AddTextureIntent(ImageIcon texture, boolean attach) {
+        protected AddTextureIntent(TextureData texture, boolean attach) {
             super(attach);
             this.texture = texture;
             textureId = getFreeTextureId();
@@ -737,9 +772,14 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         }
 
         @Override
-        public int[][] effected() {
+        public long getMemoryEstimate() {
+            return 128 + TEXTURE_MEMORY_ESTIMATE;
+        }
+
+        @Override
+        public long[] effected() {
             // nothing effected
-            return new int[0][];
+            return new long[0];
         }
 
         // return true if this action effects textures
@@ -750,7 +790,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     // texture intents
     private final class AddTextureGridIntent extends VoxelActionIntent {
-        private final BufferedImage texture;
+        private BufferedImage texture;
 
         protected AddTextureGridIntent(BufferedImage texture, boolean attach) {
             super(attach);
@@ -765,10 +805,12 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                     for (int x = 0, lenX = texture.getWidth(); x < lenX; x+= 32) {
                         historyManagerV.applyIntent(
                                 new AddTextureIntent(
-                                        new ImageIcon(texture.getSubimage(x, y, 32, 32)), true)
+                                        TextureData.fromImage(texture.getSubimage(x, y, 32, 32)), true)
                         );
                     }
                 }
+                // we don't need this data anymore
+                texture = null;
             }
         }
 
@@ -778,9 +820,9 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         }
 
         @Override
-        public int[][] effected() {
+        public long[] effected() {
             // nothing effected
-            return new int[0][];
+            return new long[0];
         }
 
         // return true if this action effects textures
@@ -790,7 +832,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     }
 
     private final class RemoveTextureIntent extends VoxelActionIntent {
-        private ImageIcon texture;
+        private TextureData texture;
         private final int textureId;
 
         protected RemoveTextureIntent(int textureId, boolean attach) {
@@ -815,9 +857,14 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         }
 
         @Override
-        public int[][] effected() {
+        public long getMemoryEstimate() {
+            return 128 + TEXTURE_MEMORY_ESTIMATE;
+        }
+
+        @Override
+        public long[] effected() {
             // nothing effected
-            return new int[0][];
+            return new long[0];
         }
 
         // return true if this action effects textures
@@ -858,9 +905,9 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         }
 
         @Override
-        public int[][] effected() {
+        public long[] effected() {
             // nothing effected
-            return new int[0][];
+            return new long[0];
         }
 
         // return true if this action effects textures
@@ -871,11 +918,11 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     // replace texture in the texture list
     private final class ReplaceTextureIntent extends VoxelActionIntent {
-        private final ImageIcon textureNew;
-        private final ImageIcon textureOld;
+        private final TextureData textureNew;
+        private final TextureData textureOld;
         private final int textureId;
 
-        protected ReplaceTextureIntent(int textureId, ImageIcon texture, boolean attach) {
+        protected ReplaceTextureIntent(int textureId, TextureData texture, boolean attach) {
             super(attach);
             this.textureId = textureId;
             this.textureNew = texture;
@@ -893,9 +940,14 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         }
 
         @Override
-        public int[][] effected() {
+        public long getMemoryEstimate() {
+            return 128 + 2 * TEXTURE_MEMORY_ESTIMATE;
+        }
+
+        @Override
+        public long[] effected() {
             // nothing effected
-            return new int[0][];
+            return new long[0];
         }
 
         // return true if this action effects textures
@@ -926,9 +978,9 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         }
 
         @Override
-        public int[][] effected() {
+        public long[] effected() {
             // nothing effected
-            return new int[0][];
+            return new long[0];
         }
 
         // return true if this action effects textures
@@ -945,7 +997,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
         protected TextureVoxelIntent(int voxelId, Integer voxelSide, int newTextureId, boolean attach) {
             super(attach);
-            this.voxel = dataContainer.voxels.get(voxelId);
+            this.voxel = findVoxel(voxelId);
             this.oldVoxelTexture = voxel.getTexture();
             if (newTextureId != -1) { // otherwise unset texture
                 if (oldVoxelTexture == null || voxelSide == null) {
@@ -961,38 +1013,38 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 newVoxelTexture = null;
             }
             // what is effected
-            effected = new int[][]{voxel.getPosAsInt()};
+            effected = new long[] {voxel.posId};
         }
 
         @Override
         protected void applyAction() {
-            voxel.setTexture(newVoxelTexture);
+            dataContainer.layers.get(voxel.getLayerId()).setVoxelTexture(voxel.id, newVoxelTexture);
         }
 
         @Override
         protected void unapplyAction() {
-            voxel.setTexture(oldVoxelTexture);
+            dataContainer.layers.get(voxel.getLayerId()).setVoxelTexture(voxel.id, oldVoxelTexture);
         }
 
-        private int[][] effected = null;
+        private long[] effected = null;
         @Override
-        public int[][] effected() {
+        public long[] effected() {
             return effected;
         }
     }
 
     // texture many voxel at the same time
-    private final class MassTextureVoxelIntent extends VoxelActionIntent  {
-        private final Integer[] voxelIds;
+    private final class MassTextureVoxelIntent extends EffectedVoxelIntent  {
+        private Integer[] voxelIds;
         private final int textureId;
 
         protected MassTextureVoxelIntent(Integer[] voxelIds, int textureId, boolean attach) {
             super(attach);
 
             // what is effected (there could be duplicate positions here)
-            effected = new int[voxelIds.length][];
+            effected = new long[voxelIds.length];
             for (int i = 0; i < effected.length; i++) {
-                effected[i] = dataContainer.voxels.get(voxelIds[i]).getPosAsInt();
+                effected[i] = findVoxel(voxelIds[i]).posId;
             }
 
             this.voxelIds = voxelIds;
@@ -1005,6 +1057,8 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 for (Integer voxelId : voxelIds) {
                     historyManagerV.applyIntent(new TextureVoxelIntent(voxelId, null, textureId, true));
                 }
+                // we don't need this data anymore
+                voxelIds = null;
             }
         }
 
@@ -1012,12 +1066,6 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         protected void unapplyAction() {
             // nothing to do
         }
-
-        private int[][] effected = null;
-        @Override
-        public int[][] effected() {
-            return effected;
-        }
     }
 
     // rotate voxel texture
@@ -1027,24 +1075,24 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
         protected RotateVoxelTextureIntent(int voxelId, int voxelSide, boolean attach) {
             super(attach);
-            this.voxel = dataContainer.voxels.get(voxelId);
+            this.voxel = findVoxel(voxelId);
             this.voxelSide = voxelSide;
-            effected = new int[][]{voxel.getPosAsInt()};
+            effected = new long[] {voxel.posId};
         }
 
         @Override
         protected void applyAction() {
-            voxel.rotate(voxelSide);
+            dataContainer.layers.get(voxel.getLayerId()).rotateVoxelTexture(voxel.id, voxelSide, false);
         }
 
         @Override
         protected void unapplyAction() {
-            voxel.rotateReverse(voxelSide);
+            dataContainer.layers.get(voxel.getLayerId()).rotateVoxelTexture(voxel.id, voxelSide, true);
         }
 
-        private int[][] effected = null;
+        private long[] effected = null;
         @Override
-        public int[][] effected() {
+        public long[] effected() {
             return effected;
         }
     }
@@ -1056,24 +1104,24 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
         protected FlipVoxelTextureIntent(int voxelId, int voxelSide, boolean attach) {
             super(attach);
-            this.voxel = dataContainer.voxels.get(voxelId);
+            this.voxel = findVoxel(voxelId);
             this.voxelSide = voxelSide;
-            effected = new int[][]{voxel.getPosAsInt()};
+            effected = new long[] {voxel.posId};
         }
 
         @Override
         protected void applyAction() {
-            voxel.flip(voxelSide);
+            dataContainer.layers.get(voxel.getLayerId()).flipVoxelTexture(voxel.id, voxelSide);
         }
 
         @Override
         protected void unapplyAction() {
-            voxel.flip(voxelSide);
+            dataContainer.layers.get(voxel.getLayerId()).flipVoxelTexture(voxel.id, voxelSide);
         }
 
-        private int[][] effected = null;
+        private long[] effected = null;
         @Override
-        public int[][] effected() {
+        public long[] effected() {
             return effected;
         }
     }
@@ -1081,8 +1129,8 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     // layer events
 
     // move to new layer
-    private final class MigrateIntent extends VoxelActionIntent {
-        private final Voxel[] voxels;
+    private final class MigrateIntent extends EffectedVoxelIntent {
+        private Voxel[] voxels;
 
         protected MigrateIntent(Voxel[] voxels, boolean attach) {
             super(attach);
@@ -1092,9 +1140,9 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         private Integer[] convertVoxelsToIdArray(Voxel[] voxels) {
             // what is effected (there *should* not be duplicate positions
             // as they are all moved to one new layer)
-            effected = new int[voxels.length][];
+            effected = new long[voxels.length];
             for (int i = 0; i < effected.length; i++) {
-                effected[i] = voxels[i].getPosAsInt();
+                effected[i] = voxels[i].posId;
             }
 
             Integer[] voxelIds = new Integer[voxels.length];
@@ -1118,6 +1166,8 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 historyManagerV.applyIntent(new MassAddVoxelIntent(voxels, layerId, true));
                 // select the new layer
                 historyManagerV.applyIntent(new SelectLayerIntent(layerId, true));
+                // we don't need this data anymore
+                voxels = null;
             }
         }
 
@@ -1125,87 +1175,126 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         protected void unapplyAction() {
             // nothing to do
         }
-
-        private int[][] effected = null;
-        @Override
-        public int[][] effected() {
-            return effected;
-        }
     }
 
     // mass events
 
-    private final class MassSelectVoxelIntent extends VoxelActionIntent {
-        private final Integer[] voxelIds;
-        private final boolean selected;
+    // sets the selection of every voxel (to the respective new state)
+    private final class MassSelectVoxelIntent extends EffectedVoxelIntent {
+        private int[] voxelIds;
+        private boolean[] newSelected;
+        private boolean[] prevSelected;
 
-        protected MassSelectVoxelIntent(Integer[] voxelIds, boolean selected, boolean attach) {
+        protected MassSelectVoxelIntent(int[] voxelIds, boolean[] newSelected, boolean attach) {
             super(attach);
+            this.voxelIds = voxelIds;
+            this.newSelected = newSelected;
+            this.prevSelected = new boolean[voxelIds.length];
 
             // what is effected (there could be duplicate positions here)
-            effected = new int[voxelIds.length][];
+            effected = new long[voxelIds.length];
             for (int i = 0; i < effected.length; i++) {
-                effected[i] = dataContainer.voxels.get(voxelIds[i]).getPosAsInt();
+                Voxel voxel = findVoxel(voxelIds[i]);
+                prevSelected[i] = voxel.isSelected();
+                effected[i] = voxel.posId;
             }
-
-            this.voxelIds = voxelIds;
-            this.selected = selected;
         }
 
         @Override
         protected void applyAction() {
-            if (isFirstCall()) {
-                for (Integer id : voxelIds) {
-                    historyManagerV.applyIntent(new SelectVoxelIntent(id, selected, true));
-                }
+            for (int i = 0; i < voxelIds.length; i++) {
+                setSelected(voxelIds[i], newSelected[i]);
             }
         }
 
         @Override
         protected void unapplyAction() {
-            // nothing to do
+            for (int i = voxelIds.length - 1; i >= 0; i--) {
+                setSelected(voxelIds[i], prevSelected[i]);
+            }
         }
 
-        private int[][] effected = null;
         @Override
-        public int[][] effected() {
-            return effected;
+        protected boolean writeData(DataOutput out) throws IOException {
+            super.writeData(out);
+            PackedArrayIO.writeInts(out, voxelIds);
+            PackedArrayIO.writeBooleans(out, newSelected);
+            PackedArrayIO.writeBooleans(out, prevSelected);
+            return true;
+        }
+
+        @Override
+        protected void readData(DataInput in) throws IOException {
+            super.readData(in);
+            voxelIds = PackedArrayIO.readInts(in);
+            newSelected = PackedArrayIO.readBooleans(in);
+            prevSelected = PackedArrayIO.readBooleans(in);
+        }
+
+        @Override
+        protected void releaseData() {
+            super.releaseData();
+            voxelIds = null;
+            newSelected = null;
+            prevSelected = null;
+        }
+
+        @Override
+        public long getMemoryEstimate() {
+            return super.getMemoryEstimate() + (voxelIds == null ? 0 : voxelIds.length * 6L);
         }
     }
 
     private final class MassRemoveVoxelIntent extends VoxelActionIntent {
-        private final Integer[] voxelIds;
+        // the removed voxels
+        private PackedVoxels voxels;
 
         protected MassRemoveVoxelIntent(Integer[] voxelIds, boolean attach) {
             super(attach);
-
-            // what is effected (there could be duplicate positions here)
-            effected = new int[voxelIds.length][];
-            for (int i = 0; i < effected.length; i++) {
-                effected[i] = dataContainer.voxels.get(voxelIds[i]).getPosAsInt();
+            voxels = new PackedVoxels(voxelIds.length);
+            for (Integer voxelId : voxelIds) {
+                voxels.add(findVoxel(voxelId));
             }
-
-            this.voxelIds = voxelIds;
         }
 
         @Override
         protected void applyAction() {
-            if (isFirstCall()) {
-                for (Integer id : voxelIds) {
-                    historyManagerV.applyIntent(new RemoveVoxelIntent(id, true));
-                }
+            for (int i = 0, len = voxels.size(); i < len; i++) {
+                deleteVoxel(voxels.getId(i));
             }
         }
 
         @Override
         protected void unapplyAction() {
-            // nothing to do
+            for (int i = voxels.size() - 1; i >= 0; i--) {
+                putVoxel(voxels.get(i));
+            }
         }
 
-        private int[][] effected = null;
         @Override
-        public int[][] effected() {
-            return effected;
+        protected boolean writeData(DataOutput out) throws IOException {
+            voxels.write(out);
+            return true;
+        }
+
+        @Override
+        protected void readData(DataInput in) throws IOException {
+            voxels = PackedVoxels.read(in);
+        }
+
+        @Override
+        protected void releaseData() {
+            voxels = null;
+        }
+
+        @Override
+        public long getMemoryEstimate() {
+            return 64 + (voxels == null ? 0 : voxels.getMemoryEstimate());
+        }
+
+        @Override
+        public long[] effected() {
+            return voxels.getPosIds();
         }
     }
 
@@ -1213,18 +1302,13 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     // otherwise the provided layerid
     // the voxel id is never used (!)
     private final class MassAddVoxelIntent extends VoxelActionIntent {
-        private final Voxel[] voxels;
+        private Voxel[] voxels;
         private final Integer layerId;
+        // the added voxels (with the new voxel ids)
+        private PackedVoxels added;
 
         protected MassAddVoxelIntent(Voxel[] voxels, Integer layerId, boolean attach) {
             super(attach);
-
-            // what is effected (there could be duplicate positions here)
-            effected = new int[voxels.length][];
-            for (int i = 0; i < effected.length; i++) {
-                effected[i] = voxels[i].getPosAsInt();
-            }
-
             this.voxels = voxels;
             this.layerId = layerId;
         }
@@ -1233,104 +1317,259 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         protected void applyAction() {
             if (isFirstCall()) {
                 boolean layerIdSet = layerId != null;
+                added = new PackedVoxels(voxels.length);
                 for (Voxel voxel : voxels) {
-                    historyManagerV.applyIntent(
-                            new AddVoxelIntent(getFreeVoxelId(), voxel.getPosAsInt(),
-                                    voxel.getColor(), voxel.isSelected(), voxel.getTexture(), layerIdSet ? layerId : voxel.getLayerId(), true));
+                    Voxel newVoxel = new Voxel(getFreeVoxelId(), voxel.getPosAsInt(), voxel.getColor(),
+                            voxel.isSelected(), voxel.getTexture(), layerIdSet ? layerId : voxel.getLayerId());
+                    putVoxel(newVoxel);
+                    added.add(newVoxel);
+                }
+                // we don't need this data anymore
+                voxels = null;
+            } else {
+                for (int i = 0, len = added.size(); i < len; i++) {
+                    putVoxel(added.get(i));
                 }
             }
         }
 
         @Override
         protected void unapplyAction() {
-            // nothing to do
+            for (int i = added.size() - 1; i >= 0; i--) {
+                deleteVoxel(added.getId(i));
+            }
         }
 
-        private int[][] effected = null;
         @Override
-        public int[][] effected() {
-            return effected;
+        protected boolean writeData(DataOutput out) throws IOException {
+            if (added == null) {
+                return false;
+            }
+            added.write(out);
+            return true;
+        }
+
+        @Override
+        protected void readData(DataInput in) throws IOException {
+            added = PackedVoxels.read(in);
+        }
+
+        @Override
+        protected void releaseData() {
+            added = null;
+        }
+
+        @Override
+        public long getMemoryEstimate() {
+            return 64 + (added == null ? 0 : added.getMemoryEstimate());
+        }
+
+        @Override
+        public long[] effected() {
+            return added.getPosIds();
         }
     }
 
-    private final class MassColorVoxelIntent extends VoxelActionIntent  {
-        private final Integer[] voxelIds;
-        private final Color color;
+    private final class MassColorVoxelIntent extends EffectedVoxelIntent  {
+        private int[] voxelIds;
+        private final int newColor;
+        private int[] oldColors;
 
         protected MassColorVoxelIntent(Integer[] voxelIds, Color color, boolean attach) {
             super(attach);
+            this.voxelIds = new int[voxelIds.length];
+            this.newColor = color.getRGB();
+            this.oldColors = new int[voxelIds.length];
 
             // what is effected (there could be duplicate positions here)
-            effected = new int[voxelIds.length][];
+            effected = new long[voxelIds.length];
             for (int i = 0; i < effected.length; i++) {
-                effected[i] = dataContainer.voxels.get(voxelIds[i]).getPosAsInt();
+                this.voxelIds[i] = voxelIds[i];
+                effected[i] = findVoxel(voxelIds[i]).posId;
             }
-
-            this.voxelIds = voxelIds;
-            this.color = color;
         }
 
         @Override
         protected void applyAction() {
-            if (isFirstCall()) {
-                for (Integer voxelId : voxelIds) {
-                    historyManagerV.applyIntent(new ColorVoxelIntent(voxelId, color, true));
+            for (int i = 0; i < voxelIds.length; i++) {
+                VoxelLayer layer = findLayer(voxelIds[i]);
+                if (isFirstCall()) {
+                    oldColors[i] = layer.getVoxelColor(voxelIds[i]);
                 }
+                setColor(voxelIds[i], newColor);
             }
         }
 
         @Override
         protected void unapplyAction() {
-            // nothing to do
+            for (int i = voxelIds.length - 1; i >= 0; i--) {
+                setColor(voxelIds[i], oldColors[i]);
+            }
         }
 
-        private int[][] effected = null;
         @Override
-        public int[][] effected() {
-            return effected;
+        protected boolean writeData(DataOutput out) throws IOException {
+            super.writeData(out);
+            PackedArrayIO.writeInts(out, voxelIds);
+            PackedArrayIO.writeInts(out, oldColors);
+            return true;
+        }
+
+        @Override
+        protected void readData(DataInput in) throws IOException {
+            super.readData(in);
+            voxelIds = PackedArrayIO.readInts(in);
+            oldColors = PackedArrayIO.readInts(in);
+        }
+
+        @Override
+        protected void releaseData() {
+            super.releaseData();
+            voxelIds = null;
+            oldColors = null;
+        }
+
+        @Override
+        public long getMemoryEstimate() {
+            return super.getMemoryEstimate() + (voxelIds == null ? 0 : voxelIds.length * 8L);
+        }
+    }
+
+    // replace a color for all voxels (the new color must not be used by any voxel)
+    private final class ReplaceColorIntent extends VoxelActionIntent {
+        private final int fromRgb;
+        private final int toRgb;
+
+        protected ReplaceColorIntent(int fromRgb, int toRgb, boolean attach) {
+            super(attach);
+            this.fromRgb = fromRgb;
+            this.toRgb = toRgb;
+        }
+
+        // true while the color is replaced
+        private boolean applied = false;
+
+        @Override
+        protected void applyAction() {
+            palette.replace(fromRgb, toRgb);
+            layerStacks.replaceColor(fromRgb, toRgb);
+            applied = true;
+        }
+
+        @Override
+        protected void unapplyAction() {
+            palette.replace(toRgb, fromRgb);
+            layerStacks.replaceColor(toRgb, fromRgb);
+            applied = false;
+        }
+
+        // the voxels of the replaced color (found with the color index, so this
+        // is linear in the amount of these voxels and not in the amount of all voxels)
+        @Override
+        public long[] effected() {
+            TLongArrayList result = new TLongArrayList();
+            for (VoxelLayer layer : dataContainer.layers.values()) {
+                layer.collectPosIds(applied ? toRgb : fromRgb, result);
+            }
+            return result.toArray();
+        }
+
+        // the positions are not held by this intent
+        @Override
+        public long getMemoryEstimate() {
+            return 64;
         }
     }
 
-    private final class MassColorShiftVoxelIntent extends VoxelActionIntent  {
-        private final Integer[] voxelIds;
+    private final class MassColorShiftVoxelIntent extends EffectedVoxelIntent  {
+        private int[] voxelIds;
         private final float[] hsbOffset;
+        private int[] newColors;
+        private int[] oldColors;
 
         protected MassColorShiftVoxelIntent(Integer[] voxelIds, float[] hsbOffset, boolean attach) {
             super(attach);
+            this.voxelIds = new int[voxelIds.length];
+            this.hsbOffset = hsbOffset;
+            this.newColors = new int[voxelIds.length];
+            this.oldColors = new int[voxelIds.length];
 
             // what is effected (there could be duplicate positions here)
-            effected = new int[voxelIds.length][];
+            effected = new long[voxelIds.length];
             for (int i = 0; i < effected.length; i++) {
-                effected[i] = dataContainer.voxels.get(voxelIds[i]).getPosAsInt();
+                this.voxelIds[i] = voxelIds[i];
+                effected[i] = findVoxel(voxelIds[i]).posId;
             }
-
-            this.voxelIds = voxelIds;
-            this.hsbOffset = hsbOffset;
         }
 
         @Override
         protected void applyAction() {
             if (isFirstCall()) {
-                for (Integer voxelId : voxelIds) {
-                    historyManagerV.applyIntent(new ColorShiftVoxelIntent(voxelId, hsbOffset, true));
+                // compute the shifted colors in parallel (the data is only read)
+                final int[] ids = voxelIds;
+                VoxelTransform.parallel(ids.length, new VoxelTransform.ChunkTask() {
+                    @Override
+                    protected void compute(int from, int to) {
+                        for (int i = from; i < to; i++) {
+                            oldColors[i] = findLayer(ids[i]).getVoxelColor(ids[i]);
+                            newColors[i] = shiftColor(oldColors[i], hsbOffset);
+                        }
+                    }
+                });
+            }
+            for (int i = 0; i < voxelIds.length; i++) {
+                if (isFirstCall()) {
+                    // a voxel that is listed twice is shifted twice
+                    int current = findLayer(voxelIds[i]).getVoxelColor(voxelIds[i]);
+                    if (current != oldColors[i]) {
+                        oldColors[i] = current;
+                        newColors[i] = shiftColor(current, hsbOffset);
+                    }
                 }
+                setColor(voxelIds[i], newColors[i]);
             }
         }
 
         @Override
         protected void unapplyAction() {
-            // nothing to do
+            for (int i = voxelIds.length - 1; i >= 0; i--) {
+                setColor(voxelIds[i], oldColors[i]);
+            }
         }
 
-        private int[][] effected = null;
         @Override
-        public int[][] effected() {
-            return effected;
+        protected boolean writeData(DataOutput out) throws IOException {
+            super.writeData(out);
+            PackedArrayIO.writeInts(out, voxelIds);
+            PackedArrayIO.writeInts(out, newColors);
+            PackedArrayIO.writeInts(out, oldColors);
+            return true;
+        }
+
+        @Override
+        protected void readData(DataInput in) throws IOException {
+            super.readData(in);
+            voxelIds = PackedArrayIO.readInts(in);
+            newColors = PackedArrayIO.readInts(in);
+            oldColors = PackedArrayIO.readInts(in);
+        }
+
+        @Override
+        protected void releaseData() {
+            super.releaseData();
+            voxelIds = null;
+            newColors = null;
+            oldColors = null;
+        }
+
+        @Override
+        public long getMemoryEstimate() {
+            return super.getMemoryEstimate() + (voxelIds == null ? 0 : voxelIds.length * 12L);
         }
     }
 
-    private final class MassMoveVoxelIntent extends VoxelActionIntent  {
-        private final Voxel[] voxels;
+    private final class MassMoveVoxelIntent extends EffectedVoxelIntent  {
+        private Voxel[] voxels;
         private final int[] shift;
 
         protected MassMoveVoxelIntent(Voxel[] voxels, int[] shift, boolean attach) {
@@ -1342,38 +1581,11 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         @Override
         protected void applyAction() {
             if (isFirstCall()) {
-
                 // what is effected (there could be duplicate positions here)
-                effected = new int[voxels.length*2][];
-
-                // generate the ids
-                Integer[] voxelIds = new Integer[voxels.length];
-                for (int i = 0; i < voxels.length; i++) {
-                    voxelIds[i] = voxels[i].id;
-                }
-                // remove all voxels
-                historyManagerV.applyIntent(new MassRemoveVoxelIntent(voxelIds, true));
-
-                // create new voxels (with new position) and delete
-                // existing voxels at those positions
-                Voxel[] shiftedVoxels = new Voxel[voxels.length];
-                for (int i = 0; i < voxels.length; i++) {
-                    Voxel voxel = voxels[i];
-                    int[] pos = voxel.getPosAsInt();
-                    effected[i] = voxel.getPosAsInt(); // what is effected
-                    pos[0] -= shift[0];
-                    pos[1] -= shift[1];
-                    pos[2] -= shift[2];
-                    effected[i + voxels.length] = pos.clone(); // what is effected
-                    shiftedVoxels[i] = new Voxel(voxel.id, pos, voxel.getColor(), voxel.isSelected(), voxel.getTexture(), voxel.getLayerId());
-                    // remove existing voxels in this layer
-                    Voxel result = dataContainer.layers.get(voxel.getLayerId()).search(pos);
-                    if (result != null) {
-                        historyManagerV.applyIntent(new RemoveVoxelIntent(result.id, true));
-                    }
-                }
-                // (re)add all the shifted voxels (null ~ the voxel layer id is used)
-                historyManagerV.applyIntent(new MassAddVoxelIntent(shiftedVoxels, null, true));
+                effected = new long[voxels.length*2];
+                transformVoxels(voxels, VoxelTransform.shift(shift), effected);
+                // we don't need this data anymore
+                voxels = null;
             }
         }
 
@@ -1381,17 +1593,11 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         protected void unapplyAction() {
             // nothing to do
         }
-
-        private int[][] effected = null;
-        @Override
-        public int[][] effected() {
-            return effected;
-        }
     }
 
     // rotate voxel around their center (but not the voxel "texture" itself)
-    private final class RotateVoxelCenterIntent extends VoxelActionIntent  {
-        private final Voxel[] voxels;
+    private final class RotateVoxelCenterIntent extends EffectedVoxelIntent  {
+        private Voxel[] voxels;
         private final int axe;
         private final float angle;
 
@@ -1405,83 +1611,12 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         @Override
         protected void applyAction() {
             if (isFirstCall()) {
-
-                // what is effected (there could be duplicate positions here)
-                effected = new int[voxels.length*2][];
-
-                // generate the ids and find center
-                int[] centerMin = null;
-                int[] centerMax = null;
-                Integer[] voxelIds = new Integer[voxels.length];
-                for (int i = 0; i < voxels.length; i++) {
-                    voxelIds[i] = voxels[i].id;
-                    Voxel voxel = voxels[i];
-                    if (centerMin == null) {
-                        centerMin = voxel.getPosAsInt();
-                        centerMax = voxel.getPosAsInt();
-                    }
-                    centerMin[0] = Math.min(centerMin[0],voxel.x);
-                    centerMin[1] = Math.min(centerMin[1],voxel.y);
-                    centerMin[2] = Math.min(centerMin[2],voxel.z);
-                    centerMax[0] = Math.max(centerMax[0],voxel.x);
-                    centerMax[1] = Math.max(centerMax[1],voxel.y);
-                    centerMax[2] = Math.max(centerMax[2],voxel.z);
-                }
-                // calculate center - note: voxels.length must not be zero
-                assert centerMin != null;
-                float[] center = new float[] {
-                        (centerMin[0]/(float)2 + centerMax[0]/(float)2),
-                        (centerMin[1]/(float)2 + centerMax[1]/(float)2),
-                        (centerMin[2]/(float)2 + centerMax[2]/(float)2)
-                };
-
-                int rot1 = 0;
-                int rot2 = 2;
-                switch (axe) {
-                    case 2:
-                        rot1 = 0;
-                        rot2 = 1;
-                        break;
-                    case 1:
-                        rot1 = 0;
-                        rot2 = 2;
-                        break;
-                    case 0:
-                        rot1 = 1;
-                        rot2 = 2;
-                        break;
-                    default: break;
-                }
-
-                // remove all voxels
-                historyManagerV.applyIntent(new MassRemoveVoxelIntent(voxelIds, true));
-
-                // create new voxels (with new position) and delete
-                // existing voxels at those positions
-                Voxel[] shiftedVoxels = new Voxel[voxels.length];
-                for (int i = 0; i < voxels.length; i++) {
-                    Voxel voxel = voxels[i];
-                    int[] pos = voxel.getPosAsInt();
-                    effected[i] = voxel.getPosAsInt(); // what is effected
-
-                    // rotate the point around the center
-                    // todo check for duplicates (overlaps when rotating values other than 90, 180, 270)
-                    double[] pt = {pos[rot1], pos[rot2]};
-                    AffineTransform.getRotateInstance(Math.toRadians(angle), center[rot1], center[rot2])
-                            .transform(pt, 0, pt, 0, 1); // specifying to use this double[] to hold coords
-                    pos[rot1] = (int)Math.round(pt[0]);
-                    pos[rot2] = (int)Math.round(pt[1]);
-
-                    effected[i + voxels.length] = pos.clone(); // what is effected
-                    shiftedVoxels[i] = new Voxel(voxel.id, pos, voxel.getColor(), voxel.isSelected(), voxel.getTexture(), voxel.getLayerId());
-                    // remove existing voxels in this layer
-                    Voxel result = dataContainer.layers.get(voxel.getLayerId()).search(pos);
-                    if (result != null) {
-                        historyManagerV.applyIntent(new RemoveVoxelIntent(result.id, true));
-                    }
-                }
-                // (re)add all the rotated voxels (null ~ the voxel layer id is used)
-                historyManagerV.applyIntent(new MassAddVoxelIntent(shiftedVoxels, null, true));
+                // what is effected (old and new positions)
+                effected = new long[voxels.length*2];
+                // note: voxels.length must not be zero
+                transformVoxels(voxels, VoxelTransform.rotate(voxels, axe, Math.round(angle / 90)), effected);
+                // we don't need this data anymore
+                voxels = null;
             }
         }
 
@@ -1489,16 +1624,10 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         protected void unapplyAction() {
             // nothing to do
         }
-
-        private int[][] effected = null;
-        @Override
-        public int[][] effected() {
-            return effected;
-        }
     }
 
-    private final class MirrorVoxelIntent extends VoxelActionIntent  {
-        private final Voxel[] voxels;
+    private final class MirrorVoxelIntent extends EffectedVoxelIntent  {
+        private Voxel[] voxels;
         private final int axe;
 
         protected MirrorVoxelIntent(Voxel[] voxels, int axe, boolean attach) {
@@ -1510,60 +1639,12 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         @Override
         protected void applyAction() {
             if (isFirstCall()) {
-
                 // what is effected (there could be duplicate positions here)
-                effected = new int[voxels.length*2][];
-
-                // generate the ids and find center
-                int[] centerMin = null;
-                int[] centerMax = null;
-                Integer[] voxelIds = new Integer[voxels.length];
-                for (int i = 0; i < voxels.length; i++) {
-                    voxelIds[i] = voxels[i].id;
-                    Voxel voxel = voxels[i];
-                    if (centerMin == null) {
-                        centerMin = voxel.getPosAsInt();
-                        centerMax = voxel.getPosAsInt();
-                    }
-                    centerMin[0] = Math.min(centerMin[0],voxel.x);
-                    centerMin[1] = Math.min(centerMin[1],voxel.y);
-                    centerMin[2] = Math.min(centerMin[2],voxel.z);
-                    centerMax[0] = Math.max(centerMax[0],voxel.x);
-                    centerMax[1] = Math.max(centerMax[1],voxel.y);
-                    centerMax[2] = Math.max(centerMax[2],voxel.z);
-                }
-                // calculate center - note: voxels.length must not be zero
-                assert centerMin != null;
-                float[] center = new float[] {
-                        (centerMin[0]/(float)2 + centerMax[0]/(float)2),
-                        (centerMin[1]/(float)2 + centerMax[1]/(float)2),
-                        (centerMin[2]/(float)2 + centerMax[2]/(float)2)
-                };
-
-                // remove all voxels
-                historyManagerV.applyIntent(new MassRemoveVoxelIntent(voxelIds, true));
-
-                // create new voxels (with new position) and delete
-                // existing voxels at those positions
-                Voxel[] shiftedVoxels = new Voxel[voxels.length];
-                for (int i = 0; i < voxels.length; i++) {
-                    Voxel voxel = voxels[i];
-                    int[] pos = voxel.getPosAsInt();
-                    effected[i] = voxel.getPosAsInt(); // what is effected
-
-                    // switch the point with the center
-                    pos[axe] = Math.round(- pos[axe] + 2*center[axe]);
-
-                    effected[i + voxels.length] = pos.clone(); // what is effected
-                    shiftedVoxels[i] = new Voxel(voxel.id, pos, voxel.getColor(), voxel.isSelected(), voxel.getTexture(), voxel.getLayerId());
-                    // remove existing voxels in this layer
-                    Voxel result = dataContainer.layers.get(voxel.getLayerId()).search(pos);
-                    if (result != null) {
-                        historyManagerV.applyIntent(new RemoveVoxelIntent(result.id, true));
-                    }
-                }
-                // (re)add all the rotated voxels (null ~ the voxel layer id is used)
-                historyManagerV.applyIntent(new MassAddVoxelIntent(shiftedVoxels, null, true));
+                effected = new long[voxels.length*2];
+                // note: voxels.length must not be zero
+                transformVoxels(voxels, VoxelTransform.mirror(voxels, axe), effected);
+                // we don't need this data anymore
+                voxels = null;
             }
         }
 
@@ -1571,40 +1652,212 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         protected void unapplyAction() {
             // nothing to do
         }
-
-        private int[][] effected = null;
-        @Override
-        public int[][] effected() {
-            return effected;
-        }
     }
 
     // ##################### PRIVATE HELPER FUNCTIONS
+    // maps voxel ids to the id of the layer that contains the voxel
+    private final TIntIntHashMap voxelLayerIds = new TIntIntHashMap(10, 0.5f, -1, -1);
+
+    // the ids of the selected voxels (all layers)
+    private final TIntHashSet selectedVoxelIds = new TIntHashSet();
+
+    // the colors of the voxels (shared by all layers)
+    private ColorPalette palette = new ColorPalette();
+
+    // the stack of layers at each position and the top most visible voxel
+    private final LayerStackIndex layerStacks = new LayerStackIndex(voxelLayerIds, selectedVoxelIds);
+
+    // rebuild the voxel id index (needs to be called when the data container is replaced)
+    protected final void rebuildVoxelIndex() {
+        voxelLayerIds.clear();
+        selectedVoxelIds.clear();
+        palette = new ColorPalette();
+        for (VoxelLayer layer : dataContainer.layers.values()) {
+            layer.setPalette(palette);
+            for (int voxelId : layer.getVoxelIds()) {
+                voxelLayerIds.put(voxelId, layer.id);
+            }
+            layer.collectSelectedIds(selectedVoxelIds);
+        }
+        layerStacks.rebuild(dataContainer.layers, dataContainer.layerOrder);
+        // the ids that are not used by the data can be handed out again (the history is cleared)
+        voxelIdAllocator.rebuild(voxelLayerIds.keys());
+        layerIdAllocator.rebuild(toIntArray(dataContainer.layers.keySet()));
+        textureIdAllocator.rebuild(toIntArray(dataContainer.textures.keySet()));
+        // the voxels are only stored in the layers
+        dataContainer.voxels.clear();
+    }
+
+    // decode chunks of a mapped file into the layers (used when a file is loaded in the
+    // background), the decoded voxels are indexed and shown
+    protected final void decodeChunks(MappedVsdFile file, int[] chunks, int from, int to) throws IOException {
+        TIntArrayList addedIds = new TIntArrayList();
+        TLongArrayList addedPosIds = new TLongArrayList();
+        for (int i = from; i < to; i++) {
+            VoxelLayer layer = dataContainer.layers.get(file.getChunkLayer(chunks[i]));
+            if (layer == null) {
+                throw new IOException("Unknown layer " + file.getChunkLayer(chunks[i]) + ".");
+            }
+            int start = addedIds.size();
+            file.decodeChunk(chunks[i], layer, addedIds, addedPosIds);
+            for (int j = start; j < addedIds.size(); j++) {
+                voxelLayerIds.put(addedIds.get(j), layer.id);
+                layerStacks.add(addedIds.get(j), addedPosIds.get(j));
+            }
+        }
+        invalidateV(addedPosIds.toArray());
+    }
+
+    // mark the ids of the decoded voxels as used (once all chunks are decoded)
+    protected final void finishDecoding() {
+        voxelIdAllocator.rebuild(voxelLayerIds.keys());
+    }
+
+    // helper - convert ids to an array
+    private static int[] toIntArray(Collection<Integer> ids) {
+        int[] result = new int[ids.size()];
+        int i = 0;
+        for (Integer id : ids) {
+            result[i++] = id;
+        }
+        return result;
+    }
+
+    // add a voxel to its layer (the voxel data is copied)
+    private void putVoxel(Voxel voxel) {
+        voxelLayerIds.put(voxel.id, voxel.getLayerId());
+        if (voxel.isSelected()) {
+            selectedVoxelIds.add(voxel.id);
+        }
+        dataContainer.layers.get(voxel.getLayerId()).addVoxel(voxel);
+        layerStacks.add(voxel.id, voxel.posId);
+    }
+
+    // remove a voxel from its layer
+    private void deleteVoxel(int voxelId) {
+        VoxelLayer layer = dataContainer.layers.get(voxelLayerIds.get(voxelId));
+        selectedVoxelIds.remove(voxelId);
+        layerStacks.remove(voxelId, layer.getPosId(voxelId));
+        voxelLayerIds.remove(voxelId);
+        layer.removeVoxel(voxelId);
+    }
+
+    // move voxels to new positions (as attached intents), voxels that are at the new positions
+    // are replaced (the new positions are computed in parallel)
+    private void transformVoxels(Voxel[] voxels, VoxelTransform transform, long[] effected) {
+        Voxel[] transformed = transform.apply(voxels, effected);
+        // remove all voxels
+        Integer[] voxelIds = new Integer[voxels.length];
+        for (int i = 0; i < voxels.length; i++) {
+            voxelIds[i] = voxels[i].id;
+        }
+        historyManagerV.applyIntent(new MassRemoveVoxelIntent(voxelIds, true));
+        // remove existing voxels at the new positions
+        TIntHashSet replaced = new TIntHashSet();
+        for (Voxel voxel : transformed) {
+            int voxelId = dataContainer.layers.get(voxel.getLayerId()).getVoxelId(voxel.posId);
+            if (voxelId != -1) {
+                replaced.add(voxelId);
+            }
+        }
+        if (!replaced.isEmpty()) {
+            Integer[] replacedIds = new Integer[replaced.size()];
+            int i = 0;
+            for (TIntIterator it = replaced.iterator(); it.hasNext();) {
+                replacedIds[i++] = it.next();
+            }
+            historyManagerV.applyIntent(new MassRemoveVoxelIntent(replacedIds, true));
+        }
+        // (re)add all the moved voxels (null ~ the voxel layer id is used)
+        historyManagerV.applyIntent(new MassAddVoxelIntent(transformed, null, true));
+    }
+
+    // shift a color (argb) by a hsb offset
+    private static int shiftColor(int rgb, float[] hsbOffset) {
+        float[] currentHSB = ColorTools.colorToHSB(new Color(rgb));
+        return ColorTools.hsbToColor(new float[] {
+                (currentHSB[0] + hsbOffset[0] + 2) % 1,
+                Math.max(0, Math.min(1, currentHSB[1] + hsbOffset[1])),
+                Math.max(0, Math.min(1, currentHSB[2] + hsbOffset[2]))
+        }).getRGB();
+    }
+
+    // change the color of a voxel (argb)
+    private void setColor(int voxelId, int rgb) {
+        VoxelLayer layer = findLayer(voxelId);
+        int previous = layer.getVoxelColor(voxelId);
+        layer.setVoxelColor(voxelId, rgb);
+        layerStacks.updateColor(voxelId, layer.getPosId(voxelId), previous, rgb);
+    }
+
+    // change the selection of a voxel
+    private void setSelected(int voxelId, boolean selected) {
+        VoxelLayer layer = findLayer(voxelId);
+        layer.setVoxelSelected(voxelId, selected);
+        if (selected) {
+            selectedVoxelIds.add(voxelId);
+        } else {
+            selectedVoxelIds.remove(voxelId);
+        }
+        layerStacks.updateSelected(layer.getPosId(voxelId));
+    }
+
+    // change the visibility of a layer
+    private void setLayerVisible(int layerId, boolean visible) {
+        VoxelLayer layer = dataContainer.layers.get(layerId);
+        layer.setVisible(visible);
+        layerStacks.setVisible(layerId, visible, layer.getPosIds());
+    }
+
+    // get the top most visible voxel at a position (null if there is none)
+    private Voxel findVisibleVoxel(long posId) {
+        int voxelId = layerStacks.getVisible(posId);
+        return voxelId == -1 ? null : findVoxel(voxelId);
+    }
+
+    // check if a voxel exists
+    private boolean voxelExists(int voxelId) {
+        return voxelLayerIds.containsKey(voxelId);
+    }
+
+    // get the layer that contains a voxel (the voxel needs to exist)
+    private VoxelLayer findLayer(int voxelId) {
+        return dataContainer.layers.get(voxelLayerIds.get(voxelId));
+    }
+
+    // get a voxel by id (null if the voxel does not exist)
+    private Voxel findVoxel(int voxelId) {
+        int layerId = voxelLayerIds.get(voxelId);
+        return layerId == -1 ? null : dataContainer.layers.get(layerId).getVoxel(voxelId);
+    }
+
+    // get the ids of all textures that are used by voxels
+    private TIntHashSet getUsedTextures() {
+        TIntHashSet result = new TIntHashSet();
+        for (VoxelLayer layer : dataContainer.layers.values()) {
+            layer.collectTextureIds(result);
+        }
+        return result;
+    }
+
+    // hand out the voxel, layer and texture ids
+    private final IdAllocator voxelIdAllocator = new IdAllocator();
+    private final IdAllocator layerIdAllocator = new IdAllocator();
+    private final IdAllocator textureIdAllocator = new IdAllocator();
+
     // returns a free voxel id
-    private int lastVoxel = -1;
     private int getFreeVoxelId() {
-        do {
-            lastVoxel++;
-        } while (dataContainer.voxels.containsKey(lastVoxel));
-        return lastVoxel;
+        return voxelIdAllocator.next();
     }
 
     // returns a free layer id
-    private int lastLayer = -1;
     private int getFreeLayerId() {
-        do {
-            lastLayer++;
-        } while (dataContainer.layers.containsKey(lastLayer));
-        return lastLayer;
+        return layerIdAllocator.next();
     }
 
     // returns a free texture id
-    private int lastTexture = -1;
     private int getFreeTextureId() {
-        do {
-            lastTexture++;
-        } while (dataContainer.textures.containsKey(lastTexture));
-        return lastTexture;
+        return textureIdAllocator.next();
     }
 
     // =========================
@@ -1614,13 +1867,52 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     @Override
     public final int addVoxelDirect(Color color, int[] pos) {
         synchronized (VitcoSettings.SYNC) {
-            int result = -1;
-            VoxelLayer layer = dataContainer.layers.get(dataContainer.selectedLayer);
-            if (layer != null && layer.voxelPositionFree(pos)) {
-                result = getFreeVoxelId();
-                Voxel voxel = new Voxel(result, pos, color, false, null, dataContainer.selectedLayer);
-                dataContainer.voxels.put(voxel.id, voxel);
-                dataContainer.layers.get(voxel.getLayerId()).addVoxel(voxel);
+            writeLock.lock();
+            try {
+                int result = -1;
+                VoxelLayer layer = dataContainer.layers.get(dataContainer.selectedLayer);
+                if (layer != null && layer.voxelPositionFree(pos)) {
+                    result = getFreeVoxelId();
+                    putVoxel(new Voxel(result, pos, color, false, null, dataContainer.selectedLayer));
+                }
+                return result;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public final int addVoxelsDirect(int layerId, long[] posIds, int[] colors, int offset, int count) {
+        synchronized (VitcoSettings.SYNC) {
+            int result = 0;
+            long[] added = null;
+            writeLock.lock();
+            try {
+                VoxelLayer layer = dataContainer.layers.get(layerId);
+                if (layer != null) {
+                    // the voxels that do not fit are dropped (the caller compares the result)
+                    int free = Math.max(0, Math.min(count, VitcoSettings.MAX_VOXEL_COUNT - voxelLayerIds.size()));
+                    layer.reserve(free);
+                    voxelLayerIds.ensureCapacity(free);
+                    added = new long[free];
+                    for (int i = offset, len = offset + count; i < len && result < free; i++) {
+                        long posId = posIds[i];
+                        if (layer.voxelPositionFree(posId)) {
+                            int voxelId = getFreeVoxelId();
+                            voxelLayerIds.put(voxelId, layerId);
+                            layer.addVoxel(voxelId, posId, colors[i]);
+                            layerStacks.add(voxelId, posId);
+                            added[result++] = posId;
+                        }
+                    }
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            if (result > 0) {
+                // only the added positions are refreshed (importers call this once per batch)
+                invalidateV(result == added.length ? added : Arrays.copyOf(added, result));
             }
             return result;
         }
@@ -1631,7 +1923,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         synchronized (VitcoSettings.SYNC) {
             int result = -1;
             VoxelLayer layer = dataContainer.layers.get(dataContainer.selectedLayer);
-            if (layer != null && layer.getSize() < VitcoSettings.MAX_VOXEL_COUNT_PER_LAYER && layer.voxelPositionFree(pos)) {
+            if (layer != null && voxelLayerIds.size() < VitcoSettings.MAX_VOXEL_COUNT && layer.voxelPositionFree(pos)) {
                 result = getFreeVoxelId();
                 historyManagerV.applyIntent(new AddVoxelIntent(result, pos, color, false, textureId, dataContainer.selectedLayer, false));
             }
@@ -1646,16 +1938,13 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             VoxelLayer layer = dataContainer.layers.get(dataContainer.selectedLayer);
             if (layer != null) {
                 ArrayList<Voxel> validVoxel = new ArrayList<Voxel>();
-                HashSet<String> voxelPos = new HashSet<String>();
+                TLongHashSet voxelPos = new TLongHashSet();
                 for (Voxel voxel : voxels) {
-                    String posHash = voxel.getPosAsString();
-                    if (layer.voxelPositionFree(voxel)
-                            && !voxelPos.contains(posHash)) {
+                    if (layer.voxelPositionFree(voxel) && voxelPos.add(voxel.posId)) {
                         validVoxel.add(voxel);
-                        voxelPos.add(posHash);
                     }
                 }
-                if (validVoxel.size() > 0 && layer.getSize() + validVoxel.size() <= VitcoSettings.MAX_VOXEL_COUNT_PER_LAYER) {
+                if (validVoxel.size() > 0 && voxelLayerIds.size() + validVoxel.size() <= VitcoSettings.MAX_VOXEL_COUNT) {
                     Voxel[] valid = new Voxel[validVoxel.size()];
                     validVoxel.toArray(valid);
                     historyManagerV.applyIntent(new MassAddVoxelIntent(valid, layer.id, false));
@@ -1670,7 +1959,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     public final boolean removeVoxel(int voxelId) {
         synchronized (VitcoSettings.SYNC) {
             boolean result = false;
-            if (dataContainer.voxels.containsKey(voxelId)) {
+            if (voxelExists(voxelId)) {
                 historyManagerV.applyIntent(new RemoveVoxelIntent(voxelId, false));
                 result = true;
             }
@@ -1683,7 +1972,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         synchronized (VitcoSettings.SYNC) {
             ArrayList<Integer> validVoxel = new ArrayList<Integer>();
             for (int voxelId : voxelIds) {
-                if (dataContainer.voxels.containsKey(voxelId)) {
+                if (voxelExists(voxelId)) {
                     validVoxel.add(voxelId);
                 }
             }
@@ -1702,7 +1991,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     public final boolean moveVoxel(int voxelId, int[] newPos) {
         synchronized (VitcoSettings.SYNC) {
             boolean result = false;
-            Voxel voxel = dataContainer.voxels.get(voxelId);
+            Voxel voxel = findVoxel(voxelId);
             if (voxel != null) {
                 historyManagerV.applyIntent(new MoveVoxelIntent(voxel.id, newPos, false));
                 result = true;
@@ -1723,12 +2012,13 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         }
     }
 
-    // rotate voxel around their center (but not the voxel "texture" itself)
+    // rotate voxel around their center (but not the voxel "texture" itself),
+    // only multiples of 90 degree are supported
     @Override
     public final boolean rotateVoxelCenter(Voxel[] voxel, int axe, float degree) {
         synchronized (VitcoSettings.SYNC) {
             boolean result = false;
-            if (voxel.length > 0 && degree/360 != 0 && axe <= 2 && axe >= 0) {
+            if (voxel.length > 0 && degree/360 != 0 && degree % 90 == 0 && axe <= 2 && axe >= 0) {
                 historyManagerV.applyIntent(new VoxelData.RotateVoxelCenterIntent(voxel, axe, degree, false));
                 result = true;
             }
@@ -1750,12 +2040,15 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     @Override
     public final Voxel getVoxel(int voxelId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             Voxel result = null;
-            if (dataContainer.voxels.containsKey(voxelId)) {
-                result = dataContainer.voxels.get(voxelId);
+            if (voxelExists(voxelId)) {
+                result = findVoxel(voxelId);
             }
             return result;
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -1763,9 +2056,9 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     public final boolean setColor(int voxelId, Color color) {
         synchronized (VitcoSettings.SYNC) {
             boolean result = false;
-            if (dataContainer.voxels.containsKey(voxelId) &&
-                    (!dataContainer.voxels.get(voxelId).getColor().equals(color) ||
-                            dataContainer.voxels.get(voxelId).getTexture() != null)) {
+            if (voxelExists(voxelId) &&
+                    (!findVoxel(voxelId).getColor().equals(color) ||
+                            findVoxel(voxelId).getTexture() != null)) {
                 historyManagerV.applyIntent(new ColorVoxelIntent(voxelId, color, false));
                 result = true;
             }
@@ -1778,7 +2071,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         synchronized (VitcoSettings.SYNC) {
             ArrayList<Integer> validVoxel = new ArrayList<Integer>();
             for (int voxelId : voxelIds) {
-                Voxel voxel = dataContainer.voxels.get(voxelId);
+                Voxel voxel = findVoxel(voxelId);
                 if (voxel != null && !voxel.getColor().equals(color)) {
                     validVoxel.add(voxelId);
                 }
@@ -1794,12 +2087,39 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         }
     }
 
+    @Override
+    public final boolean replaceColor(Color from, Color to) {
+        synchronized (VitcoSettings.SYNC) {
+            int fromRgb = from.getRGB();
+            int toRgb = to.getRGB();
+            if (fromRgb == toRgb || palette.getCount(fromRgb) == 0) {
+                return false;
+            }
+            if (palette.getCount(toRgb) == 0) {
+                // only the palette changes
+                historyManagerV.applyIntent(new ReplaceColorIntent(fromRgb, toRgb, false));
+            } else {
+                // the colors are merged, the voxels need to remember their previous color
+                TIntArrayList voxelIds = new TIntArrayList();
+                for (VoxelLayer layer : dataContainer.layers.values()) {
+                    layer.collectVoxelIds(fromRgb, voxelIds);
+                }
+                Integer[] ids = new Integer[voxelIds.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = voxelIds.get(i);
+                }
+                historyManagerV.applyIntent(new MassColorVoxelIntent(ids, to, false));
+            }
+            return true;
+        }
+    }
+
     @Override
     public final boolean massShiftColor(Integer[] voxelIds, float[] hsbOffset) {
         synchronized (VitcoSettings.SYNC) {
             ArrayList<Integer> validVoxel = new ArrayList<Integer>();
             for (int voxelId : voxelIds) {
-                Voxel voxel = dataContainer.voxels.get(voxelId);
+                Voxel voxel = findVoxel(voxelId);
                 if (voxel != null) {
                     validVoxel.add(voxelId);
                 }
@@ -1817,12 +2137,15 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     @Override
     public final Color getColor(int voxelId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             Color result = null;
-            if (dataContainer.voxels.containsKey(voxelId)) {
-                result = dataContainer.voxels.get(voxelId).getColor();
+            if (voxelExists(voxelId)) {
+                result = findVoxel(voxelId).getColor();
             }
             return result;
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -1830,7 +2153,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     public final boolean setAlpha(int voxelId, int alpha) {
         synchronized (VitcoSettings.SYNC) {
             boolean result = false;
-            if (dataContainer.voxels.containsKey(voxelId) && dataContainer.voxels.get(voxelId).getAlpha() != alpha) {
+            if (voxelExists(voxelId) && findVoxel(voxelId).getAlpha() != alpha) {
                 historyManagerV.applyIntent(new AlphaVoxelIntent(voxelId, alpha, false));
                 result = true;
             }
@@ -1840,23 +2163,29 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     @Override
     public final int getAlpha(int voxelId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             int result = -1;
-            if (dataContainer.voxels.containsKey(voxelId)) {
-                result = dataContainer.voxels.get(voxelId).getAlpha();
+            if (voxelExists(voxelId)) {
+                result = findVoxel(voxelId).getAlpha();
             }
             return result;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final int getLayer(int voxelId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             int result = -1;
-            if (dataContainer.voxels.containsKey(voxelId)) {
-                result = dataContainer.voxels.get(voxelId).getLayerId();
+            if (voxelExists(voxelId)) {
+                result = findVoxel(voxelId).getLayerId();
             }
             return result;
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -1876,14 +2205,18 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     @Override
     public final Voxel searchVoxel(int[] pos, int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return dataContainer.layers.get(layerId).search(pos);
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final Voxel searchVoxel(int[] pos, boolean onlyCurrentLayer) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             if (onlyCurrentLayer) { // search only the current layers
                 VoxelLayer layer = dataContainer.layers.get(dataContainer.selectedLayer);
                 if (layer != null && layer.isVisible()) {
@@ -1892,17 +2225,12 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                         return result;
                     }
                 }
-            } else { // search all layers in correct order
-                for (Integer layerId : dataContainer.layerOrder) {
-                    if (dataContainer.layers.get(layerId).isVisible()) {
-                        Voxel result = dataContainer.layers.get(layerId).search(pos);
-                        if (result != null) {
-                            return result;
-                        }
-                    }
-                }
+            } else { // the top most voxel of the visible layers
+                return findVisibleVoxel(LongCubeIndexer.getId(pos[0], pos[1], pos[2]));
             }
             return null;
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -1913,7 +2241,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     public final boolean setVoxelSelected(int voxelId, boolean selected) {
         synchronized (VitcoSettings.SYNC) {
             boolean result = false;
-            if (dataContainer.voxels.containsKey(voxelId) && dataContainer.voxels.get(voxelId).isSelected() != selected) {
+            if (voxelExists(voxelId) && selectedVoxelIds.contains(voxelId) != selected) {
                 historyManagerV.applyIntent(new SelectVoxelIntent(voxelId, selected, false));
                 result = true;
             }
@@ -1923,82 +2251,155 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     @Override
     public final boolean isSelected(int voxelId) {
-        synchronized (VitcoSettings.SYNC) {
-            return dataContainer.voxels.containsKey(voxelId) && dataContainer.voxels.get(voxelId).isSelected();
+        readLock.lock();
+        try {
+            return selectedVoxelIds.contains(voxelId);
+        } finally {
+            readLock.unlock();
         }
     }
 
-    private final HashMap<String, TIntObjectHashMap<int[]>> changedSelectedVoxel = new HashMap<String, TIntObjectHashMap<int[]>>();
     @Override
     public final Voxel[][] getNewSelectedVoxel(String requestId) {
-        synchronized (VitcoSettings.SYNC) {
-            if (!changedSelectedVoxel.containsKey(requestId)) {
-                changedSelectedVoxel.put(requestId, null);
-            }
-            if (changedSelectedVoxel.get(requestId) == null) {
-                changedSelectedVoxel.put(requestId, new TIntObjectHashMap<int[]>());
+        readLock.lock();
+        try {
+            Long from = selectedCursors.put(requestId, selectedJournal.end());
+            TLongHashSet changed = new TLongHashSet();
+            if (from == null || !selectedJournal.read(from, -1, 0, changed)) {
                 return new Voxel[][] {null, getSelectedVoxels()};
-            } else {
-                ArrayList<Voxel> removed = new ArrayList<Voxel>();
-                ArrayList<Voxel> added = new ArrayList<Voxel>();
-                for (int[] pos : changedSelectedVoxel.get(requestId).valueCollection()) {
-                    Voxel voxel = searchVoxel(pos, false);
-                    if (voxel != null && voxel.isSelected()) {
-                        added.add(voxel);
-                    } else {
-                        removed.add(new Voxel(-1, pos, null, false, null, -1));
-                    }
-                }
-                Voxel[][] result = new Voxel[2][];
-                result[0] = new Voxel[removed.size()];
-                removed.toArray(result[0]);
-                result[1] = new Voxel[added.size()];
-                added.toArray(result[1]);
-                changedSelectedVoxel.get(requestId).clear();
-                return result;
             }
+            return getChangedVoxels(changed, true);
+        } finally {
+            readLock.unlock();
         }
     }
 
     // get selected visible voxels
     @Override
     public final Voxel[] getSelectedVoxels() {
-        synchronized (VitcoSettings.SYNC) {
-            if (!selectedVoxelBufferValid) {
-                // get all presented voxels
-                Voxel voxels[] = _getVisibleLayerVoxel();
-                // filter the selected
-                ArrayList<Voxel> selected = new ArrayList<Voxel>();
-                for (Voxel voxel : voxels) {
-                    if (voxel.isSelected()) {
-                        selected.add(voxel);
+        readLock.lock();
+        try {
+            synchronized (selectedBufferSync) {
+                if (!selectedVoxelBufferValid) {
+                    // the selected voxels that are visible
+                    int[] voxelIds = layerStacks.getSelected();
+                    selectedVoxelBuffer = new Voxel[voxelIds.length];
+                    for (int i = 0; i < voxelIds.length; i++) {
+                        selectedVoxelBuffer[i] = findVoxel(voxelIds[i]);
                     }
+                    selectedVoxelBufferValid = true;
                 }
-                selectedVoxelBuffer = new Voxel[selected.size()];
-                selected.toArray(selectedVoxelBuffer);
-                selectedVoxelBufferValid = true;
+                return selectedVoxelBuffer.clone();
             }
-            return selectedVoxelBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final boolean massSetVoxelSelected(Integer[] voxelIds, boolean selected) {
         synchronized (VitcoSettings.SYNC) {
-            ArrayList<Integer> validVoxel = new ArrayList<Integer>();
+            TIntArrayList valid = new TIntArrayList();
             for (Integer voxelId : voxelIds) {
-                if (dataContainer.voxels.containsKey(voxelId) && dataContainer.voxels.get(voxelId).isSelected() != selected) {
-                    validVoxel.add(voxelId);
+                if (voxelExists(voxelId) && selectedVoxelIds.contains(voxelId) != selected) {
+                    valid.add(voxelId);
                 }
             }
-            if (validVoxel.size() > 0) {
-                Integer[] valid = new Integer[validVoxel.size()];
-                validVoxel.toArray(valid);
-                historyManagerV.applyIntent(new MassSelectVoxelIntent(valid, selected, false));
-                return true;
-            } else {
-                return false;
+            return applySelection(valid, selected);
+        }
+    }
+
+    // helper - select or deselect voxels (one history entry), returns true if anything changed
+    private boolean applySelection(TIntArrayList voxelIds, boolean selected) {
+        return applySelection(voxelIds, null, selected);
+    }
+
+    // helper - set the selection of voxels (one history entry), returns true if anything changed
+    private boolean applySelection(TIntArrayList voxelIds, TIntArrayList deselectIds, boolean selected) {
+        int count = voxelIds.size() + (deselectIds == null ? 0 : deselectIds.size());
+        if (count == 0) {
+            return false;
+        }
+        int[] ids = new int[count];
+        boolean[] newSelected = new boolean[count];
+        voxelIds.toArray(ids, 0, 0, voxelIds.size());
+        Arrays.fill(newSelected, 0, voxelIds.size(), selected);
+        if (deselectIds != null) {
+            deselectIds.toArray(ids, 0, voxelIds.size(), deselectIds.size());
+            Arrays.fill(newSelected, voxelIds.size(), count, !selected);
+        }
+        historyManagerV.applyIntent(new MassSelectVoxelIntent(ids, newSelected, false));
+        return true;
+    }
+
+    @Override
+    public final boolean replaceVoxelSelection(Integer[] voxelIds) {
+        synchronized (VitcoSettings.SYNC) {
+            TIntHashSet target = new TIntHashSet();
+            TIntArrayList select = new TIntArrayList();
+            for (Integer voxelId : voxelIds) {
+                if (voxelExists(voxelId) && target.add(voxelId) && !selectedVoxelIds.contains(voxelId)) {
+                    select.add(voxelId);
+                }
+            }
+            // deselect everything else (difference)
+            TIntArrayList deselect = new TIntArrayList();
+            for (TIntIterator it = selectedVoxelIds.iterator(); it.hasNext();) {
+                int voxelId = it.next();
+                if (!target.contains(voxelId)) {
+                    deselect.add(voxelId);
+                }
+            }
+            return applySelection(select, deselect, true);
+        }
+    }
+
+    @Override
+    public final boolean invertVoxelSelection(Integer[] voxelIds) {
+        synchronized (VitcoSettings.SYNC) {
+            TIntHashSet known = new TIntHashSet();
+            TIntArrayList select = new TIntArrayList();
+            TIntArrayList deselect = new TIntArrayList();
+            for (Integer voxelId : voxelIds) {
+                if (voxelExists(voxelId) && known.add(voxelId)) {
+                    if (selectedVoxelIds.contains(voxelId)) {
+                        deselect.add(voxelId);
+                    } else {
+                        select.add(voxelId);
+                    }
+                }
             }
+            return applySelection(select, deselect, true);
+        }
+    }
+
+    @Override
+    public final int getSelectedVoxelCount() {
+        readLock.lock();
+        try {
+            return selectedVoxelIds.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public final int getVisibleSelectedVoxelCount() {
+        readLock.lock();
+        try {
+            return layerStacks.selectedCount();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public final boolean forEachSelectedVoxel(TIntProcedure procedure) {
+        readLock.lock();
+        try {
+            return layerStacks.forEachSelected(procedure);
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2006,7 +2407,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     public final boolean migrateVoxels(Voxel[] voxels) {
         synchronized (VitcoSettings.SYNC) {
             boolean result = false;
-            if (voxels.length > 0 && voxels.length <= VitcoSettings.MAX_VOXEL_COUNT_PER_LAYER) {
+            if (voxels.length > 0) {
                 historyManagerV.applyIntent(new MigrateIntent(voxels, false));
                 result = true;
             }
@@ -2022,106 +2423,122 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     int layerVoxelBufferLastLayer;
     @Override
     public final Voxel[] getLayerVoxels(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
-            if (!layerVoxelBufferValid || layerVoxelBufferLastLayer != layerId) {
-                VoxelLayer layer = dataContainer.layers.get(layerId);
-                if (layer != null) {
-                    layerVoxelBuffer = layer.getVoxels();
-                } else {
-                    layerVoxelBuffer = new Voxel[0];
+        readLock.lock();
+        try {
+            synchronized (layerVoxelBufferSync) {
+                if (!layerVoxelBufferValid || layerVoxelBufferLastLayer != layerId) {
+                    VoxelLayer layer = dataContainer.layers.get(layerId);
+                    if (layer != null) {
+                        layerVoxelBuffer = layer.getVoxels();
+                    } else {
+                        layerVoxelBuffer = new Voxel[0];
+                    }
+                    layerVoxelBufferValid = true;
+                    layerVoxelBufferLastLayer = layerId;
                 }
-                layerVoxelBufferValid = true;
-                layerVoxelBufferLastLayer = layerId;
+                return layerVoxelBuffer.clone();
             }
-            return layerVoxelBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
     // get the new visible voxels, NOTE: if first element of array is null
     // this means that everything is erased
-    private final HashMap<String, TIntObjectHashMap<int[]>> changedVisibleVoxel = new HashMap<String, TIntObjectHashMap<int[]>>();
     @Override
     public final Voxel[][] getNewVisibleLayerVoxel(String requestId) {
-        synchronized (VitcoSettings.SYNC) {
-            if (!changedVisibleVoxel.containsKey(requestId)) {
-                changedVisibleVoxel.put(requestId, null);
-            }
-            if (changedVisibleVoxel.get(requestId) == null) {
-                changedVisibleVoxel.put(requestId, new TIntObjectHashMap<int[]>());
+        readLock.lock();
+        try {
+            Long from = visibleCursors.put(requestId, visibleJournal.end());
+            TLongHashSet changed = new TLongHashSet();
+            if (from == null || !visibleJournal.read(from, -1, 0, changed)) {
                 return new Voxel[][] {null, _getVisibleLayerVoxel()};
+            }
+            return getChangedVoxels(changed, false);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // helper - get the removed (only the position is set) and the added voxels for changed positions
+    private Voxel[][] getChangedVoxels(TLongHashSet changed, boolean onlySelected) {
+        ArrayList<Voxel> removed = new ArrayList<Voxel>();
+        ArrayList<Voxel> added = new ArrayList<Voxel>();
+        for (TLongIterator it = changed.iterator(); it.hasNext();) {
+            long posId = it.next();
+            Voxel voxel = findVisibleVoxel(posId);
+            if (voxel != null && (!onlySelected || voxel.isSelected())) {
+                added.add(voxel);
             } else {
-                ArrayList<Voxel> removed = new ArrayList<Voxel>();
-                ArrayList<Voxel> added = new ArrayList<Voxel>();
-                for (int[] pos : changedVisibleVoxel.get(requestId).valueCollection()) {
-                    Voxel voxel = searchVoxel(pos, false);
-                    if (voxel != null) {
-                        added.add(voxel);
-                    } else {
-                        removed.add(new Voxel(-1, pos, null, false, null, -1));
-                    }
-                }
-                Voxel[][] result = new Voxel[2][];
-                result[0] = new Voxel[removed.size()];
-                removed.toArray(result[0]);
-                result[1] = new Voxel[added.size()];
-                added.toArray(result[1]);
-                changedVisibleVoxel.get(requestId).clear();
-                return result;
+                removed.add(new Voxel(-1, new int[] {LongCubeIndexer.getX(posId),
+                        LongCubeIndexer.getY(posId), LongCubeIndexer.getZ(posId)}, null, false, null, -1));
             }
         }
+        Voxel[][] result = new Voxel[2][];
+        result[0] = new Voxel[removed.size()];
+        removed.toArray(result[0]);
+        result[1] = new Voxel[added.size()];
+        added.toArray(result[1]);
+        return result;
+    }
+
+    // helper - obtain the top most voxels of all visible layers
+    // (axis 0, 1, 2 restricts the result to the x, y or z plane, -1 returns all voxels)
+    private Voxel[] collectVisibleVoxels(int axis, int plane) {
+        int[] voxelIds = layerStacks.getVisible(axis, plane);
+        Voxel[] result = new Voxel[voxelIds.length];
+        for (int i = 0; i < voxelIds.length; i++) {
+            result[i] = findVoxel(voxelIds[i]);
+        }
+        return result;
     }
 
     // internal function, heavy!
     Voxel[] visibleLayerVoxelInternalBuffer = new Voxel[0];
     boolean visibleLayerVoxelInternalBufferValid = false;
     private Voxel[] _getVisibleLayerVoxel() {
-        if (!visibleLayerVoxelInternalBufferValid) {
-            VoxelLayer result = new VoxelLayer(-1, "tmp");
-            for (Integer layerId : dataContainer.layerOrder) {
-                if (dataContainer.layers.get(layerId).isVisible()) {
-                    Voxel[] voxels = dataContainer.layers.get(layerId).getVoxels();
-                    for (Voxel voxel : voxels) {
-                        if (result.voxelPositionFree(voxel)) {
-                            result.addVoxel(voxel);
-                        }
-                    }
-                }
+        synchronized (visibleInternalBufferSync) {
+            if (!visibleLayerVoxelInternalBufferValid) {
+                visibleLayerVoxelInternalBuffer = collectVisibleVoxels(-1, 0);
+                visibleLayerVoxelInternalBufferValid = true;
             }
-            visibleLayerVoxelInternalBuffer = result.getVoxels();
-            visibleLayerVoxelInternalBufferValid = true;
+            return visibleLayerVoxelInternalBuffer.clone();
         }
-        return visibleLayerVoxelInternalBuffer.clone();
     }
 
     // returns visible voxels
     @Override
     public final Voxel[] getVisibleLayerVoxel() {
-        synchronized (VitcoSettings.SYNC) {
-            updateVisVoxTreeInternal();
-            return visibleLayerVoxelBuffer;
+        readLock.lock();
+        try {
+            synchronized (visibleBufferSync) {
+                updateVisVoxTreeInternal();
+                return visibleLayerVoxelBuffer;
+            }
+        } finally {
+            readLock.unlock();
         }
     }
 
     // helper to update buffers for visible voxels
     private Voxel[] visibleLayerVoxelBuffer = new Voxel[0];
     private boolean anyVoxelsVisibleBuffer = false;
-    private final HashMap<String, Voxel> visVoxelList = new HashMap<String, Voxel>();
+    private final TLongObjectHashMap<Voxel> visVoxelList = new TLongObjectHashMap<Voxel>();
     private void updateVisVoxTreeInternal() {
         Voxel[][] newV = getNewVisibleLayerVoxel("___internal___visible_list");
         if (newV[0] == null) {
             visVoxelList.clear();
         } else {
             for (Voxel removed : newV[0]) {
-                visVoxelList.remove(removed.getPosAsString());
+                visVoxelList.remove(removed.posId);
             }
         }
         for (Voxel added : newV[1]) {
-            visVoxelList.put(added.getPosAsString(), added);
+            visVoxelList.put(added.posId, added);
         }
         // update the buffer
         if (newV[0]== null || newV[0].length > 0 || newV[1].length > 0) {
-            visibleLayerVoxelBuffer = new Voxel[visVoxelList.size()];
-            visVoxelList.values().toArray(visibleLayerVoxelBuffer);
+            visibleLayerVoxelBuffer = visVoxelList.values(new Voxel[visVoxelList.size()]);
             anyVoxelsVisibleBuffer = visibleLayerVoxelBuffer.length > 0;
         }
     }
@@ -2129,126 +2546,100 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     // true iff any voxel are visible
     @Override
     public final boolean anyLayerVoxelVisible() {
-        synchronized (VitcoSettings.SYNC) {
-            updateVisVoxTreeInternal();
-            return anyVoxelsVisibleBuffer;
+        readLock.lock();
+        try {
+            synchronized (visibleBufferSync) {
+                updateVisVoxTreeInternal();
+                return anyVoxelsVisibleBuffer;
+            }
+        } finally {
+            readLock.unlock();
         }
     }
 
     // true iff any voxel are selected
     @Override
     public final boolean anyVoxelSelected() {
-        synchronized (VitcoSettings.SYNC) {
-            if (!selectedVoxelBufferValid) {
-                return getSelectedVoxels().length > 0;
-            } else {
-                return selectedVoxelBuffer.length > 0;
-            }
+        readLock.lock();
+        try {
+            return layerStacks.selectedCount() > 0;
+        } finally {
+            readLock.unlock();
         }
     }
 
+    // helper - the key of a side view plane
+    private static String getSideKey(String requestId, int side, int plane) {
+        return requestId + "_" + side + "_" + plane;
+    }
+
     // to invalidate the side view buffer
     @Override
     public final void invalidateSideViewBuffer(String requestId, Integer side, Integer plane) {
-        synchronized (VitcoSettings.SYNC) {
-            // make sure this plane is set
-            if (!changedVisibleVoxelPlane.containsKey(side)) {
-                changedVisibleVoxelPlane.put(side, new HashMap<String, TIntObjectHashMap<TIntObjectHashMap<int[]>>>());
-            }
-            // make sure the requestId is set
-            if (!changedVisibleVoxelPlane.get(side).containsKey(requestId)) {
-                changedVisibleVoxelPlane.get(side).put(requestId, new TIntObjectHashMap<TIntObjectHashMap<int[]>>());
-            }
-            // make sure this plane has no information stored (force complete refresh)
-            changedVisibleVoxelPlane.get(side).get(requestId).remove(plane);
-        }
+        // make sure this plane has no information stored (force complete refresh)
+        sideCursors.remove(getSideKey(requestId, side, plane));
     }
 
-    // side -> requestId -> plane -> positions
-    private final TIntObjectHashMap<HashMap<String, TIntObjectHashMap<TIntObjectHashMap<int[]>>>> changedVisibleVoxelPlane
-            = new TIntObjectHashMap<HashMap<String, TIntObjectHashMap<TIntObjectHashMap<int[]>>>>();
     @Override
     public final Voxel[][] getNewSideVoxel(String requestId, Integer side, Integer plane) {
-        synchronized (VitcoSettings.SYNC) {
-            // default result (delete all + empty)
-            Voxel[][] result = new Voxel[][]{null, new Voxel[0]};
-            // make sure this plane is set
-            if (!changedVisibleVoxelPlane.containsKey(side)) {
-                changedVisibleVoxelPlane.put(side, new HashMap<String, TIntObjectHashMap<TIntObjectHashMap<int[]>>>());
-            }
-            // make sure the requestId is set
-            if (!changedVisibleVoxelPlane.get(side).containsKey(requestId)) {
-                changedVisibleVoxelPlane.get(side).put(requestId, new TIntObjectHashMap<TIntObjectHashMap<int[]>>());
-            }
-
-            if (changedVisibleVoxelPlane.get(side).get(requestId).get(plane) == null) {
-                // if the plane is null, fetch all data and set it no empty
+        readLock.lock();
+        try {
+            Long from = sideCursors.put(getSideKey(requestId, side, plane), visibleJournal.end());
+            TLongHashSet changed = new TLongHashSet();
+            // the axis that is fixed by the plane
+            int axis = side == 0 ? 2 : (side == 1 ? 1 : 0);
+            if (from == null || !visibleJournal.read(from, axis, plane, changed)) {
+                // fetch all data of this plane
                 switch (side) {
-                    case 0:
-                        result = new Voxel[][] {null, getVoxelsXY(plane)};
-                        break;
-                    case 1:
-                        result = new Voxel[][] {null, getVoxelsXZ(plane)};
-                        break;
-                    case 2:
-                        result = new Voxel[][] {null, getVoxelsYZ(plane)};
-                        break;
-                    default: break;
-                }
-                // reset
-                changedVisibleVoxelPlane.get(side).get(requestId).put(plane, new TIntObjectHashMap<int[]>());
-            } else {
-                // if there are changed positions, notify only those positions
-                ArrayList<Voxel> removed = new ArrayList<Voxel>();
-                ArrayList<Voxel> added = new ArrayList<Voxel>();
-                for (int[] pos : changedVisibleVoxelPlane.get(side).get(requestId).get(plane).valueCollection()) {
-                    Voxel voxel = searchVoxel(pos, false);
-                    if (voxel != null) {
-                        added.add(voxel);
-                    } else {
-                        removed.add(new Voxel(-1, pos, null, false, null, -1));
-                    }
+                    case 0: return new Voxel[][] {null, getVoxelsXY(plane)};
+                    case 1: return new Voxel[][] {null, getVoxelsXZ(plane)};
+                    case 2: return new Voxel[][] {null, getVoxelsYZ(plane)};
+                    default: return new Voxel[][] {null, new Voxel[0]};
                 }
-                result = new Voxel[2][];
-                result[0] = new Voxel[removed.size()];
-                removed.toArray(result[0]);
-                result[1] = new Voxel[added.size()];
-                added.toArray(result[1]);
-                // these changes have now been forwarded
-                changedVisibleVoxelPlane.get(side).get(requestId).get(plane).clear();
-            }
-            // return the result
-            return result;
+            }
+            // notify only the changed positions
+            return getChangedVoxels(changed, false);
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final Voxel[] getVoxelsXY(int z, int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             if (dataContainer.layers.containsKey(layerId)) {
                 return dataContainer.layers.get(layerId).getZPlane(z);
             }
             return null;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final Voxel[] getVoxelsXZ(int y, int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             if (dataContainer.layers.containsKey(layerId)) {
                 return dataContainer.layers.get(layerId).getYPlane(y);
             }
             return null;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final Voxel[] getVoxelsYZ(int x, int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             if (dataContainer.layers.containsKey(layerId)) {
                 return dataContainer.layers.get(layerId).getXPlane(x);
             }
             return null;
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2257,25 +2648,18 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     Voxel[] layerVoxelXYBuffer = new Voxel[0];
     @Override
     public final Voxel[] getVoxelsXY(int z) {
-        synchronized (VitcoSettings.SYNC) {
-            if (!layerVoxelXYBufferValid || z != lastVoxelXYBufferZValue) {
-
-                VoxelLayer result = new VoxelLayer(-1, "tmp");
-                for (Integer layerId : dataContainer.layerOrder) {
-                    if (dataContainer.layers.get(layerId).isVisible()) {
-                        Voxel[] voxels = dataContainer.layers.get(layerId).getZPlane(z);
-                        for (Voxel voxel : voxels) {
-                            if (result.voxelPositionFree(voxel)) {
-                                result.addVoxel(voxel);
-                            }
-                        }
-                    }
+        readLock.lock();
+        try {
+            synchronized (xyBufferSync) {
+                if (!layerVoxelXYBufferValid || z != lastVoxelXYBufferZValue) {
+                    layerVoxelXYBuffer = collectVisibleVoxels(2, z);
+                    layerVoxelXYBufferValid = true;
+                    lastVoxelXYBufferZValue = z;
                 }
-                layerVoxelXYBuffer = result.getVoxels();
-                layerVoxelXYBufferValid = true;
-                lastVoxelXYBufferZValue = z;
+                return layerVoxelXYBuffer.clone();
             }
-            return layerVoxelXYBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2284,25 +2668,18 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     Voxel[] layerVoxelXZBuffer = new Voxel[0];
     @Override
     public final Voxel[] getVoxelsXZ(int y) {
-        synchronized (VitcoSettings.SYNC) {
-            if (!layerVoxelXZBufferValid || y != lastVoxelXZBufferYValue) {
-
-                VoxelLayer result = new VoxelLayer(-1, "tmp");
-                for (Integer layerId : dataContainer.layerOrder) {
-                    if (dataContainer.layers.get(layerId).isVisible()) {
-                        Voxel[] voxels = dataContainer.layers.get(layerId).getYPlane(y);
-                        for (Voxel voxel : voxels) {
-                            if (result.voxelPositionFree(voxel)) {
-                                result.addVoxel(voxel);
-                            }
-                        }
-                    }
+        readLock.lock();
+        try {
+            synchronized (xzBufferSync) {
+                if (!layerVoxelXZBufferValid || y != lastVoxelXZBufferYValue) {
+                    layerVoxelXZBuffer = collectVisibleVoxels(1, y);
+                    layerVoxelXZBufferValid = true;
+                    lastVoxelXZBufferYValue = y;
                 }
-                layerVoxelXZBuffer = result.getVoxels();
-                layerVoxelXZBufferValid = true;
-                lastVoxelXZBufferYValue = y;
+                return layerVoxelXZBuffer.clone();
             }
-            return layerVoxelXZBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2311,36 +2688,42 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     Voxel[] layerVoxelYZBuffer = new Voxel[0];
     @Override
     public final Voxel[] getVoxelsYZ(int x) {
-        synchronized (VitcoSettings.SYNC) {
-            if (!layerVoxelYZBufferValid || x != lastVoxelYZBufferXValue) {
-
-                VoxelLayer result = new VoxelLayer(-1, "tmp");
-                for (Integer layerId : dataContainer.layerOrder) {
-                    if (dataContainer.layers.get(layerId).isVisible()) {
-                        Voxel[] voxels = dataContainer.layers.get(layerId).getXPlane(x);
-                        for (Voxel voxel : voxels) {
-                            if (result.voxelPositionFree(voxel)) {
-                                result.addVoxel(voxel);
-                            }
-                        }
-                    }
+        readLock.lock();
+        try {
+            synchronized (yzBufferSync) {
+                if (!layerVoxelYZBufferValid || x != lastVoxelYZBufferXValue) {
+                    layerVoxelYZBuffer = collectVisibleVoxels(0, x);
+                    layerVoxelYZBufferValid = true;
+                    lastVoxelYZBufferXValue = x;
                 }
-                layerVoxelYZBuffer = result.getVoxels();
-                layerVoxelYZBufferValid = true;
-                lastVoxelYZBufferXValue = x;
+                return layerVoxelYZBuffer.clone();
             }
-            return layerVoxelYZBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final int getVoxelCount(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             int result = 0;
             if (dataContainer.layers.containsKey(layerId)) {
                 result = dataContainer.layers.get(layerId).getSize();
             }
             return result;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public final int getVoxelCount() {
+        readLock.lock();
+        try {
+            return voxelLayerIds.size();
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2374,6 +2757,13 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         }
     }
 
+    @Override
+    public final long getHistoryMemoryV() {
+        synchronized (VitcoSettings.SYNC) {
+            return historyManagerV.getMemoryUsage();
+        }
+    }
+
     @Override
     public final int createLayer(String layerName) {
         synchronized (VitcoSettings.SYNC) {
@@ -2412,8 +2802,11 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     @Override
     public final String getLayerName(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return dataContainer.layers.containsKey(layerId) ? dataContainer.layers.get(layerId).getName() : null;
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2421,18 +2814,23 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     private String[] layerNameBuffer = new String[]{};
     @Override
     public final String[] getLayerNames() {
-        synchronized (VitcoSettings.SYNC) {
-            if (!layerNameBufferValid) {
-                if (layerNameBuffer.length != dataContainer.layers.size()) {
-                    layerNameBuffer = new String[dataContainer.layers.size()];
-                }
-                int i = 0;
-                for (Integer layerId : dataContainer.layerOrder) {
-                    layerNameBuffer[i++] = getLayerName(layerId);
+        readLock.lock();
+        try {
+            synchronized (layerBufferSync) {
+                if (!layerNameBufferValid) {
+                    if (layerNameBuffer.length != dataContainer.layers.size()) {
+                        layerNameBuffer = new String[dataContainer.layers.size()];
+                    }
+                    int i = 0;
+                    for (Integer layerId : dataContainer.layerOrder) {
+                        layerNameBuffer[i++] = getLayerName(layerId);
+                    }
+                    layerNameBufferValid = true;
                 }
-                layerNameBufferValid = true;
+                return layerNameBuffer.clone();
             }
-            return layerNameBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2452,22 +2850,30 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     @Override
     public final boolean selectLayerSoft(int layerId) {
         synchronized (VitcoSettings.SYNC) {
-            boolean result = false;
-            if ((dataContainer.layers.containsKey(layerId) || layerId == -1) && dataContainer.selectedLayer != layerId) {
-                dataContainer.selectedLayer = layerId;
-                invalidateV(new int[0][]);
-                notifier.onLayerStateChanged();
-                result = true;
+            writeLock.lock();
+            try {
+                boolean result = false;
+                if ((dataContainer.layers.containsKey(layerId) || layerId == -1) && dataContainer.selectedLayer != layerId) {
+                    dataContainer.selectedLayer = layerId;
+                    invalidateV(new long[0]);
+                    notifier.onLayerStateChanged();
+                    result = true;
+                }
+                return result;
+            } finally {
+                writeLock.unlock();
             }
-            return result;
         }
     }
 
     @Override
     public final int getSelectedLayer() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             // make sure the selected layer is always valid
             return dataContainer.layers.containsKey(dataContainer.selectedLayer) ? dataContainer.selectedLayer : -1;
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2475,15 +2881,20 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     private Integer[] layerBuffer = new Integer[]{};
     @Override
     public final Integer[] getLayers() {
-        synchronized (VitcoSettings.SYNC) {
-            if (!layerBufferValid) {
-                if (layerBuffer.length != dataContainer.layers.size()) {
-                    layerBuffer = new Integer[dataContainer.layers.size()];
+        readLock.lock();
+        try {
+            synchronized (layerBufferSync) {
+                if (!layerBufferValid) {
+                    if (layerBuffer.length != dataContainer.layers.size()) {
+                        layerBuffer = new Integer[dataContainer.layers.size()];
+                    }
+                    dataContainer.layerOrder.toArray(layerBuffer);
+                    layerBufferValid = true;
                 }
-                dataContainer.layerOrder.toArray(layerBuffer);
-                layerBufferValid = true;
+                return layerBuffer.clone();
             }
-            return layerBuffer.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2502,12 +2913,15 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     @Override
     public final boolean getLayerVisible(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             boolean result = false;
             if (dataContainer.layers.containsKey(layerId)) {
                 result = dataContainer.layers.get(layerId).isVisible();
             }
             return result;
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2539,15 +2953,21 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     @Override
     public final boolean canMoveLayerUp(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return dataContainer.layers.containsKey(layerId) && dataContainer.layerOrder.lastIndexOf(layerId) > 0;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final boolean canMoveLayerDown(int layerId) {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return dataContainer.layers.containsKey(layerId) && dataContainer.layerOrder.lastIndexOf(layerId) < dataContainer.layerOrder.size() - 1;
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2565,7 +2985,8 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     @Override
     public final boolean canMergeVisibleLayers() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             // if there are more than one visible layer
             int visibleLayers = 0;
             for (int layerId : dataContainer.layerOrder) {
@@ -2577,6 +2998,8 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
                 }
             }
             return false;
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2605,10 +3028,8 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         synchronized (VitcoSettings.SYNC) {
             boolean result = false;
             // check that this texture is not used (return false if used)
-            for (Voxel voxel : dataContainer.voxels.values()) {
-                if (ArrayUtil.contains(voxel.getTexture(), textureId)) {
-                    return false;
-                }
+            if (getUsedTextures().contains(textureId)) {
+                return false;
             }
             if (dataContainer.textures.containsKey(textureId)) {
                 historyManagerV.applyIntent(new RemoveTextureIntent(textureId, false));
@@ -2626,13 +3047,8 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
                 // check which textures are not in use
                 ArrayList<Integer> unusedTextures = new ArrayList<Integer>(dataContainer.textures.keySet());
-                for (Voxel voxel : dataContainer.voxels.values()) {
-                    int[] textures = voxel.getTexture();
-                    if (textures != null) {
-                        for (Integer textureId : textures) {
-                            unusedTextures.remove(textureId);
-                        }
-                    }
+                for (TIntIterator it = getUsedTextures().iterator(); it.hasNext();) {
+                    unusedTextures.remove((Integer) it.next());
                 }
                 if (unusedTextures.size() > 0) {
                     historyManagerV.applyIntent(new RemoveAllTextureIntent(unusedTextures, false));
@@ -2649,7 +3065,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
             boolean result = false;
             if (dataContainer.textures.containsKey(textureId) &&
                     texture.getIconWidth() == 32 && texture.getIconHeight() == 32) {
-                historyManagerV.applyIntent(new ReplaceTextureIntent(textureId, texture, false));
+                historyManagerV.applyIntent(new ReplaceTextureIntent(textureId, TextureData.fromIcon(texture), false));
                 result = true;
             }
             return result;
@@ -2658,51 +3074,175 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
 
     @Override
     public final Integer[] getTextureList() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             Integer[] result = new Integer[dataContainer.textures.size()];
             dataContainer.textures.keySet().toArray(result);
             return result;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final TIntHashSet getVoxelColorList() {
-        synchronized (VitcoSettings.SYNC) {
-            TIntHashSet result = new TIntHashSet();
-            for (Integer layerId : getLayers()) {
-                result.addAll(dataContainer.layers.get(layerId).getVoxelColors());
+        readLock.lock();
+        try {
+            return new TIntHashSet(palette.getColors());
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public final int[] getVisibleVoxelColors() {
+        readLock.lock();
+        try {
+            return layerStacks.getVisibleColors();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public final Voxel[] getVoxelsByColor(Color color, Integer layerId) {
+        readLock.lock();
+        try {
+            if (layerId != null) {
+                VoxelLayer layer = dataContainer.layers.get(layerId);
+                return layer == null ? new Voxel[0] : layer.getVoxelsByColor(color.getRGB());
+            }
+            // the voxels of the visible layers that are not covered
+            ArrayList<Voxel> result = new ArrayList<Voxel>();
+            for (VoxelLayer layer : dataContainer.layers.values()) {
+                if (layer.isVisible()) {
+                    for (Voxel voxel : layer.getVoxelsByColor(color.getRGB())) {
+                        if (layerStacks.getVisible(voxel.posId) == voxel.id) {
+                            result.add(voxel);
+                        }
+                    }
+                }
+            }
+            Voxel[] voxels = new Voxel[result.size()];
+            result.toArray(voxels);
+            return voxels;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public final Voxel[] getVoxelsInBox(int[] min, int[] max, Integer layerId) {
+        readLock.lock();
+        try {
+            if (layerId != null) {
+                VoxelLayer layer = dataContainer.layers.get(layerId);
+                return layer == null ? new Voxel[0] : layer.getVoxelsInBox(min, max);
+            }
+            final ArrayList<Voxel> result = new ArrayList<Voxel>();
+            visitVisibleVoxelsInBox(min, max, new VoxelVisitor() {
+                @Override
+                public boolean visit(Voxel voxel) {
+                    result.add(voxel);
+                    return true;
+                }
+            });
+            Voxel[] voxels = new Voxel[result.size()];
+            result.toArray(voxels);
+            return voxels;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public final boolean visitVoxelsInBox(int[] min, int[] max, Integer layerId, VoxelVisitor visitor) {
+        readLock.lock();
+        try {
+            if (layerId != null) {
+                VoxelLayer layer = dataContainer.layers.get(layerId);
+                return layer == null || layer.forEachVoxelInBox(min, max, visitor);
+            }
+            return visitVisibleVoxelsInBox(min, max, visitor);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // helper - visit the visible voxels in a box (the voxels of the visible layers that are not covered)
+    private boolean visitVisibleVoxelsInBox(int[] min, int[] max, final VoxelVisitor visitor) {
+        VoxelVisitor filter = new VoxelVisitor() {
+            @Override
+            public boolean visit(Voxel voxel) {
+                return layerStacks.getVisible(voxel.posId) != voxel.id || visitor.visit(voxel);
+            }
+        };
+        for (VoxelLayer layer : dataContainer.layers.values()) {
+            if (layer.isVisible() && !layer.forEachVoxelInBox(min, max, filter)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public final int[][] getVoxelBounds(Integer layerId) {
+        readLock.lock();
+        try {
+            if (layerId != null) {
+                VoxelLayer layer = dataContainer.layers.get(layerId);
+                return layer == null ? null : layer.getBounds();
+            }
+            // the bounds of the visible voxels are the bounds of the visible layers
+            int[][] result = null;
+            for (VoxelLayer layer : dataContainer.layers.values()) {
+                if (layer.isVisible()) {
+                    int[][] bounds = layer.getBounds();
+                    if (bounds != null) {
+                        if (result == null) {
+                            result = bounds;
+                        } else {
+                            for (int i = 0; i < 3; i++) {
+                                result[0][i] = Math.min(result[0][i], bounds[0][i]);
+                                result[1][i] = Math.max(result[1][i], bounds[1][i]);
+                            }
+                        }
+                    }
+                }
             }
             return result;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final ImageIcon getTexture(Integer textureId) {
-        synchronized (VitcoSettings.SYNC) {
-            Image internalImg = dataContainer.textures.get(textureId).getImage();
-            BufferedImage result = new BufferedImage(
-                    internalImg.getWidth(null), internalImg.getHeight(null),
-                    BufferedImage.TYPE_INT_ARGB);
-            result.getGraphics().drawImage(internalImg, 0, 0, null);
-            return new ImageIcon(result);
+        BufferedImage image = getTextureImage(textureId);
+        return image == null ? null : new ImageIcon(image);
+    }
+
+    @Override
+    public final BufferedImage getTextureImage(Integer textureId) {
+        TextureData texture;
+        readLock.lock();
+        try {
+            texture = dataContainer.textures.get(textureId);
+        } finally {
+            readLock.unlock();
         }
+        // the texture is immutable (decoded outside of the lock)
+        return texture == null ? null : texture.getImage();
     }
 
     @Override
     public final String getTextureHash(Integer textureId) {
-        synchronized (VitcoSettings.SYNC) {
-            if (dataContainer.textures.containsKey(textureId)) {
-                if (dataContainer.textures.get(textureId).getDescription() == null) {
-                    ImageIcon img = dataContainer.textures.get(textureId);
-                    BufferedImage bi = new BufferedImage(
-                            img.getIconWidth(),img.getIconHeight(),BufferedImage.TYPE_INT_RGB);
-                    bi.createGraphics().drawImage(img.getImage(),0,0,null);
-                    dataContainer.textures.get(textureId).setDescription(GraphicTools.getHash(bi));
-                }
-                return dataContainer.textures.get(textureId).getDescription();
-            } else {
-                return "";
-            }
+        readLock.lock();
+        try {
+            TextureData texture = dataContainer.textures.get(textureId);
+            return texture == null ? "" : texture.getHash();
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2724,10 +3264,15 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     @Override
     public final void selectTextureSoft(int textureId) {
         synchronized (VitcoSettings.SYNC) {
-            if (dataContainer.selectedTexture != textureId &&
-                    (textureId == -1 || dataContainer.textures.containsKey(textureId))) {
-                dataContainer.selectedTexture = textureId;
-                notifier.onTextureDataChanged();
+            writeLock.lock();
+            try {
+                if (dataContainer.selectedTexture != textureId &&
+                        (textureId == -1 || dataContainer.textures.containsKey(textureId))) {
+                    dataContainer.selectedTexture = textureId;
+                    notifier.onTextureDataChanged();
+                }
+            } finally {
+                writeLock.unlock();
             }
         }
     }
@@ -2746,9 +3291,9 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     public final boolean setTexture(int voxelId, int voxelSide, int textureId) {
         synchronized (VitcoSettings.SYNC) {
             boolean result = false;
-            if (dataContainer.voxels.containsKey(voxelId) &&
-                    (dataContainer.voxels.get(voxelId).getTexture() == null ||
-                    dataContainer.voxels.get(voxelId).getTexture()[voxelSide] != textureId)) {
+            if (voxelExists(voxelId) &&
+                    (findVoxel(voxelId).getTexture() == null ||
+                    findVoxel(voxelId).getTexture()[voxelSide] != textureId)) {
                 historyManagerV.applyIntent(new TextureVoxelIntent(voxelId, voxelSide, textureId, false));
                 result = true;
             }
@@ -2761,7 +3306,7 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
         synchronized (VitcoSettings.SYNC) {
             ArrayList<Integer> validVoxel = new ArrayList<Integer>();
             for (int voxelId : voxelIds) {
-                if (dataContainer.voxels.containsKey(voxelId)) {
+                if (voxelExists(voxelId)) {
                     validVoxel.add(voxelId);
                 }
             }
@@ -2779,11 +3324,14 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     // get texture id of a voxel
     @Override
     public final int[] getVoxelTextureIds(int voxelId) {
-        synchronized (VitcoSettings.SYNC) {
-            if (dataContainer.voxels.containsKey(voxelId)) {
-                return dataContainer.voxels.get(voxelId).getTexture();
+        readLock.lock();
+        try {
+            if (voxelExists(voxelId)) {
+                return findVoxel(voxelId).getTexture();
             }
             return null; // error
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -2792,8 +3340,8 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     public final boolean flipVoxelTexture(int voxelId, int voxelSide) {
         synchronized (VitcoSettings.SYNC) {
             boolean result = false;
-            if (dataContainer.voxels.containsKey(voxelId) &&
-                    dataContainer.voxels.get(voxelId).getTexture() != null) {
+            if (voxelExists(voxelId) &&
+                    findVoxel(voxelId).getTexture() != null) {
                 historyManagerV.applyIntent(new FlipVoxelTextureIntent(voxelId, voxelSide, false));
                 result = true;
             }
@@ -2806,8 +3354,8 @@ public abstract class VoxelData extends AnimationHighlight implements VoxelDataI
     public final boolean rotateVoxelTexture(int voxelId, int voxelSide) {
         synchronized (VitcoSettings.SYNC) {
             boolean result = false;
-            if (dataContainer.voxels.containsKey(voxelId) &&
-                    dataContainer.voxels.get(voxelId).getTexture() != null) {
+            if (voxelExists(voxelId) &&
+                    findVoxel(voxelId).getTexture() != null) {
                 historyManagerV.applyIntent(new RotateVoxelTextureIntent(voxelId, voxelSide, false));
                 result = true;
             }
@@ -1,6 +1,8 @@
 package com.vitco.app.core.data;
 
 import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.core.data.container.VoxelVisitor;
+import gnu.trove.procedure.TIntProcedure;
 import gnu.trove.set.hash.TIntHashSet;
 
 import javax.swing.*;
@@ -14,6 +16,11 @@ public interface VoxelDataInterface {
     // adds a voxel directly to the container (no history entry is created!)
     // only to be used for back imports etc
     int addVoxelDirect(Color color, int[] pos);
+    // adds voxels directly to a layer (no history entry is created!), the positions are position
+    // ids and the colors are argb values, occupied positions are skipped and the voxels that exceed
+    // the voxel limit are dropped, only to be used for imports etc, returns the amount of voxels
+    // that were added
+    int addVoxelsDirect(int layerId, long[] posIds, int[] colors, int offset, int count);
     // adds a voxel to current layer and returns voxel id
     int addVoxel(Color color, int[] textureId, int[] pos);
     // deleted the voxel
@@ -63,6 +70,8 @@ public interface VoxelDataInterface {
     Voxel[] getVoxelsYZ(int x);
     // get voxel number in layer
     int getVoxelCount(int layerId);
+    // get voxel number of all layers
+    int getVoxelCount();
 
     // undo last action (animation)
     void undoV();
@@ -72,6 +81,8 @@ public interface VoxelDataInterface {
     boolean canUndoV();
     // return true if the last action can be redone (animation)
     boolean canRedoV();
+    // the estimated memory used by the history (in bytes)
+    long getHistoryMemoryV();
 
 
     // add a layer
@@ -117,6 +128,17 @@ public interface VoxelDataInterface {
     boolean setVoxelSelected(int voxelId, boolean selected);
     // select several voxels at once
     boolean massSetVoxelSelected(Integer[] voxelIds, boolean selected);
+    // select exactly these voxels (deselects all others, one history entry)
+    boolean replaceVoxelSelection(Integer[] voxelIds);
+    // invert the selection of these voxels (one history entry)
+    boolean invertVoxelSelection(Integer[] voxelIds);
+    // the amount of selected voxels (in all layers)
+    int getSelectedVoxelCount();
+    // the amount of selected voxels that are visible (top most in a visible layer)
+    int getVisibleSelectedVoxelCount();
+    // visit the ids of the selected (visible) voxels without copying them, the data is
+    // locked while the procedure runs (returns false if the procedure stopped early)
+    boolean forEachSelectedVoxel(TIntProcedure procedure);
     // remove several voxels at once
     boolean massRemoveVoxel(Integer[] voxelIds);
     // add several voxels at once
@@ -125,6 +147,8 @@ public interface VoxelDataInterface {
     boolean migrateVoxels(Voxel[] voxels);
     // set color of several voxels at once
     boolean massSetColor(Integer[] voxelIds, Color color);
+    // replace a color for all voxels (one history entry)
+    boolean replaceColor(Color from, Color to);
     // shift color of several voxels at once
     boolean massShiftColor(Integer[] voxelIds, float[] hsbOffset);
     // move several voxels at once
@@ -132,6 +156,7 @@ public interface VoxelDataInterface {
 
     // todo describe functions below
 
+    // rotate voxels around their center, the degree needs to be a multiple of 90 (returns false otherwise)
     boolean rotateVoxelCenter(Voxel[] voxel, int axe, float degree);
 
     boolean mirrorVoxel(Voxel[] voxel, int axe);
@@ -148,8 +173,29 @@ public interface VoxelDataInterface {
 
     TIntHashSet getVoxelColorList();
 
+    // the colors of the visible voxels (argb)
+    int[] getVisibleVoxelColors();
+
+    // get the voxels with a color (of a layer or the visible voxels if the layer is null)
+    Voxel[] getVoxelsByColor(Color color, Integer layerId);
+
+    // get the voxels in a box, min and max are inclusive (of a layer or the visible voxels if the layer is null)
+    Voxel[] getVoxelsInBox(int[] min, int[] max, Integer layerId);
+
+    // visit the voxels in a box (of a layer or the visible voxels if the layer is null), the
+    // visitor must not change the data, returns false if the visitor stopped the visit
+    boolean visitVoxelsInBox(int[] min, int[] max, Integer layerId, VoxelVisitor visitor);
+
+    // get the bounds of the voxels (of a layer or the visible voxels if the layer is null),
+    // min and max position (inclusive) or null if there are no voxels
+    int[][] getVoxelBounds(Integer layerId);
+
+    // the texture as an icon (the image is shared and must not be changed)
     ImageIcon getTexture(Integer textureId);
 
+    // the image of a texture (shared, must not be changed), null if there is no such texture
+    BufferedImage getTextureImage(Integer textureId);
+
     String getTextureHash(Integer textureId);
 
     void selectTexture(int textureId);
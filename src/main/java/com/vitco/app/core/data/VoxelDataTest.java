@@ -1,12 +1,19 @@
 package com.vitco.app.core.data;
 
 import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.core.data.container.VoxelVisitor;
+import com.vitco.app.low.LongCubeIndexer;
+import com.vitco.app.util.misc.ColorTools;
+import gnu.trove.procedure.TIntProcedure;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.awt.*;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Random;
 
 /**
@@ -26,6 +33,51 @@ public class VoxelDataTest {
         data.clearHistoryV();
     }
 
+    // helper - check that two voxels hold the same data (voxels are views, not shared instances)
+    private static boolean sameVoxel(Voxel a, Voxel b) {
+        return a.id == b.id && a.posId == b.posId && a.getLayerId() == b.getLayerId()
+                && a.getColor().equals(b.getColor()) && a.getAlpha() == b.getAlpha()
+                && a.isSelected() == b.isSelected()
+                && Arrays.equals(a.getTexture(), b.getTexture())
+                && Arrays.equals(a.getRotation(), b.getRotation())
+                && Arrays.equals(a.getFlip(), b.getFlip());
+    }
+
+    // helper - check the visible voxels against the voxels of the layers (top most visible layer wins)
+    private void checkVisibleVoxels() {
+        HashMap<Long, Voxel> expected = new HashMap<Long, Voxel>();
+        for (int layerId : data.getLayers()) {
+            if (data.getLayerVisible(layerId)) {
+                for (Voxel voxel : data.getLayerVoxels(layerId)) {
+                    if (!expected.containsKey(voxel.posId)) {
+                        expected.put(voxel.posId, voxel);
+                    }
+                }
+            }
+        }
+        Voxel[] visible = data.getVisibleLayerVoxel();
+        assert visible.length == expected.size();
+        for (Voxel voxel : visible) {
+            assert sameVoxel(voxel, expected.get(voxel.posId));
+        }
+        for (Voxel voxel : expected.values()) {
+            assert sameVoxel(voxel, data.searchVoxel(voxel.getPosAsInt(), false));
+        }
+        for (int z = -1; z <= 1; z++) {
+            Voxel[] plane = data.getVoxelsXY(z);
+            for (Voxel voxel : plane) {
+                assert voxel.z == z && sameVoxel(voxel, expected.get(voxel.posId));
+            }
+            int count = 0;
+            for (Voxel voxel : expected.values()) {
+                if (voxel.z == z) {
+                    count++;
+                }
+            }
+            assert plane.length == count;
+        }
+    }
+
     // tests for voxels
 
     @Test
@@ -58,6 +110,40 @@ public class VoxelDataTest {
         assert data.getVoxel(id3).id == id3;
     }
 
+    @Test
+    public void testAddVoxelsDirect() throws Exception {
+        int lid1 = data.createLayer("layer1");
+        data.selectLayer(lid1);
+        data.addVoxel(Color.RED, null, new int[]{0,0,0});
+        int lid2 = data.createLayer("layer2");
+        // a block of voxels (with one duplicate position that is skipped)
+        long[] posIds = new long[1001];
+        int[] colors = new int[1001];
+        for (int i = 0; i < 1000; i++) {
+            posIds[i] = LongCubeIndexer.getId(i % 10, (i / 10) % 10, i / 100);
+            colors[i] = 0xFF000000 | i;
+        }
+        posIds[1000] = posIds[0];
+        data.getNewVisibleLayerVoxel("view");
+        int added = data.addVoxelsDirect(lid2, posIds, colors, 0, 1001);
+        assert added == 1000;
+        // the views only read the added voxels
+        Voxel[][] changed = data.getNewVisibleLayerVoxel("view");
+        assert changed[0] != null && changed[0].length == 0 && changed[1].length == 1000;
+        assert data.getLayerVoxels(lid2).length == 1000;
+        assert data.getVoxelCount() == 1001;
+        Voxel voxel = data.searchVoxel(new int[]{5, 6, 7}, lid2);
+        assert voxel.getColor().equals(new Color(765));
+        // layer two is on top
+        assert data.searchVoxel(new int[]{0, 0, 0}, false).getLayerId() == lid2;
+        checkVisibleVoxels();
+        // undo the layer creation removes the voxels
+        data.undoV();
+        assert data.getVoxelCount() == 1;
+        assert data.searchVoxel(new int[]{0, 0, 0}, false).getLayerId() == lid1;
+        checkVisibleVoxels();
+    }
+
     @Test
     public void testMoveVoxel() throws Exception {
         int lid1 = data.createLayer("layer1");
@@ -84,14 +170,110 @@ public class VoxelDataTest {
         int lid1 = data.createLayer("layer1");
         data.selectLayer(lid1);
         int id1 = data.addVoxel(Color.RED, null, new int[] {0,0,0});
-        assert data.getColor(id1) == Color.RED;
+        assert data.getColor(id1).equals(Color.RED);
         data.setColor(id1, Color.GREEN);
-        assert data.getColor(id1) == Color.GREEN;
+        assert data.getColor(id1).equals(Color.GREEN);
         data.undoV();
-        assert data.getColor(id1) == Color.RED;
+        assert data.getColor(id1).equals(Color.RED);
         data.redoV();
-        assert data.getColor(id1) == Color.GREEN;
+        assert data.getColor(id1).equals(Color.GREEN);
+
+    }
+
+    @Test
+    public void testColorPalette() throws Exception {
+        int lid1 = data.createLayer("layer1");
+        int lid2 = data.createLayer("layer2");
+        data.selectLayer(lid1);
+        int id1 = data.addVoxel(Color.RED, null, new int[] {0,0,0});
+        int id2 = data.addVoxel(Color.GREEN, null, new int[] {1,0,0});
+        data.selectLayer(lid2);
+        int id3 = data.addVoxel(Color.BLUE, null, new int[] {0,0,0});
+        assert data.getVoxelColorList().size() == 3;
+        // the red voxel is hidden by the blue voxel
+        int[] visible = data.getVisibleVoxelColors();
+        Arrays.sort(visible);
+        int[] expected = new int[] {Color.GREEN.getRGB(), Color.BLUE.getRGB()};
+        Arrays.sort(expected);
+        assert Arrays.equals(visible, expected);
+        data.setVisible(lid2, false);
+        assert data.getVisibleVoxelColors().length == 2;
+        data.setVisible(lid2, true);
+
+        // replace with an unused color (palette only)
+        assert data.replaceColor(Color.GREEN, Color.YELLOW);
+        assert data.getColor(id2).equals(Color.YELLOW);
+        assert !data.getVoxelColorList().contains(Color.GREEN.getRGB());
+        data.undoV();
+        assert data.getColor(id2).equals(Color.GREEN);
+        // replace with a used color (the colors are merged)
+        assert data.replaceColor(Color.GREEN, Color.BLUE);
+        assert data.getVoxelColorList().size() == 2;
+        assert data.getVisibleVoxelColors().length == 1;
+        data.undoV();
+        assert data.getColor(id2).equals(Color.GREEN);
+        assert data.getVisibleVoxelColors().length == 2;
+        assert !data.replaceColor(Color.WHITE, Color.BLACK);
+
+        // colors are released when they are no longer used
+        data.setColor(id1, Color.GREEN);
+        data.removeVoxel(id3);
+        assert data.getVoxelColorList().size() == 1;
+        assert data.getVisibleVoxelColors()[0] == Color.GREEN.getRGB();
+        data.undoV();
+        data.undoV();
+        assert data.getVoxelColorList().size() == 3;
+        checkVisibleVoxels();
+    }
+
+    // helper - check the voxels of a color against a scan
+    private void checkVoxelsByColor(Color color, Integer layerId) {
+        HashSet<Integer> expected = new HashSet<Integer>();
+        for (Voxel voxel : layerId == null ? data.getVisibleLayerVoxel() : data.getLayerVoxels(layerId)) {
+            if (voxel.getColor().equals(color)) {
+                expected.add(voxel.id);
+            }
+        }
+        Voxel[] voxels = data.getVoxelsByColor(color, layerId);
+        assert voxels.length == expected.size();
+        for (Voxel voxel : voxels) {
+            assert expected.contains(voxel.id) && voxel.getColor().equals(color);
+        }
+    }
 
+    @Test
+    public void testVoxelsByColor() throws Exception {
+        int lid1 = data.createLayer("layer1");
+        int lid2 = data.createLayer("layer2");
+        Color[] colors = new Color[] {Color.RED, Color.GREEN, Color.BLUE};
+        Random rand = new Random(7);
+        data.selectLayer(lid1);
+        for (int i = 0; i < 200; i++) {
+            data.addVoxel(colors[rand.nextInt(3)], null, new int[] {rand.nextInt(8), rand.nextInt(8), 0});
+        }
+        data.selectLayer(lid2);
+        for (int i = 0; i < 200; i++) {
+            data.addVoxel(colors[rand.nextInt(3)], null, new int[] {rand.nextInt(8), rand.nextInt(8), 0});
+        }
+        Voxel[] voxels = data.getLayerVoxels(lid2);
+        data.setColor(voxels[0].id, Color.BLUE);
+        data.massSetColor(new Integer[] {voxels[1].id, voxels[2].id}, Color.RED);
+        data.massShiftColor(new Integer[] {voxels[3].id}, new float[] {0.5f, 0, 0});
+        data.removeVoxel(voxels[4].id);
+        data.setVisible(lid2, false);
+        data.setVisible(lid2, true);
+        data.replaceColor(Color.RED, Color.YELLOW);
+        for (Color color : new Color[] {Color.YELLOW, Color.GREEN, Color.BLUE, Color.RED}) {
+            checkVoxelsByColor(color, null);
+            checkVoxelsByColor(color, lid1);
+            checkVoxelsByColor(color, lid2);
+        }
+        // the index follows undo
+        while (data.canUndoV()) {
+            data.undoV();
+            checkVoxelsByColor(Color.RED, null);
+            checkVoxelsByColor(Color.BLUE, lid2);
+        }
     }
 
     @Test
@@ -148,7 +330,7 @@ public class VoxelDataTest {
         assert data.getVoxel(id3) == null;
         Voxel[] voxel = data.getLayerVoxels(data.getSelectedLayer());
         assert voxel.length == 2;
-        assert (voxel[1].z == 2 && voxel[1].getColor() == Color.GREEN);
+        assert (voxel[1].z == 2 && voxel[1].getColor().equals(Color.GREEN));
     }
 
     @Test
@@ -423,6 +605,318 @@ public class VoxelDataTest {
         // todo test undo/redo of this
     }
 
+    @Test
+    public void testSelection() throws Exception {
+        int lid1 = data.createLayer("layer1");
+        int lid2 = data.createLayer("layer2");
+        data.selectLayer(lid1);
+        int id1 = data.addVoxel(Color.BLACK, null, new int[]{1,2,3});
+        int id2 = data.addVoxel(Color.GREEN, null, new int[]{1,2,4});
+        data.selectLayer(lid2);
+        int id3 = data.addVoxel(Color.ORANGE, null, new int[]{1,2,3});
+        int id4 = data.addVoxel(Color.WHITE, null, new int[]{5,5,5});
+        assert !data.anyVoxelSelected();
+        assert data.getSelectedVoxelCount() == 0;
+
+        // union (hidden voxels stay selected, but only visible voxels are shown)
+        data.massSetVoxelSelected(new Integer[]{id1, id2}, true);
+        assert data.isSelected(id1);
+        assert data.getSelectedVoxelCount() == 2 && data.getVisibleSelectedVoxelCount() == 1;
+        assert data.getSelectedVoxels()[0].id == id2;
+        data.setVisible(lid2, false);
+        assert data.getSelectedVoxelCount() == 2 && data.getVisibleSelectedVoxelCount() == 2;
+        data.setVisible(lid2, true);
+
+        // invert
+        assert data.invertVoxelSelection(new Integer[]{id2, id3, id4});
+        assert !data.isSelected(id2);
+        assert data.getSelectedVoxelCount() == 3 && data.getVisibleSelectedVoxelCount() == 2;
+        final ArrayList<Integer> visited = new ArrayList<Integer>();
+        data.forEachSelectedVoxel(new TIntProcedure() {
+            @Override
+            public boolean execute(int value) {
+                visited.add(value);
+                return true;
+            }
+        });
+        assert visited.size() == 2 && visited.contains(id3) && visited.contains(id4);
+
+        // replace (one history entry)
+        assert data.replaceVoxelSelection(new Integer[]{id2, id2});
+        assert !data.replaceVoxelSelection(new Integer[]{id2});
+        assert data.getSelectedVoxelCount() == 1;
+        assert !data.isSelected(id1) && data.isSelected(id2);
+        data.undoV();
+        assert data.isSelected(id1) && data.isSelected(id3) && data.isSelected(id4) && !data.isSelected(id2);
+        assert data.getSelectedVoxelCount() == 3 && data.getVisibleSelectedVoxelCount() == 2;
+
+        // difference
+        data.massSetVoxelSelected(new Integer[]{id3}, false);
+        assert data.getSelectedVoxelCount() == 2 && data.getVisibleSelectedVoxelCount() == 1;
+
+        // removing and restoring voxels keeps the selection
+        data.removeVoxel(id4);
+        assert !data.anyVoxelSelected();
+        data.undoV();
+        assert data.getSelectedVoxelCount() == 2 && data.getVisibleSelectedVoxelCount() == 1 && data.isSelected(id4);
+        data.deleteLayer(lid1);
+        assert !data.isSelected(id1);
+        data.undoV();
+        assert data.isSelected(id1);
+        checkVisibleVoxels();
+    }
+
+    // helper - map the voxels of a layer by position (to the color)
+    private HashMap<Long, Integer> getLayerColors(int layerId) {
+        HashMap<Long, Integer> result = new HashMap<Long, Integer>();
+        for (Voxel voxel : data.getLayerVoxels(layerId)) {
+            assert result.put(voxel.posId, voxel.getColor().getRGB()) == null;
+        }
+        return result;
+    }
+
+    @Test
+    public void testMassTransform() throws Exception {
+        int lid = data.createLayer("layer");
+        data.selectLayer(lid);
+        Random rand = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            data.addVoxel(new Color(rand.nextInt(0xFFFFFF)), null,
+                    new int[] {rand.nextInt(20) - 10, rand.nextInt(15), rand.nextInt(10) - 3});
+        }
+        Voxel[] voxels = data.getLayerVoxels(lid);
+        HashMap<Long, Integer> before = getLayerColors(lid);
+
+        // quarter turns are exact and match the rotation around the (float) center
+        int[] min = new int[] {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE};
+        int[] max = new int[] {Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        for (Voxel voxel : voxels) {
+            int[] pos = voxel.getPosAsInt();
+            for (int j = 0; j < 3; j++) {
+                min[j] = Math.min(min[j], pos[j]);
+                max[j] = Math.max(max[j], pos[j]);
+            }
+        }
+        for (int axe = 0; axe < 3; axe++) {
+            int rot1 = axe == 0 ? 1 : 0;
+            int rot2 = axe == 2 ? 1 : 2;
+            for (int angle = 90; angle < 360; angle += 90) {
+                HashMap<Long, Integer> expected = new HashMap<Long, Integer>();
+                for (Voxel voxel : voxels) {
+                    int[] pos = voxel.getPosAsInt();
+                    double[] pt = {pos[rot1], pos[rot2]};
+                    java.awt.geom.AffineTransform.getRotateInstance(Math.toRadians(angle),
+                            (min[rot1] + max[rot1]) / 2.0, (min[rot2] + max[rot2]) / 2.0)
+                            .transform(pt, 0, pt, 0, 1);
+                    pos[rot1] = (int) Math.round(pt[0]);
+                    pos[rot2] = (int) Math.round(pt[1]);
+                    expected.put(LongCubeIndexer.getId(pos[0], pos[1], pos[2]), voxel.getColor().getRGB());
+                }
+                boolean rotated = data.rotateVoxelCenter(data.getLayerVoxels(lid), axe, angle);
+                assert rotated;
+                assert getLayerColors(lid).equals(expected);
+                data.undoV();
+                assert getLayerColors(lid).equals(before);
+            }
+            // other angles would move voxels to the same position
+            boolean rotated = data.rotateVoxelCenter(data.getLayerVoxels(lid), axe, 45);
+            assert !rotated;
+            assert getLayerColors(lid).equals(before);
+            // two half turns result in the original positions
+            for (int i = 0; i < 2; i++) {
+                rotated = data.rotateVoxelCenter(data.getLayerVoxels(lid), axe, 180);
+                assert rotated;
+            }
+            assert getLayerColors(lid).equals(before);
+        }
+
+        // mirror
+        HashMap<Long, Integer> expected = new HashMap<Long, Integer>();
+        for (Voxel voxel : voxels) {
+            int[] pos = voxel.getPosAsInt();
+            pos[1] = min[1] + max[1] - pos[1];
+            expected.put(LongCubeIndexer.getId(pos[0], pos[1], pos[2]), voxel.getColor().getRGB());
+        }
+        boolean mirrored = data.mirrorVoxel(data.getLayerVoxels(lid), 1);
+        assert mirrored;
+        assert getLayerColors(lid).equals(expected);
+        data.undoV();
+        assert getLayerColors(lid).equals(before);
+        checkVisibleVoxels();
+    }
+
+    @Test
+    public void testMassTransformLarge() throws Exception {
+        int lid = data.createLayer("layer");
+        data.selectLayer(lid);
+        int size = 20000;
+        long[] posIds = new long[size];
+        int[] colors = new int[size];
+        for (int i = 0; i < size; i++) {
+            posIds[i] = LongCubeIndexer.getId(i % 200, i / 200, 0);
+            colors[i] = new Color(i % 256, (i / 256) % 256, 100).getRGB();
+        }
+        int added = data.addVoxelsDirect(lid, posIds, colors, 0, size);
+        assert added == size;
+        int stationaryId = data.addVoxel(Color.RED, null, new int[] {0, 0, 1});
+        Voxel[] voxels = data.getLayerVoxels(lid);
+        Voxel[] moved = new Voxel[size];
+        int j = 0;
+        for (Voxel voxel : voxels) {
+            if (voxel.id != stationaryId) {
+                moved[j++] = voxel;
+            }
+        }
+        HashMap<Long, Integer> before = getLayerColors(lid);
+
+        // move onto the stationary voxel (which is replaced)
+        HashMap<Long, Integer> expected = new HashMap<Long, Integer>();
+        for (Voxel voxel : moved) {
+            expected.put(LongCubeIndexer.getId(voxel.x, voxel.y, voxel.z + 1), voxel.getColor().getRGB());
+        }
+        boolean changed = data.massMoveVoxel(moved, new int[] {0, 0, -1});
+        assert changed;
+        assert getLayerColors(lid).equals(expected);
+        assert data.getVoxel(stationaryId) == null;
+        data.undoV();
+        assert getLayerColors(lid).equals(before);
+        assert data.getVoxel(stationaryId) != null;
+
+        // color shift (a voxel that is listed twice is shifted twice)
+        float[] offset = new float[] {0.1f, -0.2f, 0.05f};
+        Integer[] ids = new Integer[size + 1];
+        HashMap<Integer, Integer> expectedColors = new HashMap<Integer, Integer>();
+        for (int i = 0; i < size; i++) {
+            ids[i] = moved[i].id;
+            expectedColors.put(moved[i].id, shiftColor(moved[i].getColor().getRGB(), offset));
+        }
+        ids[size] = moved[7].id;
+        expectedColors.put(moved[7].id, shiftColor(expectedColors.get(moved[7].id), offset));
+        changed = data.massShiftColor(ids, offset);
+        assert changed;
+        for (Voxel voxel : moved) {
+            assert data.getVoxel(voxel.id).getColor().getRGB() == expectedColors.get(voxel.id);
+        }
+        data.undoV();
+        assert getLayerColors(lid).equals(before);
+        data.redoV();
+        assert data.getVoxel(moved[7].id).getColor().getRGB() == expectedColors.get(moved[7].id);
+        checkVisibleVoxels();
+    }
+
+    // helper - shift a color by a hsb offset
+    private static int shiftColor(int rgb, float[] hsbOffset) {
+        float[] hsb = ColorTools.colorToHSB(new Color(rgb));
+        return ColorTools.hsbToColor(new float[] {
+                (hsb[0] + hsbOffset[0] + 2) % 1,
+                Math.max(0, Math.min(1, hsb[1] + hsbOffset[1])),
+                Math.max(0, Math.min(1, hsb[2] + hsbOffset[2]))
+        }).getRGB();
+    }
+
+    @Test
+    public void testVoxelsInBox() throws Exception {
+        int lid1 = data.createLayer("layer1");
+        int lid2 = data.createLayer("layer2");
+        Random rand = new Random(3);
+        for (int i = 0; i < 2000; i++) {
+            data.selectLayer(rand.nextBoolean() ? lid1 : lid2);
+            data.addVoxel(Color.RED, null, new int[] {rand.nextInt(40) - 20, rand.nextInt(20), rand.nextInt(30) - 10});
+        }
+        assert data.getVoxelBounds(null) != null;
+        for (int i = 0; i < 20; i++) {
+            int[] min = new int[] {rand.nextInt(40) - 25, rand.nextInt(20) - 5, rand.nextInt(30) - 15};
+            int[] max = new int[] {min[0] + rand.nextInt(15), min[1] + rand.nextInt(15), min[2] + rand.nextInt(15)};
+            for (Integer layerId : new Integer[] {lid1, lid2, null}) {
+                Voxel[] all = layerId == null ? data.getVisibleLayerVoxel() : data.getLayerVoxels(layerId);
+                HashSet<Integer> expected = new HashSet<Integer>();
+                for (Voxel voxel : all) {
+                    if (voxel.x >= min[0] && voxel.y >= min[1] && voxel.z >= min[2]
+                            && voxel.x <= max[0] && voxel.y <= max[1] && voxel.z <= max[2]) {
+                        expected.add(voxel.id);
+                    }
+                }
+                HashSet<Integer> found = new HashSet<Integer>();
+                for (Voxel voxel : data.getVoxelsInBox(min, max, layerId)) {
+                    assert found.add(voxel.id);
+                }
+                assert found.equals(expected);
+            }
+            // bounds of a layer
+            int[] bMin = new int[] {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE};
+            int[] bMax = new int[] {Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+            for (Voxel voxel : data.getLayerVoxels(lid1)) {
+                int[] pos = voxel.getPosAsInt();
+                for (int j = 0; j < 3; j++) {
+                    bMin[j] = Math.min(bMin[j], pos[j]);
+                    bMax[j] = Math.max(bMax[j], pos[j]);
+                }
+            }
+            int[][] bounds = data.getVoxelBounds(lid1);
+            assert Arrays.equals(bounds[0], bMin) && Arrays.equals(bounds[1], bMax);
+            // change the data
+            data.setVisible(lid2, i % 2 == 0);
+            data.removeVoxel(data.getLayerVoxels(lid1)[0].id);
+        }
+
+        // the visit can be stopped
+        final int[] count = new int[] {0};
+        assert !data.visitVoxelsInBox(new int[] {-50, -50, -50}, new int[] {50, 50, 50}, null, new VoxelVisitor() {
+            @Override
+            public boolean visit(Voxel voxel) {
+                return ++count[0] < 3;
+            }
+        });
+        assert count[0] == 3;
+
+        // empty layers have no bounds
+        data.deleteLayer(lid1);
+        data.deleteLayer(lid2);
+        assert data.getVoxelBounds(null) == null;
+        assert data.getVoxelsInBox(new int[] {-50, -50, -50}, new int[] {50, 50, 50}, null).length == 0;
+    }
+
+    @Test
+    public void testVisibleLayerStack() throws Exception {
+        int lid1 = data.createLayer("layer1");
+        int lid2 = data.createLayer("layer2");
+        data.selectLayer(lid1);
+        int id1 = data.addVoxel(Color.BLACK, null, new int[]{1,2,3});
+        data.addVoxel(Color.GREEN, null, new int[]{1,2,4});
+        data.selectLayer(lid2);
+        int id3 = data.addVoxel(Color.ORANGE, null, new int[]{1,2,3});
+        // the top layer wins
+        assert data.searchVoxel(new int[]{1,2,3}, false).id == id3;
+        assert data.getVisibleLayerVoxel().length == 2;
+        checkVisibleVoxels();
+        // hidden layers are skipped
+        data.setVisible(lid2, false);
+        assert data.searchVoxel(new int[]{1,2,3}, false).id == id1;
+        checkVisibleVoxels();
+        data.setVisible(lid2, true);
+        // moving the layers changes the winner
+        data.moveLayerUp(lid1);
+        assert data.searchVoxel(new int[]{1,2,3}, false).id == id1;
+        checkVisibleVoxels();
+        data.undoV();
+        assert data.searchVoxel(new int[]{1,2,3}, false).id == id3;
+        // removing the top voxel shows the voxel below
+        data.removeVoxel(id3);
+        assert data.searchVoxel(new int[]{1,2,3}, false).id == id1;
+        data.moveVoxel(id1, new int[]{5,5,5});
+        assert data.searchVoxel(new int[]{1,2,3}, false) == null;
+        assert data.getVoxelsXY(5).length == 1;
+        checkVisibleVoxels();
+        // deleting a layer and undoing it
+        data.deleteLayer(lid1);
+        assert data.getVisibleLayerVoxel().length == 0;
+        data.undoV();
+        data.undoV();
+        data.undoV();
+        assert data.searchVoxel(new int[]{1,2,3}, false).id == id3;
+        checkVisibleVoxels();
+    }
+
     // big final test
     @Test
     public void randomeMess() throws Exception {
@@ -561,7 +1055,7 @@ public class VoxelDataTest {
                         int rem = rand.nextInt(voxels.length);
                         Color col = randCol();
                         data.setColor(voxels[rem].id, col);
-                        assert data.getVoxel(voxels[rem].id).getColor() == col;
+                        assert data.getVoxel(voxels[rem].id).getColor().equals(col);
                     }
                 }
             }
@@ -829,6 +1323,8 @@ public class VoxelDataTest {
                 data.redoV();
             }
 
+            checkVisibleVoxels();
+
             // store
             Integer[] layers = data.getLayers();
             String[] layerNames = data.getLayerNames();
@@ -861,6 +1357,8 @@ public class VoxelDataTest {
                 layerVoxelN[c++] = data.getLayerVoxels(i);
             }
 
+            checkVisibleVoxels();
+
             // check
             assert layersN.length == layers.length;
             assert layerNamesN.length == layers.length;
@@ -873,7 +1371,7 @@ public class VoxelDataTest {
 
             for (int i = 0; i < layers.length; i++) {
                 for (int j = 0; j < Math.max(layerVoxel[i].length, layerVoxelN[i].length); j++) {
-                    assert layerVoxel[i][j].equals(layerVoxelN[i][j]);
+                    assert sameVoxel(layerVoxel[i][j], layerVoxelN[i][j]);
                 }
             }
 
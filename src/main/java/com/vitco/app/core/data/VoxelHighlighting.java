@@ -15,28 +15,41 @@ public class VoxelHighlighting extends VoxelData implements VoxelHighlightingInt
     @Override
     public final void highlightVoxel(int[] pos) {
         synchronized (VitcoSettings.SYNC) {
-            if (this.pos == null || pos == null || (this.pos[0] != pos[0] || this.pos[1] != pos[1] || this.pos[2] != pos[2])) {
-                if (this.pos != null || pos != null) {
-                    this.pos = pos != null ? pos.clone() : null;
-                    notifier.onVoxelHighlightingChanged();
+            writeLock.lock();
+            try {
+                if (this.pos == null || pos == null || (this.pos[0] != pos[0] || this.pos[1] != pos[1] || this.pos[2] != pos[2])) {
+                    if (this.pos != null || pos != null) {
+                        this.pos = pos != null ? pos.clone() : null;
+                        notifier.onVoxelHighlightingChanged();
+                    }
                 }
+            } finally {
+                writeLock.unlock();
             }
         }
     }
 
     @Override
     public final int[] getHighlightedVoxel() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return pos != null ? pos.clone() : null;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public final void removeVoxelHighlights() {
         synchronized (VitcoSettings.SYNC) {
-            if (pos != null) {
-                pos = null;
-                notifier.onVoxelHighlightingChanged();
+            writeLock.lock();
+            try {
+                if (pos != null) {
+                    pos = null;
+                    notifier.onVoxelHighlightingChanged();
+                }
+            } finally {
+                writeLock.unlock();
             }
         }
     }
@@ -49,28 +62,36 @@ public class VoxelHighlighting extends VoxelData implements VoxelHighlightingInt
     @Override
     public final void setOutlineBox(String key, int[][] rect) {
         synchronized (VitcoSettings.SYNC) {
-            if (rect == null || rect[0] == null || rect[1] == null) {
-                boxOutlines.remove(key);
-            } else {
-                assert rect.length == 3;
-                assert rect[0].length == 3;
-                assert rect[1].length == 3;
-                assert rect[2].length == 2;
-                boxOutlines.put(key, rect);
-            }
-            // convert to array
-            if (boxOutlinesArray.length != boxOutlines.size()) {
-                boxOutlinesArray = new int[boxOutlines.size()][][];
+            writeLock.lock();
+            try {
+                if (rect == null || rect[0] == null || rect[1] == null) {
+                    boxOutlines.remove(key);
+                } else {
+                    assert rect.length == 3;
+                    assert rect[0].length == 3;
+                    assert rect[1].length == 3;
+                    assert rect[2].length == 2;
+                    boxOutlines.put(key, rect);
+                }
+                // convert to array
+                if (boxOutlinesArray.length != boxOutlines.size()) {
+                    boxOutlinesArray = new int[boxOutlines.size()][][];
+                }
+                boxOutlines.values().toArray(boxOutlinesArray);
+                notifier.onOutlineBoxesChanged();
+            } finally {
+                writeLock.unlock();
             }
-            boxOutlines.values().toArray(boxOutlinesArray);
-            notifier.onOutlineBoxesChanged();
         }
     }
 
     @Override
     public final int[][][] getOutlineBoxes() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return boxOutlinesArray.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 
@@ -80,16 +101,24 @@ public class VoxelHighlighting extends VoxelData implements VoxelHighlightingInt
 
     @Override
     public Rectangle getSelectionRect() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return selectionRect;
+        } finally {
+            readLock.unlock();
         }
     }
 
     @Override
     public void setSelectionRect(Rectangle selectionRect) {
         synchronized (VitcoSettings.SYNC) {
-            this.selectionRect = selectionRect;
-            notifier.onSelectionRectChanged();
+            writeLock.lock();
+            try {
+                this.selectionRect = selectionRect;
+                notifier.onSelectionRectChanged();
+            } finally {
+                writeLock.unlock();
+            }
         }
     }
 
@@ -101,19 +130,27 @@ public class VoxelHighlighting extends VoxelData implements VoxelHighlightingInt
     @Override
     public final void setVoxelSelectionShift(int x, int y, int z) {
         synchronized (VitcoSettings.SYNC) {
-            if (voxelSelectionShift[0] != x || voxelSelectionShift[1] != y || voxelSelectionShift[2] != z) {
-                voxelSelectionShift[0] = x;
-                voxelSelectionShift[1] = y;
-                voxelSelectionShift[2] = z;
-                notifier.onVoxelSelectionShiftChanged();
+            writeLock.lock();
+            try {
+                if (voxelSelectionShift[0] != x || voxelSelectionShift[1] != y || voxelSelectionShift[2] != z) {
+                    voxelSelectionShift[0] = x;
+                    voxelSelectionShift[1] = y;
+                    voxelSelectionShift[2] = z;
+                    notifier.onVoxelSelectionShiftChanged();
+                }
+            } finally {
+                writeLock.unlock();
             }
         }
     }
 
     @Override
     public final int[] getVoxelSelectionShift() {
-        synchronized (VitcoSettings.SYNC) {
+        readLock.lock();
+        try {
             return voxelSelectionShift.clone();
+        } finally {
+            readLock.unlock();
         }
     }
 }
@@ -0,0 +1,173 @@
+package com.vitco.app.core.data;
+
+import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.low.LongCubeIndexer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the new positions of voxels for mass transformations (move, rotate, mirror).
+ *
+ * The computation runs in parallel over chunks of the voxels (fork join), applying the
+ * result to the data is left to the caller. Rotations are restricted to multiples of 90
+ * degrees and use exact integer arithmetic, so no two voxels end up at the same position.
+ * The center of the voxels is kept doubled, so a center that lies between two voxels is
+ * exact as well.
+ */
+abstract class VoxelTransform {
+
+    // the amount of items that are computed by one task
+    private static final int CHUNK_SIZE = 4096;
+
+    // the pool that computes the chunks (the worker threads are daemon threads)
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    // work that is done for a range of items
+    abstract static class ChunkTask {
+        // compute the items from (inclusive) to (exclusive)
+        protected abstract void compute(int from, int to);
+    }
+
+    // helper - splits a range until it is small enough
+    private static final class SplitAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final ChunkTask task;
+        private final int from;
+        private final int to;
+
+        private SplitAction(ChunkTask task, int from, int to) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_SIZE) {
+                task.compute(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SplitAction(task, from, middle), new SplitAction(task, middle, to));
+            }
+        }
+    }
+
+    // compute items [0, count) in parallel (returns when all items are computed)
+    static void parallel(int count, ChunkTask task) {
+        if (count <= CHUNK_SIZE) {
+            task.compute(0, count);
+        } else {
+            POOL.invoke(new SplitAction(task, 0, count));
+        }
+    }
+
+    // ----------------
+
+    // change a position (the array is changed in place), needs to be thread safe
+    protected abstract void transform(int[] pos);
+
+    // create the transformed voxels, the old and new positions are stored in the effected
+    // positions (old positions first, the effected array needs twice the size of the voxels)
+    final Voxel[] apply(final Voxel[] voxels, final long[] effected) {
+        final Voxel[] result = new Voxel[voxels.length];
+        parallel(voxels.length, new ChunkTask() {
+            @Override
+            protected void compute(int from, int to) {
+                int[] pos = new int[3];
+                for (int i = from; i < to; i++) {
+                    Voxel voxel = voxels[i];
+                    pos[0] = voxel.x;
+                    pos[1] = voxel.y;
+                    pos[2] = voxel.z;
+                    transform(pos);
+                    effected[i] = voxel.posId;
+                    effected[i + voxels.length] = LongCubeIndexer.getId(pos[0], pos[1], pos[2]);
+                    result[i] = new Voxel(voxel.id, pos, voxel.getColor(), voxel.isSelected(),
+                            voxel.getTexture(), voxel.getLayerId());
+                }
+            }
+        });
+        return result;
+    }
+
+    // ----------------
+
+    // helper - the doubled center of the voxels (i.e. min + max for every axis)
+    private static int[] getDoubledCenter(final Voxel[] voxels) {
+        int[] min = new int[] {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE};
+        int[] max = new int[] {Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        for (Voxel voxel : voxels) {
+            min[0] = Math.min(min[0], voxel.x);
+            min[1] = Math.min(min[1], voxel.y);
+            min[2] = Math.min(min[2], voxel.z);
+            max[0] = Math.max(max[0], voxel.x);
+            max[1] = Math.max(max[1], voxel.y);
+            max[2] = Math.max(max[2], voxel.z);
+        }
+        return new int[] {min[0] + max[0], min[1] + max[1], min[2] + max[2]};
+    }
+
+    // helper - halve a doubled coordinate (halves are rounded up)
+    private static int half(int doubled) {
+        return (doubled + 1) >> 1;
+    }
+
+    // move the voxels (the shift is subtracted)
+    static VoxelTransform shift(final int[] shift) {
+        return new VoxelTransform() {
+            @Override
+            protected void transform(int[] pos) {
+                pos[0] -= shift[0];
+                pos[1] -= shift[1];
+                pos[2] -= shift[2];
+            }
+        };
+    }
+
+    // mirror the voxels at their center (the voxels must not be empty)
+    static VoxelTransform mirror(Voxel[] voxels, final int axis) {
+        final int center = getDoubledCenter(voxels)[axis];
+        return new VoxelTransform() {
+            @Override
+            protected void transform(int[] pos) {
+                pos[axis] = center - pos[axis];
+            }
+        };
+    }
+
+    // rotate the voxels around their center by quarter turns (the voxels must not be empty),
+    // other angles are not supported as they would move several voxels to the same position
+    static VoxelTransform rotate(Voxel[] voxels, int axis, int quarters) {
+        // the plane of the rotation
+        final int rot1 = axis == 0 ? 1 : 0;
+        final int rot2 = axis == 2 ? 1 : 2;
+        int[] center = getDoubledCenter(voxels);
+        final int center1 = center[rot1];
+        final int center2 = center[rot2];
+        final int turns = ((quarters % 4) + 4) % 4;
+        return new VoxelTransform() {
+            @Override
+            protected void transform(int[] pos) {
+                // offsets to the center (doubled)
+                int d1 = 2 * pos[rot1] - center1;
+                int d2 = 2 * pos[rot2] - center2;
+                switch (turns) {
+                    case 1:
+                        pos[rot1] = half(center1 - d2);
+                        pos[rot2] = half(center2 + d1);
+                        break;
+                    case 2:
+                        pos[rot1] = half(center1 - d1);
+                        pos[rot2] = half(center2 - d2);
+                        break;
+                    case 3:
+                        pos[rot1] = half(center1 + d2);
+                        pos[rot2] = half(center2 - d1);
+                        break;
+                    default: break;
+                }
+            }
+        };
+    }
+}
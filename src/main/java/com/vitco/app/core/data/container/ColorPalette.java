@@ -0,0 +1,97 @@
+package com.vitco.app.core.data.container;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Color table that is shared by the layers of a document.
+ *
+ * Voxels store the index of their color entry. Every color has exactly one entry, the
+ * entry counts how many voxels use it and is released when no voxel uses it anymore
+ * (the index is handed out again). The used colors are hence known without looking
+ * at the voxels and a color can be replaced for all voxels by changing its entry.
+ *
+ * Not thread safe.
+ */
+public final class ColorPalette {
+
+    // entry -> argb color and the amount of voxels that use it
+    private int[] colors = new int[16];
+    private int[] counts = new int[16];
+    // the amount of entries (used and released)
+    private int size = 0;
+    // the entries that were released
+    private final TIntArrayList free = new TIntArrayList();
+    // argb color -> entry
+    private final TIntIntHashMap entries = new TIntIntHashMap(16, 0.5f, -1, -1);
+
+    // get the entry of a color and increase the usage count (the entry is created if necessary)
+    public final int acquire(int rgb) {
+        int entry = entries.get(rgb);
+        if (entry == -1) {
+            if (free.isEmpty()) {
+                entry = size++;
+                if (size > colors.length) {
+                    colors = Arrays.copyOf(colors, colors.length * 2);
+                    counts = Arrays.copyOf(counts, counts.length * 2);
+                }
+            } else {
+                entry = free.removeAt(free.size() - 1);
+            }
+            colors[entry] = rgb;
+            entries.put(rgb, entry);
+        }
+        counts[entry]++;
+        return entry;
+    }
+
+    // decrease the usage count of an entry (the entry is released if it is no longer used)
+    public final void release(int entry) {
+        assert counts[entry] > 0;
+        if (--counts[entry] == 0) {
+            entries.remove(colors[entry]);
+            free.add(entry);
+        }
+    }
+
+    // get the argb color of an entry
+    public final int getRGB(int entry) {
+        return colors[entry];
+    }
+
+    // get the entry of a color (-1 if the color is not used)
+    public final int getEntry(int rgb) {
+        return entries.get(rgb);
+    }
+
+    // get the amount of voxels that use a color
+    public final int getCount(int rgb) {
+        int entry = entries.get(rgb);
+        return entry == -1 ? 0 : counts[entry];
+    }
+
+    // the amount of colors that are used
+    public final int getColorCount() {
+        return entries.size();
+    }
+
+    // get all colors that are used (argb)
+    public final int[] getColors() {
+        return entries.keys();
+    }
+
+    // change a color for all voxels that use it, only possible if the new color
+    // is not used yet (returns false otherwise)
+    public final boolean replace(int fromRgb, int toRgb) {
+        int entry = entries.get(fromRgb);
+        if (entry == -1 || entries.containsKey(toRgb)) {
+            return false;
+        }
+        entries.remove(fromRgb);
+        entries.put(toRgb, entry);
+        colors[entry] = toRgb;
+        return true;
+    }
+}
@@ -2,25 +2,39 @@ package com.vitco.app.core.data.container;
 
 import com.vitco.app.core.container.HackedObjectInputStream;
 import com.vitco.app.manager.error.ErrorHandlerInterface;
+import com.vitco.app.util.file.FileTools;
 import com.vitco.app.util.misc.AutoFileCloser;
 
 import javax.swing.*;
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
 
 /**
  * Collection of all the persistent data
  *
+ * Files are written in the binary vsd format (see VsdFormat) and read through a mapping
+ * (see MappedVsdFile). Files in the old (serialized) vsd format can still be read.
+ *
  * IMPORTANT: This class should never be changes!
  */
 public final class DataContainer implements Serializable {
     // this is just for legacy (vsd format)
     private static final long serialVersionUID = 1L;
+
+    // compression levels of the voxel data when saving
+    public static final int COMPRESSION_NONE = -1;
+    // e.g. for autosaves
+    public static final int COMPRESSION_FAST = Deflater.BEST_SPEED;
+    // e.g. for archiving
+    public static final int COMPRESSION_MAX = Deflater.BEST_COMPRESSION;
     // ###################### DATA (Texture)
     // all existing texture maps
     // todo make this final again once legacy support is removed
-    public HashMap<Integer, ImageIcon> textures;
+    public HashMap<Integer, TextureData> textures;
     // the selected texture
     public int selectedTexture = -1;
 
@@ -53,10 +67,10 @@ public final class DataContainer implements Serializable {
         this(null, null);
     }
 
-    private static final class TmpData {
+    static final class TmpData {
         boolean result = false;
         // ############# create temporary to read from file
-        HashMap<Integer, ImageIcon> textures = new HashMap<Integer, ImageIcon>();
+        HashMap<Integer, TextureData> textures = new HashMap<Integer, TextureData>();
         int selectedTexture = -1;
         // ###################### DATA (Voxel)
         int selectedLayer = -1;
@@ -71,13 +85,64 @@ public final class DataContainer implements Serializable {
         HashMap<Integer, Frame> frames = new HashMap<Integer, Frame>();
     }
 
+    // load a file in any vsd format (null if the file could not be read)
+    public static DataContainer load(File file, ErrorHandlerInterface errorHandler) {
+        DataContainer loaded = new DataContainer(file, errorHandler);
+        if (!loaded.hasLoaded) { // todo remove legacy support (later)
+            // old file format
+            loaded = (DataContainer) FileTools.loadFromFile(file, errorHandler);
+            if (loaded != null) {
+                // the old format holds the textures as icons (the field type does not match)
+                loaded.textures = toTextureData(loaded.textures);
+            }
+        }
+        return loaded;
+    }
+
     // constructor
+    public DataContainer(File file, ErrorHandlerInterface errorHandler) {
+        this(read(file, errorHandler));
+    }
+
+    // constructor for a mapped file, without the voxels the layers are empty
+    // (the chunks can be decoded into the layers later)
+    public DataContainer(MappedVsdFile file, boolean readVoxels) throws IOException {
+        this(read(file, readVoxels));
+    }
+
+    // helper - read a mapped file
+    private static TmpData read(MappedVsdFile file, boolean readVoxels) throws IOException {
+        TmpData tmpData = new TmpData();
+        if (readVoxels) {
+            file.read(tmpData);
+        } else {
+            file.readHeader(tmpData);
+        }
+        tmpData.result = true;
+        return tmpData;
+    }
+
+    // helper - read a file
     @SuppressWarnings("unchecked")
-    public DataContainer(final File file, ErrorHandlerInterface errorHandler) {
+    private static TmpData read(final File file, ErrorHandlerInterface errorHandler) {
 
         final TmpData tmpData = new TmpData();
 
         if (file != null && file.exists()) {
+            try {
+                // binary format
+                MappedVsdFile mapped = MappedVsdFile.open(file);
+                if (mapped != null) {
+                    try {
+                        return read(mapped, true);
+                    } finally {
+                        mapped.close();
+                    }
+                }
+            } catch (IOException e) {
+                errorHandler.handle(e);
+                return tmpData;
+            }
             try {
                 new AutoFileCloser() {
                     @Override protected void doWork() throws Throwable {
@@ -85,13 +150,15 @@ public final class DataContainer implements Serializable {
                             // declare variables for the readers and "watch" them
                             InputStream inputStream = autoClose(new FileInputStream( file ));
                             InputStream buffer = autoClose(new BufferedInputStream( inputStream ));
+
+                            // old (serialized) format
                             HackedObjectInputStream input = autoClose(new HackedObjectInputStream( buffer ));
 
                             if (input.available() > 0 && input.readUTF().equals("**VSD2013**")) {
                                 while (input.available() > 0) {
                                     String token = input.readUTF();
                                     if (token.equals("#textures#")) {
-                                        tmpData.textures = (HashMap<Integer, ImageIcon>) input.readObject();
+                                        tmpData.textures = toTextureData((Map<?, ?>) input.readObject());
                                     } else if (token.equals("#selectedTexture#")) {
                                         tmpData.selectedTexture = (Integer) input.readObject();
                                     } else if (token.equals("#selectedLayer#")) {
@@ -123,8 +190,22 @@ public final class DataContainer implements Serializable {
                 errorHandler.handle(e);
             }
         }
+        return tmpData;
+    }
 
+    // helper - convert the textures of the old format (texture id -> icon)
+    private static HashMap<Integer, TextureData> toTextureData(Map<?, ?> icons) {
+        HashMap<Integer, TextureData> result = new HashMap<Integer, TextureData>();
+        if (icons != null) {
+            for (Map.Entry<?, ?> entry : icons.entrySet()) {
+                result.put((Integer) entry.getKey(), TextureData.fromIcon((ImageIcon) entry.getValue()));
+            }
+        }
+        return result;
+    }
 
+    // helper - assign the data that was read
+    private DataContainer(TmpData tmpData) {
         // ############# assign temporary vars to vars
         this.textures = tmpData.textures;
         this.selectedTexture = tmpData.selectedTexture;
@@ -144,60 +225,27 @@ public final class DataContainer implements Serializable {
     }
 
     // save to file function
-    public final boolean saveToVsdFile(final File file, ErrorHandlerInterface errorHandler) {
+    public final boolean saveToVsdFile(File file, ErrorHandlerInterface errorHandler) {
+        return saveToVsdFile(file, COMPRESSION_NONE, errorHandler);
+    }
+
+    // save to file function, the voxel data is compressed with the given level (one of
+    // the COMPRESSION_* constants or a deflate level), using several threads
+    public final boolean saveToVsdFile(final File file, final int compression, ErrorHandlerInterface errorHandler) {
         final boolean[] result = {false};
         try {
             new AutoFileCloser() {
                 @Override protected void doWork() throws Throwable {
                     OutputStream outputStream = autoClose(new FileOutputStream( file ));
-                    OutputStream buffer = autoClose(new BufferedOutputStream( outputStream ));
-                    ObjectOutputStream output = autoClose(new ObjectOutputStream( buffer ));
-
-                    // write identifier
-                    output.writeUTF("**VSD2013**");
-
-                    if (textures != null) {
-                        output.writeUTF("#textures#");
-                        output.writeObject(textures);
-                    }
-
-                    output.writeUTF("#selectedTexture#");
-                    output.writeObject(selectedTexture);
-
-                    output.writeUTF("#selectedLayer#");
-                    output.writeObject(selectedLayer);
-
-                    if (layers != null) {
-                        output.writeUTF("#layers#");
-                        output.writeObject(layers);
-                    }
-                    if (layerOrder != null) {
-                        output.writeUTF("#layerOrder#");
-                        output.writeObject(layerOrder);
-                    }
-                    if (voxels != null) {
-                        output.writeUTF("#voxels#");
-                        output.writeObject(voxels);
-                    }
-                    if (points != null) {
-                        output.writeUTF("#points#");
-                        output.writeObject(points);
-                    }
-                    if (lines != null) {
-                        output.writeUTF("#lines#");
-                        output.writeObject(lines);
-                    }
-                    if (pointsToLines != null) {
-                        output.writeUTF("#pointsToLines#");
-                        output.writeObject(pointsToLines);
-                    }
+                    if (compression == COMPRESSION_NONE) {
+                        OutputStream buffer = autoClose(new BufferedOutputStream( outputStream ));
+                        DataOutputStream output = autoClose(new DataOutputStream( buffer ));
 
-                    output.writeUTF("#activeFrame#");
-                    output.writeObject(activeFrame);
+                        VsdFormat.write(DataContainer.this, output);
+                    } else {
+                        FileChannel channel = ((FileOutputStream) outputStream).getChannel();
 
-                    if (frames != null) {
-                        output.writeUTF("#frames#");
-                        output.writeObject(frames);
+                        VsdFormat.write(DataContainer.this, channel, compression);
                     }
 
                     result[0] = true;
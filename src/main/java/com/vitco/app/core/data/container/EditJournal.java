@@ -0,0 +1,901 @@
+package com.vitco.app.core.data.container;
+
+import com.vitco.app.manager.error.ErrorHandlerInterface;
+import com.vitco.app.util.file.PackedArrayIO;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append only journal of the changes to a document, stored next to the project file.
+ *
+ * Every change is recorded as the resulting state of what changed: the voxels at the effected
+ * positions, the layer table, the textures or the animation. Replaying a record hence sets
+ * a state and replaying a record twice does no harm. The records are buffered and written
+ * (and synced to the disk) in batches by a background thread, so recording does not wait
+ * for the disk. Every record has a checksum, a record that was only partially written when
+ * the program crashed ends the journal.
+ *
+ * The journal starts from the project file. Once it grows too large, it is folded into a
+ * snapshot in the background: the journal is renamed and a new journal (that starts from the
+ * snapshot) is used, then the old journal is replayed onto its start and written as the
+ * snapshot. Until the snapshot is complete the old journal is kept, so the data can be
+ * recovered at any point. Only the voxels that were written by the old journal are held in
+ * memory while folding, the voxels of the start are read from its mapping one chunk at a time
+ * (a start in the old serialized format is loaded as a whole).
+ *
+ * Files: [project].journal, [project].journal.old (while folding) and [project].autosave
+ */
+public final class EditJournal {
+
+    // identifies a journal ("VSDJ")
+    private static final int MAGIC = 0x5653444A;
+    // the current version
+    private static final int VERSION = 1;
+    // the size of the journal header
+    private static final int HEADER_SIZE = 24;
+    // the length of the start of a journal that starts from the snapshot
+    private static final long SNAPSHOT_START = -1;
+
+    // record tags (the other tags are the section tags of the vsd format)
+    private static final int TAG_VOXELS = 0x564F584C; // "VOXL"
+    private static final int TAG_TEXTURE_LIST = 0x54584C53; // "TXLS"
+
+    // voxel record flags
+    private static final int FLAG_CLEAR = 1;
+
+    // how long records are buffered before they are written (ms)
+    private static final long FLUSH_INTERVAL = 250;
+    // the amount of buffered records that are written right away (bytes)
+    private static final int FLUSH_SIZE = 4 * 1024 * 1024;
+    // the journal size at which it is folded into a snapshot (bytes)
+    private static final long DEFAULT_COMPACT_SIZE = 64L * 1024 * 1024;
+
+    // ----------------
+
+    // the side-car files of a project
+    private static File getJournalFile(File project) {
+        return new File(project.getPath() + ".journal");
+    }
+
+    private static File getOldJournalFile(File project) {
+        return new File(project.getPath() + ".journal.old");
+    }
+
+    private static File getSnapshotFile(File project) {
+        return new File(project.getPath() + ".autosave");
+    }
+
+    // delete the side-car files of a project
+    public static void delete(File project) {
+        getJournalFile(project).delete();
+        getOldJournalFile(project).delete();
+        getSnapshotFile(project).delete();
+    }
+
+    // helper - read the start of a journal {length, last modified} of the file it starts
+    // from (null if the file is not a valid journal)
+    private static long[] readStart(File journal) {
+        if (!journal.isFile()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() > VERSION) {
+                    return null;
+                }
+                return new long[] {in.readLong(), in.readLong()};
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // get the file the journal of a project needs to be replayed onto (the project or
+    // the snapshot), null if there is nothing to recover
+    public static File getRecoveryBase(File project) {
+        long[] start = readStart(getJournalFile(project));
+        if (start == null) {
+            return null;
+        }
+        if (start[0] == SNAPSHOT_START) {
+            // the snapshot might not have been completed
+            long[] oldStart = readStart(getOldJournalFile(project));
+            if (oldStart != null) {
+                start = oldStart;
+            }
+        }
+        if (start[0] == SNAPSHOT_START) {
+            File snapshot = getSnapshotFile(project);
+            return snapshot.isFile() ? snapshot : null;
+        }
+        if (getJournalFile(project).length() <= HEADER_SIZE && readStart(getOldJournalFile(project)) == null) {
+            return null; // no changes were recorded
+        }
+        // the project must not have changed since the journal was started
+        return project.length() == start[0] && project.lastModified() == start[1] ? project : null;
+    }
+
+    // replay the journal of a project onto the data that was loaded from the recovery base
+    public static void replay(File project, DataContainer container) throws IOException {
+        File journal = getJournalFile(project);
+        long[] start = readStart(journal);
+        File old = getOldJournalFile(project);
+        if (start != null && start[0] == SNAPSHOT_START && readStart(old) != null) {
+            replayJournal(old, container, null);
+        }
+        replayJournal(journal, container, null);
+    }
+
+    // what a journal changed, so it can be replayed onto layers that only hold the written voxels
+    private static final class Changes {
+        // the positions that were written (the voxels of the start at these positions are replaced)
+        private final TLongHashSet posIds = new TLongHashSet();
+        // the voxels that were written (they are removed from anywhere else)
+        private final TIntHashSet voxelIds = new TIntHashSet();
+        // the layers that were removed at some point (the voxels of the start are gone)
+        private final TIntHashSet removedLayers = new TIntHashSet();
+        // true if all voxels were replaced
+        private boolean cleared = false;
+
+        // check if a voxel of the start is still there
+        private boolean keeps(int layerId, int voxelId, long posId) {
+            return !cleared && !removedLayers.contains(layerId)
+                    && !voxelIds.contains(voxelId) && !posIds.contains(posId);
+        }
+    }
+
+    // helper - replay the records of a journal (the container can be null to only check the
+    // records), the changes are collected if not null, returns the length of the valid part
+    private static long replayJournal(File journal, DataContainer container, Changes changes) throws IOException {
+        long fileLength = journal.length();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() > VERSION) {
+                throw new IOException("Invalid journal.");
+            }
+            in.readLong();
+            in.readLong();
+            long valid = HEADER_SIZE;
+            byte[] buffer = new byte[4096];
+            CRC32 crc = new CRC32();
+            while (true) {
+                int tag;
+                int length;
+                try {
+                    tag = in.readInt();
+                    length = in.readInt();
+                    if (length < 0 || valid + 12 + length > fileLength) {
+                        break; // partially written record
+                    }
+                    if (length > buffer.length) {
+                        buffer = new byte[Math.max(length, buffer.length * 2)];
+                    }
+                    in.readFully(buffer, 0, length);
+                    crc.reset();
+                    crc.update(buffer, 0, length);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break; // partially written record
+                }
+                if (container != null) {
+                    apply(tag, new DataInputStream(new ByteArrayInputStream(buffer, 0, length)), container, changes);
+                }
+                valid += 12 + length;
+            }
+            return valid;
+        } finally {
+            in.close();
+        }
+    }
+
+    // helper - apply a record
+    private static void apply(int tag, DataInputStream in, DataContainer container,
+                              Changes changes) throws IOException {
+        DataContainer.TmpData data = new DataContainer.TmpData();
+        switch (tag) {
+            case TAG_VOXELS:
+                applyVoxels(in, container, changes);
+                break;
+            case VsdFormat.TAG_STATE:
+                VsdFormat.readState(in, data);
+                container.selectedTexture = data.selectedTexture;
+                container.selectedLayer = data.selectedLayer;
+                container.activeFrame = data.activeFrame;
+                break;
+            case VsdFormat.TAG_LAYERS:
+                VsdFormat.readLayers(in, data);
+                if (changes != null) {
+                    for (Integer layerId : container.layers.keySet()) {
+                        if (!data.layers.containsKey(layerId)) {
+                            changes.removedLayers.add(layerId);
+                        }
+                    }
+                }
+                container.layers.keySet().retainAll(data.layers.keySet());
+                for (VoxelLayer layer : data.layers.values()) {
+                    VoxelLayer existing = container.layers.get(layer.id);
+                    if (existing == null) {
+                        container.layers.put(layer.id, layer);
+                    } else {
+                        existing.setName(layer.getName());
+                        existing.setVisible(layer.isVisible());
+                    }
+                }
+                container.layerOrder.clear();
+                container.layerOrder.addAll(data.layerOrder);
+                break;
+            case TAG_TEXTURE_LIST:
+                HashSet<Integer> textureIds = new HashSet<Integer>();
+                for (int i = 0, count = in.readInt(); i < count; i++) {
+                    textureIds.add(in.readInt());
+                }
+                container.textures.keySet().retainAll(textureIds);
+                break;
+            case VsdFormat.TAG_TEXTURE:
+                VsdFormat.readTexture(in, in.available(), data);
+                container.textures.putAll(data.textures);
+                break;
+            case VsdFormat.TAG_ANIMATION:
+                VsdFormat.readAnimation(in, data);
+                container.points.clear();
+                container.points.putAll(data.points);
+                container.lines.clear();
+                container.lines.putAll(data.lines);
+                container.pointsToLines.clear();
+                container.pointsToLines.putAll(data.pointsToLines);
+                container.frames.clear();
+                container.frames.putAll(data.frames);
+                break;
+            default: break; // unknown record
+        }
+    }
+
+    // helper - apply a voxel record
+    private static void applyVoxels(DataInput in, DataContainer container, Changes changes) throws IOException {
+        int flags = in.readUnsignedByte();
+        if ((flags & FLAG_CLEAR) != 0) {
+            if (changes != null) {
+                changes.cleared = true;
+            }
+            // all voxels are listed
+            for (Map.Entry<Integer, VoxelLayer> entry : container.layers.entrySet()) {
+                VoxelLayer layer = entry.getValue();
+                VoxelLayer cleared = new VoxelLayer(layer.id, layer.getName());
+                cleared.setVisible(layer.isVisible());
+                entry.setValue(cleared);
+            }
+        } else {
+            // clear the positions
+            for (long posId : PackedArrayIO.readLongs(in)) {
+                if (changes != null) {
+                    changes.posIds.add(posId);
+                }
+                for (VoxelLayer layer : container.layers.values()) {
+                    int voxelId = layer.getVoxelId(posId);
+                    if (voxelId != -1) {
+                        layer.removeVoxel(voxelId);
+                    }
+                }
+            }
+        }
+        // the voxels
+        for (int i = 0, count = in.readInt(); i < count; i++) {
+            int layerId = in.readInt();
+            int voxelId = in.readInt();
+            long posId = in.readLong();
+            if (changes != null) {
+                changes.posIds.add(posId);
+                changes.voxelIds.add(voxelId);
+            }
+            // the voxel might still be somewhere else (when records are replayed twice)
+            for (VoxelLayer layer : container.layers.values()) {
+                layer.removeVoxel(voxelId);
+            }
+            VoxelLayer layer = container.layers.get(layerId);
+            if (layer == null) {
+                // the data still needs to be read
+                layer = new VoxelLayer(layerId, "");
+            }
+            int existing = layer.getVoxelId(posId);
+            if (existing != -1) {
+                layer.removeVoxel(existing);
+            }
+            layer.readVoxelData(in, voxelId, posId);
+        }
+    }
+
+    // ----------------
+
+    // the project and the side-car files
+    private final File project;
+    private final File journalFile;
+    private final File oldJournalFile;
+    private final File snapshotFile;
+    private final ErrorHandlerInterface errorHandler;
+
+    // the journal size at which it is folded into a snapshot
+    private long compactSize = DEFAULT_COMPACT_SIZE;
+
+    // the records that are not written yet
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    // buffer to encode a record (reused)
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+
+    // the last recorded state and layer table
+    private byte[] lastState = null;
+    private byte[] lastLayers = null;
+    // the layers that are known to the journal
+    private final TIntHashSet knownLayers = new TIntHashSet();
+
+    // guards the journal file
+    private final Object fileLock = new Object();
+    // the journal file and its size (including the records that are being written)
+    private FileChannel channel;
+    private volatile long size;
+    // true once closed (or when writing failed)
+    private volatile boolean closed = false;
+    // the thread that folds the old journal (null if none)
+    private Thread compactor = null;
+    private final Thread writer;
+
+    // start a journal for a project that holds the data of the container, if append is
+    // true the existing journal is continued (after it was replayed)
+    public static EditJournal start(File project, DataContainer container, boolean append,
+                                    ErrorHandlerInterface errorHandler) throws IOException {
+        return new EditJournal(project, container, append, errorHandler);
+    }
+
+    private EditJournal(File project, DataContainer container, boolean append,
+                        ErrorHandlerInterface errorHandler) throws IOException {
+        this.project = project.getAbsoluteFile();
+        this.journalFile = getJournalFile(project);
+        this.oldJournalFile = getOldJournalFile(project);
+        this.snapshotFile = getSnapshotFile(project);
+        this.errorHandler = errorHandler;
+        if (append && readStart(journalFile) != null) {
+            // continue after the last valid record
+            size = replayJournal(journalFile, null, null);
+            channel = new RandomAccessFile(journalFile, "rw").getChannel();
+            channel.truncate(size);
+            channel.position(size);
+        } else {
+            delete(project);
+            channel = createJournal(journalFile, project.length(), project.lastModified());
+        }
+        knownLayers.addAll(toIntArray(container.layers.keySet()));
+        lastState = encodeState(container);
+        lastLayers = encodeLayers(container);
+        if (oldJournalFile.exists()) {
+            // the last snapshot was not completed
+            startCompactor();
+        }
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "Edit Journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // helper - create an empty journal
+    private FileChannel createJournal(File file, long startLength, long startModified) throws IOException {
+        FileChannel result = new RandomAccessFile(file, "rw").getChannel();
+        result.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(startLength).putLong(startModified);
+        header.flip();
+        while (header.hasRemaining()) {
+            result.write(header);
+        }
+        result.force(true);
+        size = HEADER_SIZE;
+        return result;
+    }
+
+    // helper - convert ids to an array
+    private static int[] toIntArray(Collection<Integer> ids) {
+        int[] result = new int[ids.size()];
+        int i = 0;
+        for (Integer id : ids) {
+            result[i++] = id;
+        }
+        return result;
+    }
+
+    // the project file of the journal
+    public final File getProject() {
+        return project;
+    }
+
+    // ----------------
+
+    // record the changes of a voxel action: the voxels at the effected positions, the layer
+    // table and the textures (all voxels are written if the positions are not known, the
+    // voxel intents report their positions so this does not happen while editing)
+    public final synchronized void recordVoxels(DataContainer container, long[] effected, boolean effectsTexture) {
+        if (closed) {
+            return;
+        }
+        try {
+            recordState(container);
+            // the layer table
+            byte[] layers = encodeLayers(container);
+            if (!Arrays.equals(layers, lastLayers)) {
+                lastLayers = layers;
+                writeRecord(VsdFormat.TAG_LAYERS, layers);
+                // layers that appear again (e.g. undo of delete) have all their voxels
+                TIntHashSet added = new TIntHashSet();
+                for (Integer layerId : container.layers.keySet()) {
+                    if (!knownLayers.contains(layerId)) {
+                        added.add(layerId);
+                    }
+                }
+                knownLayers.clear();
+                knownLayers.addAll(toIntArray(container.layers.keySet()));
+                if (!added.isEmpty() && effected != null) {
+                    for (int layerId : added.toArray()) {
+                        VoxelLayer layer = container.layers.get(layerId);
+                        if (layer.getSize() > 0) {
+                            writeVoxels(container, layer.getPosIds(), false);
+                        }
+                    }
+                }
+            }
+            // the voxels
+            if (effected == null) {
+                writeVoxels(container, null, true);
+            } else if (effected.length > 0) {
+                writeVoxels(container, effected, false);
+            }
+            // the textures
+            if (effectsTexture) {
+                recordTextures(container);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // record the animation
+    public final synchronized void recordAnimation(DataContainer container) {
+        if (closed) {
+            return;
+        }
+        try {
+            recordState(container);
+            record.reset();
+            VsdFormat.writeAnimation(recordOut, container);
+            recordOut.flush();
+            writeRecord(VsdFormat.TAG_ANIMATION, record.toByteArray());
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // helper - record the state if it changed
+    private void recordState(DataContainer container) throws IOException {
+        byte[] state = encodeState(container);
+        if (!Arrays.equals(state, lastState)) {
+            lastState = state;
+            writeRecord(VsdFormat.TAG_STATE, state);
+        }
+    }
+
+    // helper - record the list of textures and their images
+    private void recordTextures(DataContainer container) throws IOException {
+        record.reset();
+        recordOut.writeInt(container.textures.size());
+        for (Integer textureId : container.textures.keySet()) {
+            recordOut.writeInt(textureId);
+        }
+        recordOut.flush();
+        writeRecord(TAG_TEXTURE_LIST, record.toByteArray());
+        for (Map.Entry<Integer, TextureData> entry : container.textures.entrySet()) {
+            record.reset();
+            VsdFormat.writeTexture(recordOut, entry.getKey(), entry.getValue());
+            recordOut.flush();
+            writeRecord(VsdFormat.TAG_TEXTURE, record.toByteArray());
+        }
+    }
+
+    // helper - record the voxels at positions (or all voxels)
+    private void writeVoxels(DataContainer container, long[] posIds, boolean all) throws IOException {
+        record.reset();
+        recordOut.writeByte(all ? FLAG_CLEAR : 0);
+        if (!all) {
+            PackedArrayIO.writeLongs(recordOut, posIds);
+        }
+        int count = 0;
+        for (VoxelLayer layer : container.layers.values()) {
+            count += all ? layer.getSize() : countVoxels(layer, posIds);
+        }
+        recordOut.writeInt(count);
+        for (VoxelLayer layer : container.layers.values()) {
+            if (all) {
+                for (int voxelId : layer.getVoxelIds()) {
+                    writeVoxel(layer, voxelId, layer.getPosId(voxelId));
+                }
+            } else {
+                for (long posId : posIds) {
+                    int voxelId = layer.getVoxelId(posId);
+                    if (voxelId != -1) {
+                        writeVoxel(layer, voxelId, posId);
+                    }
+                }
+            }
+        }
+        recordOut.flush();
+        writeRecord(TAG_VOXELS, record.toByteArray());
+    }
+
+    // helper - count the voxels of a layer at positions
+    private static int countVoxels(VoxelLayer layer, long[] posIds) {
+        int count = 0;
+        for (long posId : posIds) {
+            if (layer.getVoxelId(posId) != -1) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // helper - write a voxel into the current record
+    private void writeVoxel(VoxelLayer layer, int voxelId, long posId) throws IOException {
+        recordOut.writeInt(layer.id);
+        recordOut.writeInt(voxelId);
+        recordOut.writeLong(posId);
+        layer.writeVoxelData(recordOut, voxelId);
+    }
+
+    // helper - encode the state
+    private static byte[] encodeState(DataContainer container) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        VsdFormat.writeState(out, container);
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    // helper - encode the layer table
+    private static byte[] encodeLayers(DataContainer container) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        VsdFormat.writeLayers(out, container);
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    // helper - add a record to the pending records
+    private void writeRecord(int tag, byte[] content) throws IOException {
+        crc.reset();
+        crc.update(content, 0, content.length);
+        DataOutputStream out = new DataOutputStream(pending);
+        out.writeInt(tag);
+        out.writeInt(content.length);
+        out.write(content);
+        out.writeInt((int) crc.getValue());
+        out.flush();
+        if (pending.size() > FLUSH_SIZE) {
+            notifyAll();
+        }
+    }
+
+    // ----------------
+
+    // helper - write the pending records in batches and fold the journal when it gets too large
+    private void writeLoop() {
+        try {
+            while (!closed) {
+                synchronized (this) {
+                    wait(FLUSH_INTERVAL);
+                }
+                writePending();
+                rotate();
+            }
+        } catch (InterruptedException ignored) {
+            // stop
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // helper - write the pending records and sync them to the disk
+    private void writePending() throws IOException {
+        synchronized (fileLock) {
+            byte[] records;
+            synchronized (this) {
+                if (pending.size() == 0 || channel == null) {
+                    return;
+                }
+                records = pending.toByteArray();
+                pending.reset();
+                size += records.length;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(records);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    // write all recorded changes to the disk now
+    public final void flush() {
+        try {
+            writePending();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // helper - if the journal is large enough, start a new journal (that starts from the
+    // snapshot) and fold the current one
+    private void rotate() throws IOException {
+        synchronized (fileLock) {
+            synchronized (this) {
+                if (closed || compactor != null || size <= HEADER_SIZE || size <= compactSize) {
+                    return;
+                }
+            }
+            channel.close();
+            Files.move(journalFile.toPath(), oldJournalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            channel = createJournal(journalFile, SNAPSHOT_START, 0);
+            startCompactor();
+        }
+    }
+
+    // helper - fold the old journal into the snapshot in the background
+    private synchronized void startCompactor() {
+        compactor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    fail(e);
+                } finally {
+                    synchronized (EditJournal.this) {
+                        compactor = null;
+                        EditJournal.this.notifyAll();
+                    }
+                }
+            }
+        }, "Edit Journal Compactor");
+        compactor.setDaemon(true);
+        compactor.start();
+    }
+
+    // helper - replay the old journal onto its start and write the result as the snapshot
+    private void compact() throws IOException {
+        long[] start = readStart(oldJournalFile);
+        if (start == null) {
+            oldJournalFile.delete();
+            return;
+        }
+        File base = start[0] == SNAPSHOT_START ? snapshotFile : project;
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        // the incomplete snapshot is deleted on any error
+        boolean written = false;
+        try {
+            MappedVsdFile mapped = MappedVsdFile.open(base);
+            if (mapped != null) {
+                try {
+                    fold(mapped, tmp);
+                } finally {
+                    mapped.close();
+                }
+            } else {
+                // the old (serialized) format can only be read as a whole
+                DataContainer container = DataContainer.load(base, errorHandler);
+                if (container == null) {
+                    throw new IOException("Unable to read " + base + ".");
+                }
+                replayJournal(oldJournalFile, container, null);
+                if (!container.saveToVsdFile(tmp, DataContainer.COMPRESSION_FAST, errorHandler)) {
+                    throw new IOException("Unable to write " + tmp + ".");
+                }
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                tmp.delete();
+            }
+        }
+        synchronized (this) {
+            if (closed) {
+                tmp.delete();
+                return;
+            }
+            Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            oldJournalFile.delete();
+        }
+    }
+
+    // helper - replay the old journal onto a mapped start and write the result to a file, the
+    // layers only hold the voxels that were written by the journal, the voxels of the start are
+    // decoded one chunk at a time and merged with them
+    private void fold(final MappedVsdFile mapped, File target) throws IOException {
+        final DataContainer written = new DataContainer(mapped, false);
+        final Changes changes = new Changes();
+        replayJournal(oldJournalFile, written, changes);
+        // the voxels of the start that are kept (counted first, the summary is written before the chunks)
+        final TIntIntHashMap counts = new TIntIntHashMap();
+        final TIntObjectHashMap<int[][]> bounds = new TIntObjectHashMap<int[][]>();
+        for (int chunk = 0; chunk < mapped.getChunkCount(); chunk++) {
+            VoxelLayer layer = decodeChunk(mapped, chunk, written, changes);
+            int[][] chunkBounds = layer == null ? null : layer.getBounds();
+            if (chunkBounds != null) {
+                counts.adjustOrPutValue(layer.id, layer.getSize(), layer.getSize());
+                bounds.put(layer.id, union(bounds.get(layer.id), chunkBounds));
+            }
+        }
+        FileChannel channel = new FileOutputStream(target).getChannel();
+        try {
+            VsdFormat.write(written, new VsdFormat.VoxelSource() {
+                @Override
+                public int getSize(VoxelLayer layer) {
+                    return counts.get(layer.id) + layer.getSize();
+                }
+
+                @Override
+                public int[][] getBounds(VoxelLayer layer) {
+                    return union(bounds.get(layer.id), layer.getBounds());
+                }
+
+                @Override
+                public void writeChunks(VoxelLayer layer, VsdFormat.SectionWriter writer) throws IOException {
+                    for (int chunk = 0; chunk < mapped.getChunkCount(); chunk++) {
+                        if (mapped.getChunkLayer(chunk) != layer.id) {
+                            continue;
+                        }
+                        VoxelLayer merged = decodeChunk(mapped, chunk, written, changes);
+                        if (merged == null) {
+                            continue;
+                        }
+                        // the written voxels of the chunk are moved into it
+                        int[] min = mapped.getChunkOrigin(chunk);
+                        int[] max = new int[3];
+                        for (int axis = 0; axis < 3; axis++) {
+                            max[axis] = min[axis] + MappedVsdFile.CHUNK_SIZE - 1;
+                        }
+                        for (Voxel voxel : layer.getVoxelsInBox(min, max)) {
+                            layer.removeVoxel(voxel.id);
+                            merged.addVoxel(voxel);
+                        }
+                        merged.writeChunks(writer, VsdFormat.TAG_CHUNK);
+                    }
+                    // the written voxels outside of the chunks of the start
+                    layer.writeChunks(writer, VsdFormat.TAG_CHUNK);
+                }
+            }, channel, DataContainer.COMPRESSION_FAST);
+        } finally {
+            channel.close();
+        }
+    }
+
+    // helper - decode a chunk of the start without the voxels that were replaced by the journal
+    // (null if the layer of the chunk does not exist anymore)
+    private static VoxelLayer decodeChunk(MappedVsdFile mapped, int chunk, DataContainer written,
+                                          Changes changes) throws IOException {
+        int layerId = mapped.getChunkLayer(chunk);
+        if (!written.layers.containsKey(layerId)) {
+            return null;
+        }
+        VoxelLayer result = new VoxelLayer(layerId, "");
+        mapped.decodeChunk(chunk, result, null, null);
+        int[] voxelIds = result.getVoxelIds();
+        long[] posIds = result.getPosIds();
+        for (int i = 0; i < voxelIds.length; i++) {
+            if (!changes.keeps(layerId, voxelIds[i], posIds[i])) {
+                result.removeVoxel(voxelIds[i]);
+            }
+        }
+        return result;
+    }
+
+    // helper - the union of two bounds {min, max} (either can be null)
+    private static int[][] union(int[][] a, int[][] b) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        int[][] result = new int[2][3];
+        for (int axis = 0; axis < 3; axis++) {
+            result[0][axis] = Math.min(a[0][axis], b[0][axis]);
+            result[1][axis] = Math.max(a[1][axis], b[1][axis]);
+        }
+        return result;
+    }
+
+    // fold the journal into the snapshot now and wait until done (normally this happens
+    // once the journal is large enough)
+    public final void compact(long timeout) throws InterruptedException {
+        synchronized (this) {
+            compactSize = 0;
+            notifyAll();
+        }
+        long end = System.currentTimeMillis() + timeout;
+        synchronized (this) {
+            while (!closed && (size > HEADER_SIZE || pending.size() > 0 || compactor != null)
+                    && System.currentTimeMillis() < end) {
+                wait(50);
+            }
+            compactSize = DEFAULT_COMPACT_SIZE;
+        }
+    }
+
+    // helper - stop recording after an error (errors after the journal was closed are
+    // expected, e.g. when the compactor is still reading)
+    private void fail(Exception e) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (errorHandler != null) {
+            errorHandler.handle(e);
+        }
+    }
+
+    // stop the journal, the side-car files are deleted if delete is true (otherwise the
+    // recorded changes are written first and the files are kept for recovery)
+    public final void close(boolean delete) {
+        if (!delete && !closed) {
+            flush();
+        }
+        // the writer finishes the current batch and stops (it is not interrupted, as that
+        // would close the channel while it is written)
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        // the compactor is waited for as well, it might read the project file
+        Thread running;
+        synchronized (this) {
+            running = compactor;
+        }
+        try {
+            writer.join();
+            if (running != null) {
+                running.join();
+            }
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (fileLock) {
+            try {
+                if (channel != null) {
+                    channel.close();
+                    channel = null;
+                }
+            } catch (IOException ignored) {
+                // nothing to do
+            }
+        }
+        if (delete) {
+            synchronized (this) {
+                delete(project);
+            }
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.vitco.app.core.data.container;
+
+import com.vitco.app.util.file.MappedFileIn;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A binary vsd file (see VsdFormat) that is mapped into memory.
+ *
+ * Opening the file only indexes the sections, so the amount of voxels, the bounds and
+ * a low resolution preview (the occupied chunks) of every layer are known before any
+ * voxel is decoded. The chunks are decoded on demand, either one by one into a layer or
+ * for a region (the chunks that intersect a box).
+ *
+ * The methods that read from the mapping are synchronized. After close() the metadata
+ * can still be used, but nothing can be decoded anymore.
+ */
+public final class MappedVsdFile {
+
+    // the side length of the chunks (the resolution of the preview)
+    public static final int CHUNK_SIZE = 16;
+
+    // the mapped file (null when closed)
+    private MappedByteBuffer buffer;
+
+    // the content offset and length of the sections that are not chunks
+    private final TIntArrayList sectionTags = new TIntArrayList();
+    private final TIntArrayList sectionOffsets = new TIntArrayList();
+    private final TIntArrayList sectionLengths = new TIntArrayList();
+
+    // the chunk sections: content offset, length, layer, origin and voxel count
+    private final TIntArrayList chunkOffsets = new TIntArrayList();
+    private final TIntArrayList chunkLengths = new TIntArrayList();
+    private final TIntArrayList chunkLayers = new TIntArrayList();
+    private final TIntArrayList chunkOrigins = new TIntArrayList();
+    private final TIntArrayList chunkCounts = new TIntArrayList();
+    // the chunks that are compressed
+    private final BitSet chunkDeflated = new BitSet();
+    // inflates the compressed chunks (created when needed)
+    private Inflater inflater = null;
+
+    // layer id -> voxel count and bounds {min, max} (from the summary or the chunks)
+    private final TIntObjectHashMap<int[]> layerCounts = new TIntObjectHashMap<int[]>();
+    private final TIntObjectHashMap<int[][]> layerBounds = new TIntObjectHashMap<int[][]>();
+
+    // open a file, returns null if the file is not in the binary vsd format
+    public static MappedVsdFile open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < 8) {
+                return null;
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to be mapped.");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != VsdFormat.MAGIC) {
+                MappedFileIn.unmap(buffer);
+                return null;
+            }
+            MappedVsdFile result = new MappedVsdFile(buffer);
+            try {
+                result.index();
+            } catch (IOException e) {
+                result.close();
+                throw e;
+            } catch (RuntimeException e) {
+                result.close();
+                throw new IOException("Invalid vsd file.", e);
+            }
+            return result;
+        } finally {
+            // the mapping stays valid when the channel is closed
+            raf.close();
+        }
+    }
+
+    private MappedVsdFile(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    // helper - index the sections (only the chunk headers and the summary are read)
+    private void index() throws IOException {
+        int version = buffer.getInt(4);
+        if (version > VsdFormat.VERSION) {
+            throw new IOException("Unsupported vsd version " + version + ".");
+        }
+        boolean hasSummary = false;
+        int pos = 8;
+        while (true) {
+            if (pos + 8 > buffer.limit()) {
+                throw new EOFException();
+            }
+            int tag = buffer.getInt(pos);
+            int length = buffer.getInt(pos + 4);
+            int offset = pos + 8;
+            if (tag == VsdFormat.TAG_END) {
+                break;
+            }
+            if (length < 0 || offset + length > buffer.limit()) {
+                throw new IOException("Invalid section length.");
+            }
+            if (tag == VsdFormat.TAG_CHUNK || tag == VsdFormat.TAG_CHUNK_DEFLATED) {
+                if (length < VsdFormat.CHUNK_HEADER_SIZE) {
+                    throw new IOException("Invalid chunk.");
+                }
+                chunkDeflated.set(chunkOffsets.size(), tag == VsdFormat.TAG_CHUNK_DEFLATED);
+                chunkOffsets.add(offset);
+                chunkLengths.add(length);
+                chunkLayers.add(buffer.getInt(offset));
+                chunkOrigins.add(buffer.getInt(offset + 4));
+                chunkOrigins.add(buffer.getInt(offset + 8));
+                chunkOrigins.add(buffer.getInt(offset + 12));
+                chunkCounts.add(buffer.getInt(offset + 16));
+            } else if (tag == VsdFormat.TAG_SUMMARY) {
+                readSummary(new DataInputStream(getSection(offset, length)));
+                hasSummary = true;
+            } else {
+                // state, layers, textures, animation (and unknown sections)
+                sectionTags.add(tag);
+                sectionOffsets.add(offset);
+                sectionLengths.add(length);
+            }
+            pos = offset + length;
+        }
+        if (!hasSummary) {
+            // older files: the bounds are only known with the precision of the chunks
+            for (int chunk = 0; chunk < chunkLayers.size(); chunk++) {
+                int layerId = chunkLayers.get(chunk);
+                int[] count = layerCounts.get(layerId);
+                int[][] bounds = layerBounds.get(layerId);
+                if (count == null) {
+                    count = new int[1];
+                    layerCounts.put(layerId, count);
+                    bounds = new int[][] {
+                            {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE},
+                            {Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE}
+                    };
+                    layerBounds.put(layerId, bounds);
+                }
+                count[0] += chunkCounts.get(chunk);
+                for (int axis = 0; axis < 3; axis++) {
+                    int origin = chunkOrigins.get(chunk * 3 + axis);
+                    bounds[0][axis] = Math.min(bounds[0][axis], origin);
+                    bounds[1][axis] = Math.max(bounds[1][axis], origin + CHUNK_SIZE - 1);
+                }
+            }
+        }
+    }
+
+    // helper - read the layer summary
+    private void readSummary(DataInput in) throws IOException {
+        for (int i = 0, count = in.readInt(); i < count; i++) {
+            int layerId = in.readInt();
+            int voxelCount = in.readInt();
+            layerCounts.put(layerId, new int[] {voxelCount});
+            if (voxelCount > 0) {
+                layerBounds.put(layerId, new int[][] {
+                        {in.readInt(), in.readInt(), in.readInt()},
+                        {in.readInt(), in.readInt(), in.readInt()}
+                });
+            }
+        }
+    }
+
+    // helper - a stream over the content of a section
+    private InputStream getSection(int offset, int length) {
+        ByteBuffer section = buffer.duplicate();
+        section.limit(offset + length);
+        section.position(offset);
+        return new ByteBufferInputStream(section);
+    }
+
+    // helper - a stream over the content of a section, fails if the file is closed
+    private InputStream openSection(int offset, int length) throws IOException {
+        if (buffer == null) {
+            throw new IOException("The file is closed.");
+        }
+        return getSection(offset, length);
+    }
+
+    // ----------------
+
+    // read everything but the voxels (the layers are empty)
+    final synchronized void readHeader(DataContainer.TmpData data) throws IOException {
+        for (int i = 0; i < sectionTags.size(); i++) {
+            DataInputStream in = new DataInputStream(openSection(sectionOffsets.get(i), sectionLengths.get(i)));
+            switch (sectionTags.get(i)) {
+                case VsdFormat.TAG_STATE: VsdFormat.readState(in, data); break;
+                case VsdFormat.TAG_LAYERS: VsdFormat.readLayers(in, data); break;
+                case VsdFormat.TAG_TEXTURE: VsdFormat.readTexture(in, sectionLengths.get(i), data); break;
+                case VsdFormat.TAG_ANIMATION: VsdFormat.readAnimation(in, data); break;
+                default: break; // unknown section
+            }
+        }
+    }
+
+    // read everything
+    final synchronized void read(DataContainer.TmpData data) throws IOException {
+        readHeader(data);
+        for (int chunk = 0; chunk < chunkLayers.size(); chunk++) {
+            VoxelLayer layer = data.layers.get(chunkLayers.get(chunk));
+            if (layer == null) {
+                throw new IOException("Unknown layer " + chunkLayers.get(chunk) + ".");
+            }
+            decodeChunk(chunk, layer, null, null);
+        }
+    }
+
+    // decode a chunk into a layer, the ids and positions of the added voxels
+    // are appended to the lists (if not null)
+    public final synchronized void decodeChunk(int chunk, VoxelLayer layer,
+                                               TIntArrayList addedIds, TLongArrayList addedPosIds) throws IOException {
+        DataInputStream in = new DataInputStream(openSection(chunkOffsets.get(chunk), chunkLengths.get(chunk)));
+        in.readInt(); // layer id
+        if (chunkDeflated.get(chunk)) {
+            in = new DataInputStream(new ByteArrayInputStream(inflateChunk(in, chunkLengths.get(chunk))));
+        }
+        layer.readChunk(in, addedIds, addedPosIds);
+    }
+
+    // helper - inflate a compressed chunk (after the layer id), returns the chunk
+    // as it is stored when it is not compressed
+    private byte[] inflateChunk(DataInputStream in, int length) throws IOException {
+        // the origin and voxel count are not compressed
+        int headerSize = VsdFormat.CHUNK_HEADER_SIZE - 4;
+        byte[] header = new byte[headerSize];
+        in.readFully(header);
+        int rawLength = in.readInt();
+        if (rawLength < 0) {
+            throw new IOException("Invalid chunk.");
+        }
+        byte[] compressed = new byte[length - VsdFormat.CHUNK_HEADER_SIZE - 4];
+        in.readFully(compressed);
+        byte[] result = new byte[headerSize + rawLength];
+        System.arraycopy(header, 0, result, 0, headerSize);
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int pos = headerSize;
+            while (pos < result.length && !inflater.finished()) {
+                int count = inflater.inflate(result, pos, result.length - pos);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                pos += count;
+            }
+            if (pos != result.length) {
+                throw new IOException("Invalid compressed chunk.");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed chunk.", e);
+        }
+        return result;
+    }
+
+    // decode the voxels of a layer that are inside a box (only the chunks that
+    // intersect the box are decoded)
+    public final synchronized Voxel[] getVoxelsInBox(int layerId, int[] min, int[] max) throws IOException {
+        VoxelLayer layer = new VoxelLayer(layerId, "");
+        for (int chunk = 0; chunk < chunkLayers.size(); chunk++) {
+            if (chunkLayers.get(chunk) == layerId && intersects(chunk, min, max)) {
+                decodeChunk(chunk, layer, null, null);
+            }
+        }
+        return layer.getVoxelsInBox(min, max);
+    }
+
+    // helper - check if a chunk intersects a box
+    private boolean intersects(int chunk, int[] min, int[] max) {
+        for (int axis = 0; axis < 3; axis++) {
+            int origin = chunkOrigins.get(chunk * 3 + axis);
+            if (origin > max[axis] || origin + CHUNK_SIZE - 1 < min[axis]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ----------------
+
+    // the amount of chunks
+    public final int getChunkCount() {
+        return chunkLayers.size();
+    }
+
+    // the layer of a chunk
+    public final int getChunkLayer(int chunk) {
+        return chunkLayers.get(chunk);
+    }
+
+    // the amount of voxels in a chunk
+    public final int getChunkVoxelCount(int chunk) {
+        return chunkCounts.get(chunk);
+    }
+
+    // the smallest position of a chunk
+    public final int[] getChunkOrigin(int chunk) {
+        return new int[] {chunkOrigins.get(chunk * 3), chunkOrigins.get(chunk * 3 + 1), chunkOrigins.get(chunk * 3 + 2)};
+    }
+
+    // the amount of voxels in a layer
+    public final int getVoxelCount(int layerId) {
+        int[] count = layerCounts.get(layerId);
+        return count == null ? 0 : count[0];
+    }
+
+    // the amount of voxels in all layers
+    public final int getVoxelCount() {
+        int result = 0;
+        for (int chunk = 0; chunk < chunkCounts.size(); chunk++) {
+            result += chunkCounts.get(chunk);
+        }
+        return result;
+    }
+
+    // the bounds {min, max} of a layer (null if the layer is empty), files without a summary
+    // only know the bounds of the chunks
+    public final int[][] getBounds(int layerId) {
+        int[][] bounds = layerBounds.get(layerId);
+        return bounds == null ? null : new int[][] {bounds[0].clone(), bounds[1].clone()};
+    }
+
+    // low resolution preview of a layer: the occupied chunks as {x, y, z, voxel count}
+    // where x, y, z is the origin of the chunk (the chunks have CHUNK_SIZE voxels per side)
+    public final int[][] getPreview(int layerId) {
+        ArrayList<int[]> result = new ArrayList<int[]>();
+        for (int chunk = 0; chunk < chunkLayers.size(); chunk++) {
+            if (chunkLayers.get(chunk) == layerId) {
+                result.add(new int[] {
+                        chunkOrigins.get(chunk * 3), chunkOrigins.get(chunk * 3 + 1),
+                        chunkOrigins.get(chunk * 3 + 2), chunkCounts.get(chunk)
+                });
+            }
+        }
+        return result.toArray(new int[result.size()][]);
+    }
+
+    // ----------------
+
+    // release the mapping (otherwise it is only released by the garbage collector
+    // and the file can not be overwritten on some systems meanwhile)
+    public final synchronized void close() {
+        if (buffer != null) {
+            MappedFileIn.unmap(buffer);
+            buffer = null;
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    // helper - stream over a byte buffer
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.vitco.app.core.data.container;
+
+import com.vitco.app.util.file.PackedArrayIO;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A list of voxels that is stored packed (one primitive array per property).
+ *
+ * Used to remember voxel data compactly (e.g. by the history). Texture, rotation and
+ * flip are only allocated when a voxel uses them. Voxel instances are only created as
+ * (read only) views when they are requested.
+ */
+public final class PackedVoxels {
+
+    // the packed voxel data
+    private int size = 0;
+    private int[] ids;
+    private long[] posIds;
+    private int[] layerIds;
+    private int[] colors; // argb
+    private int[] alphas;
+    private boolean[] selected;
+    // only allocated if used by any voxel
+    private int[][] textureIds = null;
+    private int[][] rotations = null;
+    private boolean[][] flips = null;
+    // the estimated memory of the texture, rotation and flip arrays
+    private long sideBytes = 0;
+
+    // constructor
+    public PackedVoxels(int capacity) {
+        capacity = Math.max(capacity, 1);
+        ids = new int[capacity];
+        posIds = new long[capacity];
+        layerIds = new int[capacity];
+        colors = new int[capacity];
+        alphas = new int[capacity];
+        selected = new boolean[capacity];
+    }
+
+    // make sure there is space for another voxel
+    private void ensureCapacity(int capacity) {
+        if (capacity > ids.length) {
+            resize(Math.max(capacity, ids.length + (ids.length >> 1)));
+        }
+    }
+
+    // helper - change the length of the arrays
+    private void resize(int length) {
+        ids = Arrays.copyOf(ids, length);
+        posIds = Arrays.copyOf(posIds, length);
+        layerIds = Arrays.copyOf(layerIds, length);
+        colors = Arrays.copyOf(colors, length);
+        alphas = Arrays.copyOf(alphas, length);
+        selected = Arrays.copyOf(selected, length);
+        if (textureIds != null) {
+            textureIds = Arrays.copyOf(textureIds, length);
+        }
+        if (rotations != null) {
+            rotations = Arrays.copyOf(rotations, length);
+        }
+        if (flips != null) {
+            flips = Arrays.copyOf(flips, length);
+        }
+    }
+
+    // add a voxel (the data of the voxel is copied)
+    public final void add(Voxel voxel) {
+        int slot = size++;
+        ensureCapacity(size);
+        ids[slot] = voxel.id;
+        posIds[slot] = voxel.posId;
+        layerIds[slot] = voxel.getLayerId();
+        colors[slot] = voxel.getRGB();
+        alphas[slot] = voxel.getAlpha();
+        selected[slot] = voxel.isSelected();
+        int[] texture = voxel.getTexture();
+        if (texture != null) {
+            if (textureIds == null) {
+                textureIds = new int[ids.length][];
+            }
+            textureIds[slot] = texture;
+            sideBytes += 40;
+        }
+        int[] rotation = voxel.getRotation();
+        if (rotation != null) {
+            if (rotations == null) {
+                rotations = new int[ids.length][];
+            }
+            rotations[slot] = rotation;
+            sideBytes += 40;
+        }
+        boolean[] flip = voxel.getFlip();
+        if (flip != null) {
+            if (flips == null) {
+                flips = new boolean[ids.length][];
+            }
+            flips[slot] = flip;
+            sideBytes += 24;
+        }
+    }
+
+    // release the unused space
+    public final void trim() {
+        if (size < ids.length) {
+            resize(Math.max(size, 1));
+        }
+    }
+
+    // the amount of voxels
+    public final int size() {
+        return size;
+    }
+
+    // get the id of a voxel
+    public final int getId(int i) {
+        return ids[i];
+    }
+
+    // get the position id of a voxel
+    public final long getPosId(int i) {
+        return posIds[i];
+    }
+
+    // get the position ids of all voxels
+    public final long[] getPosIds() {
+        return Arrays.copyOf(posIds, size);
+    }
+
+    // get a voxel
+    public final Voxel get(int i) {
+        return new Voxel(ids[i], posIds[i], colors[i], alphas[i], selected[i],
+                textureIds == null ? null : textureIds[i],
+                rotations == null ? null : rotations[i],
+                flips == null ? null : flips[i], layerIds[i]);
+    }
+
+    // write the voxels (compact)
+    public final void write(DataOutput out) throws IOException {
+        PackedArrayIO.writeInts(out, Arrays.copyOf(ids, size));
+        PackedArrayIO.writeLongs(out, Arrays.copyOf(posIds, size));
+        PackedArrayIO.writeInts(out, Arrays.copyOf(layerIds, size));
+        PackedArrayIO.writeInts(out, Arrays.copyOf(colors, size));
+        PackedArrayIO.writeInts(out, Arrays.copyOf(alphas, size));
+        PackedArrayIO.writeBooleans(out, Arrays.copyOf(selected, size));
+        out.writeBoolean(textureIds != null);
+        if (textureIds != null) {
+            for (int i = 0; i < size; i++) {
+                PackedArrayIO.writeInts(out, textureIds[i]);
+            }
+        }
+        out.writeBoolean(rotations != null);
+        if (rotations != null) {
+            for (int i = 0; i < size; i++) {
+                PackedArrayIO.writeInts(out, rotations[i]);
+            }
+        }
+        out.writeBoolean(flips != null);
+        if (flips != null) {
+            for (int i = 0; i < size; i++) {
+                PackedArrayIO.writeBooleans(out, flips[i]);
+            }
+        }
+    }
+
+    // read voxels that were written with write()
+    public static PackedVoxels read(DataInput in) throws IOException {
+        PackedVoxels result = new PackedVoxels(1);
+        result.ids = PackedArrayIO.readInts(in);
+        result.posIds = PackedArrayIO.readLongs(in);
+        result.layerIds = PackedArrayIO.readInts(in);
+        result.colors = PackedArrayIO.readInts(in);
+        result.alphas = PackedArrayIO.readInts(in);
+        result.selected = PackedArrayIO.readBooleans(in);
+        result.size = result.ids.length;
+        if (in.readBoolean()) {
+            result.textureIds = new int[result.size][];
+            for (int i = 0; i < result.size; i++) {
+                result.textureIds[i] = PackedArrayIO.readInts(in);
+                result.sideBytes += result.textureIds[i] == null ? 0 : 40;
+            }
+        }
+        if (in.readBoolean()) {
+            result.rotations = new int[result.size][];
+            for (int i = 0; i < result.size; i++) {
+                result.rotations[i] = PackedArrayIO.readInts(in);
+                result.sideBytes += result.rotations[i] == null ? 0 : 40;
+            }
+        }
+        if (in.readBoolean()) {
+            result.flips = new boolean[result.size][];
+            for (int i = 0; i < result.size; i++) {
+                result.flips[i] = PackedArrayIO.readBooleans(in);
+                result.sideBytes += result.flips[i] == null ? 0 : 24;
+            }
+        }
+        return result;
+    }
+
+    // the estimated memory used by this list (in bytes)
+    public final long getMemoryEstimate() {
+        // ids, position ids, layer ids, colors, alphas and selection
+        long result = 64 + ids.length * 29L + sideBytes;
+        // references to the texture, rotation and flip arrays
+        for (Object[] side : new Object[][] {textureIds, rotations, flips}) {
+            if (side != null) {
+                result += side.length * 4L;
+            }
+        }
+        return result;
+    }
+}
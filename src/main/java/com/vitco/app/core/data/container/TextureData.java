@@ -0,0 +1,106 @@
+package com.vitco.app.core.data.container;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * An immutable texture: the encoded image (png) and the hash of its content.
+ *
+ * The image is only decoded when it is first needed (textures that are loaded from file
+ * are usually not shown right away) and then kept. The decoded image is shared, it must
+ * not be changed (draw a copy instead).
+ */
+public final class TextureData {
+
+    // the png signature
+    private static final byte[] PNG_SIGNATURE = new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    // the encoded image
+    private final byte[] encoded;
+    // the hash of the encoded image
+    private final String hash;
+    // the decoded image (null until needed)
+    private volatile BufferedImage image;
+
+    private TextureData(byte[] encoded, BufferedImage image) {
+        this.encoded = encoded;
+        this.hash = DigestUtils.md5Hex(encoded);
+        this.image = image;
+    }
+
+    // create a texture from an image (the image is copied)
+    public static TextureData fromImage(Image image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(null), image.getHeight(null), BufferedImage.TYPE_INT_ARGB);
+        copy.getGraphics().drawImage(image, 0, 0, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(copy, "png", out);
+        } catch (IOException e) {
+            // not possible for an in memory stream
+            throw new IllegalStateException(e);
+        }
+        return new TextureData(out.toByteArray(), copy);
+    }
+
+    // create a texture from an icon (the image is copied)
+    public static TextureData fromIcon(ImageIcon icon) {
+        return fromImage(icon.getImage());
+    }
+
+    // create a texture from an encoded image (png), the image is decoded when needed
+    static TextureData fromEncoded(byte[] encoded) throws IOException {
+        if (encoded.length < PNG_SIGNATURE.length) {
+            throw new IOException("Invalid texture.");
+        }
+        for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (encoded[i] != PNG_SIGNATURE[i]) {
+                throw new IOException("Invalid texture.");
+            }
+        }
+        return new TextureData(encoded, null);
+    }
+
+    // the encoded image (png), must not be changed
+    final byte[] getEncoded() {
+        return encoded;
+    }
+
+    // the hash of the content
+    public final String getHash() {
+        return hash;
+    }
+
+    // the image (shared, must not be changed)
+    public final BufferedImage getImage() {
+        BufferedImage result = image;
+        if (result == null) {
+            try {
+                result = ImageIO.read(new ByteArrayInputStream(encoded));
+            } catch (IOException e) {
+                result = null;
+            }
+            if (result == null) {
+                // the texture is damaged
+                result = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+            } else if (result.getType() != BufferedImage.TYPE_INT_ARGB) {
+                BufferedImage converted = new BufferedImage(result.getWidth(), result.getHeight(), BufferedImage.TYPE_INT_ARGB);
+                converted.getGraphics().drawImage(result, 0, 0, null);
+                result = converted;
+            }
+            image = result;
+        }
+        return result;
+    }
+
+    // the image as an icon (shares the image)
+    public final ImageIcon getIcon() {
+        return new ImageIcon(getImage());
+    }
+}
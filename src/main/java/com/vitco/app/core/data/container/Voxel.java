@@ -1,6 +1,6 @@
 package com.vitco.app.core.data.container;
 
-import com.vitco.app.low.CubeIndexer;
+import com.vitco.app.low.LongCubeIndexer;
 
 import java.awt.*;
 import java.io.IOException;
@@ -9,18 +9,22 @@ import java.lang.reflect.Field;
 
 /**
  * A Voxel instance, only getter are available (!)
+ *
+ * The voxel data itself is stored packed in the layers. A voxel instance is
+ * only a (read only) view of that data at the time it was requested.
  */
 public final class Voxel implements Serializable {
     private static final long serialVersionUID = 1L;
     private final int[] posI;
-    private transient String posS = null;
     // make final when legacy support is removed
     public transient final int x;
     public transient final int y;
     public transient final int z;
-    public transient final int posId; // position id
+    public transient final long posId; // position id (see LongCubeIndexer)
     public final int id; // id
-    private Color color; // color of voxel
+    private Color color; // color of voxel (created lazily for views)
+    private transient int rgb; // the color as argb
+    private transient boolean colorPending = false; // true if the color object was not created yet
     private int alpha = -1; // alpha of this voxel
     private final int layerId; // the id of the layer this voxel lives in
     private int[] textureIds = null; // get the texture ids of this voxel (for all sides)
@@ -40,25 +44,43 @@ public final class Voxel implements Serializable {
     public Voxel(int id, int[] pos, Color color, boolean selected, int[] textureIds, int layerId) {
         this.id = id;
         this.color = color;
+        this.rgb = color == null ? 0 : color.getRGB();
         this.layerId = layerId;
         this.textureIds = textureIds == null ? null : textureIds.clone();
         this.selected = selected;
         posI = pos.clone();
-        posS = posI[0] + "_" + posI[1] + "_" + posI[2];
         // load the public values for fast access
         x = pos[0];
         y = pos[1];
         z = pos[2];
         // define position id
-        posId = CubeIndexer.getId(posI[0], posI[1], posI[2]);
+        posId = LongCubeIndexer.getId(posI[0], posI[1], posI[2]);
+    }
+
+    // constructor for views of packed data (the arrays are shared and never changed)
+    Voxel(int id, long posId, int rgb, int alpha, boolean selected,
+          int[] textureIds, int[] sideRotation, boolean[] sideFlip, int layerId) {
+        this.id = id;
+        this.posId = posId;
+        this.x = LongCubeIndexer.getX(posId);
+        this.y = LongCubeIndexer.getY(posId);
+        this.z = LongCubeIndexer.getZ(posId);
+        this.posI = new int[] {x, y, z};
+        this.rgb = rgb;
+        this.colorPending = true;
+        this.alpha = alpha;
+        this.selected = selected;
+        this.textureIds = textureIds;
+        this.sideRotation = sideRotation;
+        this.sideFlip = sideFlip;
+        this.layerId = layerId;
     }
 
     // called after deserialization
     private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject();
-        // build the string representation when loading from file
-        if (posS == null) {
-            posS = posI[0] + "_" + posI[1] + "_" + posI[2];
+        if (color != null) {
+            rgb = color.getRGB();
         }
         // read the transient final values after de-serialization
         try {
@@ -74,7 +96,7 @@ public final class Voxel implements Serializable {
 
             f = this.getClass().getDeclaredField("posId");
             f.setAccessible(true);
-            f.set(this, CubeIndexer.getId(posI[0], posI[1], posI[2]));
+            f.set(this, LongCubeIndexer.getId(posI[0], posI[1], posI[2]));
         } catch (NoSuchFieldException e) {
             // should never happen
             e.printStackTrace();
@@ -84,38 +106,33 @@ public final class Voxel implements Serializable {
         }
     }
 
+    // make sure the color object exists before writing
+    private void writeObject(java.io.ObjectOutputStream out) throws IOException {
+        getColor();
+        out.defaultWriteObject();
+    }
+
     // retrieve position
     public final int[] getPosAsInt() {
         return posI.clone();
     }
+    // Note: only use this for display, use the position id as key
     public final String getPosAsString() {
-        return posS;
-    }
-
-    // set the color of this voxel
-    public final void setColor(Color color) {
-        this.color = color;
+        return x + "_" + y + "_" + z;
     }
 
     // get the color of this voxel
     public final Color getColor() {
-        return color;
-    }
-
-    // rotate this voxel
-    public final void rotate(Integer side) {
-        if (sideRotation == null) {
-            sideRotation = new int[6];
+        if (colorPending) {
+            color = new Color(rgb, true);
+            colorPending = false;
         }
-        sideRotation[side] = (sideRotation[side] + 1)%4;
+        return color;
     }
 
-    // rotate this voxel (reverse)
-    public final void rotateReverse(Integer side) {
-        if (sideRotation == null) {
-            sideRotation = new int[6];
-        }
-        sideRotation[side] = (sideRotation[side] + 3)%4;
+    // get the color of this voxel as argb value
+    public final int getRGB() {
+        return rgb;
     }
 
     // get the rotation of this voxel
@@ -123,43 +140,16 @@ public final class Voxel implements Serializable {
         return sideRotation == null ? null : sideRotation.clone();
     }
 
-    // set the flip of this voxel
-    public final void flip(Integer side) {
-        if (sideFlip == null) {
-            sideFlip = new boolean[6];
-        }
-        sideFlip[side] = !sideFlip[side];
-    }
-
     // get the flip of this voxel
     public final boolean[] getFlip() {
         return sideFlip == null ? null : sideFlip.clone();
     }
 
-    // set the texture of this voxel
-    public final boolean setTexture(int[] textureIds) {
-        if (textureIds == null || textureIds.length == 6) {
-            this.textureIds = textureIds == null ? null : textureIds.clone();
-            // cancel rotation/flipping
-            if (textureIds == null) {
-                sideRotation = null;
-                sideFlip = null;
-            }
-            return true;
-        }
-        return false;
-    }
-
     // get the texture of this voxel
     public final int[] getTexture() {
         return textureIds == null ? null : textureIds.clone();
     }
 
-    // set the alpha of this voxel
-    public final void setAlpha(int alpha) {
-        this.alpha = alpha;
-    }
-
     // get the color of this voxel
     public final int getAlpha() {
         return alpha;
@@ -178,8 +168,4 @@ public final class Voxel implements Serializable {
         return selected;
     }
 
-    public final void setSelected(boolean b) {
-        selected = b;
-    }
-
 }
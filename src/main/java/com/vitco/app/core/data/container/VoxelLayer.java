@@ -1,223 +1,701 @@
 package com.vitco.app.core.data.container;
 
-import com.vitco.app.low.CubeIndexer;
+import com.vitco.app.low.LongCubeIndexer;
+import com.vitco.app.low.engine.Chunk;
+import com.vitco.app.low.engine.Engine;
+import com.vitco.app.util.file.PackedArrayIO;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.procedure.TIntProcedure;
 import gnu.trove.set.hash.TIntHashSet;
 
 import java.awt.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 
 /**
  * A layer that contains voxels.
  *
+ * The voxel data is stored packed (one primitive array per property, one slot per voxel).
+ * Colors are stored as entries of a color palette (usually shared by all layers of a document).
+ * Texture, rotation and flip information is rare and is kept in a sparse side table.
+ * Voxel instances are only created as (read only) views when they are requested.
+ *
+ * Voxel positions are indexed by a chunked engine that maps each position to a slot (this
+ * also finds the voxels in a box and knows the bounds of the layer). The slots of each color
+ * are linked into a list, so voxels of a color are found without a scan.
+ *
  * Does not check for duplicates on insertion!
  */
 public final class VoxelLayer implements Serializable {
     private static final long serialVersionUID = 1L;
 
-    // list of all voxels
+    // list of all voxels (only used when reading from and writing to file)
     private final ArrayList<Voxel> voxelList = new ArrayList<Voxel>();
-    // string "index"
-    private transient TIntObjectHashMap<Voxel> index = new TIntObjectHashMap<Voxel>();
-    // side index
-    private transient TIntObjectHashMap<HashSet<Voxel>> sideX = new TIntObjectHashMap<HashSet<Voxel>>();
-    private transient TIntObjectHashMap<HashSet<Voxel>> sideY = new TIntObjectHashMap<HashSet<Voxel>>();
-    private transient TIntObjectHashMap<HashSet<Voxel>> sideZ = new TIntObjectHashMap<HashSet<Voxel>>();
+
+    // the packed voxel data
+    private transient int size;
+    private transient int[] ids;
+    private transient long[] posIds;
+    private transient int[] colors; // palette entries
+    private transient int[] alphas;
+    private transient boolean[] selected;
+    // the next and previous slot with the same color (-1 if none)
+    private transient int[] nextSlots;
+    private transient int[] prevSlots;
+    // texture, rotation and flip (voxel id -> sides)
+    private transient TIntObjectHashMap<VoxelSides> sides;
+    // the colors of the voxels
+    private transient ColorPalette palette;
+    // palette entry -> first slot with that color
+    private transient TIntIntHashMap colorHeads;
+    // maps voxel id to slot
+    private transient TIntIntHashMap slots;
+    // position index (maps position to slot)
+    private transient Engine index;
 
     public final int id;
     private String layerName; // layerName of layer
     private boolean visible = true;
 
-    // constructor
+    // holds the texture information of a voxel (arrays are replaced and never changed,
+    // so they can be shared with voxel views)
+    private static final class VoxelSides {
+        private int[] textureIds = null;
+        private int[] rotation = null;
+        private boolean[] flip = null;
+    }
+
+    // constructor (the layer uses its own palette)
     public VoxelLayer(int id, String layerName) {
+        this(id, layerName, new ColorPalette());
+    }
+
+    // constructor
+    public VoxelLayer(int id, String layerName, ColorPalette palette) {
         this.id = id;
         this.layerName = layerName;
+        init(palette);
     }
 
-    // helper to add voxel to index
-    private void indexVoxel(Voxel voxel) {
-        index.put(voxel.posId, voxel);
+    // initialize the packed storage
+    private void init(ColorPalette palette) {
+        this.palette = palette;
+        colorHeads = new TIntIntHashMap(16, 0.5f, -1, -1);
+        size = 0;
+        ids = new int[16];
+        posIds = new long[16];
+        colors = new int[16];
+        alphas = new int[16];
+        selected = new boolean[16];
+        nextSlots = new int[16];
+        prevSlots = new int[16];
+        sides = new TIntObjectHashMap<VoxelSides>();
+        slots = new TIntIntHashMap(16, 0.5f, -1, Chunk.EMPTY);
+        index = new Engine();
+    }
 
-        // side x
-        HashSet<Voxel> planeX = sideX.get(voxel.x);
-        if (planeX == null) {
-            planeX = new HashSet<Voxel>();
-            sideX.put(voxel.x, planeX);
-        }
-        planeX.add(voxel);
-        // side y
-        HashSet<Voxel> planeY = sideY.get(voxel.y);
-        if (planeY == null) {
-            planeY = new HashSet<Voxel>();
-            sideY.put(voxel.y, planeY);
+    // make sure there is space for another voxel
+    private void ensureCapacity(int capacity) {
+        if (capacity > ids.length) {
+            int newLength = Math.max(capacity, ids.length + (ids.length >> 1));
+            ids = Arrays.copyOf(ids, newLength);
+            posIds = Arrays.copyOf(posIds, newLength);
+            colors = Arrays.copyOf(colors, newLength);
+            alphas = Arrays.copyOf(alphas, newLength);
+            selected = Arrays.copyOf(selected, newLength);
+            nextSlots = Arrays.copyOf(nextSlots, newLength);
+            prevSlots = Arrays.copyOf(prevSlots, newLength);
         }
-        planeY.add(voxel);
-        // side z
-        HashSet<Voxel> planeZ = sideZ.get(voxel.z);
-        if (planeZ == null) {
-            planeZ = new HashSet<Voxel>();
-            sideZ.put(voxel.z, planeZ);
+    }
+
+    // create a view of the voxel in a slot
+    private Voxel view(int slot) {
+        int voxelId = ids[slot];
+        VoxelSides voxelSides = sides.isEmpty() ? null : sides.get(voxelId);
+        if (voxelSides == null) {
+            return new Voxel(voxelId, posIds[slot], palette.getRGB(colors[slot]), alphas[slot], selected[slot],
+                    null, null, null, id);
         }
-        planeZ.add(voxel);
+        return new Voxel(voxelId, posIds[slot], palette.getRGB(colors[slot]), alphas[slot], selected[slot],
+                voxelSides.textureIds, voxelSides.rotation, voxelSides.flip, id);
     }
 
-    private boolean unindexVoxel(Voxel voxel) {
-        boolean result = true;
+    // helper to convert slots into voxels
+    private Voxel[] toVoxels(int[] slots) {
+        Voxel[] result = new Voxel[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            result[i] = view(slots[i]);
+        }
+        return result;
+    }
 
-        if (null == index.remove(voxel.posId)) {
-            result = false;
+    // helper - add a slot to the list of its color
+    private void link(int slot) {
+        int head = colorHeads.get(colors[slot]);
+        nextSlots[slot] = head;
+        prevSlots[slot] = -1;
+        if (head != -1) {
+            prevSlots[head] = slot;
         }
+        colorHeads.put(colors[slot], slot);
+    }
 
-        // side x
-        HashSet<Voxel> planeX = sideX.get(voxel.x);
-        if (planeX != null) {
-            planeX.remove(voxel);
-            if (planeX.isEmpty()) {
-                sideX.remove(voxel.x);
-            }
-        } else {
-            result = false; // should never happen
-        }
-        // side y
-        HashSet<Voxel> planeY = sideY.get(voxel.y);
-        if (planeY != null) {
-            planeY.remove(voxel);
-            if (planeY.isEmpty()) {
-                sideY.remove(voxel.y);
-            }
-        } else {
-            result = false; // should never happen
-        }
-        // side z
-        HashSet<Voxel> planeZ = sideZ.get(voxel.z);
-        if (planeZ != null) {
-            planeZ.remove(voxel);
-            if (planeZ.isEmpty()) {
-                sideZ.remove(voxel.z);
-            }
+    // helper - remove a slot from the list of its color
+    private void unlink(int slot) {
+        int prev = prevSlots[slot];
+        int next = nextSlots[slot];
+        if (prev != -1) {
+            nextSlots[prev] = next;
+        } else if (next != -1) {
+            colorHeads.put(colors[slot], next);
         } else {
-            result = false; // should never happen
+            colorHeads.remove(colors[slot]);
         }
+        if (next != -1) {
+            prevSlots[next] = prev;
+        }
+    }
 
+    // helper to obtain the sides of a voxel (created if requested)
+    private VoxelSides getSides(int voxelId, boolean create) {
+        VoxelSides result = sides.get(voxelId);
+        if (result == null && create) {
+            result = new VoxelSides();
+            sides.put(voxelId, result);
+        }
         return result;
     }
 
     public final Voxel[] getXPlane(int plane) {
-        HashSet<Voxel> planeX = sideX.get(plane);
-        if (planeX != null) {
-            Voxel[] result = new Voxel[planeX.size()];
-            planeX.toArray(result);
-            return result;
-        } else {
-            return new Voxel[0];
-        }
+        return toVoxels(index.getXPlane(plane));
     }
 
     public final Voxel[] getYPlane(int plane) {
-        HashSet<Voxel> planeY = sideY.get(plane);
-        if (planeY != null) {
-            Voxel[] result = new Voxel[planeY.size()];
-            planeY.toArray(result);
-            return result;
-        } else {
-            return new Voxel[0];
-        }
+        return toVoxels(index.getYPlane(plane));
     }
 
     public final Voxel[] getZPlane(int plane) {
-        HashSet<Voxel> planeZ = sideZ.get(plane);
-        if (planeZ != null) {
-            Voxel[] result = new Voxel[planeZ.size()];
-            planeZ.toArray(result);
-            return result;
-        } else {
-            return new Voxel[0];
+        return toVoxels(index.getZPlane(plane));
+    }
+
+    // get the bounds of this layer (min and max position, inclusive), null if the layer is empty
+    public final int[][] getBounds() {
+        return index.getBounds();
+    }
+
+    // visit the voxels in a box (min and max position, inclusive), returns false if
+    // the visitor stopped the visit
+    public final boolean forEachVoxelInBox(int[] min, int[] max, final VoxelVisitor visitor) {
+        return index.forEachInBox(min, max, new TIntProcedure() {
+            @Override
+            public boolean execute(int slot) {
+                return visitor.visit(view(slot));
+            }
+        });
+    }
+
+    // get the voxels in a box (min and max position, inclusive)
+    public final Voxel[] getVoxelsInBox(int[] min, int[] max) {
+        final TIntArrayList result = new TIntArrayList();
+        index.forEachInBox(min, max, new TIntProcedure() {
+            @Override
+            public boolean execute(int slot) {
+                result.add(slot);
+                return true;
+            }
+        });
+        return toVoxels(result.toArray());
+    }
+
+    // ----------------
+    // binary format (see VsdFormat)
+
+    // the voxels are written in blocks of 16 ^ 3 positions
+    private static final int FILE_CHUNK_BITS = 4;
+    private static final int FILE_CHUNK_VOLUME = 1 << (FILE_CHUNK_BITS * 3);
+
+    // voxel flags in the binary format
+    private static final int FLAG_ALPHA = 1;
+    private static final int FLAG_SIDES = 2;
+
+    // write the voxels as one section per chunk, the columns of a chunk are the ids, the local
+    // positions, the colors and the flags, followed by the alpha and texture information of
+    // the flagged voxels (the selection is not stored, as before)
+    final void writeChunks(VsdFormat.SectionWriter writer, int tag) throws IOException {
+        // group the slots by chunk (counting sort)
+        TLongIntHashMap chunkIndex = new TLongIntHashMap(16, 0.5f, -1, -1);
+        int[] chunkOf = new int[size];
+        int[] counts = new int[16];
+        long[] chunkIds = new long[16];
+        for (int i = 0; i < size; i++) {
+            long chunkId = LongCubeIndexer.getChunkId(posIds[i], FILE_CHUNK_BITS);
+            int chunk = chunkIndex.get(chunkId);
+            if (chunk == -1) {
+                chunk = chunkIndex.size();
+                chunkIndex.put(chunkId, chunk);
+                if (chunk == counts.length) {
+                    counts = Arrays.copyOf(counts, chunk * 2);
+                    chunkIds = Arrays.copyOf(chunkIds, chunk * 2);
+                }
+                chunkIds[chunk] = chunkId;
+            }
+            chunkOf[i] = chunk;
+            counts[chunk]++;
+        }
+        int chunkCount = chunkIndex.size();
+        int[] starts = new int[chunkCount + 1];
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            starts[chunk + 1] = starts[chunk] + counts[chunk];
+        }
+        int[] order = new int[size];
+        int[] fill = Arrays.copyOf(starts, chunkCount);
+        for (int i = 0; i < size; i++) {
+            order[fill[chunkOf[i]]++] = i;
+        }
+        // write the chunks (the column buffers are reused)
+        int[] idColumn = new int[FILE_CHUNK_VOLUME];
+        int[] localColumn = new int[FILE_CHUNK_VOLUME];
+        int[] colorColumn = new int[FILE_CHUNK_VOLUME];
+        byte[] flagColumn = new byte[FILE_CHUNK_VOLUME];
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int count = starts[chunk + 1] - starts[chunk];
+            for (int j = 0; j < count; j++) {
+                int slot = order[starts[chunk] + j];
+                idColumn[j] = ids[slot];
+                localColumn[j] = LongCubeIndexer.getLocalId(posIds[slot], FILE_CHUNK_BITS);
+                colorColumn[j] = palette.getRGB(colors[slot]);
+                flagColumn[j] = (byte) ((alphas[slot] != -1 ? FLAG_ALPHA : 0)
+                        | (!sides.isEmpty() && sides.containsKey(ids[slot]) ? FLAG_SIDES : 0));
+            }
+            DataOutputStream out = writer.begin(tag);
+            out.writeInt(id);
+            out.writeInt(LongCubeIndexer.getX(chunkIds[chunk]));
+            out.writeInt(LongCubeIndexer.getY(chunkIds[chunk]));
+            out.writeInt(LongCubeIndexer.getZ(chunkIds[chunk]));
+            out.writeInt(count);
+            PackedArrayIO.writeInts(out, idColumn, 0, count);
+            PackedArrayIO.writeInts(out, localColumn, 0, count);
+            PackedArrayIO.writeInts(out, colorColumn, 0, count);
+            out.write(flagColumn, 0, count);
+            for (int j = 0; j < count; j++) {
+                int slot = order[starts[chunk] + j];
+                if ((flagColumn[j] & FLAG_ALPHA) != 0) {
+                    out.writeInt(alphas[slot]);
+                }
+                if ((flagColumn[j] & FLAG_SIDES) != 0) {
+                    VoxelSides voxelSides = sides.get(ids[slot]);
+                    PackedArrayIO.writeInts(out, voxelSides.textureIds);
+                    PackedArrayIO.writeInts(out, voxelSides.rotation);
+                    PackedArrayIO.writeBooleans(out, voxelSides.flip);
+                }
+            }
+            writer.end();
+        }
+    }
+
+    // read a chunk that was written by writeChunks (the layer id was already read), the ids
+    // and positions of the added voxels are appended to the lists (if not null)
+    final void readChunk(DataInput in, TIntArrayList addedIds, TLongArrayList addedPosIds) throws IOException {
+        int x = in.readInt();
+        int y = in.readInt();
+        int z = in.readInt();
+        int count = in.readInt();
+        if (count < 0 || count > FILE_CHUNK_VOLUME) {
+            throw new IOException("Invalid chunk size.");
+        }
+        int[] idColumn = new int[count];
+        int[] localColumn = new int[count];
+        int[] colorColumn = new int[count];
+        byte[] flagColumn = new byte[count];
+        PackedArrayIO.readInts(in, idColumn, 0, count);
+        PackedArrayIO.readInts(in, localColumn, 0, count);
+        PackedArrayIO.readInts(in, colorColumn, 0, count);
+        in.readFully(flagColumn);
+        reserve(count);
+        int mask = (1 << FILE_CHUNK_BITS) - 1;
+        for (int j = 0; j < count; j++) {
+            int local = localColumn[j];
+            long posId = LongCubeIndexer.getId(
+                    x + (local & mask),
+                    y + (local >> (FILE_CHUNK_BITS * 2)),
+                    z + ((local >> FILE_CHUNK_BITS) & mask));
+            if (!voxelPositionFree(posId) || slots.containsKey(idColumn[j])) {
+                throw new IOException("Duplicate voxel " + idColumn[j] + ".");
+            }
+            addVoxel(idColumn[j], posId, colorColumn[j]);
+            if (addedIds != null) {
+                addedIds.add(idColumn[j]);
+                addedPosIds.add(posId);
+            }
+            int flags = flagColumn[j];
+            if ((flags & FLAG_ALPHA) != 0) {
+                setVoxelAlpha(idColumn[j], in.readInt());
+            }
+            if ((flags & FLAG_SIDES) != 0) {
+                VoxelSides voxelSides = getSides(idColumn[j], true);
+                voxelSides.textureIds = PackedArrayIO.readInts(in);
+                voxelSides.rotation = PackedArrayIO.readInts(in);
+                voxelSides.flip = PackedArrayIO.readBooleans(in);
+            }
+        }
+    }
+
+    // write the data of a voxel (color, alpha and sides), used by the edit journal
+    final void writeVoxelData(DataOutput out, int voxelId) throws IOException {
+        int slot = slots.get(voxelId);
+        VoxelSides voxelSides = sides.isEmpty() ? null : sides.get(voxelId);
+        out.writeInt(palette.getRGB(colors[slot]));
+        out.writeByte((alphas[slot] != -1 ? FLAG_ALPHA : 0) | (voxelSides != null ? FLAG_SIDES : 0));
+        if (alphas[slot] != -1) {
+            out.writeInt(alphas[slot]);
+        }
+        if (voxelSides != null) {
+            PackedArrayIO.writeInts(out, voxelSides.textureIds);
+            PackedArrayIO.writeInts(out, voxelSides.rotation);
+            PackedArrayIO.writeBooleans(out, voxelSides.flip);
+        }
+    }
+
+    // add a voxel with the data that was written by writeVoxelData (the id and position need to be free)
+    final void readVoxelData(DataInput in, int voxelId, long posId) throws IOException {
+        addVoxel(voxelId, posId, in.readInt());
+        int flags = in.readUnsignedByte();
+        if ((flags & FLAG_ALPHA) != 0) {
+            setVoxelAlpha(voxelId, in.readInt());
+        }
+        if ((flags & FLAG_SIDES) != 0) {
+            VoxelSides voxelSides = getSides(voxelId, true);
+            voxelSides.textureIds = PackedArrayIO.readInts(in);
+            voxelSides.rotation = PackedArrayIO.readInts(in);
+            voxelSides.flip = PackedArrayIO.readBooleans(in);
         }
     }
 
     // called after deserialization
     private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject();
-        // build the indices when loading from file
-        if (sideX == null) {
-            sideX = new TIntObjectHashMap<HashSet<Voxel>>();
-        }
-        if (sideY == null) {
-            sideY = new TIntObjectHashMap<HashSet<Voxel>>();
+        // pack the voxels when loading from file
+        init(new ColorPalette());
+        ensureCapacity(voxelList.size());
+        for (Voxel voxel : voxelList) {
+            addVoxel(voxel);
         }
-        if (sideZ == null) {
-            sideZ = new TIntObjectHashMap<HashSet<Voxel>>();
+        voxelList.clear();
+        voxelList.trimToSize();
+    }
+
+    // called before serialization
+    private void writeObject(java.io.ObjectOutputStream out) throws IOException {
+        boolean materialized = voxelList.isEmpty() && size > 0;
+        if (materialized) {
+            materialize();
         }
-        if (index == null) {
-            index = new TIntObjectHashMap<Voxel>();
+        out.defaultWriteObject();
+        if (materialized) {
+            releaseMaterialized();
         }
-        for (Voxel voxel : voxelList) {
-            indexVoxel(voxel);
+    }
+
+    // create views for all voxels, they are written when this layer is serialized
+    final ArrayList<Voxel> materialize() {
+        voxelList.clear();
+        voxelList.ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            voxelList.add(view(i));
         }
+        return voxelList;
+    }
+
+    // release the views again
+    final void releaseMaterialized() {
+        voxelList.clear();
+        voxelList.trimToSize();
     }
 
     public Voxel search(int[] pos) {
-        return index.get(CubeIndexer.getId(pos[0], pos[1], pos[2]));
+        int slot = index.get(pos[0], pos[1], pos[2]);
+        return slot == Chunk.EMPTY ? null : view(slot);
     }
 
     // search position by using another voxel as reference
     public Voxel search(Voxel voxel) {
-        return index.get(voxel.posId);
+        int slot = index.get(voxel.posId);
+        return slot == Chunk.EMPTY ? null : view(slot);
+    }
+
+    // get a voxel by id (null if it is not in this layer)
+    public final Voxel getVoxel(int voxelId) {
+        int slot = slots.get(voxelId);
+        return slot == Chunk.EMPTY ? null : view(slot);
+    }
+
+    // get the id of the voxel at a position (-1 if the position is free)
+    public final int getVoxelId(long posId) {
+        int slot = index.get(posId);
+        return slot == Chunk.EMPTY ? -1 : ids[slot];
+    }
+
+    // get the position of a voxel in this layer
+    public final long getPosId(int voxelId) {
+        return posIds[slots.get(voxelId)];
+    }
+
+    // check if a voxel is in this layer
+    public final boolean containsVoxel(int voxelId) {
+        return slots.containsKey(voxelId);
     }
 
     public int getSize() {
-        return voxelList.size();
+        return size;
     }
 
     // check if a position already contains a voxel
     public boolean voxelPositionFree(int[] pos) {
-        return !index.containsKey(CubeIndexer.getId(pos[0], pos[1], pos[2]));
+        return !index.contains(pos[0], pos[1], pos[2]);
     }
 
     // check position by using another voxel
     public boolean voxelPositionFree(Voxel voxel) {
-        return !index.containsKey(voxel.posId);
+        return !index.contains(voxel.posId);
+    }
+
+    // check if a position (id) already contains a voxel
+    public final boolean voxelPositionFree(long posId) {
+        return !index.contains(posId);
+    }
+
+    // make sure there is space for more voxels
+    public final void reserve(int count) {
+        ensureCapacity(size + count);
     }
 
-    // add a voxel iff that position is not already occupied
+    // add a voxel iff that position is not already occupied (not selected and without texture)
+    public final void addVoxel(int voxelId, long posId, int rgb) {
+        assert voxelPositionFree(posId);
+        assert !slots.containsKey(voxelId);
+        int slot = size++;
+        ensureCapacity(size);
+        ids[slot] = voxelId;
+        posIds[slot] = posId;
+        colors[slot] = palette.acquire(rgb);
+        link(slot);
+        alphas[slot] = -1;
+        selected[slot] = false;
+        slots.put(voxelId, slot);
+        index.put(posId, slot);
+    }
+
+    // add a voxel iff that position is not already occupied (the data of the voxel is copied)
     public void addVoxel(Voxel voxel) {
         assert voxelPositionFree(voxel);
-        indexVoxel(voxel);
-        voxelList.add(voxel);
+        assert !slots.containsKey(voxel.id);
+        int slot = size++;
+        ensureCapacity(size);
+        ids[slot] = voxel.id;
+        posIds[slot] = voxel.posId;
+        colors[slot] = palette.acquire(voxel.getRGB());
+        link(slot);
+        alphas[slot] = voxel.getAlpha();
+        selected[slot] = voxel.isSelected();
+        int[] textureIds = voxel.getTexture();
+        int[] rotation = voxel.getRotation();
+        boolean[] flip = voxel.getFlip();
+        if (textureIds != null || rotation != null || flip != null) {
+            VoxelSides voxelSides = getSides(voxel.id, true);
+            voxelSides.textureIds = textureIds;
+            voxelSides.rotation = rotation;
+            voxelSides.flip = flip;
+        }
+        slots.put(voxel.id, slot);
+        index.put(voxel.posId, slot);
+    }
+
+    // remove a voxel (the last voxel takes the free slot)
+    public final boolean removeVoxel(int voxelId) {
+        int slot = slots.remove(voxelId);
+        if (slot == Chunk.EMPTY) {
+            return false;
+        }
+        index.remove(posIds[slot]);
+        unlink(slot);
+        palette.release(colors[slot]);
+        if (!sides.isEmpty()) {
+            sides.remove(voxelId);
+        }
+        int last = --size;
+        if (slot != last) {
+            ids[slot] = ids[last];
+            posIds[slot] = posIds[last];
+            colors[slot] = colors[last];
+            alphas[slot] = alphas[last];
+            selected[slot] = selected[last];
+            // the last slot takes the place in the color list
+            int prev = prevSlots[last];
+            int next = nextSlots[last];
+            prevSlots[slot] = prev;
+            nextSlots[slot] = next;
+            if (prev != -1) {
+                nextSlots[prev] = slot;
+            } else {
+                colorHeads.put(colors[slot], slot);
+            }
+            if (next != -1) {
+                prevSlots[next] = slot;
+            }
+            slots.put(ids[slot], slot);
+            index.put(posIds[slot], slot);
+        }
+        return true;
     }
 
     // set the color of a voxel
-    public final void setVoxelColor(Voxel voxel, Color color) {
-        voxel.setColor(color);
+    public final void setVoxelColor(int voxelId, Color color) {
+        setVoxelColor(voxelId, color.getRGB());
+    }
+
+    // set the color of a voxel (argb)
+    public final void setVoxelColor(int voxelId, int rgb) {
+        int slot = slots.get(voxelId);
+        int entry = palette.acquire(rgb);
+        palette.release(colors[slot]);
+        if (entry != colors[slot]) {
+            unlink(slot);
+            colors[slot] = entry;
+            link(slot);
+        }
+    }
+
+    // get the color of a voxel (argb)
+    public final int getVoxelColor(int voxelId) {
+        return palette.getRGB(colors[slots.get(voxelId)]);
+    }
+
+    // helper - the first slot with this color (argb, -1 if there is none)
+    private int firstSlot(int rgb) {
+        int entry = palette.getEntry(rgb);
+        return entry == -1 ? -1 : colorHeads.get(entry);
+    }
+
+    // add the ids of all voxels with this color (argb) to the result
+    public final void collectVoxelIds(int rgb, TIntArrayList result) {
+        for (int slot = firstSlot(rgb); slot != -1; slot = nextSlots[slot]) {
+            result.add(ids[slot]);
+        }
+    }
+
+    // add the positions of all voxels with this color (argb) to the result
+    public final void collectPosIds(int rgb, TLongArrayList result) {
+        for (int slot = firstSlot(rgb); slot != -1; slot = nextSlots[slot]) {
+            result.add(posIds[slot]);
+        }
+    }
+
+    // get all voxels with this color (argb)
+    public final Voxel[] getVoxelsByColor(int rgb) {
+        ArrayList<Voxel> result = new ArrayList<Voxel>();
+        for (int slot = firstSlot(rgb); slot != -1; slot = nextSlots[slot]) {
+            result.add(view(slot));
+        }
+        Voxel[] voxels = new Voxel[result.size()];
+        result.toArray(voxels);
+        return voxels;
+    }
+
+    // move the colors of this layer to another palette
+    public final void setPalette(ColorPalette target) {
+        if (target != palette) {
+            colorHeads.clear();
+            for (int i = 0; i < size; i++) {
+                colors[i] = target.acquire(palette.getRGB(colors[i]));
+                link(i);
+            }
+            palette = target;
+        }
     }
 
     // set the alpha of a voxel
-    public final void setVoxelAlpha(Voxel voxel, int alpha) {
-        voxel.setAlpha(alpha);
+    public final void setVoxelAlpha(int voxelId, int alpha) {
+        alphas[slots.get(voxelId)] = alpha;
+    }
+
+    // add the ids of the selected voxels to the set
+    public final void collectSelectedIds(TIntHashSet result) {
+        for (int i = 0; i < size; i++) {
+            if (selected[i]) {
+                result.add(ids[i]);
+            }
+        }
     }
 
-    // remove a voxel
-    public final boolean removeVoxel(Voxel voxel) {
-        return voxelList.remove(voxel) && unindexVoxel(voxel);
+    // set the selection state of a voxel
+    public final void setVoxelSelected(int voxelId, boolean b) {
+        selected[slots.get(voxelId)] = b;
+    }
+
+    // set the texture of a voxel (null removes the texture, rotation and flip)
+    public final boolean setVoxelTexture(int voxelId, int[] textureIds) {
+        if (textureIds == null) {
+            sides.remove(voxelId);
+            return true;
+        }
+        if (textureIds.length == 6) {
+            getSides(voxelId, true).textureIds = textureIds.clone();
+            return true;
+        }
+        return false;
+    }
+
+    // rotate the texture of a voxel side (reverse rotates the other way)
+    public final void rotateVoxelTexture(int voxelId, int side, boolean reverse) {
+        VoxelSides voxelSides = getSides(voxelId, true);
+        int[] rotation = voxelSides.rotation == null ? new int[6] : voxelSides.rotation.clone();
+        rotation[side] = (rotation[side] + (reverse ? 3 : 1))%4;
+        voxelSides.rotation = rotation;
+    }
+
+    // flip the texture of a voxel side
+    public final void flipVoxelTexture(int voxelId, int side) {
+        VoxelSides voxelSides = getSides(voxelId, true);
+        boolean[] flip = voxelSides.flip == null ? new boolean[6] : voxelSides.flip.clone();
+        flip[side] = !flip[side];
+        voxelSides.flip = flip;
     }
 
     // get all voxels of this layer
     public final Voxel[] getVoxels() {
-        Voxel[] result = new Voxel[voxelList.size()];
-        voxelList.toArray(result);
+        Voxel[] result = new Voxel[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = view(i);
+        }
         return result;
     }
 
-    // get all voxel colors of this layer
-    public final TIntHashSet getVoxelColors() {
-        TIntHashSet result = new TIntHashSet();
-        for (Voxel voxel : voxelList) {
-            result.add(voxel.getColor().getRGB());
+    // get the ids of all voxels in this layer (in the same order as the positions)
+    public final int[] getVoxelIds() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    // get the positions of all voxels in this layer (in the same order as the ids)
+    public final long[] getPosIds() {
+        return Arrays.copyOf(posIds, size);
+    }
+
+    // add all texture ids that are used by voxels of this layer to the result
+    public final void collectTextureIds(TIntHashSet result) {
+        for (VoxelSides voxelSides : sides.valueCollection()) {
+            if (voxelSides.textureIds != null) {
+                result.addAll(voxelSides.textureIds);
+            }
         }
-        return result;
     }
 
     // set the name of this layer
@@ -0,0 +1,178 @@
+package com.vitco.app.core.data.container;
+
+import com.vitco.app.low.LongCubeIndexer;
+import org.junit.Test;
+
+import java.awt.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Test the packed voxel storage of the layer.
+ */
+public class VoxelLayerTest {
+
+    private static final int COUNT = 200000;
+
+    // helper - measure the used memory (collect until it no longer decreases)
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long result = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(50);
+            long used = runtime.totalMemory() - runtime.freeMemory();
+            if (used >= result) {
+                break;
+            }
+            result = used;
+        }
+        return result;
+    }
+
+    // helper - create test voxels (a dense block)
+    private static Voxel[] createVoxels(int layerId) {
+        Random rand = new Random(0);
+        Voxel[] result = new Voxel[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            result[i] = new Voxel(i, new int[] {i % 100, (i / 100) % 100, i / 10000},
+                    new Color(rand.nextInt(0xFFFFFF)), false, null, layerId);
+        }
+        return result;
+    }
+
+    // helper - create a layer that holds the test voxels
+    private static VoxelLayer createLayer() {
+        VoxelLayer result = new VoxelLayer(0, "layer");
+        for (Voxel voxel : createVoxels(0)) {
+            result.addVoxel(voxel);
+        }
+        return result;
+    }
+
+    @Test
+    public void testData() throws Exception {
+        VoxelLayer layer = new VoxelLayer(0, "layer");
+        Voxel a = new Voxel(5, new int[] {1, -2, 3}, Color.RED, true, null, 0);
+        Voxel b = new Voxel(6, new int[] {4, 5, -6}, Color.GREEN, false, new int[] {1,1,1,1,1,1}, 0);
+        layer.addVoxel(a);
+        layer.addVoxel(b);
+        assert layer.getSize() == 2;
+        assert !layer.voxelPositionFree(new int[] {1, -2, 3});
+
+        // views reflect the packed data
+        Voxel view = layer.search(new int[] {4, 5, -6});
+        assert view.id == 6 && view.x == 4 && view.y == 5 && view.z == -6;
+        assert view.getColor().equals(Color.GREEN);
+        assert view.getTexture()[3] == 1;
+        assert layer.getVoxel(5).isSelected();
+
+        // changes do not effect existing views
+        layer.setVoxelColor(6, Color.BLUE);
+        layer.rotateVoxelTexture(6, 2, false);
+        layer.flipVoxelTexture(6, 1);
+        assert view.getColor().equals(Color.GREEN);
+        assert view.getRotation() == null;
+        view = layer.getVoxel(6);
+        assert view.getColor().equals(Color.BLUE);
+        assert view.getRotation()[2] == 1;
+        assert view.getFlip()[1];
+        layer.rotateVoxelTexture(6, 2, true);
+        assert layer.getVoxel(6).getRotation()[2] == 0;
+        // removing the texture resets rotation and flip
+        layer.setVoxelTexture(6, null);
+        assert layer.getVoxel(6).getRotation() == null;
+        assert layer.getVoxel(6).getFlip() == null;
+
+        // removal moves the last voxel
+        assert layer.removeVoxel(5);
+        assert !layer.removeVoxel(5);
+        assert layer.getSize() == 1;
+        assert layer.voxelPositionFree(new int[] {1, -2, 3});
+        assert layer.search(new int[] {4, 5, -6}).id == 6;
+        assert layer.getVoxelIds()[0] == 6;
+    }
+
+    @Test
+    public void testPackedVoxels() throws Exception {
+        PackedVoxels voxels = new PackedVoxels(0);
+        voxels.add(new Voxel(5, new int[] {1, -2, 3}, new Color(10, 20, 30, 40), true, null, 2));
+        voxels.add(new Voxel(9, LongCubeIndexer.getId(-100, 5, 7),
+                Color.GREEN.getRGB(), 255, false, new int[] {1, 2, 3, 4, 5, 6}, new int[] {0, 0, 1, 0, 0, 0}, null, 3));
+
+        // write and read again
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        voxels.write(new DataOutputStream(bytes));
+        PackedVoxels read = PackedVoxels.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assert read.size() == 2;
+        assert read.getMemoryEstimate() == voxels.getMemoryEstimate();
+        for (int i = 0; i < 2; i++) {
+            Voxel a = voxels.get(i);
+            Voxel b = read.get(i);
+            assert a.id == b.id && a.posId == b.posId && a.getLayerId() == b.getLayerId();
+            assert a.getColor().equals(b.getColor()) && a.getAlpha() == b.getAlpha();
+            assert a.isSelected() == b.isSelected();
+        }
+        assert read.get(0).getTexture() == null;
+        assert read.get(1).getTexture()[5] == 6;
+        assert read.get(1).getRotation()[2] == 1;
+        assert read.get(1).getFlip() == null;
+    }
+
+    @Test
+    public void testLargeLayer() throws Exception {
+        // insert and remove do not depend on the layer size
+        int count = 2000000;
+        VoxelLayer layer = new VoxelLayer(0, "layer");
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            layer.addVoxel(new Voxel(i, new int[] {i % 200, (i / 200) % 200, i / 40000}, Color.RED, false, null, 0));
+        }
+        assert layer.getSize() == count;
+        // remove every second voxel (in reverse order, so voxels are moved)
+        for (int i = 0; i < count; i += 2) {
+            assert layer.removeVoxel(i);
+        }
+        System.out.println("Added " + count + " and removed " + count / 2 + " voxels in " +
+                (System.currentTimeMillis() - time) + "ms");
+        assert layer.getSize() == count / 2;
+        for (int i = 0; i < count; i++) {
+            int[] pos = new int[] {i % 200, (i / 200) % 200, i / 40000};
+            assert layer.voxelPositionFree(pos) == (i % 2 == 0);
+            assert i % 2 == 0 || layer.search(pos).id == i;
+        }
+    }
+
+    @Test
+    public void testMemoryPerVoxel() throws Exception {
+        // the voxel objects and maps as they were held before
+        long before = usedMemory();
+        Voxel[] voxels = createVoxels(0);
+        ArrayList<Voxel> voxelList = new ArrayList<Voxel>();
+        HashMap<Integer, Voxel> voxelMap = new HashMap<Integer, Voxel>();
+        for (Voxel voxel : voxels) {
+            voxelList.add(voxel);
+            voxelMap.put(voxel.id, voxel);
+        }
+        voxels = null;
+        long objectBytes = usedMemory() - before;
+        assert voxelList.size() == voxelMap.size();
+        voxelList = null;
+        voxelMap = null;
+
+        // the packed layer
+        before = usedMemory();
+        VoxelLayer layer = createLayer();
+        long packedBytes = usedMemory() - before;
+        assert layer.getSize() == COUNT;
+
+        System.out.println("Bytes per voxel (objects): " + objectBytes / COUNT);
+        System.out.println("Bytes per voxel (packed): " + packedBytes / COUNT);
+        assert packedBytes < objectBytes;
+    }
+}
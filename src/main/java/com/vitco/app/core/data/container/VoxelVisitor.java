@@ -0,0 +1,9 @@
+package com.vitco.app.core.data.container;
+
+/**
+ * Visits voxels one by one (e.g. the voxels in a box) without collecting them first.
+ */
+public interface VoxelVisitor {
+    // called for every voxel, return false to stop the visit
+    boolean visit(Voxel voxel);
+}
@@ -0,0 +1,442 @@
+package com.vitco.app.core.data.container;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Binary vsd file format (version 2).
+ *
+ * The file starts with a magic number and the format version, followed by sections. Every
+ * section has a tag and the length of its content, so unknown sections are skipped. The
+ * sections are written in this order: state, layer table, layer summary (voxel count and
+ * bounds, optional), textures (one per texture), voxel chunks (one per chunk of a layer,
+ * see VoxelLayer.writeChunks) and animation. Files are read with MappedVsdFile.
+ *
+ * The voxel data of a chunk can be compressed (deflate, since version 2). The header of a
+ * compressed chunk (layer, origin and voxel count) is not compressed, so the file can still
+ * be indexed without inflating anything. The chunks are independent, so they are compressed
+ * in parallel and written in order.
+ *
+ * Loading and saving is linear in the amount of voxels and does not use java serialization.
+ */
+final class VsdFormat {
+
+    // identifies the format ("VSD2")
+    static final int MAGIC = 0x56534432;
+    // the current version (2: compressed chunks)
+    static final int VERSION = 2;
+
+    // section tags
+    static final int TAG_STATE = 0x53544154; // "STAT"
+    static final int TAG_LAYERS = 0x4C415952; // "LAYR"
+    static final int TAG_SUMMARY = 0x53554D4D; // "SUMM"
+    static final int TAG_TEXTURE = 0x54455852; // "TEXR"
+    static final int TAG_CHUNK = 0x43484E4B; // "CHNK"
+    static final int TAG_CHUNK_DEFLATED = 0x43484E5A; // "CHNZ"
+    static final int TAG_ANIMATION = 0x414E494D; // "ANIM"
+    static final int TAG_END = 0x454E4420; // "END "
+
+    // the size of the chunk header (layer id, origin and voxel count)
+    static final int CHUNK_HEADER_SIZE = 20;
+
+    // the pool that compresses the chunks (the worker threads are daemon threads)
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+    // the deflater of every worker thread (reused)
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater();
+        }
+    };
+
+    // ----------------
+
+    // the voxels of the layers that are written (they do not need to be held by the layers)
+    interface VoxelSource {
+        // the amount of voxels of a layer
+        int getSize(VoxelLayer layer);
+        // the bounds {min, max} of a layer (null if the layer is empty)
+        int[][] getBounds(VoxelLayer layer);
+        // write the chunks of a layer
+        void writeChunks(VoxelLayer layer, SectionWriter writer) throws IOException;
+    }
+
+    // the voxels that are held by the layers
+    private static final VoxelSource LAYER_VOXELS = new VoxelSource() {
+        @Override
+        public int getSize(VoxelLayer layer) {
+            return layer.getSize();
+        }
+
+        @Override
+        public int[][] getBounds(VoxelLayer layer) {
+            return layer.getBounds();
+        }
+
+        @Override
+        public void writeChunks(VoxelLayer layer, SectionWriter writer) throws IOException {
+            layer.writeChunks(writer, TAG_CHUNK);
+        }
+    };
+
+    // ----------------
+
+    // writes sections, the content of a section is buffered to know the length (the buffer is reused)
+    static class SectionWriter {
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final DataOutputStream section = new DataOutputStream(buffer);
+        private int tag;
+
+        private SectionWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        // start a section, returns the stream for the content
+        final DataOutputStream begin(int tag) {
+            this.tag = tag;
+            buffer.reset();
+            return section;
+        }
+
+        // finish the current section
+        final void end() throws IOException {
+            section.flush();
+            write(tag, buffer);
+        }
+
+        // write the file header
+        void writeHeader() throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+
+        // write a section
+        void write(int tag, ByteArrayOutputStream content) throws IOException {
+            out.writeInt(tag);
+            out.writeInt(content.size());
+            content.writeTo(out);
+        }
+
+        // write everything that is still buffered
+        void finish() throws IOException {
+            out.flush();
+        }
+    }
+
+    // writes sections to a file channel and compresses the chunks in parallel (the other
+    // sections wait until the chunks before them are written)
+    static final class DeflatingSectionWriter extends SectionWriter {
+        private final FileChannel channel;
+        private final int level;
+        // the chunks that are compressed (in file order)
+        private final ArrayDeque<Future<ByteBuffer>> queue = new ArrayDeque<Future<ByteBuffer>>();
+        // the amount of chunks that are compressed at the same time
+        private final int maxQueued = POOL.getParallelism() * 4;
+
+        private DeflatingSectionWriter(FileChannel channel, int level) {
+            super(null);
+            this.channel = channel;
+            this.level = level;
+        }
+
+        @Override
+        void writeHeader() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(header);
+        }
+
+        @Override
+        void write(int tag, ByteArrayOutputStream content) throws IOException {
+            final byte[] bytes = content.toByteArray();
+            if (tag == TAG_CHUNK) {
+                queue.add(POOL.submit(new Callable<ByteBuffer>() {
+                    @Override
+                    public ByteBuffer call() {
+                        return deflateChunk(bytes, level);
+                    }
+                }));
+                drain(maxQueued);
+            } else {
+                drain(0);
+                writeFully(section(tag, bytes, bytes.length));
+            }
+        }
+
+        @Override
+        void finish() throws IOException {
+            drain(0);
+        }
+
+        // stop compressing (after an error)
+        void cancel() {
+            for (Future<ByteBuffer> task : queue) {
+                task.cancel(false);
+            }
+            queue.clear();
+        }
+
+        // helper - write the compressed chunks until at most limit are left
+        private void drain(int limit) throws IOException {
+            while (queue.size() > limit) {
+                try {
+                    writeFully(queue.poll().get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+            }
+        }
+
+        // helper - write a buffer to the channel
+        private void writeFully(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
+
+    // helper - a section as it is stored in the file
+    private static ByteBuffer section(int tag, byte[] content, int length) {
+        ByteBuffer result = ByteBuffer.allocate(8 + length);
+        result.putInt(tag).putInt(length).put(content, 0, length).flip();
+        return result;
+    }
+
+    // helper - compress the voxel data of a chunk section (the header is kept), the
+    // chunk is kept as it is if it does not get smaller
+    private static ByteBuffer deflateChunk(byte[] content, int level) {
+        int rawLength = content.length - CHUNK_HEADER_SIZE;
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setInput(content, CHUNK_HEADER_SIZE, rawLength);
+        deflater.finish();
+        // header, raw length and the compressed data (at most as long as the chunk)
+        byte[] result = new byte[content.length];
+        int length = CHUNK_HEADER_SIZE + 4;
+        while (!deflater.finished() && length < result.length) {
+            length += deflater.deflate(result, length, result.length - length);
+        }
+        if (!deflater.finished()) {
+            return section(TAG_CHUNK, content, content.length);
+        }
+        System.arraycopy(content, 0, result, 0, CHUNK_HEADER_SIZE);
+        ByteBuffer.wrap(result, CHUNK_HEADER_SIZE, 4).putInt(rawLength);
+        return section(TAG_CHUNK_DEFLATED, result, length);
+    }
+
+    // write a data container (the chunks are not compressed)
+    static void write(DataContainer container, DataOutputStream out) throws IOException {
+        SectionWriter writer = new SectionWriter(out);
+        writeSections(container, LAYER_VOXELS, writer);
+        writer.finish();
+    }
+
+    // write a data container, the chunks are compressed in parallel with a deflate level
+    static void write(DataContainer container, FileChannel channel, int level) throws IOException {
+        write(container, LAYER_VOXELS, channel, level);
+    }
+
+    // write a data container with the voxels of a source, the chunks are compressed in
+    // parallel with a deflate level
+    static void write(DataContainer container, VoxelSource voxels, FileChannel channel, int level) throws IOException {
+        DeflatingSectionWriter writer = new DeflatingSectionWriter(channel, level);
+        try {
+            writeSections(container, voxels, writer);
+            writer.finish();
+        } finally {
+            writer.cancel();
+        }
+    }
+
+    // helper - write all sections
+    private static void writeSections(DataContainer container, VoxelSource voxels,
+                                      SectionWriter writer) throws IOException {
+        writer.writeHeader();
+
+        // state
+        writeState(writer.begin(TAG_STATE), container);
+        writer.end();
+
+        // layer table
+        writeLayers(writer.begin(TAG_LAYERS), container);
+        writer.end();
+
+        // layer summary (known before the voxels are read)
+        DataOutputStream section = writer.begin(TAG_SUMMARY);
+        section.writeInt(container.layers.size());
+        for (VoxelLayer layer : container.layers.values()) {
+            section.writeInt(layer.id);
+            section.writeInt(voxels.getSize(layer));
+            int[][] bounds = voxels.getBounds(layer);
+            if (bounds != null) {
+                for (int[] bound : bounds) {
+                    section.writeInt(bound[0]);
+                    section.writeInt(bound[1]);
+                    section.writeInt(bound[2]);
+                }
+            }
+        }
+        writer.end();
+
+        // textures (png)
+        if (container.textures != null) {
+            for (Map.Entry<Integer, TextureData> entry : container.textures.entrySet()) {
+                writeTexture(writer.begin(TAG_TEXTURE), entry.getKey(), entry.getValue());
+                writer.end();
+            }
+        }
+
+        // voxels
+        for (VoxelLayer layer : container.layers.values()) {
+            voxels.writeChunks(layer, writer);
+        }
+
+        // animation
+        writeAnimation(writer.begin(TAG_ANIMATION), container);
+        writer.end();
+
+        writer.begin(TAG_END);
+        writer.end();
+    }
+
+    // write the state section
+    static void writeState(DataOutput out, DataContainer container) throws IOException {
+        out.writeInt(container.selectedTexture);
+        out.writeInt(container.selectedLayer);
+        out.writeInt(container.activeFrame);
+    }
+
+    // write the layer table section
+    static void writeLayers(DataOutput out, DataContainer container) throws IOException {
+        out.writeInt(container.layers.size());
+        for (VoxelLayer layer : container.layers.values()) {
+            out.writeInt(layer.id);
+            out.writeUTF(layer.getName());
+            out.writeBoolean(layer.isVisible());
+        }
+        out.writeInt(container.layerOrder.size());
+        for (Integer layerId : container.layerOrder) {
+            out.writeInt(layerId);
+        }
+    }
+
+    // write a texture section (png)
+    static void writeTexture(DataOutput out, int textureId, TextureData texture) throws IOException {
+        out.writeInt(textureId);
+        out.write(texture.getEncoded());
+    }
+
+    // write the animation section
+    static void writeAnimation(DataOutput out, DataContainer container) throws IOException {
+        out.writeInt(container.points.size());
+        for (ExtendedVector point : container.points.values()) {
+            writePoint(out, point);
+        }
+        out.writeInt(container.lines.size());
+        for (ExtendedLine line : container.lines.values()) {
+            out.writeInt(line.point1);
+            out.writeInt(line.point2);
+        }
+        out.writeInt(container.frames.size());
+        for (Map.Entry<Integer, Frame> entry : container.frames.entrySet()) {
+            Frame frame = entry.getValue();
+            out.writeInt(entry.getKey());
+            out.writeUTF(frame.getName());
+            Integer[] pointIds = frame.getPoints();
+            out.writeInt(pointIds.length);
+            for (Integer pointId : pointIds) {
+                writePoint(out, frame.getPoint(pointId));
+            }
+        }
+    }
+
+    // helper - write an animation point
+    private static void writePoint(DataOutput out, ExtendedVector point) throws IOException {
+        out.writeInt(point.id);
+        out.writeFloat(point.x);
+        out.writeFloat(point.y);
+        out.writeFloat(point.z);
+    }
+
+    // ----------------
+
+    // read the state section
+    static void readState(DataInput in, DataContainer.TmpData data) throws IOException {
+        data.selectedTexture = in.readInt();
+        data.selectedLayer = in.readInt();
+        data.activeFrame = in.readInt();
+    }
+
+    // read the layer table section (the layers are empty)
+    static void readLayers(DataInput in, DataContainer.TmpData data) throws IOException {
+        for (int i = 0, count = in.readInt(); i < count; i++) {
+            VoxelLayer layer = new VoxelLayer(in.readInt(), in.readUTF());
+            layer.setVisible(in.readBoolean());
+            data.layers.put(layer.id, layer);
+        }
+        for (int i = 0, count = in.readInt(); i < count; i++) {
+            data.layerOrder.add(in.readInt());
+        }
+    }
+
+    // read a texture section of a length (the image is decoded when needed)
+    static void readTexture(DataInput in, int length, DataContainer.TmpData data) throws IOException {
+        int textureId = in.readInt();
+        byte[] encoded = new byte[length - 4];
+        in.readFully(encoded);
+        data.textures.put(textureId, TextureData.fromEncoded(encoded));
+    }
+
+    // helper - read an animation point
+    private static ExtendedVector readPoint(DataInput in) throws IOException {
+        int id = in.readInt();
+        return new ExtendedVector(in.readFloat(), in.readFloat(), in.readFloat(), id);
+    }
+
+    // read the animation section
+    static void readAnimation(DataInput in, DataContainer.TmpData data) throws IOException {
+        for (int i = 0, count = in.readInt(); i < count; i++) {
+            ExtendedVector point = readPoint(in);
+            data.points.put(point.id, point);
+        }
+        for (int i = 0, count = in.readInt(); i < count; i++) {
+            ExtendedLine line = new ExtendedLine(in.readInt(), in.readInt());
+            data.lines.put(line.point1 + "_" + line.point2, line);
+            addLine(data, line.point1, line);
+            addLine(data, line.point2, line);
+        }
+        for (int i = 0, count = in.readInt(); i < count; i++) {
+            int frameId = in.readInt();
+            Frame frame = new Frame(in.readUTF());
+            for (int j = 0, pointCount = in.readInt(); j < pointCount; j++) {
+                ExtendedVector point = readPoint(in);
+                frame.setPoint(point.id, point);
+            }
+            data.frames.put(frameId, frame);
+        }
+    }
+
+    // helper - register a line with a point
+    private static void addLine(DataContainer.TmpData data, int pointId, ExtendedLine line) {
+        ArrayList<ExtendedLine> lines = data.pointsToLines.get(pointId);
+        if (lines == null) {
+            lines = new ArrayList<ExtendedLine>();
+            data.pointsToLines.put(pointId, lines);
+        }
+        lines.add(line);
+    }
+}
@@ -0,0 +1,380 @@
+package com.vitco.app.core.data.container;
+
+import com.threed.jpct.SimpleVector;
+import com.vitco.app.core.data.Data;
+import com.vitco.app.settings.VitcoSettings;
+import org.junit.Test;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test that files are written and read without changes (binary and old format).
+ */
+public class VsdFormatTest {
+
+    // helper - check that two documents hold the same voxel data
+    private static void compareVoxels(Data expected, Data loaded) {
+        assertArrayEquals(expected.getLayers(), loaded.getLayers());
+        for (Integer layerId : expected.getLayers()) {
+            assertEquals(expected.getLayerName(layerId), loaded.getLayerName(layerId));
+            assertEquals(expected.getLayerVisible(layerId), loaded.getLayerVisible(layerId));
+            HashMap<Integer, Voxel> voxels = new HashMap<Integer, Voxel>();
+            for (Voxel voxel : loaded.getLayerVoxels(layerId)) {
+                voxels.put(voxel.id, voxel);
+            }
+            Voxel[] expectedVoxels = expected.getLayerVoxels(layerId);
+            assertEquals(expectedVoxels.length, voxels.size());
+            for (Voxel voxel : expectedVoxels) {
+                Voxel other = voxels.get(voxel.id);
+                assertEquals(voxel.posId, other.posId);
+                assertEquals(voxel.getRGB(), other.getRGB());
+                assertEquals(voxel.getAlpha(), other.getAlpha());
+                // the selection is not stored
+                assertFalse(other.isSelected());
+                assertArrayEquals(voxel.getTexture(), other.getTexture());
+                assertArrayEquals(voxel.getRotation(), other.getRotation());
+                assertArrayEquals(voxel.getFlip(), other.getFlip());
+            }
+        }
+        assertEquals(expected.getSelectedLayer(), loaded.getSelectedLayer());
+    }
+
+    // helper - create a document with voxels (most of them in the second layer), a texture and animation
+    private static Data createData() {
+        Data data = new Data();
+        int lid1 = data.getLayers()[0];
+        int lid2 = data.createLayer("second layer");
+        Random rand = new Random(0);
+        for (int i = 0; i < 20000; i++) {
+            data.selectLayer(rand.nextInt(4) == 0 ? lid1 : lid2);
+            data.addVoxelDirect(new Color(rand.nextInt(8) * 30, 100, rand.nextInt(255)),
+                    new int[] {rand.nextInt(100) - 50, rand.nextInt(40), rand.nextInt(60) - 70});
+        }
+        BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 32; x++) {
+            for (int y = 0; y < 32; y++) {
+                image.setRGB(x, y, rand.nextInt(0xFFFFFF));
+            }
+        }
+        data.addTexture(image);
+        int textureId = data.getTextureList()[0];
+        Voxel[] voxels = data.getLayerVoxels(lid2);
+        data.massSetVoxelSelected(new Integer[] {voxels[0].id, voxels[5].id, voxels[9].id}, true);
+        data.setAlpha(voxels[3].id, 100);
+        data.setTexture(voxels[1].id, 2, textureId);
+        data.rotateVoxelTexture(voxels[1].id, 2);
+        data.flipVoxelTexture(voxels[1].id, 4);
+        data.setVisible(lid1, false);
+        int p1 = data.addPoint(new SimpleVector(1, 2, 3));
+        int p2 = data.addPoint(new SimpleVector(-1, 0.5f, 7));
+        data.connect(p1, p2);
+        int frameId = data.createFrame("frame");
+        data.selectFrame(frameId);
+        data.movePoint(p2, new SimpleVector(4, 4, 4));
+        return data;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Data data = createData();
+        int textureId = data.getTextureList()[0];
+        int p1 = data.getPoints()[0].id;
+        int p2 = data.getPoints()[1].id;
+        if (p1 > p2) {
+            int tmp = p1;
+            p1 = p2;
+            p2 = tmp;
+        }
+        int frameId = data.getFrames()[0];
+
+        File file = File.createTempFile("vsd", ".vsd");
+        try {
+            long time = System.currentTimeMillis();
+            boolean success = data.saveToFile(file);
+            assertTrue(success);
+            System.out.println("Saved " + 20000 + " voxels in " + (System.currentTimeMillis() - time)
+                    + "ms (" + file.length() + " bytes)");
+            Data loaded = new Data();
+            time = System.currentTimeMillis();
+            success = loaded.loadFromFile(file);
+            assertTrue(success);
+            System.out.println("Loaded in " + (System.currentTimeMillis() - time) + "ms");
+
+            compareVoxels(data, loaded);
+            assertArrayEquals(data.getTextureList(), loaded.getTextureList());
+            assertEquals(data.getTextureHash(textureId), loaded.getTextureHash(textureId));
+            // the texture is decoded once
+            BufferedImage image = loaded.getTextureImage(textureId);
+            assertSame(image, loaded.getTextureImage(textureId));
+            for (int x = 0; x < 32; x++) {
+                for (int y = 0; y < 32; y++) {
+                    assertEquals(data.getTextureImage(textureId).getRGB(x, y), image.getRGB(x, y));
+                }
+            }
+            // animation
+            assertEquals(2, loaded.getPoints().length);
+            assertTrue(loaded.areConnected(p1, p2));
+            assertArrayEquals(data.getFrames(), loaded.getFrames());
+            success = loaded.selectFrame(frameId);
+            assertTrue(success);
+            assertEquals(data.getPoint(p2), loaded.getPoint(p2));
+            success = loaded.selectFrame(-1);
+            assertTrue(success);
+            assertEquals(new ExtendedVector(1, 2, 3, p1), loaded.getPoint(p1));
+        } finally {
+            boolean deleted = file.delete();
+            assertTrue(deleted);
+        }
+    }
+
+    @Test
+    public void testCompression() throws Exception {
+        Data data = createData();
+        // a dense block (compresses well)
+        data.selectLayer(data.createLayer("dense"));
+        for (int x = 0; x < 64; x++) {
+            for (int y = 0; y < 64; y++) {
+                for (int z = 0; z < 32; z++) {
+                    data.addVoxelDirect(new Color(x * 4, y * 4, 80), new int[] {x + 100, y, z});
+                }
+            }
+        }
+        File file = File.createTempFile("vsd", ".vsd");
+        try {
+            int[] levels = new int[] {
+                    DataContainer.COMPRESSION_NONE, DataContainer.COMPRESSION_FAST, DataContainer.COMPRESSION_MAX
+            };
+            long[] lengths = new long[levels.length];
+            for (int i = 0; i < levels.length; i++) {
+                boolean saved = data.saveToFile(file, levels[i]);
+                assertTrue(saved);
+                lengths[i] = file.length();
+                // every level restores the same data
+                Data loaded = new Data();
+                boolean load = loaded.loadFromFile(file);
+                assertTrue(load);
+                compareVoxels(data, loaded);
+                assertArrayEquals(data.getTextureList(), loaded.getTextureList());
+            }
+            // higher levels result in smaller files
+            assertTrue(lengths[1] < lengths[0]);
+            assertTrue(lengths[2] <= lengths[1]);
+        } finally {
+            boolean deleted = file.delete();
+            assertTrue(deleted);
+        }
+    }
+
+    @Test
+    public void testMappedFile() throws Exception {
+        Data data = createData();
+        File file = File.createTempFile("vsd", ".vsd");
+        try {
+            boolean success = data.saveToFile(file);
+            assertTrue(success);
+            MappedVsdFile mapped = MappedVsdFile.open(file);
+            assertNotNull(mapped);
+            try {
+                // known without decoding the voxels
+                int voxelCount = 0;
+                for (Integer layerId : data.getLayers()) {
+                    voxelCount += data.getLayerVoxels(layerId).length;
+                }
+                assertEquals(voxelCount, mapped.getVoxelCount());
+                for (Integer layerId : data.getLayers()) {
+                    assertEquals(data.getLayerVoxels(layerId).length, mapped.getVoxelCount(layerId));
+                    int[][] bounds = mapped.getBounds(layerId);
+                    int[][] expected = data.getVoxelBounds(layerId);
+                    assertArrayEquals(expected[0], bounds[0]);
+                    assertArrayEquals(expected[1], bounds[1]);
+                    // the preview covers all voxels
+                    int previewCount = 0;
+                    for (int[] cell : mapped.getPreview(layerId)) {
+                        assertEquals(0, cell[0] % MappedVsdFile.CHUNK_SIZE);
+                        assertTrue(cell[3] > 0);
+                        previewCount += cell[3];
+                    }
+                    assertEquals(mapped.getVoxelCount(layerId), previewCount);
+                }
+                // decode a region
+                int layerId = data.getLayers()[0];
+                int[] min = new int[] {-10, 5, -40};
+                int[] max = new int[] {20, 12, -20};
+                Voxel[] region = mapped.getVoxelsInBox(layerId, min, max);
+                Voxel[] expected = data.getVoxelsInBox(min, max, layerId);
+                assertEquals(expected.length, region.length);
+                assertTrue(region.length > 0);
+                HashMap<Integer, Voxel> voxels = new HashMap<Integer, Voxel>();
+                for (Voxel voxel : region) {
+                    voxels.put(voxel.id, voxel);
+                }
+                for (Voxel voxel : expected) {
+                    assertEquals(voxel.posId, voxels.get(voxel.id).posId);
+                    assertEquals(voxel.getRGB(), voxels.get(voxel.id).getRGB());
+                }
+            } finally {
+                mapped.close();
+            }
+            // the mapping is released, the file can be written again
+            success = data.saveToFile(file);
+            assertTrue(success);
+            // other files are not mapped
+            File other = File.createTempFile("vsd", ".txt");
+            try {
+                assertNull(MappedVsdFile.open(other));
+            } finally {
+                boolean deleted = other.delete();
+                assertTrue(deleted);
+            }
+        } finally {
+            boolean deleted = file.delete();
+            assertTrue(deleted);
+        }
+    }
+
+    @Test
+    public void testBackgroundLoad() throws Exception {
+        Data data = createData();
+        File file = File.createTempFile("vsd", ".vsd");
+        try {
+            boolean success = data.saveToFile(file);
+            assertTrue(success);
+            // load in the background until done
+            Data loaded = new Data();
+            success = loaded.loadFromFileInBackground(file);
+            assertTrue(success);
+            assertArrayEquals(data.getLayers(), loaded.getLayers());
+            long time = System.currentTimeMillis();
+            while (loaded.isLoading()) {
+                assertTrue(System.currentTimeMillis() - time < 60000);
+                Thread.sleep(5);
+            }
+            compareVoxels(data, loaded);
+            assertFalse(loaded.hasChanged());
+            assertNotNull(loaded.getVoxelBounds(null));
+            // new voxels do not reuse the loaded ids
+            int voxelId = loaded.addVoxel(Color.RED, null, new int[] {500, 500, 500});
+            assertNull(data.getVoxel(voxelId));
+            assertEquals(data.getLayerVoxels(data.getSelectedLayer()).length + 1,
+                    loaded.getLayerVoxels(loaded.getSelectedLayer()).length);
+
+            // the data is frozen until the voxels are loaded
+            Data partial = new Data();
+            synchronized (VitcoSettings.SYNC) {
+                // the loader can not continue meanwhile
+                success = partial.loadFromFileInBackground(file);
+                assertTrue(success);
+                assertTrue(partial.isLoading());
+                partial.addVoxel(Color.RED, null, new int[] {501, 500, 500});
+            }
+            partial.finishLoading();
+            assertFalse(partial.isLoading());
+            assertNull(partial.searchVoxel(new int[] {501, 500, 500}, false));
+            compareVoxels(data, partial);
+            voxelId = partial.addVoxel(Color.RED, null, new int[] {501, 500, 500});
+            assertNotEquals(-1, voxelId);
+            assertNotNull(partial.searchVoxel(new int[] {501, 500, 500}, false));
+        } finally {
+            boolean deleted = file.delete();
+            assertTrue(deleted);
+        }
+    }
+
+    // helper - write a file in the old (serialized) format
+    private static void saveLegacy(DataContainer container, File file) throws IOException {
+        ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            output.writeUTF("**VSD2013**");
+            output.writeUTF("#textures#");
+            // the textures were stored as icons
+            HashMap<Integer, ImageIcon> icons = new HashMap<Integer, ImageIcon>();
+            for (Map.Entry<Integer, TextureData> entry : container.textures.entrySet()) {
+                icons.put(entry.getKey(), entry.getValue().getIcon());
+            }
+            output.writeObject(icons);
+            output.writeUTF("#selectedLayer#");
+            output.writeObject(container.selectedLayer);
+            output.writeUTF("#layers#");
+            output.writeObject(container.layers);
+            output.writeUTF("#layerOrder#");
+            output.writeObject(container.layerOrder);
+            output.writeUTF("#voxels#");
+            output.writeObject(container.voxels);
+            output.writeUTF("#activeFrame#");
+            output.writeObject(container.activeFrame);
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test
+    public void testLegacyFormat() throws Exception {
+        DataContainer container = new DataContainer();
+        VoxelLayer layer = new VoxelLayer(3, "old layer");
+        container.layers.put(layer.id, layer);
+        container.layerOrder.add(layer.id);
+        container.selectedLayer = layer.id;
+        BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(5, 6, 0xFF123456);
+        container.textures.put(4, TextureData.fromImage(image));
+        ArrayList<Voxel> voxels = new ArrayList<Voxel>();
+        for (int i = 0; i < 500; i++) {
+            Voxel voxel = new Voxel(i * 2, new int[] {i % 10, i / 10, -i % 7}, new Color(i * 1000), i % 3 == 0,
+                    i == 7 ? new int[] {1, 2, 3, 4, 5, 6} : null, layer.id);
+            if (layer.voxelPositionFree(voxel)) {
+                layer.addVoxel(voxel);
+                voxels.add(voxel);
+            }
+        }
+        File file = File.createTempFile("vsd", ".vsd");
+        try {
+            saveLegacy(container, file);
+            Data data = new Data();
+            boolean success = data.loadFromFile(file);
+            assertTrue(success);
+            assertArrayEquals(new Integer[] {layer.id}, data.getLayers());
+            assertEquals(voxels.size(), data.getLayerVoxels(layer.id).length);
+            assertArrayEquals(new Integer[] {4}, data.getTextureList());
+            assertEquals(0xFF123456, data.getTextureImage(4).getRGB(5, 6));
+            for (Voxel voxel : voxels) {
+                Voxel loaded = data.getVoxel(voxel.id);
+                assertEquals(voxel.posId, loaded.posId);
+                assertEquals(voxel.getRGB(), loaded.getRGB());
+                assertArrayEquals(voxel.getTexture(), loaded.getTexture());
+            }
+
+            // saving converts to the binary format
+            success = data.saveToFile(file);
+            assertTrue(success);
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                assertEquals(0x56534432, in.readInt());
+            } finally {
+                in.close();
+            }
+            Data converted = new Data();
+            success = converted.loadFromFile(file);
+            assertTrue(success);
+            compareVoxels(data, converted);
+        } finally {
+            boolean deleted = file.delete();
+            assertTrue(deleted);
+        }
+    }
+}
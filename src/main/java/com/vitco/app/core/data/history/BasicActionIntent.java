@@ -1,5 +1,7 @@
 package com.vitco.app.core.data.history;
 
+import java.io.*;
+
 /**
  * Base intent that allows to specify actions further.
  */
@@ -30,6 +32,80 @@ public abstract class BasicActionIntent {
         unapplyAction();
     }
 
+    // returns the estimated memory used by this intent (in bytes), intents
+    // that hold more than a few values need to override this
+    public long getMemoryEstimate() {
+        return 128;
+    }
+
+    // write the data of this intent, returns false if the intent holds
+    // no data that is worth moving to disk
+    protected boolean writeData(DataOutput out) throws IOException {
+        return false;
+    }
+
+    // read the data that was written by writeData()
+    protected void readData(DataInput in) throws IOException {}
+
+    // release the data that was written by writeData()
+    protected void releaseData() {}
+
+    // position and length of the data in the spill file (-1 if it was never written), the
+    // data does not change once the intent was applied, so it is only written once
+    private long spillOffset = -1;
+    private int spillLength = 0;
+    // the generation of the spill file the data was written to
+    private int spillGeneration = 0;
+    // true if the data of this intent is only in the spill file
+    private boolean spilled = false;
+
+    // true if the data of this intent is in the spill file
+    final boolean isSpilled() {
+        return spilled;
+    }
+
+    // move the data of this intent to the spill file, returns true on success
+    final boolean spill(HistorySpill historySpill) {
+        if (spilled) {
+            return false;
+        }
+        if (spillOffset != -1 && spillGeneration == historySpill.getGeneration()) {
+            // the data is still in the spill file
+            releaseData();
+            spilled = true;
+            return true;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            if (!writeData(out)) {
+                return false;
+            }
+            out.flush();
+            byte[] data = bytes.toByteArray();
+            long offset = historySpill.write(data);
+            if (offset == -1) {
+                return false;
+            }
+            releaseData();
+            spillOffset = offset;
+            spillLength = data.length;
+            spillGeneration = historySpill.getGeneration();
+            spilled = true;
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // load the data of this intent from the spill file (the data is kept in the file)
+    final void reload(HistorySpill historySpill) throws IOException {
+        if (spilled) {
+            readData(new DataInputStream(new ByteArrayInputStream(historySpill.read(spillOffset, spillLength))));
+            spilled = false;
+        }
+    }
+
     // action to be defined by child class
     protected abstract void applyAction();
 
@@ -0,0 +1,22 @@
+package com.vitco.app.core.data.history;
+
+/**
+ * Like HistoryChangeListener but overwrites all methods.
+ */
+public abstract class HistoryChangeAdapter<T extends BasicActionIntent> implements HistoryChangeListener<T> {
+
+    @Override
+    public void onChange(T action) {}
+
+    @Override
+    public void onFrozenIntent(T actionIntent) {}
+
+    @Override
+    public void onFrozenApply() {}
+
+    @Override
+    public void onFrozenUnapply() {}
+
+    @Override
+    public void onTrimmed(int count) {}
+}
@@ -8,4 +8,6 @@ public interface HistoryChangeListener<T extends BasicActionIntent> {
     void onFrozenIntent(T actionIntent);
     void onFrozenApply();
     void onFrozenUnapply();
+    // called when the oldest intents were removed to stay within the memory budget
+    void onTrimmed(int count);
 }
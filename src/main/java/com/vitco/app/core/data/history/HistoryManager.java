@@ -1,22 +1,223 @@
 package com.vitco.app.core.data.history;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Manages BasicActionIntents. History manager.
+ *
+ * Intents are applied (and listeners notified) while holding the lock.
+ *
+ * The history is kept within a memory budget. When the budget is exceeded the data of
+ * intents that are far away from the history position is moved to the spill file (and
+ * loaded again in blocks when the history position gets close). If that is not enough,
+ * the oldest intents are removed.
  */
 public class HistoryManager<T extends BasicActionIntent> {
 
+    // held while intents change the data
+    private final Lock lock;
+
+    // the memory budget (in bytes)
+    private final long memoryBudget;
+
+    // the intents that are closer than this to the history position stay in memory
+    private static final int HOT_DISTANCE = 256;
+    // the amount of intents that are loaded from the spill file at once
+    private static final int LOAD_BLOCK_SIZE = 256;
+
+    // holds the data of intents that are far away from the history position (can be null)
+    private final HistorySpill historySpill;
+    // the amount of intents that have their data in the spill file
+    private int spilledCount = 0;
+
+    // constructor
+    public HistoryManager(Lock lock, long memoryBudget, HistorySpill historySpill) {
+        this.lock = lock;
+        this.memoryBudget = memoryBudget;
+        this.historySpill = historySpill;
+    }
+
+    // constructor (without spill file)
+    public HistoryManager(Lock lock, long memoryBudget) {
+        this(lock, memoryBudget, null);
+    }
+
     // holds the history data
     private int historyPosition = -1;
     private ArrayList<T> history = new ArrayList<T>();
+    // the estimated memory used by the history (in bytes)
+    private long memoryUsage = 0;
+
+    // get the estimated memory used by the history (in bytes)
+    public final long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    // helper - the estimated memory used by intents
+    private long getMemoryEstimate(List<T> intents) {
+        long result = 0;
+        for (T intent : intents) {
+            result += intent.getMemoryEstimate();
+        }
+        return result;
+    }
+
+    // get the amount of intents that have their data in the spill file
+    public final int getSpilledCount() {
+        return spilledCount;
+    }
+
+    // helper - remove intents from the history (the history position is not changed)
+    private void remove(int from, int to) {
+        List<T> intents = history.subList(from, to);
+        for (T intent : intents) {
+            memoryUsage -= intent.getMemoryEstimate();
+            if (intent.isSpilled()) {
+                spilledCount--;
+            }
+        }
+        intents.clear();
+        if (spilledCount == 0 && historySpill != null) {
+            // nothing in the spill file is used anymore
+            historySpill.clear();
+        }
+    }
+
+    // helper - move the data of an intent to the spill file
+    private void spill(T intent) {
+        long memory = intent.getMemoryEstimate();
+        if (intent.spill(historySpill)) {
+            spilledCount++;
+            memoryUsage += intent.getMemoryEstimate() - memory;
+        }
+    }
+
+    // helper - check if the data of any of the intents is in the spill file
+    private boolean isSpilled(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (history.get(i).isSpilled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // helper - load the data of intents from the spill file, returns false if the data
+    // could not be loaded
+    private boolean load(int from, int to) {
+        for (int i = Math.max(0, from), len = Math.min(history.size(), to); i < len; i++) {
+            T intent = history.get(i);
+            if (intent.isSpilled()) {
+                long memory = intent.getMemoryEstimate();
+                try {
+                    intent.reload(historySpill);
+                } catch (IOException e) {
+                    return false;
+                }
+                spilledCount--;
+                memoryUsage += intent.getMemoryEstimate() - memory;
+            }
+        }
+        return true;
+    }
+
+    // helper - make sure the intents that are undone next are in memory (if they can not be
+    // loaded, they are removed from the history)
+    private void loadUndo() {
+        if (spilledCount > 0) {
+            // find where the group of the intent starts (attached intents are stored first)
+            int start = historyPosition;
+            while (start > 0 && history.get(start - 1).attach) {
+                start--;
+            }
+            if (isSpilled(start, historyPosition + 1) && !load(Math.min(start, historyPosition - LOAD_BLOCK_SIZE + 1), historyPosition + 1)) {
+                int count = historyPosition + 1;
+                remove(0, count);
+                historyPosition = -1;
+                for (HistoryChangeListener<T> hcl : listeners) {
+                    hcl.onTrimmed(count);
+                }
+            }
+        }
+    }
+
+    // helper - make sure the intents that are redone next are in memory (if they can not be
+    // loaded, they are removed from the history)
+    private void loadRedo() {
+        if (spilledCount > 0) {
+            // find where the group of the intent ends (the main intent is stored last)
+            int end = historyPosition + 1;
+            while (end < history.size() - 1 && history.get(end).attach) {
+                end++;
+            }
+            if (isSpilled(historyPosition + 1, end + 1) && !load(historyPosition + 1, Math.max(end + 1, historyPosition + 1 + LOAD_BLOCK_SIZE))) {
+                remove(historyPosition + 1, history.size());
+            }
+        }
+    }
+
+    // helper - fit the history into the memory budget, first the data of intents that are far
+    // away from the history position is moved to the spill file, then the oldest intents are
+    // removed (only complete intents are removed and the last applied intent is always kept)
+    private void trim() {
+        if (memoryUsage <= memoryBudget) {
+            return;
+        }
+        if (historySpill != null) {
+            // the oldest intents first
+            for (int i = 0, len = historyPosition - HOT_DISTANCE; i < len && memoryUsage > memoryBudget; i++) {
+                spill(history.get(i));
+            }
+            // then the intents that are redone last
+            for (int i = history.size() - 1, len = historyPosition + HOT_DISTANCE; i > len && memoryUsage > memoryBudget; i--) {
+                spill(history.get(i));
+            }
+            if (memoryUsage <= memoryBudget) {
+                return;
+            }
+        }
+        int count = 0;
+        long usage = memoryUsage;
+        long groupUsage = 0;
+        // attached intents are stored before their main intent
+        for (int i = 0; i < historyPosition && usage > memoryBudget; i++) {
+            T intent = history.get(i);
+            groupUsage += intent.getMemoryEstimate();
+            if (!intent.attach) {
+                count = i + 1;
+                usage -= groupUsage;
+                groupUsage = 0;
+            }
+        }
+        if (count > 0) {
+            remove(0, count);
+            historyPosition -= count;
+            for (HistoryChangeListener<T> hcl : listeners) {
+                hcl.onTrimmed(count);
+            }
+        }
+    }
 
     public void clear() {
         if (frozen) {return;}
-        historyPosition = -1;
-        history = new ArrayList<T>();
-        // invalidate the cache
-        notifyListener(null);
+        lock.lock();
+        try {
+            historyPosition = -1;
+            history = new ArrayList<T>();
+            memoryUsage = 0;
+            spilledCount = 0;
+            if (historySpill != null) {
+                // the file is released until it is needed again
+                historySpill.close();
+            }
+            // invalidate the cache
+            notifyListener(null);
+        } finally {
+            lock.unlock();
+        }
     }
 
     public final boolean canUndo() {
@@ -38,6 +239,17 @@ public class HistoryManager<T extends BasicActionIntent> {
     public final void setHistory(ArrayList<T> history) {
         if (frozen) {return;}
         this.history = new ArrayList<T>(history);
+        this.memoryUsage = getMemoryEstimate(history);
+        this.spilledCount = 0;
+        for (T intent : history) {
+            if (intent.isSpilled()) {
+                spilledCount++;
+            }
+        }
+        if (spilledCount == 0 && historySpill != null) {
+            // nothing in the spill file is used anymore
+            historySpill.close();
+        }
     }
 
     public final void setHistoryPosition(int historyPosition) {
@@ -58,19 +270,26 @@ public class HistoryManager<T extends BasicActionIntent> {
             }
             return;
         }
-        // delete all "re-dos"
-        while (history.size() > historyPosition + 1) {
-            history.remove(historyPosition + 1);
-        }
-        // apply the intent
-        actionIntent.apply();
-        historyPosition++;
-        // and add it to the history
-        history.add(actionIntent);
-        // invalidate the cache if the intent is not attached
-        // (for the main intent)
-        if (!actionIntent.attach) {
-            notifyListener(actionIntent);
+        lock.lock();
+        try {
+            // delete all "re-dos"
+            if (history.size() > historyPosition + 1) {
+                remove(historyPosition + 1, history.size());
+            }
+            // apply the intent
+            actionIntent.apply();
+            historyPosition++;
+            // and add it to the history
+            history.add(actionIntent);
+            memoryUsage += actionIntent.getMemoryEstimate();
+            // invalidate the cache if the intent is not attached
+            // (for the main intent)
+            if (!actionIntent.attach) {
+                trim();
+                notifyListener(actionIntent);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -82,17 +301,25 @@ public class HistoryManager<T extends BasicActionIntent> {
             }
             return;
         }
-        if (history.size() > historyPosition + 1) { // we can still "redo"
-            historyPosition++; // move one "up"
-            history.get(historyPosition).apply(); // redo action
-            // make sure the attached histories are applied
-            while (history.size() > historyPosition + 1 && history.get(historyPosition).attach) {
+        lock.lock();
+        try {
+            if (history.size() > historyPosition + 1) {
+                loadRedo();
+            }
+            if (history.size() > historyPosition + 1) { // we can still "redo"
                 historyPosition++; // move one "up"
                 history.get(historyPosition).apply(); // redo action
+                // make sure the attached histories are applied
+                while (history.size() > historyPosition + 1 && history.get(historyPosition).attach) {
+                    historyPosition++; // move one "up"
+                    history.get(historyPosition).apply(); // redo action
+                }
+                notifyListener(history.get(historyPosition)); // ok
+                trim();
             }
-            notifyListener(history.get(historyPosition)); // ok
+        } finally {
+            lock.unlock();
         }
-
     }
 
     // apply the last history intent
@@ -103,10 +330,19 @@ public class HistoryManager<T extends BasicActionIntent> {
             }
             return;
         }
-        if (historyPosition > -1) { // we can still undo
-            T mainAction = history.get(historyPosition);
-            _unapply();
-            notifyListener(mainAction);
+        lock.lock();
+        try {
+            if (historyPosition > -1) {
+                loadUndo();
+            }
+            if (historyPosition > -1) { // we can still undo
+                T mainAction = history.get(historyPosition);
+                _unapply();
+                notifyListener(mainAction);
+                trim();
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
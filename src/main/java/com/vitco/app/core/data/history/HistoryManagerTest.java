@@ -0,0 +1,219 @@
+package com.vitco.app.core.data.history;
+
+import com.vitco.app.util.file.PackedArrayIO;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Test the memory budget of the history.
+ */
+public class HistoryManagerTest {
+
+    // adds a value to the list (and removes it on undo)
+    private static final class AddIntent extends BasicActionIntent {
+        private final ArrayList<Integer> list;
+        private final int value;
+        private final long memory;
+
+        private AddIntent(ArrayList<Integer> list, int value, long memory, boolean attach) {
+            super(attach);
+            this.list = list;
+            this.value = value;
+            this.memory = memory;
+        }
+
+        @Override
+        protected void applyAction() {
+            list.add(value);
+        }
+
+        @Override
+        protected void unapplyAction() {
+            assert list.remove(list.size() - 1) == value;
+        }
+
+        @Override
+        public long getMemoryEstimate() {
+            return memory;
+        }
+    }
+
+    // adds a value to the list, holds data that can be moved to the spill file
+    private static final class DataIntent extends BasicActionIntent {
+        private final ArrayList<Integer> list;
+        private final int value;
+        private int[] data;
+
+        private DataIntent(ArrayList<Integer> list, int value, boolean attach) {
+            super(attach);
+            this.list = list;
+            this.value = value;
+            data = new int[1000];
+            Arrays.fill(data, value);
+        }
+
+        @Override
+        protected void applyAction() {
+            assert data[data.length - 1] == value;
+            list.add(value);
+        }
+
+        @Override
+        protected void unapplyAction() {
+            assert data[0] == value;
+            assert list.remove(list.size() - 1) == value;
+        }
+
+        @Override
+        protected boolean writeData(DataOutput out) throws IOException {
+            PackedArrayIO.writeInts(out, data);
+            return true;
+        }
+
+        @Override
+        protected void readData(DataInput in) throws IOException {
+            data = PackedArrayIO.readInts(in);
+        }
+
+        @Override
+        protected void releaseData() {
+            data = null;
+        }
+
+        @Override
+        public long getMemoryEstimate() {
+            return 64 + (data == null ? 0 : data.length * 4L);
+        }
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        HistorySpill historySpill = new HistorySpill(1L << 30);
+        // room for roughly 600 intents (the intents close to the history position and the rest without data)
+        HistoryManager<DataIntent> historyManager = new HistoryManager<DataIntent>(
+                new ReentrantLock(), 600 * 4064, historySpill);
+        ArrayList<Integer> list = new ArrayList<Integer>();
+        int count = 5000;
+        for (int i = 0; i < count; i++) {
+            historyManager.applyIntent(new DataIntent(list, i, i % 4 != 3));
+        }
+        // nothing was removed, but most intents are on disk
+        assert historyManager.getHistory().size() == count;
+        assert historyManager.getMemoryUsage() <= 600 * 4064;
+        assert historyManager.getSpilledCount() > count - 600;
+        assert historySpill.getSize() > 0;
+
+        // undo everything (the data is loaded in blocks)
+        while (historyManager.canUndo()) {
+            historyManager.unapply();
+            assert historyManager.getMemoryUsage() <= 600 * 4064;
+        }
+        assert list.isEmpty();
+        // redo everything
+        while (historyManager.canRedo()) {
+            historyManager.apply();
+            assert historyManager.getMemoryUsage() <= 600 * 4064;
+        }
+        assert list.size() == count;
+        for (int i = 0; i < count; i++) {
+            assert list.get(i) == i;
+        }
+
+        // the data of the intents is only written once
+        long size = historySpill.getSize();
+        while (historyManager.canUndo()) {
+            historyManager.unapply();
+        }
+        while (historyManager.canRedo()) {
+            historyManager.apply();
+        }
+        assert list.size() == count;
+        assert historySpill.getSize() == size;
+
+        // the spill file is released once the history is cleared
+        historyManager.clear();
+        assert historySpill.getSize() == 0;
+        assert historyManager.getSpilledCount() == 0;
+        historySpill.close();
+    }
+
+    @Test
+    public void testMemoryBudget() throws Exception {
+        HistoryManager<AddIntent> historyManager = new HistoryManager<AddIntent>(new ReentrantLock(), 1000);
+        final int[] trimmed = new int[1];
+        historyManager.addChangeListener(new HistoryChangeListener<AddIntent>() {
+            @Override
+            public void onChange(AddIntent action) {}
+
+            @Override
+            public void onFrozenIntent(AddIntent actionIntent) {}
+
+            @Override
+            public void onFrozenApply() {}
+
+            @Override
+            public void onFrozenUnapply() {}
+
+            @Override
+            public void onTrimmed(int count) {
+                trimmed[0] += count;
+            }
+        });
+        ArrayList<Integer> list = new ArrayList<Integer>();
+
+        // within the budget nothing is removed
+        for (int i = 0; i < 5; i++) {
+            historyManager.applyIntent(new AddIntent(list, i, 100, false));
+        }
+        assert historyManager.getMemoryUsage() == 500;
+        assert trimmed[0] == 0;
+
+        // groups (attached intents and their main intent) are removed together
+        for (int i = 5; i < 20; i += 2) {
+            historyManager.applyIntent(new AddIntent(list, i, 100, true));
+            historyManager.applyIntent(new AddIntent(list, i + 1, 100, false));
+        }
+        assert list.size() == 21;
+        assert historyManager.getMemoryUsage() <= 1000;
+        assert historyManager.getHistory().size() == 10;
+        assert trimmed[0] == 11;
+        assert historyManager.getHistory().get(0).attach;
+
+        // undo works until the oldest kept step
+        int undos = 0;
+        while (historyManager.canUndo()) {
+            historyManager.unapply();
+            undos++;
+        }
+        assert undos == 5;
+        assert list.size() == 11;
+        // redo restores everything
+        while (historyManager.canRedo()) {
+            historyManager.apply();
+        }
+        assert list.size() == 21;
+        for (int i = 0; i < list.size(); i++) {
+            assert list.get(i) == i;
+        }
+
+        // removing redos frees their memory
+        historyManager.unapply();
+        historyManager.unapply();
+        historyManager.applyIntent(new AddIntent(list, -1, 100, false));
+        assert historyManager.getMemoryUsage() == 700;
+
+        // an intent that exceeds the budget on its own is kept
+        historyManager.applyIntent(new AddIntent(list, -2, 5000, false));
+        assert historyManager.getHistory().size() == 1;
+        assert historyManager.getMemoryUsage() == 5000;
+        historyManager.unapply();
+        assert list.get(list.size() - 1) == -1;
+        assert !historyManager.canUndo();
+    }
+}
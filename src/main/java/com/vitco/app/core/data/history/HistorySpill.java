@@ -0,0 +1,127 @@
+package com.vitco.app.core.data.history;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * Temporary file that holds the data of history intents that are far away from the
+ * current history position.
+ *
+ * The file is memory mapped in segments and only appended to, the space is reused
+ * once the file is cleared (i.e. when nothing in it is referenced anymore). The file
+ * is created on the first write (again after it was closed).
+ */
+public final class HistorySpill {
+
+    // size of the mapped segments
+    private static final int SEGMENT_SIZE = 1 << 24;
+
+    // the maximum size of the file (in bytes)
+    private final long limit;
+
+    // the file and the mapped segments
+    private File file = null;
+    private RandomAccessFile randomAccessFile = null;
+    private final ArrayList<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+    // the amount of bytes written
+    private long size = 0;
+    // changes whenever the written data is discarded
+    private int generation = 0;
+
+    // constructor
+    public HistorySpill(long limit) {
+        this.limit = limit;
+    }
+
+    // helper - get the segment that contains an offset (mapped if necessary)
+    private MappedByteBuffer getSegment(long offset) throws IOException {
+        int segment = (int) (offset / SEGMENT_SIZE);
+        while (segments.size() <= segment) {
+            if (randomAccessFile == null) {
+                file = File.createTempFile("voxelshop_history", ".tmp");
+                file.deleteOnExit();
+                randomAccessFile = new RandomAccessFile(file, "rw");
+            }
+            segments.add(randomAccessFile.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, (long) segments.size() * SEGMENT_SIZE, SEGMENT_SIZE));
+        }
+        return segments.get(segment);
+    }
+
+    // append data, returns the offset of the data (-1 if the data could not be written)
+    public final long write(byte[] data) {
+        if (size + data.length > limit) {
+            return -1;
+        }
+        long offset = size;
+        try {
+            int written = 0;
+            while (written < data.length) {
+                long position = offset + written;
+                MappedByteBuffer segment = getSegment(position);
+                int start = (int) (position % SEGMENT_SIZE);
+                int length = Math.min(data.length - written, SEGMENT_SIZE - start);
+                segment.position(start);
+                segment.put(data, written, length);
+                written += length;
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        size += data.length;
+        return offset;
+    }
+
+    // read data that was written before
+    public final byte[] read(long offset, int length) {
+        byte[] result = new byte[length];
+        int read = 0;
+        while (read < length) {
+            long position = offset + read;
+            MappedByteBuffer segment = segments.get((int) (position / SEGMENT_SIZE));
+            int start = (int) (position % SEGMENT_SIZE);
+            int count = Math.min(length - read, SEGMENT_SIZE - start);
+            segment.position(start);
+            segment.get(result, read, count);
+            read += count;
+        }
+        return result;
+    }
+
+    // the amount of bytes that are stored
+    public final long getSize() {
+        return size;
+    }
+
+    // the generation of the written data (data of an older generation is no longer available)
+    final int getGeneration() {
+        return generation;
+    }
+
+    // discard all data (the file is reused)
+    public final void clear() {
+        size = 0;
+        generation++;
+    }
+
+    // release the file
+    public final void close() {
+        segments.clear();
+        size = 0;
+        generation++;
+        if (randomAccessFile != null) {
+            try {
+                randomAccessFile.close();
+            } catch (IOException e) {
+                // nothing we can do
+            }
+            randomAccessFile = null;
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+}
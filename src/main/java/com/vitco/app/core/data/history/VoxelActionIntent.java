@@ -8,8 +8,15 @@ public abstract class VoxelActionIntent extends BasicActionIntent {
         super(attach);
     }
 
-    // returns the affected voxel positions
-    public abstract int[][] effected();
+    // returns the affected voxel positions (position ids)
+    public abstract long[] effected();
+
+    // the effected positions are included in the estimate
+    @Override
+    public long getMemoryEstimate() {
+        long[] effected = effected();
+        return 64 + (effected == null ? 0 : effected.length * 8L);
+    }
 
     // return true if this action effects textures
     public boolean effectsTexture() {
@@ -40,4 +40,7 @@ public abstract class DataChangeAdapter implements DataChangeListener {
 
     @Override
     public void onFrozenAction() {}
+
+    @Override
+    public void onHistoryTrimmed() {}
 }
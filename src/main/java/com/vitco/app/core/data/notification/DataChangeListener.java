@@ -16,4 +16,5 @@ public interface DataChangeListener {
     void onFrozenUndo();
     void onFrozenRedo();
     void onFrozenAction();
+    void onHistoryTrimmed();
 }
@@ -104,4 +104,11 @@ public final class NotificationService implements NotificationServiceInterface {
             listener.onFrozenAction();
         }
     }
+
+    @Override
+    public void onHistoryTrimmed() {
+        for (DataChangeListener listener : listeners) {
+            listener.onHistoryTrimmed();
+        }
+    }
 }
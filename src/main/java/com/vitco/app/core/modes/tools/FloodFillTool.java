@@ -2,12 +2,14 @@ package com.vitco.app.core.modes.tools;
 
 import com.vitco.app.core.container.DrawContainer;
 import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.core.data.container.VoxelVisitor;
+import com.vitco.app.low.LongCubeIndexer;
 import com.vitco.app.util.misc.ColorTools;
+import gnu.trove.map.hash.TLongIntHashMap;
 
 import java.awt.*;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
  * Defines the basic color changer tool.
@@ -22,18 +24,18 @@ public class FloodFillTool extends AbstractVoxelTool {
     // --------------------
 
     // flood fill (recolor)
-    private void floodColor(Voxel start, HashMap<String, Integer> result, boolean currentLayer) {
+    private void floodColor(Voxel start, TLongIntHashMap result, boolean currentLayer) {
         Color color = start.getColor();
         ArrayList<int[]> queue = new ArrayList<int[]>();
         queue.add(0, start.getPosAsInt());
         while (!queue.isEmpty()) {
             int[] node = queue.remove(0);
-            String strPos = node[0] + "_" + node[1] + "_" + node[2];
-            if (!result.containsKey(strPos)) {
+            long posId = LongCubeIndexer.getId(node[0], node[1], node[2]);
+            if (!result.containsKey(posId)) {
                 Voxel voxel = data.searchVoxel(node, currentLayer);
                 if (voxel != null && voxel.getColor().equals(color) && voxel.getTexture() == null) {
                     // add to result list
-                    result.put(strPos, voxel.id);
+                    result.put(posId, voxel.id);
                     if (side != 2) {
                         queue.add(0, new int[] {node[0] + 1, node[1], node[2]});
                         queue.add(0, new int[] {node[0] - 1, node[1], node[2]});
@@ -58,10 +60,13 @@ public class FloodFillTool extends AbstractVoxelTool {
         Color newColor = ColorTools.hsbToColor(getCurrentColor());
         if (selectedTexture != -1 || !newColor.equals(start.getColor())) {
             // find the voxels
-            HashMap<String, Integer> result = new HashMap<String, Integer>();
+            TLongIntHashMap result = new TLongIntHashMap();
             floodColor(start, result, currentLayer);
-            Integer[] resultArray = new Integer[result.size()];
-            result.values().toArray(resultArray);
+            int[] voxelIds = result.values();
+            Integer[] resultArray = new Integer[voxelIds.length];
+            for (int i = 0; i < voxelIds.length; i++) {
+                resultArray[i] = voxelIds[i];
+            }
             // recolor/retexture the voxels
             if (selectedTexture != -1) {
                 data.massSetTexture(resultArray, selectedTexture);
@@ -75,39 +80,30 @@ public class FloodFillTool extends AbstractVoxelTool {
 
     // recolor voxel (all voxels in layer or plane)
     private void recolor(int[] start, Color color, boolean currentLayer) {
-        // find the voxels
-        Voxel[] voxels;
-        boolean prune = false; // true iff we need to consider currentLayer
-        switch (side) {
-            case -1:
-                // pruning is automatically done
-                if (currentLayer) {
-                    voxels = data.getLayerVoxels(getCurrentLayer());
-                } else {
-                    voxels = data.getVisibleLayerVoxel();
-                }
-                break;
-            case 2:
-                voxels = data.getVoxelsYZ(start[0]);
-                prune = currentLayer;
-                break;
-            case 1:
-                voxels = data.getVoxelsXZ(start[1]);
-                prune = currentLayer;
-                break;
-            case 0:
-                voxels = data.getVoxelsXY(start[2]);
-                prune = currentLayer;
-                break;
-            default:
-                voxels = new Voxel[0];
-                break;
-        }
-        ArrayList<Integer> result = new ArrayList<Integer>();
-        for (Voxel voxel : voxels) {
-            if (voxel.getColor().equals(color) && (!prune || voxel.getLayerId() == getCurrentLayer())) {
+        // find the voxels (only the voxels with this color are considered)
+        final ArrayList<Integer> result = new ArrayList<Integer>();
+        if (side == -1) {
+            for (Voxel voxel : data.getVoxelsByColor(color, currentLayer ? getCurrentLayer() : null)) {
                 result.add(voxel.id);
             }
+        } else {
+            // only visit the plane (the box is clipped to the voxel bounds)
+            int axis = side == 2 ? 0 : (side == 1 ? 1 : 2);
+            int[] min = new int[] {Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+            int[] max = new int[] {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE};
+            min[axis] = start[axis];
+            max[axis] = start[axis];
+            final int rgb = color.getRGB();
+            final Integer layerId = currentLayer ? getCurrentLayer() : null;
+            data.visitVoxelsInBox(min, max, null, new VoxelVisitor() {
+                @Override
+                public boolean visit(Voxel voxel) {
+                    if (voxel.getColor().getRGB() == rgb && (layerId == null || voxel.getLayerId() == layerId)) {
+                        result.add(voxel.id);
+                    }
+                    return true;
+                }
+            });
         }
         Integer[] resultArray = new Integer[result.size()];
         result.toArray(resultArray);
@@ -3,6 +3,7 @@ package com.vitco.app.core.modes.tools;
 import com.threed.jpct.SimpleVector;
 import com.vitco.app.core.container.DrawContainer;
 import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.low.LongCubeIndexer;
 import com.vitco.app.settings.VitcoSettings;
 
 import java.awt.*;
@@ -53,13 +54,10 @@ public class SelectTool extends AbstractVoxelTool {
                     voxels = data.getVisibleLayerVoxel();
                     break;
                 case 2:
-                    voxels = data.getVoxelsYZ(container.getPlane());
-                    break;
                 case 1:
-                    voxels = data.getVoxelsXZ(container.getPlane());
-                    break;
                 case 0:
-                    voxels = data.getVoxelsXY(container.getPlane());
+                    // only check the voxels in the selected area of the plane
+                    voxels = getVoxelsInArea(start, stop);
                     break;
                 default:
                     voxels = new Voxel[0];
@@ -92,6 +90,63 @@ public class SelectTool extends AbstractVoxelTool {
 
     }
 
+    // helper - project a voxel position to the screen
+    private SimpleVector project(int[] pos) {
+        return container.convert3D2D(new SimpleVector(
+                pos[0] * VitcoSettings.VOXEL_SIZE,
+                pos[1] * VitcoSettings.VOXEL_SIZE,
+                pos[2] * VitcoSettings.VOXEL_SIZE));
+    }
+
+    // helper - get the visible voxels of the current plane that can be in the screen area
+    // (the view looks straight at the plane, so the plane is mapped linearly to the screen)
+    private Voxel[] getVoxelsInArea(Point start, Point stop) {
+        int plane = container.getPlane();
+        // the fixed axis and the two axes of the plane
+        int axis = side == 2 ? 0 : (side == 1 ? 1 : 2);
+        int axis1 = axis == 0 ? 1 : 0;
+        int axis2 = axis == 2 ? 1 : 2;
+        int[] pos = new int[3];
+        pos[axis] = plane;
+        SimpleVector origin = project(pos);
+        pos[axis1] = 1;
+        SimpleVector unit1 = project(pos);
+        pos[axis1] = 0;
+        pos[axis2] = 1;
+        SimpleVector unit2 = project(pos);
+        float det = origin == null || unit1 == null || unit2 == null ? 0
+                : (unit1.x - origin.x) * (unit2.y - origin.y) - (unit2.x - origin.x) * (unit1.y - origin.y);
+        if (det == 0) {
+            // the plane can not be mapped, check all voxels of the plane
+            return side == 2 ? data.getVoxelsYZ(plane) : (side == 1 ? data.getVoxelsXZ(plane) : data.getVoxelsXY(plane));
+        }
+        float a = unit1.x - origin.x, b = unit2.x - origin.x;
+        float c = unit1.y - origin.y, d = unit2.y - origin.y;
+        // map the corners of the area back to the plane
+        float[] min = new float[] {Float.MAX_VALUE, Float.MAX_VALUE};
+        float[] max = new float[] {-Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (Point corner : new Point[] {start, stop, new Point(start.x, stop.y), new Point(stop.x, start.y)}) {
+            float sx = corner.x - origin.x;
+            float sy = corner.y - origin.y;
+            float u = (d * sx - b * sy) / det;
+            float v = (a * sy - c * sx) / det;
+            min[0] = Math.min(min[0], u);
+            min[1] = Math.min(min[1], v);
+            max[0] = Math.max(max[0], u);
+            max[1] = Math.max(max[1], v);
+        }
+        // the box is one voxel larger to account for rounding
+        int[] boxMin = new int[3];
+        int[] boxMax = new int[3];
+        boxMin[axis] = plane;
+        boxMax[axis] = plane;
+        boxMin[axis1] = (int) Math.max(Math.floor(min[0]) - 1, -LongCubeIndexer.radius);
+        boxMin[axis2] = (int) Math.max(Math.floor(min[1]) - 1, -LongCubeIndexer.radius);
+        boxMax[axis1] = (int) Math.min(Math.ceil(max[0]) + 1, LongCubeIndexer.radius);
+        boxMax[axis2] = (int) Math.min(Math.ceil(max[1]) + 1, LongCubeIndexer.radius);
+        return data.getVoxelsInBox(boxMin, boxMax, null);
+    }
+
     // --------------------------
     // simple drawing
     // --------------------------
@@ -116,7 +171,7 @@ public class SelectTool extends AbstractVoxelTool {
     public void move(MouseEvent e) {
         data.highlightVoxel(null);
 
-        short[] hitVoxel = container.getShiftedCollisionVoxel(e.getPoint());
+        int[] hitVoxel = container.getShiftedCollisionVoxel(e.getPoint());
         if (hitVoxel != null) {
             container.setCursor(Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR));
         } else {
@@ -129,7 +184,7 @@ public class SelectTool extends AbstractVoxelTool {
         start = e.getPoint();
         mouse3down = isMouse3Down();
         // check if we hit something selected
-        short[] hitVoxel = container.getShiftedCollisionVoxel(e.getPoint());
+        int[] hitVoxel = container.getShiftedCollisionVoxel(e.getPoint());
         if (hitVoxel != null) {
             // start dragging selection
             dragStartReferencePos = new SimpleVector(hitVoxel[0], hitVoxel[1], hitVoxel[2]);
@@ -58,14 +58,14 @@ public abstract class AbstractCWorld extends World {
     }
 
     // find the collision point for a selected voxel (shifted selection)
-    public final short[] getShiftedCollisionVoxel(SimpleVector dir) {
+    public final int[] getShiftedCollisionVoxel(SimpleVector dir) {
         // check if we hit a <selected> voxel
-        short[] result = null;
+        int[] result = null;
         Camera camera = getCamera();
         camera.moveCamera(offset, length);
         SimpleVector origin = camera.getPosition().calcAdd(VitcoSettings.VOXEL_WORLD_OFFSET);
         origin.scalarMul(1 / VitcoSettings.VOXEL_SIZE);
-        short[] hit = this.hitTest(origin, dir);
+        int[] hit = this.hitTest(origin, dir);
         if (hit != null) { // something hit
             // find collision point
             result = hit;
@@ -98,5 +98,5 @@ public abstract class AbstractCWorld extends World {
     public abstract Integer getSide(Integer objectId);
 
     // do a hit test against the voxels in this world
-    public abstract short[] hitTest(SimpleVector position, SimpleVector dir);
+    public abstract int[] hitTest(SimpleVector position, SimpleVector dir);
 }
@@ -335,7 +335,7 @@ public class CWorld extends AbstractCWorld {
 
     // do a hit test against the voxels in this world
     @Override
-    public short[] hitTest(SimpleVector position, SimpleVector dir) {
+    public int[] hitTest(SimpleVector position, SimpleVector dir) {
         return hullManager.hitTest(position, dir);
     }
 
@@ -60,8 +60,7 @@ public class TextureObject implements Serializable {
                                   int orientation, boolean containsTexture, Graphics2D g2,
                                   int x, int y, BufferedImage textureImage, int offsetx, int offsety) {
         int[] pos = VoxelManager.convert2D3D(pos2D[0] + offsetx, pos2D[1] + offsety, face.getPosAsInt()[axis], axis);
-        short[] posS = new short[] {(short) pos[0], (short) pos[1], (short) pos[2]};
-        if (hullManager.containsBorder(posS, orientation)) {
+        if (hullManager.containsBorder(pos, orientation)) {
             if (containsTexture) {
                 g2.setColor(face.getColor());
                 g2.fillRect((x + 1 + offsetx)*32, (y + 1 + offsety)*32, 32, 32);
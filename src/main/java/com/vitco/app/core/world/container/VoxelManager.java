@@ -67,7 +67,7 @@ public class VoxelManager implements Serializable {
                 Point areaId = getAreaId(new int[]{pos2D[0] + dir[0], pos2D[1] + dir[1]});
                 if (!coreAreaId.equals(areaId)) {
                     int[] newPos = convert2D3D(pos2D[0] + dir[0], pos2D[1] + dir[1], pos3D[axis], axis);
-                    if (hullManager.containsBorder(new short[] {(short) newPos[0], (short) newPos[1], (short) newPos[2]}, orientation)) {
+                    if (hullManager.containsBorder(newPos, orientation)) {
                         invalidate(orientation, plane, areaId, false);
                     }
                 }
@@ -6,7 +6,6 @@ import com.vitco.app.layout.content.console.ConsoleInterface;
 import com.vitco.app.util.components.progressbar.ProgressDialog;
 import com.vitco.app.util.components.progressbar.ProgressReporter;
 import com.vitco.app.util.file.FileOut;
-import gnu.trove.set.hash.TIntHashSet;
 
 import java.io.File;
 import java.io.IOException;
@@ -27,7 +26,7 @@ public abstract class AbstractExporter extends ProgressReporter {
     protected FileOut fileOut;
 
     // store voxel information
-    private final TIntHashSet colors = new TIntHashSet();
+    private final int[] colors;
     private final int[] min = new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE};
     private final int[] max = new int[]{Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
     private final int[] size = new int[] {0,0,0};
@@ -42,15 +41,19 @@ public abstract class AbstractExporter extends ProgressReporter {
 
         setActivity("Initializing export...", true);
 
-        // retrieve information
+        // the file might still be loading
+        data.finishLoading();
+
+        // retrieve information (the colors are known to the data)
+        colors = data.getVisibleVoxelColors();
+        Arrays.sort(colors);  // ensure deterministic
+        // the bounds are known to the data
+        int[][] bounds = data.getVoxelBounds(null);
+        if (bounds != null) {
+            System.arraycopy(bounds[0], 0, min, 0, 3);
+            System.arraycopy(bounds[1], 0, max, 0, 3);
+        }
         for (Voxel voxel : data.getVisibleLayerVoxel()) {
-            colors.add(voxel.getColor().getRGB());
-            min[0] = Math.min(voxel.x, min[0]);
-            min[1] = Math.min(voxel.y, min[1]);
-            min[2] = Math.min(voxel.z, min[2]);
-            max[0] = Math.max(voxel.x, max[0]);
-            max[1] = Math.max(voxel.y, max[1]);
-            max[2] = Math.max(voxel.z, max[2]);
             // update center sum information
             centerSum[0] += voxel.x;
             centerSum[1] += voxel.y;
@@ -82,9 +85,7 @@ public abstract class AbstractExporter extends ProgressReporter {
 
     // helper - get all used colors
     protected final int[] getColors() {
-        int[] result = colors.toArray();
-        Arrays.sort(result);  // ensure deterministic
-        return result;
+        return colors.clone();
     }
 
     // helper - get size of voxel batch
@@ -5,13 +5,14 @@ import com.vitco.app.core.data.container.Voxel;
 import com.vitco.app.export.dataStatic.Kv6Static;
 import com.vitco.app.layout.content.console.ConsoleInterface;
 import com.vitco.app.low.CubeIndexer;
+import com.vitco.app.low.LongCubeIndexer;
 import com.vitco.app.low.hull.HullManager;
 import com.vitco.app.util.components.progressbar.ProgressDialog;
 import com.vitco.app.util.misc.ByteHelper;
-import gnu.trove.iterator.TIntIterator;
+import gnu.trove.iterator.TLongIterator;
 import gnu.trove.map.hash.TIntShortHashMap;
 import gnu.trove.map.hash.TShortIntHashMap;
-import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.set.hash.TLongHashSet;
 
 import java.awt.*;
 import java.io.File;
@@ -36,7 +37,7 @@ public class Kv6Exporter extends AbstractExporter {
     }
 
     // helper to get direction (lighting bit)
-    private static byte getDirectionByte(int voxPosId, HullManager<String> hullManager) {
+    private static byte getDirectionByte(long voxPosId, HullManager<String> hullManager) {
 
         // the offsets (direction)
         int ox = 0, oy = 0, oz = 0;
@@ -44,7 +45,7 @@ public class Kv6Exporter extends AbstractExporter {
         // loop over precomputed circle values
         for (int[] circeValue : Kv6Static.circleValues) {
             // check if voxel position is set
-            if (hullManager.contains(voxPosId + circeValue[0])) {
+            if (hullManager.contains(voxPosId + LongCubeIndexer.getShiftOperand(circeValue[1], circeValue[2], circeValue[3]))) {
                 // add the offset (this voxel adds to the direction)
                 ox += circeValue[1];
                 oy += circeValue[2];
@@ -106,20 +107,20 @@ public class Kv6Exporter extends AbstractExporter {
         for (Voxel voxel : data.getVisibleLayerVoxel()) {
             hullManager.update(voxel.posId, null);
         }
-        TIntHashSet visibleVoxel = hullManager.getVisibleVoxelsIds();
+        TLongHashSet visibleVoxel = hullManager.getVisibleVoxelsIds();
         int voxelCount = visibleVoxel.size();
-        short[][] voxels = new short[visibleVoxel.size()][];
-        TIntIterator iter = visibleVoxel.iterator();
+        int[][] voxels = new int[visibleVoxel.size()][];
+        TLongIterator iter = visibleVoxel.iterator();
         int i = 0;
         while (iter.hasNext() && i < voxelCount) {
-            voxels[i] = CubeIndexer.getPos(iter.next());
+            voxels[i] = LongCubeIndexer.getPos(iter.next());
             i++;
         }
 
         // sort voxels
-        Arrays.sort(voxels, new Comparator<short[]>() {
+        Arrays.sort(voxels, new Comparator<int[]>() {
             @Override
-            public int compare(short[] o1, short[] o2) {
+            public int compare(int[] o1, int[] o2) {
                 int dist = o1[0] - o2[0];
                 if (dist != 0) {
                     return dist;
@@ -139,11 +140,9 @@ public class Kv6Exporter extends AbstractExporter {
 
         // write all the voxel data
         for (int i1 = 0; i1 < voxels.length; i1++) {
-            short[] voxPos = voxels[i1];
+            int[] voxPos = voxels[i1];
             setProgress((i1/(float)voxels.length)*100);
-            Color col = data.searchVoxel(
-                    new int[]{voxPos[0], voxPos[1], voxPos[2]}, false
-            ).getColor();
+            Color col = data.searchVoxel(voxPos, false).getColor();
             // write color
             fileOut.writeByte((byte) col.getBlue());
             fileOut.writeByte((byte) col.getGreen());
@@ -153,7 +152,7 @@ public class Kv6Exporter extends AbstractExporter {
             // write z pos
             fileOut.writeShortRev((short) (voxPos[1] - min[1]));
             // write visible faces
-            int voxPosId = CubeIndexer.getId(voxPos);
+            long voxPosId = LongCubeIndexer.getId(voxPos);
             byte visibleFaces = 0;
             for (int j = 0; j < 6; j++) {
                 if (hullManager.containsBorder(voxPosId, j)) {
@@ -189,7 +188,7 @@ public class Kv6Exporter extends AbstractExporter {
         // collect the offsets
         TShortIntHashMap xMap = new TShortIntHashMap();
         TIntShortHashMap xyMap = new TIntShortHashMap();
-        for (short[] voxel : voxels) {
+        for (int[] voxel : voxels) {
             short shiftedVal = (short) (voxel[0] - min[0]);
             xMap.put(shiftedVal, xMap.get(shiftedVal)+1);
 
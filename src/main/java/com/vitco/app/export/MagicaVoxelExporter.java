@@ -84,14 +84,14 @@ public class MagicaVoxelExporter extends AbstractExporter {
 
         // ensure generated file is deterministic
         Voxel[] voxels = data.getVisibleLayerVoxel();
-        Arrays.sort(voxels, Comparator.comparingInt(o -> o.posId));
+        Arrays.sort(voxels, Comparator.comparingLong(o -> o.posId));
 
         // write voxel data
         for (Voxel voxel : voxels) {
             final int vx = voxel.x - min[0];
             final int vy = -(voxel.y - max[1]);
             final int vz = voxel.z - min[2];
-            final int colorId = colorPalette.get(voxel.getColor().getRGB()) + 1;
+            final int colorId = colorPalette.get(voxel.getRGB()) + 1;
 
             fileOut.writeByte((byte)vx);
             fileOut.writeByte((byte)vz);
@@ -133,7 +133,7 @@ public class QbExporter extends AbstractExporter {
                                     visible = ByteHelper.setBit(visible, this.useRightHandedZAxisOrientation ? 1 : 6);
                                 }
                             }
-                            newColor = voxel.getColor().getRGB();
+                            newColor = voxel.getRGB();
                             newColor = ((this.useVisMaskEncoding ? visible : 0xFF) << 24) | (newColor & 0x000000FF) << 16 | (newColor & 0x0000FF00) | (newColor & 0x00FF0000) >> 16;
                         }
 
@@ -163,21 +163,15 @@ public class QbExporter extends AbstractExporter {
     private int[][] get_meta(int layerId) {
         int[] min, max, size;
         if (!useBoxAsMatrix) { // determine actual size by using the voxels
-            min = new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE};
-            max = new int[]{Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
-            size = new int[]{0, 0, 0};
-            boolean hasVoxel = false;
-            for (Voxel voxel : data.getLayerVoxels(layerId)) {
-                min[0] = Math.min(voxel.x, min[0]);
-                min[1] = Math.min(voxel.y, min[1]);
-                min[2] = Math.min(voxel.z, min[2]);
-                max[0] = Math.max(voxel.x, max[0]);
-                max[1] = Math.max(voxel.y, max[1]);
-                max[2] = Math.max(voxel.z, max[2]);
-                hasVoxel = true;
-            }
-            if (hasVoxel) {
+            int[][] bounds = data.getVoxelBounds(layerId);
+            if (bounds != null) {
+                min = bounds[0];
+                max = bounds[1];
                 size = new int[]{max[0] - min[0] + 1, max[1] - min[1] + 1, max[2] - min[2] + 1};
+            } else {
+                min = new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE};
+                max = new int[]{Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+                size = new int[]{0, 0, 0};
             }
         } else { // use the bounding box as size
             min = new int[] {
@@ -53,7 +53,7 @@ public class VoxVoxLapExporter extends AbstractExporter {
                     if (voxel == null) {
                         fileOut.writeByte((byte)255);
                     } else {
-                        int colorId = colorPalette.get(voxel.getColor().getRGB());
+                        int colorId = colorPalette.get(voxel.getRGB());
                         fileOut.writeByte((byte) colorId);
                     }
                 }
@@ -147,6 +147,9 @@ public class ExportDataManager extends ProgressReporter {
                              boolean exportTexturedVoxels, boolean useOverlappingUvs, boolean useSkewedUvs) {
         super(dialog, console);
 
+        // the file might still be loading
+        data.finishLoading();
+
         // create hull manager that exposes hull information
         setActivity("Computing Hull...", true);
         int gminx = Integer.MAX_VALUE;
@@ -177,21 +180,17 @@ public class ExportDataManager extends ProgressReporter {
                     Voxel[] layerVoxel = data.getLayerVoxels(layerId);
                     if (layerVoxel.length != 0) {
                         HullManagerExt<Voxel> hullManager = new HullManagerExt<>();
-                        int minx = Integer.MAX_VALUE;
-                        int maxx = Integer.MIN_VALUE;
-                        int miny = Integer.MAX_VALUE;
-                        int maxy = Integer.MIN_VALUE;
-                        int minz = Integer.MAX_VALUE;
-                        int maxz = Integer.MIN_VALUE;
-                        for (Voxel voxel : data.getLayerVoxels(layerId)) {
+                        for (Voxel voxel : layerVoxel) {
                             hullManager.update(voxel.posId, voxel);
-                            minx = Math.min(minx, voxel.x);
-                            maxx = Math.max(maxx, voxel.x);
-                            miny = Math.min(miny, voxel.y);
-                            maxy = Math.max(maxy, voxel.y);
-                            minz = Math.min(minz, voxel.z);
-                            maxz = Math.max(maxz, voxel.z);
                         }
+                        // the bounds are known to the data
+                        int[][] bounds = data.getVoxelBounds(layerId);
+                        int minx = bounds[0][0];
+                        int maxx = bounds[1][0];
+                        int miny = bounds[0][1];
+                        int maxy = bounds[1][1];
+                        int minz = bounds[0][2];
+                        int maxz = bounds[1][2];
                         layerNames.add(data.getLayerName(layerId));
                         hullManagers.add(hullManager);
                         centers.add(new float[] {(minx + maxx) / 2f, (miny + maxy) / 2f, (minz + maxz) / 2f});
@@ -326,12 +325,12 @@ public class ExportDataManager extends ProgressReporter {
     }
 
     // make sure that the polygon has no 3D t-junction problems
-    private short[][][] fix3DTJunctionProblems(HullManagerExt<Voxel> hullManager, short[][][] polys, short plane, short planeAbove, int id1, int id2, int id3, int minA, int minB) {
+    private short[][][] fix3DTJunctionProblems(HullManagerExt<Voxel> hullManager, short[][][] polys, int plane, int planeAbove, int id1, int id2, int id3, int minA, int minB) {
         // result array
         short[][][] result = new short[polys.length][][];
         // temporary arrays to do comparisons
-        short[] pos1 = new short[] {planeAbove, planeAbove, planeAbove};
-        short[] pos2 = new short[] {planeAbove, planeAbove, planeAbove};
+        int[] pos1 = new int[] {planeAbove, planeAbove, planeAbove};
+        int[] pos2 = new int[] {planeAbove, planeAbove, planeAbove};
         // loop over all polygons
         for (int i1 = 0; i1 < polys.length; i1++) {
             // create corresponding result part
@@ -353,11 +352,11 @@ public class ExportDataManager extends ProgressReporter {
                         int step = (outline[i + 3] > outline[i + 1]) ? 1 : -1;
                         // move over all whole "in between" steps between this and the next point
                         for (short y = (short) (outline[i + 1] + step); y != outline[i + 3]; y += step) {
-                            short x = (short) (outline[i] + (step == 1 ? -1 : 0) + minA);
+                            int x = outline[i] + (step == 1 ? -1 : 0) + minA;
                             pos1[id1] = x;
-                            pos1[id2] = (short) (y + minB);
+                            pos1[id2] = y + minB;
                             pos2[id1] = x;
-                            pos2[id2] = (short) (y-1 + minB);
+                            pos2[id2] = y-1 + minB;
                             Voxel obj1 = hullManager.get(pos1);
                             Voxel obj2 = hullManager.get(pos2);
                             if ((obj1 == null) != (obj2 == null) || (
@@ -389,10 +388,10 @@ public class ExportDataManager extends ProgressReporter {
                         int step = (outline[i + 2] > outline[i]) ? 1 : -1;
                         // move over all whole "in between" steps between this and the next point
                         for (short x = (short) (outline[i] + step); x != outline[i + 2]; x += step) {
-                            short y = (short) (outline[i + 1] + (step == -1 ? -1 : 0) + minB);
-                            pos1[id1] = (short) (x + minA);
+                            int y = outline[i + 1] + (step == -1 ? -1 : 0) + minB;
+                            pos1[id1] = x + minA;
                             pos1[id2] = y;
-                            pos2[id1] = (short) (x - 1 + minA);
+                            pos2[id1] = x - 1 + minA;
                             pos2[id2] = y;
                             Voxel obj1 = hullManager.get(pos1);
                             Voxel obj2 = hullManager.get(pos2);
@@ -449,17 +448,17 @@ public class ExportDataManager extends ProgressReporter {
 
                 // get borders into specific direction and
                 // calculate orientation related variables
-                short[][] hull = removeHoles ? hullManager.getExteriorHull(side) : hullManager.getHull(side);
+                int[][] hull = removeHoles ? hullManager.getExteriorHull(side) : hullManager.getHull(side);
                 final int directionId = side / 2;
                 final boolean orientationPositive = side % 2 != (directionId == 1 ? 1 : 0);
                 final int offset = side % 2 != 1 ? 1 : 0;
 
                 // extract planes
-                HashMap<Short, TObjectIntHashMap<short[]>> planes = new HashMap<Short, TObjectIntHashMap<short[]>>();
-                for (short[] border : hull) {
-                    TObjectIntHashMap<short[]> plane = planes.get(border[directionId]);
+                HashMap<Integer, TObjectIntHashMap<int[]>> planes = new HashMap<Integer, TObjectIntHashMap<int[]>>();
+                for (int[] border : hull) {
+                    TObjectIntHashMap<int[]> plane = planes.get(border[directionId]);
                     if (plane == null) {
-                        plane = new TObjectIntHashMap<short[]>();
+                        plane = new TObjectIntHashMap<int[]>();
                         planes.put(border[directionId], plane);
                     }
 
@@ -492,26 +491,26 @@ public class ExportDataManager extends ProgressReporter {
                 // loop over planes
                 int progressCount = 0;
                 float elementCount = planes.size();
-                for (final Map.Entry<Short, TObjectIntHashMap<short[]>> entries : planes.entrySet()) {
+                for (final Map.Entry<Integer, TObjectIntHashMap<int[]>> entries : planes.entrySet()) {
                     setProgress((side / 6f) * 100 + ((progressCount / elementCount) / 6f) * 100);
                     progressCount++;
                     // maps colors to min/max (minA, minB, maxA, maxB)
-                    final TIntObjectHashMap<short[]> minMaxMap = new TIntObjectHashMap<short[]>();
+                    final TIntObjectHashMap<int[]> minMaxMap = new TIntObjectHashMap<int[]>();
                     // remove the values that are pending as remove (remove is stronger!)
-                    entries.getValue().forEachEntry(new TObjectIntProcedure<short[]>() {
+                    entries.getValue().forEachEntry(new TObjectIntProcedure<int[]>() {
                         @Override
-                        public boolean execute(short[] position, int rgb) {
-                            short[] minMax = minMaxMap.get(rgb);
+                        public boolean execute(int[] position, int rgb) {
+                            int[] minMax = minMaxMap.get(rgb);
                             if (minMax == null) {
-                                minMax = new short[] {
-                                        Short.MAX_VALUE, Short.MAX_VALUE, Short.MIN_VALUE, Short.MIN_VALUE
+                                minMax = new int[] {
+                                        Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE
                                 };
                                 minMaxMap.put(rgb, minMax);
                             }
-                            minMax[0] = (short) Math.min(minMax[0], position[id1]);
-                            minMax[1] = (short) Math.min(minMax[1], position[id2]);
-                            minMax[2] = (short) Math.max(minMax[2], position[id1]);
-                            minMax[3] = (short) Math.max(minMax[3], position[id2]);
+                            minMax[0] = Math.min(minMax[0], position[id1]);
+                            minMax[1] = Math.min(minMax[1], position[id2]);
+                            minMax[2] = Math.max(minMax[2], position[id1]);
+                            minMax[3] = Math.max(minMax[3], position[id2]);
                             return true;
                         }
                     });
@@ -519,11 +518,11 @@ public class ExportDataManager extends ProgressReporter {
                     // maps colors to data sets
                     final TIntObjectHashMap<boolean[][]> dataArray = new TIntObjectHashMap<boolean[][]>();
 
-                    entries.getValue().forEachEntry(new TObjectIntProcedure<short[]>() {
+                    entries.getValue().forEachEntry(new TObjectIntProcedure<int[]>() {
 
                         @Override
-                        public boolean execute(short[] position, int rgb) {
-                            short[] minMax = minMaxMap.get(rgb);
+                        public boolean execute(int[] position, int rgb) {
+                            int[] minMax = minMaxMap.get(rgb);
                             boolean[][] data = dataArray.get(rgb);
                             if (data == null) {
                                 data = new boolean[minMax[2] - minMax[0] + 1][minMax[3] - minMax[1] + 1];
@@ -539,7 +538,7 @@ public class ExportDataManager extends ProgressReporter {
                     dataArray.forEachEntry(new TIntObjectProcedure<boolean[][]>() {
                         @Override
                         public boolean execute(int rgb, boolean[][] data) {
-                            short[] minMax = minMaxMap.get(rgb);
+                            int[] minMax = minMaxMap.get(rgb);
                             Collection<DelaunayTriangle> tris;
                             switch (algorithm) {
                                 case ExportDataManager.MINIMAL_RECT_ALGORITHM:
@@ -555,7 +554,7 @@ public class ExportDataManager extends ProgressReporter {
                                         // fix 3D t-junction problems
                                         int planeAbove = entries.getKey() + (finalSide % 2 == 0 ? 1 : -1);
                                         // Note: This *should* work the same if only outside is used (i.e. holes are removed)
-                                        polys = fix3DTJunctionProblems(hullManager, polys, entries.getKey(), (short) planeAbove, id1, id2, id3, minMax[0], minMax[1]);
+                                        polys = fix3DTJunctionProblems(hullManager, polys, entries.getKey(), planeAbove, id1, id2, id3, minMax[0], minMax[1]);
                                     }
                                     // extract triangles
                                     tris = Grid2TriPolyFast.triangulate(polys);
@@ -569,7 +568,7 @@ public class ExportDataManager extends ProgressReporter {
                     trisArray.forEachEntry(new TIntObjectProcedure<Collection<DelaunayTriangle>>() {
                         @Override
                         public boolean execute(int rgb, Collection<DelaunayTriangle> tris) {
-                            short[] minMax = minMaxMap.get(rgb);
+                            int[] minMax = minMaxMap.get(rgb);
 
                             for (DelaunayTriangle tri : tris) {
 
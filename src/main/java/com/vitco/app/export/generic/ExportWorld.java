@@ -1,11 +1,13 @@
 package com.vitco.app.export.generic;
 
 import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.low.LongCubeIndexer;
 import com.vitco.app.low.triangulate.Grid2TriGreedyOptimal;
 import com.vitco.app.low.triangulate.Grid2TriMono;
 import com.vitco.app.low.triangulate.Grid2TriNaiveGreedy;
 import com.vitco.app.low.triangulate.Grid2TriPolyFast;
 import com.vitco.app.low.triangulate.util.Grid2PolyHelper;
+import gnu.trove.map.hash.TLongObjectHashMap;
 
 import java.awt.*;
 import java.util.ArrayList;
@@ -24,7 +26,7 @@ public class ExportWorld {
     private final ArrayList<VoxelSide> voxels = new ArrayList<VoxelSide>();
 
     // voxel index to determine which sides are visible
-    private final HashMap<String, VoxelSide> index = new HashMap<String, VoxelSide>();
+    private final TLongObjectHashMap<VoxelSide> index = new TLongObjectHashMap<VoxelSide>();
 
     // helper class that represents a voxel
     private final class VoxelSide {
@@ -51,18 +53,18 @@ public class ExportWorld {
             // update all the sides
             for (int i = 0; i < 6; i++) {
                 int add = i%2 == 0 ? 1 : -1;
-                VoxelSide found = index.get(
-                        (i/2 == 0 ? voxel.x + add : voxel.x) + "_" +
-                                (i/2 == 1 ? voxel.y + add : voxel.y) + "_" +
-                                (i/2 == 2 ? voxel.z + add : voxel.z)
-                );
+                VoxelSide found = index.get(LongCubeIndexer.getId(
+                        i/2 == 0 ? voxel.x + add : voxel.x,
+                        i/2 == 1 ? voxel.y + add : voxel.y,
+                        i/2 == 2 ? voxel.z + add : voxel.z
+                ));
                 if (found != null) {
                     hideSide(i);
                     found.hideSide(i%2 == 0 ? i + 1 : i - 1);
                 }
             }
 
-            index.put(voxel.getPosAsString(), this);
+            index.put(voxel.posId, this);
         }
     }
 
@@ -10,7 +10,6 @@ import gnu.trove.iterator.TIntObjectIterator;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.procedure.TIntObjectProcedure;
 
-import javax.swing.*;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 
@@ -643,9 +642,7 @@ public class TriTexture {
                     int[] pos = new int[] {0, 0};
                     if (voxel != null) {
                         //noinspection ConstantConditions
-                        ImageIcon imageIcon = data.getTexture(voxel.getTexture()[side]);
-                        tex = new BufferedImage(imageIcon.getIconWidth(), imageIcon.getIconHeight(), BufferedImage.TYPE_INT_ARGB);
-                        tex.getGraphics().drawImage(imageIcon.getImage(), 0, 0, null);
+                        tex = data.getTextureImage(voxel.getTexture()[side]);
                         //noinspection ConstantConditions
                         rotation = voxel.getRotation() != null ? voxel.getRotation()[side] : 0;
                         //noinspection ConstantConditions
@@ -1,14 +1,14 @@
 package com.vitco.app.importer;
 
 import com.vitco.app.core.data.Data;
-import com.vitco.app.util.file.FileIn;
-import com.vitco.app.util.file.RandomAccessFileIn;
+import com.vitco.app.low.LongCubeIndexer;
+import com.vitco.app.util.file.MappedFileIn;
+import gnu.trove.set.hash.TLongHashSet;
 
-import java.awt.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 
 /**
  * Importer contract for (all?) voxel formats
@@ -26,39 +26,48 @@ public abstract class AbstractImporter {
     // contains a layer object
     public final static class Layer {
         public final String name;
-        // contains the voxel that were read
-        private ArrayList<int[]> voxel = new ArrayList<int[]>();
+        // contains the voxel that were read (position id, see LongCubeIndexer, and color)
+        private long[] posIds = new long[16];
+        private int[] colors = new int[16];
+        private int size = 0;
+        // the amount of voxel that were handed to the pipeline (streaming)
+        private int flushed = 0;
         // constructor
         private Layer(String name) {
             this.name = name;
         }
 
         // for sanity testing
-        private final HashSet<String> known = new HashSet<String>();
+        private final TLongHashSet known = new TLongHashSet();
 
         private void addVoxel(int x, int y, int z, int color) {
-            voxel.add(new int[]{x,y,z,color});
+            if (size == posIds.length) {
+                int capacity = size * 2;
+                posIds = Arrays.copyOf(posIds, capacity);
+                colors = Arrays.copyOf(colors, capacity);
+            }
+            long posId = LongCubeIndexer.getId(x, y, z);
+            posIds[size] = posId;
+            colors[size] = color;
+            size++;
             // for sanity testing
-            assert known.add(x+"_"+y+"_"+z);
+            assert known.add(posId);
         }
 
         // ----
 
         public final boolean isEmpty() {
-            return voxel.isEmpty();
-        }
-
-        int i = 0;
-        public final int[] next() {
-            return voxel.get(i++);
+            return size == 0 && flushed == 0;
         }
 
-        public final boolean hasNext() {
-            return i < voxel.size();
+        // the amount of voxel in this layer (not yet streamed)
+        public final int size() {
+            return size;
         }
 
-        public final void reset() {
-            i = 0;
+        // read the voxel of this layer in batches of (at most) the given size
+        public final Cursor cursor(int batchSize) {
+            return new Cursor(this, batchSize);
         }
 
         private boolean visible = true;
@@ -68,6 +77,52 @@ public abstract class AbstractImporter {
         public boolean isVisible() {
             return visible;
         }
+
+        // true if this layer was prepended (see prependLayer)
+        private boolean prepended = false;
+        final boolean isPrepended() {
+            return prepended;
+        }
+    }
+
+    // reads the voxel of a layer in batches, the arrays are shared with the layer
+    // (and must not be changed), the current batch is [offset(), offset() + count())
+    public final static class Cursor {
+        private final Layer layer;
+        private final int batchSize;
+        private int offset = 0;
+        private int count = 0;
+
+        private Cursor(Layer layer, int batchSize) {
+            assert batchSize > 0;
+            this.layer = layer;
+            this.batchSize = batchSize;
+        }
+
+        // move to the next batch, returns false if there are no voxel left
+        public final boolean next() {
+            offset += count;
+            count = Math.min(batchSize, layer.size - offset);
+            return count > 0;
+        }
+
+        public final int offset() {
+            return offset;
+        }
+
+        public final int count() {
+            return count;
+        }
+
+        // the position ids (see LongCubeIndexer)
+        public final long[] posIds() {
+            return layer.posIds;
+        }
+
+        // the colors (rgb)
+        public final int[] colors() {
+            return layer.colors;
+        }
     }
 
     // the currently active layer
@@ -90,13 +145,42 @@ public abstract class AbstractImporter {
         cx += x;
         cy += y;
         cz += z;
-        activeLayer.addVoxel(x, y, z, color);
+        if (pipeline == null) {
+            activeLayer.addVoxel(x, y, z, color);
+        } else if (!measuring) {
+            activeLayer.addVoxel(x, y, z, color);
+            if (activeLayer.size == ImportPipeline.BATCH_SIZE) {
+                flush();
+            }
+        }
+    }
+
+    // helper - hand the voxel of the active layer to the pipeline (shifted and opaque)
+    private void flush() {
+        Layer layer = activeLayer;
+        if (layer.size > 0) {
+            long[] posIds = layer.posIds;
+            int[] colors = layer.colors;
+            for (int i = 0; i < layer.size; i++) {
+                posIds[i] += shiftOperand;
+                colors[i] |= 0xFF000000;
+            }
+            float progress = in.length() == 0 ? 100 : in.position() * 100f / in.length();
+            pipeline.emit(new ImportPipeline.Batch(layer, posIds, colors, layer.size, progress));
+            layer.flushed += layer.size;
+            layer.posIds = new long[posIds.length];
+            layer.colors = new int[colors.length];
+            layer.size = 0;
+        }
     }
 
     // contains the layer list
     private final ArrayList<Layer> layerList = new ArrayList<Layer>();
     // add a new layer that the voxels are now added to
     protected final void addLayer(String name) {
+        if (pipeline != null && !measuring) {
+            flush();
+        }
         if (activeLayer.isEmpty()) {
             layerList.remove(activeLayer);
         }
@@ -105,10 +189,14 @@ public abstract class AbstractImporter {
     }
     // prepend a new layer that the voxels are now added to
     protected final void prependLayer(String name) {
+        if (pipeline != null && !measuring) {
+            flush();
+        }
         if (activeLayer.isEmpty()) {
             layerList.remove(activeLayer);
         }
         activeLayer = new Layer(name);
+        activeLayer.prepended = true;
         layerList.add(0, activeLayer);
     }
 
@@ -157,48 +245,74 @@ public abstract class AbstractImporter {
 
     // --------------
 
+    // the pipeline the voxels are streamed to (null if they are kept in the layers)
+    private final ImportPipeline pipeline;
+    // true if the voxels are only counted (see ImportPipeline)
+    private final boolean measuring;
+    // moves the streamed voxels
+    private final long shiftOperand;
+    // the file that is read
+    private final MappedFileIn in;
+
     // constructor
     public AbstractImporter(File file, String layerName) throws IOException {
+        this(file, layerName, null);
+    }
+
+    // constructor - the voxels are streamed to the pipeline (if not null) instead
+    // of being kept in the layers
+    public AbstractImporter(File file, String layerName, ImportPipeline pipeline) throws IOException {
+        this.pipeline = pipeline;
+        this.measuring = pipeline != null && pipeline.isMeasuring();
+        this.shiftOperand = pipeline == null ? 0 : pipeline.getShiftOperand();
         activeLayer = new Layer(layerName);
         layerList.add(activeLayer);
-        FileIn fileIn = new FileIn(file);
-        try (RandomAccessFileIn raf = new RandomAccessFileIn(file, "r")) {
-            hasLoaded = read(fileIn, raf);
+        in = new MappedFileIn(file);
+        try {
+            hasLoaded = read(in);
+            if (hasLoaded && pipeline != null && !measuring) {
+                flush();
+            }
         } finally {
-            fileIn.finish();
+            in.close();
         }
     }
 
-    // load the data in this importer into "data"
-    public void loadInto(Data data, boolean shiftToCenter) {
+    // load the data in this importer into "data", returns the amount of voxels that were added
+    // (less than the voxel count if the voxel limit was reached or positions were occupied)
+    public int loadInto(Data data, boolean shiftToCenter) {
+        int result = 0;
         if (this.hasLoaded()) {
+            int[] shift = new int[3];
             if (shiftToCenter) {
                 int[] center = this.getWeightedCenter();
                 int[] highest = this.getHighest();
-                for (AbstractImporter.Layer layer : this.getVoxel()) {
-                    int layerId = data.createLayer(layer.name);
-                    data.selectLayer(layerId);
-                    data.setVisible(layerId, layer.isVisible());
-                    for (int[] vox; layer.hasNext();) {
-                        vox = layer.next();
-                        data.addVoxelDirect(new Color(vox[3]),
-                                new int[] {vox[0] - center[0], vox[1] - highest[1], vox[2] - center[2]});
-                    }
-                }
-            } else {
-                for (AbstractImporter.Layer layer : this.getVoxel()) {
-                    int layerId = data.createLayer(layer.name);
-                    data.selectLayer(layerId);
-                    data.setVisible(layerId, layer.isVisible());
-                    for (int[] vox; layer.hasNext();) {
-                        vox = layer.next();
-                        data.addVoxelDirect(new Color(vox[3]),new int[] {vox[0], vox[1], vox[2]});
+                shift = new int[] {center[0], highest[1], center[2]};
+            }
+            long shiftOperand = LongCubeIndexer.getShiftOperand(-shift[0], -shift[1], -shift[2]);
+            long[] posIds = new long[ImportPipeline.BATCH_SIZE];
+            int[] colors = new int[ImportPipeline.BATCH_SIZE];
+            for (AbstractImporter.Layer layer : this.getVoxel()) {
+                int layerId = data.createLayer(layer.name);
+                data.selectLayer(layerId);
+                data.setVisible(layerId, layer.isVisible());
+                // add the voxels of this layer in batches (shifted and opaque)
+                AbstractImporter.Cursor cursor = layer.cursor(ImportPipeline.BATCH_SIZE);
+                while (cursor.next()) {
+                    long[] layerPosIds = cursor.posIds();
+                    int[] layerColors = cursor.colors();
+                    for (int i = 0, j = cursor.offset(), count = cursor.count(); i < count; i++, j++) {
+                        posIds[i] = layerPosIds[j] + shiftOperand;
+                        colors[i] = 0xFF000000 | layerColors[j];
                     }
+                    result += data.addVoxelsDirect(layerId, posIds, colors, 0, cursor.count());
                 }
             }
         }
+        return result;
     }
 
-    // read file - returns true if file has loaded correctly
-    protected abstract boolean read(FileIn fileIn, RandomAccessFileIn raf) throws IOException;
+    // read file - returns true if file has loaded correctly (the whole file is mapped
+    // and numbers are read in little endian order, see MappedFileIn)
+    protected abstract boolean read(MappedFileIn in) throws IOException;
 }
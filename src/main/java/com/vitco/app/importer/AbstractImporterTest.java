@@ -0,0 +1,95 @@
+package com.vitco.app.importer;
+
+import com.vitco.app.core.data.Data;
+import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.low.LongCubeIndexer;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the packed voxel buffers of the importer layers.
+ */
+public class AbstractImporterTest {
+
+    // helper - write a rawvox file where every other voxel is set
+    private static File writeRawVox(int sx, int sy, int sz) throws IOException {
+        File file = File.createTempFile("import", ".rawvox");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeBytes("XOVR");
+            out.writeInt(Integer.reverseBytes(sx));
+            out.writeInt(Integer.reverseBytes(sy));
+            out.writeInt(Integer.reverseBytes(sz));
+            out.writeInt(Integer.reverseBytes(8));
+            for (int i = 0, len = sx * sy * sz; i < len; i++) {
+                out.writeByte(i % 2);
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testCursor() throws IOException {
+        File file = writeRawVox(40, 30, 20);
+        try {
+            AbstractImporter importer = new RawVoxImporter(file, "Import");
+            assertTrue(importer.hasLoaded());
+            assertEquals(1, importer.getVoxel().size());
+            AbstractImporter.Layer layer = importer.getVoxel().get(0);
+            assertEquals(40 * 30 * 20 / 2, layer.size());
+            assertEquals(layer.size(), importer.getVoxelCount());
+
+            // the batches cover every voxel exactly once
+            HashSet<Long> seen = new HashSet<Long>();
+            AbstractImporter.Cursor cursor = layer.cursor(999);
+            int batches = 0;
+            while (cursor.next()) {
+                assertTrue(cursor.count() > 0 && cursor.count() <= 999);
+                for (int i = cursor.offset(), len = cursor.offset() + cursor.count(); i < len; i++) {
+                    long posId = cursor.posIds()[i];
+                    boolean added = seen.add(posId);
+                    assertTrue(added);
+                    // the importer adds (-z, -y, x) for a voxel at (x, y, z) in the file
+                    int x = LongCubeIndexer.getZ(posId);
+                    int y = -LongCubeIndexer.getY(posId);
+                    int z = -LongCubeIndexer.getX(posId);
+                    assertEquals(1, (z * 30 * 40 + y * 40 + x) % 2);
+                }
+                batches++;
+            }
+            assertEquals((layer.size() + 998) / 999, batches);
+            assertEquals(layer.size(), seen.size());
+            boolean more = cursor.next();
+            assertFalse(more);
+
+            // load (shifted)
+            Data data = new Data();
+            data.deleteLayer(data.getLayers()[0]);
+            importer.loadInto(data, true);
+            Voxel[] voxels = data.getLayerVoxels(data.getLayers()[0]);
+            assertEquals(layer.size(), voxels.length);
+            int[] center = importer.getWeightedCenter();
+            int[] highest = importer.getHighest();
+            HashSet<Long> loaded = new HashSet<Long>();
+            for (Voxel voxel : voxels) {
+                assertEquals(0xFF, voxel.getRGB() >>> 24);
+                loaded.add(LongCubeIndexer.getId(voxel.x + center[0], voxel.y + highest[1], voxel.z + center[2]));
+            }
+            assertEquals(seen, loaded);
+        } finally {
+            boolean deleted = file.delete();
+            assertTrue(deleted);
+        }
+    }
+}
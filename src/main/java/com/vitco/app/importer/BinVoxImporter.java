@@ -1,7 +1,6 @@
 package com.vitco.app.importer;
 
-import com.vitco.app.util.file.FileIn;
-import com.vitco.app.util.file.RandomAccessFileIn;
+import com.vitco.app.util.file.MappedFileIn;
 
 import java.awt.*;
 import java.io.File;
@@ -45,12 +44,17 @@ public class BinVoxImporter extends AbstractImporter {
         super(file, name);
     }
 
+    // constructor (streams the voxels, see ImportPipeline)
+    public BinVoxImporter(File file, String name, ImportPipeline pipeline) throws IOException {
+        super(file, name, pipeline);
+    }
+
     // read file - returns true if file has loaded correctly
     @Override
-    protected boolean read(FileIn fileIn, RandomAccessFileIn raf) throws IOException {
+    protected boolean read(MappedFileIn in) throws IOException {
         // header
-        String line = fileIn.readLine();
-        if (!line.startsWith("#binvox")) { // not a bin vox format
+        String line = in.readLine();
+        if (line == null || !line.startsWith("#binvox")) { // not a bin vox format
             return false;
         }
 
@@ -58,7 +62,7 @@ public class BinVoxImporter extends AbstractImporter {
         String version_string = line.substring(8);
         version = Integer.parseInt(version_string);
 
-        line = fileIn.readLine();
+        line = in.readLine();
 
         while (null != line) {
 
@@ -77,9 +81,9 @@ public class BinVoxImporter extends AbstractImporter {
 
                 while (end_index < size && count != 0) {
 
-                    value = fileIn.readByteUnsigned();
+                    value = in.readByteUnsigned();
                     // read as unsigned
-                    count = fileIn.readByteUnsigned();
+                    count = in.readByteUnsigned();
 
                     end_index = index + count;
                     if (end_index > size) {
@@ -108,9 +112,9 @@ public class BinVoxImporter extends AbstractImporter {
                     sx = Integer.parseInt(dimensions[3]);
                 } else {
                     // the values are in the next line(s)
-                    sz = fileIn.readInt();
-                    sy = fileIn.readInt();
-                    sx = fileIn.readInt();
+                    sz = in.readIntBigEndian();
+                    sy = in.readIntBigEndian();
+                    sx = in.readIntBigEndian();
                 }
             } else if (line.startsWith("translate")) {
                 String[] translations = line.split(" ");
@@ -121,9 +125,9 @@ public class BinVoxImporter extends AbstractImporter {
                     tz = Double.parseDouble(translations[3]);
                 } else {
                     // the values are in the next line(s)
-                    tx = fileIn.readDouble();
-                    ty = fileIn.readDouble();
-                    tz = fileIn.readDouble();
+                    tx = in.readDoubleBigEndian();
+                    ty = in.readDoubleBigEndian();
+                    tz = in.readDoubleBigEndian();
                 }
             } else if (line.startsWith("scale")) {
                 String[] scaleLine = line.split(" ");
@@ -132,11 +136,11 @@ public class BinVoxImporter extends AbstractImporter {
                     scale = Double.parseDouble(scaleLine[1]);
                 } else {
                     // the value is in the next line
-                    scale = fileIn.readDouble();
+                    scale = in.readDoubleBigEndian();
                 }
             }
 
-            line = fileIn.readLine();
+            line = in.readLine();
 
         }
 
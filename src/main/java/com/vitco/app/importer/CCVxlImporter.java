@@ -1,9 +1,9 @@
 package com.vitco.app.importer;
 
 import com.vitco.app.importer.dataStatic.CCVxlStatic;
-import com.vitco.app.util.file.FileIn;
-import com.vitco.app.util.file.RandomAccessFileIn;
+import com.vitco.app.util.file.MappedFileIn;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 
@@ -20,6 +20,11 @@ public class CCVxlImporter extends AbstractImporter {
         super(file, name);
     }
 
+    // constructor (streams the voxels, see ImportPipeline)
+    public CCVxlImporter(File file, String name, ImportPipeline pipeline) throws IOException {
+        super(file, name, pipeline);
+    }
+
     // type of game (they use different color palettes)
     public enum NormalType { TiberianSun(2), RedAlert2(4);
         public final int id;
@@ -40,14 +45,16 @@ public class CCVxlImporter extends AbstractImporter {
     }
 
     // read the voxel information for a specific layer
-    private void readVoxelData(RandomAccessFileIn s, VxlLimb l) throws IOException {
+    private void readVoxelData(MappedFileIn s, VxlLimb l) throws IOException {
         int baseSize = l.size[0] * l.size[1];
         int[] colStart = new int[baseSize];
         for (int i = 0; i < baseSize; i++) {
-            colStart[i] = s.readInt32();
+            colStart[i] = s.readInt();
+        }
+        if (!s.skip(4 * baseSize)) {
+            throw new EOFException();
         }
-        s.seek(4 * baseSize, RandomAccessFileIn.CURRENT);
-        int dataStart = (int) s.getFilePointer();
+        int dataStart = s.position();
 
         // Count the voxels in this limb
         l.voxelCount = 0;
@@ -57,14 +64,16 @@ public class CCVxlImporter extends AbstractImporter {
                 continue;
             }
 
-            s.seek(dataStart + colStart[i], RandomAccessFileIn.BEGINNING);
+            s.seek(dataStart + colStart[i]);
             int z = 0;
             do {
-                z += s.readUInt8();
-                int count = s.readUInt8();
+                z += s.readByteUnsigned();
+                int count = s.readByteUnsigned();
                 z += count;
                 l.voxelCount += count;
-                s.seek(2 * count + 1, RandomAccessFileIn.CURRENT);
+                if (!s.skip(2 * count + 1)) {
+                    throw new EOFException();
+                }
             } while (z < l.size[2]);
         }
 
@@ -74,17 +83,17 @@ public class CCVxlImporter extends AbstractImporter {
             if (colStart[i] == -1)
                 continue;
 
-            s.seek(dataStart + colStart[i], RandomAccessFileIn.BEGINNING);
+            s.seek(dataStart + colStart[i]);
 
             int x = i % l.size[0];
             int y = i / l.size[0];
             int z = 0;
             do {
-                z += s.readUInt8();
-                int count = s.readUInt8();
+                z += s.readByteUnsigned();
+                int count = s.readByteUnsigned();
                 for (int j = 0; j < count; j++) {
-                    int color = s.readUInt8();
-                    s.readUInt8(); //int normal = s.readUInt8();
+                    int color = s.readByteUnsigned();
+                    s.readByteUnsigned(); //int normal = s.readByteUnsigned();
 
                     // add a voxel with correct color
                     addVoxel(
@@ -96,14 +105,14 @@ public class CCVxlImporter extends AbstractImporter {
                     z++;
                 }
                 // Skip duplicate count
-                s.readUInt8();
+                s.readByteUnsigned();
             } while (z < l.size[2]);
         }
     }
 
     // read file - returns true if file has loaded correctly
     @Override
-    protected boolean read(FileIn fileIn, RandomAccessFileIn s) throws IOException {
+    protected boolean read(MappedFileIn s) throws IOException {
 
         // identifier
         if (!s.readASCII(16).startsWith("Voxel Animation")) {
@@ -111,29 +120,37 @@ public class CCVxlImporter extends AbstractImporter {
         }
 
         // read basic information
-        s.readUInt32();
-        int limbCount = s.readUInt32();
-        s.readUInt32();
-        int bodySize = s.readUInt32();
-        s.seek(770, RandomAccessFileIn.CURRENT);
+        s.readInt();
+        int limbCount = s.readInt();
+        s.readInt();
+        int bodySize = s.readInt();
+        if (!s.skip(770)) {
+            return false;
+        }
 
         // Read Limb (layer) headers
         VxlLimb[] limbs = new VxlLimb[limbCount];
         for (int i = 0; i < limbCount; i++) {
             limbs[i] = new VxlLimb();
             limbs[i].name = s.readASCII(16).trim();
-            s.seek(12, RandomAccessFileIn.CURRENT);
+            if (!s.skip(12)) {
+                return false;
+            }
         }
 
         // skip to the limb (layer) footers
-        s.seek(802 + 28 * limbCount + bodySize, RandomAccessFileIn.BEGINNING);
+        s.seek(802 + 28 * limbCount + bodySize);
 
         int[] limbDataOffset = new int[limbCount];
         for (int i = 0; i < limbCount; i++) {
-            limbDataOffset[i] = s.readUInt32();
-            s.seek(8, RandomAccessFileIn.CURRENT);
+            limbDataOffset[i] = s.readInt();
+            if (!s.skip(8)) {
+                return false;
+            }
             limbs[i].scale = s.readFloat();
-            s.seek(48, RandomAccessFileIn.CURRENT);
+            if (!s.skip(48)) {
+                return false;
+            }
 
             limbs[i].bounds = new float[6];
             for (int j = 0; j < 6; j++) {
@@ -147,7 +164,7 @@ public class CCVxlImporter extends AbstractImporter {
         for (int i = 0; i < limbCount; i++) {
             // add a new layer
             addLayer(limbs[i].name);
-            s.seek(802 + 28*limbCount + limbDataOffset[i], RandomAccessFileIn.BEGINNING);
+            s.seek(802 + 28*limbCount + limbDataOffset[i]);
             readVoxelData(s, limbs[i]);
         }
 
@@ -0,0 +1,284 @@
+package com.vitco.app.importer;
+
+import com.vitco.app.core.data.Data;
+import com.vitco.app.layout.content.console.ConsoleInterface;
+import com.vitco.app.low.LongCubeIndexer;
+import com.vitco.app.settings.VitcoSettings;
+import com.vitco.app.util.components.progressbar.ProgressDialog;
+import com.vitco.app.util.components.progressbar.ProgressReporter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Streams the voxels of an importer into the data while the file is decoded.
+ *
+ * The importer runs on a separate thread and hands batches of voxels to a bounded queue,
+ * the calling thread adds them to the data. Hence only a few batches are held in memory
+ * (instead of the whole file). A centered import decodes the file twice (the first pass
+ * only measures the voxels). The layers that were added are deleted again if the import
+ * fails or is cancelled.
+ *
+ * Every batch is added under the data lock and only the added positions are refreshed by the
+ * views, so adding a batch costs time for the batch and overlaps with decoding the next ones.
+ * The time spent decoding and adding is reported to the console.
+ */
+public abstract class ImportPipeline extends ProgressReporter {
+
+    // the amount of voxel per batch (also used when an importer adds its voxels at once)
+    static final int BATCH_SIZE = 65536;
+    // the amount of batches that can be queued
+    private static final int QUEUE_SIZE = 4;
+
+    // a batch of decoded voxel (shifted position ids and argb colors)
+    static final class Batch {
+        private final AbstractImporter.Layer layer;
+        private final long[] posIds;
+        private final int[] colors;
+        private final int count;
+        // the progress of the decoding (percent)
+        private final float progress;
+
+        Batch(AbstractImporter.Layer layer, long[] posIds, int[] colors, int count, float progress) {
+            this.layer = layer;
+            this.posIds = posIds;
+            this.colors = colors;
+            this.count = count;
+            this.progress = progress;
+        }
+    }
+
+    // marks the end of the decoding
+    private static final Batch END = new Batch(null, null, null, 0, 100);
+
+    // the data the voxels are added to
+    private final Data data;
+    // true if the voxels are centered
+    private final boolean shiftToCenter;
+
+    // the decoded batches
+    private final ArrayBlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(QUEUE_SIZE);
+    // set when the data no longer accepts batches
+    private volatile boolean aborted = false;
+
+    // true while the voxels are only measured (first pass of a centered import)
+    private boolean measuring = false;
+    // moves the position ids of all voxel (centered import)
+    private long shiftOperand = 0;
+
+    // the result of the decoding thread
+    private volatile AbstractImporter decoded = null;
+    private volatile Throwable failure = null;
+
+    // the time (ms) of the streaming pass, spent decoding (decoding thread) and spent adding
+    private long totalTime = 0;
+    private volatile long decodeTime = 0;
+    private long addTime = 0;
+    // the amount of voxels that were added
+    private int addedCount = 0;
+    // true if voxels were dropped as the voxel limit was reached
+    private boolean truncated = false;
+
+    // constructor (the dialog is optional)
+    public ImportPipeline(Data data, boolean shiftToCenter, ProgressDialog dialog, ConsoleInterface console) {
+        super(dialog, console);
+        this.data = data;
+        this.shiftToCenter = shiftToCenter;
+    }
+
+    // create the importer for the file, i.e. "return new VoxImporter(file, name, pipeline);"
+    protected abstract AbstractImporter decode(ImportPipeline pipeline) throws IOException;
+
+    // ---------------
+    // decoding thread (see AbstractImporter)
+
+    final boolean isMeasuring() {
+        return measuring;
+    }
+
+    final long getShiftOperand() {
+        return shiftOperand;
+    }
+
+    // ---------------
+
+    // the time (ms) the streaming import took (the decoding and adding overlap)
+    public final long getTotalTime() {
+        return totalTime;
+    }
+
+    // the time (ms) that was spent decoding the file
+    public final long getDecodeTime() {
+        return decodeTime;
+    }
+
+    // the time (ms) that was spent adding the voxels to the data
+    public final long getAddTime() {
+        return addTime;
+    }
+
+    // the amount of voxels that were added to the data
+    public final int getAddedCount() {
+        return addedCount;
+    }
+
+    // true if not all voxels were added as the voxel limit was reached
+    public final boolean isTruncated() {
+        return truncated;
+    }
+
+    // hand a batch to the data (blocks while the queue is full)
+    final void emit(Batch batch) {
+        if (aborted) {
+            throw new CancellationException();
+        }
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        }
+    }
+
+    // ---------------
+
+    // helper - check if the user cancelled the import
+    private boolean cancelled() {
+        return getProgressDialog() != null && isCancelled();
+    }
+
+    // helper - report the progress
+    private void progress(float percent) {
+        if (getProgressDialog() != null) {
+            setProgress(percent);
+        }
+    }
+
+    // import the file, returns true if the file was loaded correctly
+    public final boolean run() throws IOException {
+        if (shiftToCenter) {
+            // measure the voxels first
+            measuring = true;
+            AbstractImporter measured = decode(this);
+            measuring = false;
+            if (!measured.hasLoaded()) {
+                return false;
+            }
+            if (measured.getVoxelCount() > 0) {
+                int[] center = measured.getWeightedCenter();
+                int[] highest = measured.getHighest();
+                shiftOperand = LongCubeIndexer.getShiftOperand(-center[0], -highest[1], -center[2]);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        Thread decoder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long decodeStart = System.currentTimeMillis();
+                try {
+                    decoded = decode(ImportPipeline.this);
+                } catch (Throwable e) {
+                    failure = e;
+                } finally {
+                    decodeTime = System.currentTimeMillis() - decodeStart;
+                    try {
+                        if (!aborted) {
+                            queue.put(END);
+                        }
+                    } catch (InterruptedException ignored) {
+                        // aborted
+                    }
+                }
+            }
+        }, "Import Decoder");
+        decoder.setDaemon(true);
+        decoder.start();
+
+        // add the batches to the data as they are decoded
+        IdentityHashMap<AbstractImporter.Layer, Integer> layerIds = new IdentityHashMap<AbstractImporter.Layer, Integer>();
+        ArrayList<AbstractImporter.Layer> layers = new ArrayList<AbstractImporter.Layer>();
+        boolean finished = false;
+        try {
+            while (!cancelled()) {
+                Batch batch = queue.take();
+                if (batch == END) {
+                    finished = true;
+                    break;
+                }
+                Integer layerId = layerIds.get(batch.layer);
+                if (layerId == null) {
+                    // the layer is created when the first voxel arrive (empty layers are skipped)
+                    layerId = data.createLayer(batch.layer.name);
+                    if (batch.layer.isPrepended()) {
+                        // goes below all layers of this import
+                        for (int i = 0; i < layers.size(); i++) {
+                            data.moveLayerDown(layerId);
+                        }
+                    }
+                    layerIds.put(batch.layer, layerId);
+                    layers.add(batch.layer);
+                }
+                long addStart = System.currentTimeMillis();
+                int added = data.addVoxelsDirect(layerId, batch.posIds, batch.colors, 0, batch.count);
+                addedCount += added;
+                if (added < batch.count && data.getVoxelCount() >= VitcoSettings.MAX_VOXEL_COUNT) {
+                    truncated = true;
+                }
+                addTime += System.currentTimeMillis() - addStart;
+                progress(batch.progress);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!finished) {
+                // stop the decoding
+                aborted = true;
+                decoder.interrupt();
+                queue.clear();
+            }
+            try {
+                decoder.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        totalTime = System.currentTimeMillis() - start;
+
+        boolean result = finished && failure == null && decoded != null && decoded.hasLoaded();
+        if (result) {
+            if (console != null) {
+                console.addLine(String.format("Imported %d voxels in %d ms (%d voxels/s), decoding took %d ms " +
+                        "and adding took %d ms.", addedCount, totalTime,
+                        addedCount * 1000L / Math.max(1, totalTime), decodeTime, addTime));
+            }
+            for (AbstractImporter.Layer layer : layers) {
+                int layerId = layerIds.get(layer);
+                data.selectLayer(layerId);
+                data.setVisible(layerId, layer.isVisible());
+            }
+        } else {
+            // remove what was added
+            for (Integer layerId : layerIds.values()) {
+                data.deleteLayer(layerId);
+            }
+            if (finished && failure != null) {
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
+                if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                }
+                if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                throw new IOException(failure);
+            }
+        }
+        return result;
+    }
+}
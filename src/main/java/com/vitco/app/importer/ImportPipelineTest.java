@@ -0,0 +1,203 @@
+package com.vitco.app.importer;
+
+import com.vitco.app.core.data.Data;
+import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.export.PnxExporter;
+import com.vitco.app.util.components.progressbar.ProgressDialog;
+import org.junit.Test;
+
+import java.awt.*;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test that streaming an import gives the same result as loading it at once.
+ */
+public class ImportPipelineTest {
+
+    private static final String directory = "src/test/resources/formats/";
+
+    // helper - create empty data
+    private static Data createData() {
+        Data data = new Data();
+        data.deleteLayer(data.getLayers()[0]);
+        return data;
+    }
+
+    // helper - check that two documents hold the same layers and voxels
+    private static void compare(Data expected, Data streamed) {
+        Integer[] expectedLayers = expected.getLayers();
+        Integer[] streamedLayers = streamed.getLayers();
+        assertEquals(expectedLayers.length, streamedLayers.length);
+        for (int i = 0; i < expectedLayers.length; i++) {
+            assertEquals(expected.getLayerName(expectedLayers[i]), streamed.getLayerName(streamedLayers[i]));
+            assertEquals(expected.getLayerVisible(expectedLayers[i]), streamed.getLayerVisible(streamedLayers[i]));
+            HashMap<Long, Integer> voxels = new HashMap<Long, Integer>();
+            for (Voxel voxel : streamed.getLayerVoxels(streamedLayers[i])) {
+                voxels.put(voxel.posId, voxel.getRGB());
+            }
+            Voxel[] expectedVoxels = expected.getLayerVoxels(expectedLayers[i]);
+            assertEquals(expectedVoxels.length, voxels.size());
+            for (Voxel voxel : expectedVoxels) {
+                assertEquals(Integer.valueOf(voxel.getRGB()), voxels.get(voxel.posId));
+            }
+        }
+        assertEquals(expected.getSelectedLayer(), streamed.getSelectedLayer());
+    }
+
+    // helper - write a rawvox file (the voxels are cut off after "written")
+    private static File writeRawVox(int sx, int sy, int sz, int written) throws IOException {
+        File file = File.createTempFile("import", ".rawvox");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeBytes("XOVR");
+            out.writeInt(Integer.reverseBytes(sx));
+            out.writeInt(Integer.reverseBytes(sy));
+            out.writeInt(Integer.reverseBytes(sz));
+            out.writeInt(Integer.reverseBytes(8));
+            for (int i = 0; i < written; i++) {
+                out.writeByte(i % 3 == 0 ? 0 : 1);
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testPnx() throws IOException {
+        File[] files = new File(directory + "pnx").listFiles();
+        assertTrue(files != null && files.length > 0);
+        for (final File file : files) {
+            Data expected = createData();
+            new PnxImporter(file, "Import").loadInto(expected, false);
+            Data streamed = createData();
+            ImportPipeline pipeline = new ImportPipeline(streamed, false, null, null) {
+                @Override
+                protected AbstractImporter decode(ImportPipeline pipeline) throws IOException {
+                    return new PnxImporter(file, "Import", pipeline);
+                }
+            };
+            boolean imported = pipeline.run();
+            assertTrue(imported);
+            compare(expected, streamed);
+        }
+    }
+
+    @Test
+    public void testLayers() throws IOException {
+        // several layers (prepended by the importer), one of them hidden
+        Data data = createData();
+        for (int i = 0; i < 4; i++) {
+            int layerId = data.createLayer("layer" + i);
+            data.selectLayer(layerId);
+            data.setVisible(layerId, i != 2);
+            for (int j = 0; j <= i; j++) {
+                data.addVoxel(new Color(0x102030 * (i + 1)), null, new int[] {j, i, -j});
+            }
+        }
+        final File file = File.createTempFile("import", ".pnx");
+        try {
+            boolean written = new PnxExporter(file, data, new ProgressDialog(null), null).writeData();
+            assertTrue(written);
+            Data expected = createData();
+            new PnxImporter(file, "Import").loadInto(expected, false);
+            assertEquals(4, expected.getLayers().length);
+            Data streamed = createData();
+            ImportPipeline pipeline = new ImportPipeline(streamed, false, null, null) {
+                @Override
+                protected AbstractImporter decode(ImportPipeline pipeline) throws IOException {
+                    return new PnxImporter(file, "Import", pipeline);
+                }
+            };
+            boolean imported = pipeline.run();
+            assertTrue(imported);
+            compare(expected, streamed);
+        } finally {
+            boolean deleted = file.delete();
+            assertTrue(deleted);
+        }
+    }
+
+    @Test
+    public void testVox() throws IOException {
+        File[] files = new File(directory + "magica_vox/fit_to_size").listFiles();
+        assertTrue(files != null && files.length > 0);
+        for (final File file : files) {
+            Data expected = createData();
+            new VoxImporter(file, "Import").loadInto(expected, false);
+            Data streamed = createData();
+            ImportPipeline pipeline = new ImportPipeline(streamed, false, null, null) {
+                @Override
+                protected AbstractImporter decode(ImportPipeline pipeline) throws IOException {
+                    return new VoxImporter(file, "Import", pipeline);
+                }
+            };
+            boolean imported = pipeline.run();
+            assertTrue(imported);
+            compare(expected, streamed);
+        }
+    }
+
+    @Test
+    public void testCenteredBatches() throws IOException {
+        // more voxels than fit into one batch
+        final File file = writeRawVox(100, 80, 50, 100 * 80 * 50);
+        try {
+            Data expected = createData();
+            AbstractImporter importer = new RawVoxImporter(file, "Import");
+            assertTrue(importer.getVoxelCount() > ImportPipeline.BATCH_SIZE * 3);
+            importer.loadInto(expected, true);
+            Data streamed = createData();
+            ImportPipeline pipeline = new ImportPipeline(streamed, true, null, null) {
+                @Override
+                protected AbstractImporter decode(ImportPipeline pipeline) throws IOException {
+                    return new RawVoxImporter(file, "Import", pipeline);
+                }
+            };
+            boolean imported = pipeline.run();
+            assertTrue(imported);
+            compare(expected, streamed);
+            assertEquals(importer.getVoxelCount(), pipeline.getAddedCount());
+            // the decoding and adding overlap (the total is less than the sum)
+            System.out.println(String.format("Streamed %d voxels in %d ms, decoding %d ms, adding %d ms",
+                    pipeline.getAddedCount(), pipeline.getTotalTime(), pipeline.getDecodeTime(), pipeline.getAddTime()));
+        } finally {
+            boolean deleted = file.delete();
+            assertTrue(deleted);
+        }
+    }
+
+    @Test
+    public void testFailure() throws IOException {
+        // the file ends after a few batches
+        final File file = writeRawVox(90, 70, 40, ImportPipeline.BATCH_SIZE * 3);
+        try {
+            Data streamed = createData();
+            try {
+                new ImportPipeline(streamed, false, null, null) {
+                    @Override
+                    protected AbstractImporter decode(ImportPipeline pipeline) throws IOException {
+                        return new RawVoxImporter(file, "Import", pipeline);
+                    }
+                }.run();
+                fail("The truncated file was imported.");
+            } catch (EOFException ignored) {
+                // expected
+            }
+            // nothing was added
+            assertEquals(0, streamed.getLayers().length);
+        } finally {
+            boolean deleted = file.delete();
+            assertTrue(deleted);
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.vitco.app.importer;
 
-import com.vitco.app.util.file.FileIn;
-import com.vitco.app.util.file.RandomAccessFileIn;
+import com.vitco.app.util.file.MappedFileIn;
 
 import java.awt.*;
 import java.io.File;
@@ -21,30 +20,35 @@ public class Kv6Importer extends AbstractImporter {
         super(file, name);
     }
 
+    // constructor (streams the voxels, see ImportPipeline)
+    public Kv6Importer(File file, String name, ImportPipeline pipeline) throws IOException {
+        super(file, name, pipeline);
+    }
+
     // ---------
 
     @Override
-    protected boolean read(FileIn fileIn, RandomAccessFileIn raf) throws IOException {
+    protected boolean read(MappedFileIn in) throws IOException {
         // check that this is a valid file (header correct)
-        if (fileIn.readIntRev() != 0x6c78764b) {
+        if (in.readInt() != 0x6c78764b) {
             return false;
         }
 
         // read the dimensions
-        int sx = fileIn.readIntRev();
-        int sy = fileIn.readIntRev();
-        int sz = fileIn.readIntRev();
+        int sx = in.readInt();
+        int sy = in.readInt();
+        int sz = in.readInt();
         if (sx == 0 || sy == 0 || sz == 0) {
             return false;
         }
 
         // read center
-        int cx = Math.round(fileIn.readFloatRev());
-        int cy = Math.round(fileIn.readFloatRev());
-        int cz = Math.round(fileIn.readFloatRev());
+        int cx = Math.round(in.readFloat());
+        int cy = Math.round(in.readFloat());
+        int cz = Math.round(in.readFloat());
 
         // read the amount of voxel that have a visible side
-        long count = fileIn.readIntRev();
+        long count = in.readInt();
 
         // voxel info list (we don't know yet where they are in the world)
         ArrayList<int[]> voxel = new ArrayList<int[]>();
@@ -52,15 +56,15 @@ public class Kv6Importer extends AbstractImporter {
         // read the colors and some other data
         for (int c = 0; c < count; c++) {
             // treat as unsigned byte
-            int b = fileIn.readByteUnsigned();
-            int g = fileIn.readByteUnsigned();
-            int r = fileIn.readByteUnsigned();
-            fileIn.readByteUnsigned(); //int l = fileIn.readByteUnsigned();
+            int b = in.readByteUnsigned();
+            int g = in.readByteUnsigned();
+            int r = in.readByteUnsigned();
+            in.readByteUnsigned(); //int l = in.readByteUnsigned();
             Color color = new Color(r, g, b);
             // -----------
-            int zpos = fileIn.readShortRevUnsigned();
-            int visfaces = fileIn.readByteUnsigned();
-            fileIn.readByteUnsigned(); //int lightDir = fileIn.readByteUnsigned();
+            int zpos = in.readShortUnsigned();
+            int visfaces = in.readByteUnsigned();
+            in.readByteUnsigned(); //int lightDir = in.readByteUnsigned();
 //            System.out.println(
 //                    r + " " + g + " " + b + " (" + lightDir + ") @ " +
 //                    (ByteHelper.isBitSet((byte) visfaces, 0) ? "1" : "0") +
@@ -81,7 +85,7 @@ public class Kv6Importer extends AbstractImporter {
 
         // read the xoffset
         for (int x = 0; x < sx; x++) {
-            int xoff = fileIn.readIntRev();
+            int xoff = in.readInt();
 //            System.out.println(xoff);
             sumxoffset += xoff;
         }
@@ -92,11 +96,11 @@ public class Kv6Importer extends AbstractImporter {
         ArrayList<int[]> addedVoxelList = new ArrayList<int[]>();
         for (int x = 0; x < sx; x++) {
             for (int y = 0; y < sy; y++) {
-                int xyoff = fileIn.readShortRevUnsigned();
+                int xyoff = in.readShortUnsigned();
                 sumxyoffset += xyoff;
                 // create list first, order it and then check which voxel are missing (testing)
                 for (int newC = c + xyoff; c < newC; c++) {
-                    int[] vox = voxel.remove(0); // alternative "voxel.get(c)"
+                    int[] vox = voxel.get(c);
                     addedVoxelList.add(vox);
 //                    System.out.println("A:" + x + " " + y + " " + vox[0]);
                     addVoxel(x - cx, vox[0] - cz, -y + cy, vox[1]);
@@ -1,7 +1,6 @@
 package com.vitco.app.importer;
 
-import com.vitco.app.util.file.FileIn;
-import com.vitco.app.util.file.RandomAccessFileIn;
+import com.vitco.app.util.file.MappedFileIn;
 
 import java.awt.*;
 import java.io.File;
@@ -17,22 +16,27 @@ public class KvxImporter extends AbstractImporter {
         super(file, name);
     }
 
+    // constructor (streams the voxels, see ImportPipeline)
+    public KvxImporter(File file, String name, ImportPipeline pipeline) throws IOException {
+        super(file, name, pipeline);
+    }
+
     @Override
-    protected boolean read(FileIn fileIn, RandomAccessFileIn raf) throws IOException {
-        fileIn.readIntRev(); //int numbytes = fileIn.readIntRev();
+    protected boolean read(MappedFileIn in) throws IOException {
+        in.readInt(); //int numbytes = in.readInt();
 
         // read the dimensions
-        int sx = fileIn.readIntRev();
-        int sy = fileIn.readIntRev();
-        int sz = fileIn.readIntRev();
+        int sx = in.readInt();
+        int sy = in.readInt();
+        int sz = in.readInt();
         if (sx == 0 || sy == 0 || sz == 0) {
             return false;
         }
 
         // read center (discards precision)
-        int cx = Math.round(fileIn.readIntRev()/256f);
-        int cy = Math.round(fileIn.readIntRev()/256f);
-        int cz = Math.round(fileIn.readIntRev()/256f);
+        int cx = Math.round(in.readInt()/256f);
+        int cy = Math.round(in.readInt()/256f);
+        int cz = Math.round(in.readInt()/256f);
 
         // read the amounts in the different dimensions
         int sumxoffset = 0;
@@ -43,10 +47,10 @@ public class KvxImporter extends AbstractImporter {
         int[][] xyoffset = new int[sx][sy + 1];
 
         // read the xoffset
-        int prevx = fileIn.readIntRev();
+        int prevx = in.readInt();
         xoffset[0] = prevx;
         for (int x = 1; x <= sx; x++) {
-            int xoffSum = fileIn.readIntRev();
+            int xoffSum = in.readInt();
             int xoff = xoffSum - prevx;
             sumxoffset += xoff;
             prevx = xoffSum;
@@ -56,7 +60,7 @@ public class KvxImporter extends AbstractImporter {
         for (int x = 0; x < sx; x++) {
             int prevxy = 0;
             for (int y = 0; y <= sy; y++) {
-                int xyoffSum = fileIn.readShortRevUnsigned();
+                int xyoffSum = in.readShortUnsigned();
                 int xyoff = xyoffSum - prevxy;
                 sumxyoffset += xyoff;
                 prevxy = xyoffSum;
@@ -73,14 +77,16 @@ public class KvxImporter extends AbstractImporter {
         }
 
         // Read the color palette (always at the end of the file)
-        raf.seek(raf.length() - 768);
+        int dataStart = in.position();
+        in.seek(in.length() - 768);
         int[] colPalette = new int[256];
         for (int i = 0; i < 256; i++) {
-            int r = Math.min(255, Math.max(0, Math.round((raf.read() * 255) / 63f)));
-            int g = Math.min(255, Math.max(0, Math.round((raf.read() * 255) / 63f)));
-            int b = Math.min(255, Math.max(0, Math.round((raf.read() * 255) / 63f)));
+            int r = Math.min(255, Math.max(0, Math.round((in.readByteUnsigned() * 255) / 63f)));
+            int g = Math.min(255, Math.max(0, Math.round((in.readByteUnsigned() * 255) / 63f)));
+            int b = Math.min(255, Math.max(0, Math.round((in.readByteUnsigned() * 255) / 63f)));
             colPalette[i] = new Color(r, g, b).getRGB();
         }
+        in.seek(dataStart);
 
         int lastZ = 0;
         int lastCol = 0;
@@ -93,12 +99,12 @@ public class KvxImporter extends AbstractImporter {
 
                 while (start < end) {
                     // read header bytes
-                    int zpos = fileIn.readByteUnsigned();
-                    int zlen = fileIn.readByteUnsigned();
-                    int visfaces = fileIn.readByteUnsigned();
+                    int zpos = in.readByteUnsigned();
+                    int zlen = in.readByteUnsigned();
+                    int visfaces = in.readByteUnsigned();
                     for (int i = 0; i < zlen; i++) {
                         // read color->voxel mapping and add
-                        lastCol = colPalette[fileIn.readByteUnsigned()];
+                        lastCol = colPalette[in.readByteUnsigned()];
                         addVoxel(x - cx, zpos + i - cz, -y + cy, lastCol);
                     }
                     start += zlen + 3;
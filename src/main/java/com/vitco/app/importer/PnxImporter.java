@@ -1,7 +1,6 @@
 package com.vitco.app.importer;
 
-import com.vitco.app.util.file.FileIn;
-import com.vitco.app.util.file.RandomAccessFileIn;
+import com.vitco.app.util.file.MappedFileIn;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -18,46 +17,57 @@ public class PnxImporter extends AbstractImporter {
         super(file, name);
     }
 
+    // constructor (streams the voxels, see ImportPipeline)
+    public PnxImporter(File file, String name, ImportPipeline pipeline) throws IOException {
+        super(file, name, pipeline);
+    }
+
     @Override
-    protected boolean read(FileIn fileIn, RandomAccessFileIn raf) throws IOException {
+    protected boolean read(MappedFileIn in) throws IOException {
 
         // read overall size
-        fileIn.readIntRev(); fileIn.readIntRev(); fileIn.readIntRev();
+        in.readInt(); in.readInt(); in.readInt();
 
-        int layerCount = fileIn.readIntRev();
+        int layerCount = in.readInt();
 
         // read all images
-        int imageCount = fileIn.readIntRev();
-        ArrayList<BufferedImage> images = new ArrayList<BufferedImage>();
+        int imageCount = in.readInt();
+        // (the pixels are read once, the images are shared between slices)
+        ArrayList<int[]> images = new ArrayList<int[]>();
+        ArrayList<Integer> imageWidths = new ArrayList<Integer>();
         for (int i = 0; i < imageCount; i++) {
-            images.add(fileIn.readImage());
+            BufferedImage img = in.readImage();
+            int width = img.getWidth();
+            images.add(img.getRGB(0, 0, width, img.getHeight(), null, 0, width));
+            imageWidths.add(width);
         }
 
         for (int i = 0; i < layerCount; i++) {
             // read layer name
-            int layerNameLength = fileIn.readIntRev();
-            String layerName = fileIn.readUTF8String(layerNameLength);
+            int layerNameLength = in.readInt();
+            String layerName = in.readUTF8(layerNameLength);
             prependLayer(layerName);
 
             // read layer visibility
-            boolean visible = fileIn.readByte() == 1;
+            boolean visible = in.readByte() == 1;
             setLayerVisibility(visible);
 
             // read layer locked state
-            fileIn.readByte(); // boolean locked = fileIn.readByte() == 0;
+            in.readByte(); // boolean locked = in.readByte() == 0;
 
             // read layer size and corner
-            int[] size = new int[]{fileIn.readIntRev(), fileIn.readIntRev(), fileIn.readIntRev()};
-            int[] min = new int[]{fileIn.readIntRev(), fileIn.readIntRev(), fileIn.readIntRev()};
+            int[] size = new int[]{in.readInt(), in.readInt(), in.readInt()};
+            int[] min = new int[]{in.readInt(), in.readInt(), in.readInt()};
 
             // read layer slice by slice
             for (int x = size[0] + min[0] - 1; x > min[0] - 1; x--) {
                 // read image for slice
-                BufferedImage img = images.get(fileIn.readIntRev());
+                int imageId = in.readInt();
+                int[] img = images.get(imageId);
+                int width = imageWidths.get(imageId);
                 for (int y = 0; y < size[1]; y++) {
                     for (int z = 0; z < size[2]; z++) {
-                        //noinspection SuspiciousNameCombination
-                        int rgb = img.getRGB(y, z);
+                        int rgb = img[z * width + y];
                         if ((rgb >> 24) != 0x00) {
                             addVoxel(x, y + min[1], z + min[2], rgb);
                         }
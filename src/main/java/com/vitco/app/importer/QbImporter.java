@@ -1,12 +1,9 @@
 package com.vitco.app.importer;
 
-import com.vitco.app.util.file.FileIn;
-import com.vitco.app.util.file.RandomAccessFileIn;
+import com.vitco.app.util.file.MappedFileIn;
 
-import java.awt.*;
 import java.io.File;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 
 /**
  * *.qb importer
@@ -18,63 +15,66 @@ public class QbImporter extends AbstractImporter {
         super(file, name);
     }
 
+    // constructor (streams the voxels, see ImportPipeline)
+    public QbImporter(File file, String name, ImportPipeline pipeline) throws IOException {
+        super(file, name, pipeline);
+    }
+
     private static final int CODE_FLAG = 2;
     private static final int NEXT_SLICE_FLAG = 6;
 
+    // helper - add a voxel, the data is read as a little endian int (c1, c2, c3, visibility)
+    private void addVoxel(int data, int x, int y, int z, int cx, int cy, int cz,
+                          int colorFormat, int zAxisOrientation) {
+        if ((data >>> 24) != 0) { // if voxel is not invisible (this should work correctly in all cases)
+            int c1 = data & 0xFF;
+            int c2 = (data >> 8) & 0xFF;
+            int c3 = (data >> 16) & 0xFF;
+            int rgb = colorFormat == 0
+                    ? 0xFF000000 | (c1 << 16) | (c2 << 8) | c3
+                    : 0xFF000000 | (c3 << 16) | (c2 << 8) | c1;
+            if (zAxisOrientation == 1) {
+                addVoxel(x + cx, -y - cy, z + cz, rgb);
+            } else {
+                addVoxel(z + cz, -y - cy, x + cx, rgb);
+            }
+        }
+    }
+
     @Override
-    protected boolean read(FileIn fileIn, RandomAccessFileIn raf) throws IOException {
-        fileIn.readIntRevUnsigned(); //int version = fileIn.readIntRevUnsigned();
-        //System.out.println("version: " + version);
-        int colorFormat = fileIn.readIntRevUnsigned();
-        //System.out.println("colorFormat: " + colorFormat);
-        int zAxisOrientation = fileIn.readIntRevUnsigned();
-        //System.out.println("zAxisOrientation: " + zAxisOrientation);
-        int compressed = fileIn.readIntRevUnsigned();
-        //System.out.println("compressed: " + compressed);
-        fileIn.readIntRevUnsigned(); // int visibilityMaskEncoded = fileIn.readIntRevUnsigned();
-        //System.out.println("visibilityMaskEncoded: " + visibilityMaskEncoded);
-        int numMatrices = fileIn.readIntRevUnsigned();
-        //System.out.println("numMatrices: " + numMatrices);
+    protected boolean read(MappedFileIn in) throws IOException {
+        in.readInt(); //int version = in.readInt();
+        int colorFormat = in.readInt();
+        int zAxisOrientation = in.readInt();
+        int compressed = in.readInt();
+        in.readInt(); // int visibilityMaskEncoded = in.readInt();
+        int numMatrices = in.readInt();
 
         for (int i = 0; i < numMatrices; i++) {
             // read matrix name
-            int nameLength = fileIn.readByteUnsigned();
-            String name = fileIn.readASCIIString(nameLength);
+            int nameLength = in.readByteUnsigned();
+            String name = in.readASCII(nameLength);
             addLayer(name);
-            //System.out.println("name: " + name);
 
             // read matrix size
-            int sx = fileIn.readIntRevUnsigned();
-            int sy = fileIn.readIntRevUnsigned();
-            int sz = fileIn.readIntRevUnsigned();
-
-            //System.out.println(sx + " " + sy + " " + sz);
+            int sx = in.readInt();
+            int sy = in.readInt();
+            int sz = in.readInt();
 
             // read offset size
-            int cx = fileIn.readIntRev();
-            int cy = fileIn.readIntRev();
-            int cz = fileIn.readIntRev();
-
-            //System.out.println(cx + " " + cy + " " + cz);
-
-            ByteBuffer byteBuffer = ByteBuffer.allocate(4);
+            int cx = in.readInt();
+            int cy = in.readInt();
+            int cz = in.readInt();
 
             if (compressed == 0) { // uncompressed
+                // read one slice at a time
+                int[] slice = new int[Math.max(0, sx * sy)];
                 for(int z = 0; z < sz; z++) {
+                    in.get(slice);
+                    int index = 0;
                     for(int y = 0; y < sy; y++) {
                         for(int x = 0; x < sx; x++) {
-                            int c1 = fileIn.readByteUnsigned();
-                            int c2 = fileIn.readByteUnsigned();
-                            int c3 = fileIn.readByteUnsigned();
-                            int a = fileIn.readByteUnsigned(); // read visibility encoding
-                            if (a != 0) { // if voxel is not invisible (this should work correctly in all cases)
-                                int rgb = colorFormat == 0 ? new Color(c1,c2,c3).getRGB() : new Color(c3, c2, c1).getRGB();
-                                if (zAxisOrientation == 1) {
-                                    addVoxel(x + cx, -y - cy, z + cz, rgb);
-                                } else {
-                                    addVoxel(z + cz, -y - cy, x + cx, rgb);
-                                }
-                            }
+                            addVoxel(slice[index++], x, y, z, cx, cy, cz, colorFormat, zAxisOrientation);
                         }
                     }
                 }
@@ -85,50 +85,20 @@ public class QbImporter extends AbstractImporter {
                 while (z < sz) {
                     int index = -1;
                     while (true) {
-                        int data = fileIn.readIntRev();
+                        int data = in.readInt();
                         if (data == NEXT_SLICE_FLAG) {
                             break;
                         } else if (data == CODE_FLAG) {
-                            int count = fileIn.readIntRevUnsigned();
-                            data = fileIn.readIntRev();
+                            int count = in.readInt();
+                            data = in.readInt();
 
                             for (int j = 0; j < count; j++) {
-                                int x = (index + 1)%sx;
-                                int y = (index + 1)/sx;
                                 index++;
-                                byteBuffer.position(0);
-                                byteBuffer.putInt(data);
-                                int c1 = byteBuffer.get(3) & 0x0000FF;
-                                int c2 = byteBuffer.get(2) & 0x0000FF;
-                                int c3 = byteBuffer.get(1) & 0x0000FF;
-                                int a = byteBuffer.get(0) & 0x0000FF; // read visibility encoding
-                                if (a != 0) { // if voxel is not invisible
-                                    int rgb = colorFormat == 0 ? new Color(c1,c2,c3).getRGB() : new Color(c3, c2, c1).getRGB();
-                                    if (zAxisOrientation == 1) {
-                                        addVoxel(x + cx, -y - cy, z + cz, rgb);
-                                    } else {
-                                        addVoxel(z + cz, -y - cy, x + cx, rgb);
-                                    }
-                                }
+                                addVoxel(data, index % sx, index / sx, z, cx, cy, cz, colorFormat, zAxisOrientation);
                             }
                         } else {
-                            int x = (index + 1)%sx;
-                            int y = (index + 1)/sx;
                             index++;
-                            byteBuffer.position(0);
-                            byteBuffer.putInt(data);
-                            int c1 = byteBuffer.get(3) & 0x0000FF;
-                            int c2 = byteBuffer.get(2) & 0x0000FF;
-                            int c3 = byteBuffer.get(1) & 0x0000FF;
-                            int a = byteBuffer.get(0) & 0x0000FF; // read visibility encoding
-                            if (a != 0) { // if voxel is not invisible
-                                int rgb = colorFormat == 0 ? new Color(c1,c2,c3).getRGB() : new Color(c3, c2, c1).getRGB();
-                                if (zAxisOrientation == 1) {
-                                    addVoxel(x + cx, -y - cy, z + cz, rgb);
-                                } else {
-                                    addVoxel(z + cz, -y - cy, x + cx, rgb);
-                                }
-                            }
+                            addVoxel(data, index % sx, index / sx, z, cx, cy, cz, colorFormat, zAxisOrientation);
                         }
                     }
                     z++;
@@ -1,7 +1,6 @@
 package com.vitco.app.importer;
 
-import com.vitco.app.util.file.FileIn;
-import com.vitco.app.util.file.RandomAccessFileIn;
+import com.vitco.app.util.file.MappedFileIn;
 
 import java.awt.*;
 import java.io.File;
@@ -27,20 +26,25 @@ public class RawVoxImporter extends AbstractImporter {
         super(file, layerName);
     }
 
+    // constructor (streams the voxels, see ImportPipeline)
+    public RawVoxImporter(File file, String layerName, ImportPipeline pipeline) throws IOException {
+        super(file, layerName, pipeline);
+    }
+
     // read file - returns true if file has loaded correctly
     @Override
-    protected boolean read(FileIn fileIn, RandomAccessFileIn raf) throws IOException {
+    protected boolean read(MappedFileIn in) throws IOException {
 
         // header
-        String header = fileIn.readASCIIString(4);
+        String header = in.readASCII(4);
         if (!header.startsWith("XOVR")) { // check format identifier
             return false;
         }
 
         // read size of the voxel area
-        sx = fileIn.readIntRev();
-        sy = fileIn.readIntRev();
-        sz = fileIn.readIntRev();
+        sx = in.readInt();
+        sy = in.readInt();
+        sz = in.readInt();
 
         // sanity check
         if (sx == 0 || sy == 0 || sz == 0) {
@@ -49,7 +53,7 @@ public class RawVoxImporter extends AbstractImporter {
         }
 
         // read bits per voxel
-        int bitsPerVoxel = fileIn.readIntRev();
+        int bitsPerVoxel = in.readInt();
 
         // sanity check
         if (bitsPerVoxel != 8 && bitsPerVoxel != 16 && bitsPerVoxel != 32) {
@@ -64,11 +68,11 @@ public class RawVoxImporter extends AbstractImporter {
             for (int y = 0; y < sy; y++) {
                 for (int x = 0; x < sx; x++) {
                     if (bitsPerVoxel == 8) {
-                        bVal = fileIn.readByteUnsigned();
+                        bVal = in.readByteUnsigned();
                     } else if (bitsPerVoxel == 16) {
-                        bVal = fileIn.readByteUnsigned() + fileIn.readByteUnsigned();
+                        bVal = in.readByteUnsigned() + in.readByteUnsigned();
                     } else if (bitsPerVoxel == 32) {
-                        bVal = fileIn.readByteUnsigned() + fileIn.readByteUnsigned() + fileIn.readByteUnsigned() + fileIn.readByteUnsigned();
+                        bVal = in.readByteUnsigned() + in.readByteUnsigned() + in.readByteUnsigned() + in.readByteUnsigned();
                     }
                     if (bVal > 0) {
                         addVoxel(-z,-y,x,voxelRGB);
@@ -1,12 +1,10 @@
 package com.vitco.app.importer;
 
-import com.vitco.app.util.file.FileIn;
-import com.vitco.app.util.file.RandomAccessFileIn;
+import com.vitco.app.util.file.MappedFileIn;
 
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 public class VoxImporter extends AbstractImporter {
@@ -16,6 +14,11 @@ public class VoxImporter extends AbstractImporter {
         super(file, name);
     }
 
+    // constructor (streams the voxels, see ImportPipeline)
+    public VoxImporter(File file, String name, ImportPipeline pipeline) throws IOException {
+        super(file, name, pipeline);
+    }
+
     private static final int[] voxColors = new int[] {
             -1, -52, -103, -154, -205, -256, -13057, -13108, -13159, -13210, -13261, -13312, -26113, -26164, -26215, -26266,
             -26317, -26368, -39169, -39220, -39271, -39322, -39373, -39424, -52225, -52276, -52327, -52378, -52429, -52480, -65281,
@@ -43,42 +46,41 @@ public class VoxImporter extends AbstractImporter {
 
     // read file - returns true if file has loaded correctly
     @Override
-    protected boolean read(FileIn fileIn, RandomAccessFileIn raf) throws IOException {
+    protected boolean read(MappedFileIn in) throws IOException {
 
         // check magic number
-        byte[] check = new byte[4];
-        raf.read(check);
-        String checkSum = new String(check, "ASCII");
+        String checkSum = in.readASCII(4);
         if (!checkSum.equals("VOX ")) {
 
             // voxlap engine (slab6)
-            raf.seek(0);
-            int sx = Integer.reverseBytes(raf.readInt());
-            int sy = Integer.reverseBytes(raf.readInt());
-            int sz = Integer.reverseBytes(raf.readInt());
-
-            // read over integer values
-            fileIn.skipBytes(12);
+            in.seek(0);
+            int sx = in.readInt();
+            int sy = in.readInt();
+            int sz = in.readInt();
+            int dataStart = in.position();
 
             // =====================
             // VOXLAP ENGINE *.vox FORMAT
             // =====================
 
             // Read the color palette (always at the end of the file)
-            raf.seek(raf.length() - 768);
+            in.seek(in.length() - 768);
             int[] colPalette = new int[256];
             for (int i = 0; i < 256; i++) {
-                int r = Math.min(255,Math.max(0,Math.round((raf.read() * 255)/63f)));
-                int g = Math.min(255,Math.max(0,Math.round((raf.read() * 255)/63f)));
-                int b = Math.min(255,Math.max(0,Math.round((raf.read() * 255)/63f)));
+                int r = Math.min(255,Math.max(0,Math.round((in.readByteUnsigned() * 255)/63f)));
+                int g = Math.min(255,Math.max(0,Math.round((in.readByteUnsigned() * 255)/63f)));
+                int b = Math.min(255,Math.max(0,Math.round((in.readByteUnsigned() * 255)/63f)));
                 colPalette[i] = new Color(r, g, b).getRGB();
             }
+            in.seek(dataStart);
 
-            // read the voxel
+            // read the voxel (one column at a time)
+            byte[] column = new byte[Math.max(0, sz)];
             for (int x = 0; x < sx; x++) {
                 for (int y = 0; y < sy; y++) {
+                    in.get(column);
                     for (int z = 0; z < sz; z++) {
-                        int paletteEntry = fileIn.readByteUnsigned();
+                        int paletteEntry = column[z] & 0xFF;
                         if (paletteEntry != 255) {
                             //noinspection SuspiciousNameCombination
                             addVoxel(x, z, -y, colPalette[paletteEntry]);
@@ -88,9 +90,6 @@ public class VoxImporter extends AbstractImporter {
             }
 
             return true;
-        } else {
-            // skip over chechsum
-            fileIn.skipBytes(4);
         }
 
         // =====================
@@ -98,80 +97,78 @@ public class VoxImporter extends AbstractImporter {
         // =====================
 
         // check version number
-        int version = fileIn.readIntRev();
+        int version = in.readInt();
         if (version < 150) {
             return false;
         }
 
         // check main chunk identifier
-        if (!fileIn.readASCIIString(4).equals("MAIN")) {
+        if (!in.readASCII(4).equals("MAIN")) {
             return false;
         }
 
-        int mainContentSize = fileIn.readIntRev();
-        int totalChildrenSize = fileIn.readIntRev();
+        int mainContentSize = in.readInt();
+        int totalChildrenSize = in.readInt();
 
         // skip over the main content
-        if (!fileIn.skipBytes(mainContentSize)) {
+        if (!in.skip(mainContentSize)) {
             return false;
         }
 
-        ArrayList<Integer> voxels = new ArrayList<>();
+        // the voxels (x, y, z, color index) of all models
+        ArrayList<byte[]> voxels = new ArrayList<>();
         int[] palette = voxColors;
 
         int[] offset = new int[3];
 
         for (int i = 0; i < totalChildrenSize;) {
             // each chunk has an ID, size and child chunks
-            String chunkName = fileIn.readASCIIString(4);
+            String chunkName = in.readASCII(4);
 
-            int chunkSize = fileIn.readIntRev();
-            fileIn.readIntRev();//int childChunks = fileIn.readIntRev();
+            int chunkSize = in.readInt();
+            in.readInt();//int childChunks = in.readInt();
+            MappedFileIn chunk = in.slice(chunkSize);
 
             switch (chunkName) {
                 case "SIZE":
                     // read x,y,z offsets
-                    offset[0] = (fileIn.readIntRev() - 1) / 2;
-                    offset[1] = fileIn.readIntRev() / 2;
-                    offset[2] = fileIn.readIntRev() / 2;
+                    offset[0] = (chunk.readInt() - 1) / 2;
+                    offset[1] = chunk.readInt() / 2;
+                    offset[2] = chunk.readInt() / 2;
                     break;
                 case "XYZI":
-                    int numVoxels = fileIn.readIntRev();
+                    int numVoxels = chunk.readInt();
                     if (numVoxels < 0) { // sanity check
                         return false;
                     }
-                    for (int j = 0; j < numVoxels; j += 1) {
-                        voxels.add(fileIn.readInt());
-                    }
-
+                    byte[] model = new byte[numVoxels * 4];
+                    chunk.get(model);
+                    voxels.add(model);
                     break;
                 case "RGBA":
                     // use custom color palette
                     palette = new int[256];
                     for (int j = 0; j < 256; j++) {
-                        int r = fileIn.readByteUnsigned();
-                        int g = fileIn.readByteUnsigned();
-                        int b = fileIn.readByteUnsigned();
-                        fileIn.readByteUnsigned();//int a = fileIn.readByteUnsigned();
+                        int r = chunk.readByteUnsigned();
+                        int g = chunk.readByteUnsigned();
+                        int b = chunk.readByteUnsigned();
+                        chunk.readByteUnsigned();//int a = chunk.readByteUnsigned();
                         palette[j] = new Color(r, g, b).getRGB();
                     }
-
                     break;
                 default:
-                    fileIn.skipBytes(chunkSize);
                     break;
             }
 
             i += 12 + chunkSize;
         }
 
-        ByteBuffer buf = ByteBuffer.allocate(4);
-        for (Integer voxel : voxels) {
-            buf.position(0);
-            buf.putInt(voxel);
-            addVoxel(-offset[0] + (buf.get(0) & 0xFF) - 1, -(buf.get(2) & 0xFF),-offset[1] + (buf.get(1) & 0xFF), palette[(buf.get(3) & 0xFF) - 1]);
+        for (byte[] model : voxels) {
+            for (int j = 0; j < model.length; j += 4) {
+                addVoxel(-offset[0] + (model[j] & 0xFF) - 1, -(model[j + 2] & 0xFF), -offset[1] + (model[j + 1] & 0xFF), palette[(model[j + 3] & 0xFF) - 1]);
+            }
         }
 
         return true;
     }
-}
\ No newline at end of file
+}
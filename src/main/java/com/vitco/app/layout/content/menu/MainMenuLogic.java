@@ -7,7 +7,7 @@ import com.vitco.app.export.collada.ColladaExportWrapper;
 import com.vitco.app.export.generic.ExportDataManager;
 import com.vitco.app.importer.*;
 import com.vitco.app.layout.content.mainview.MainView;
-import com.vitco.app.low.CubeIndexer;
+import com.vitco.app.low.LongCubeIndexer;
 import com.vitco.app.low.hull.HullManagerExt;
 import com.vitco.app.manager.action.types.StateActionPrototype;
 import com.vitco.app.settings.VitcoSettings;
@@ -131,12 +131,28 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
         return result;
     }
 
+    // helper - tell the user that not all voxels were imported
+    private void printVoxelLimitReached() {
+        console.addLine(
+                langSelector.getString("import_voxel_limit_reached_pre") + " " +
+                        VitcoSettings.MAX_VOXEL_COUNT +
+                        " " + langSelector.getString("import_voxel_limit_reached_post"));
+    }
+
+    // helper - stream a file into the data
+    private void runImport(ImportPipeline pipeline) throws IOException {
+        pipeline.run();
+        if (pipeline.isTruncated()) {
+            printVoxelLimitReached();
+        }
+    }
+
     // import an image file
     private void importImage(BufferedImage img) {
         int width = img.getWidth();
         int height = img.getHeight();
         boolean stop = false;
-        int voxelCount = 1;
+        int voxelCount = data.getVoxelCount() + 1;
         for (int y=height-1; y >= 0 && !stop; y--) {
             for (int x = 0; x < width && !stop; x++) {
                 int rgb = img.getRGB(x,y);
@@ -150,12 +166,9 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
                             y + Math.round(VitcoSettings.VOXEL_GROUND_DISTANCE / VitcoSettings.VOXEL_SIZE) - img.getHeight(),
                             0
                     });
-                    if (voxelCount >= VitcoSettings.MAX_VOXEL_COUNT_PER_LAYER) {
+                    if (voxelCount >= VitcoSettings.MAX_VOXEL_COUNT) {
                         stop = true;
-                        console.addLine(
-                                langSelector.getString("import_voxel_limit_reached_pre") + " " +
-                                        VitcoSettings.MAX_VOXEL_COUNT_PER_LAYER +
-                                        " " + langSelector.getString("import_voxel_limit_reached_post"));
+                        printVoxelLimitReached();
                     }
                     voxelCount++;
                 }
@@ -166,13 +179,17 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
     // ======================================
 
     public final void openFile(File file) {
-        if (!data.loadFromFile(file)) {
+        // the voxels are loaded in the background
+        if (!data.loadFromFileInBackground(file)) {
             console.addLine(langSelector.getString("error_on_file_load"));
         }
         setSaveLocation(file.getPath()); // remember load location
     }
 
     public final void registerLogic(final Frame frame) {
+        // protect the changes against crashes
+        data.setJournalEnabled(true);
+
         // initialize the filter
         fc_vsd.addFileType("vsd", "PS4k File");
 
@@ -259,9 +276,13 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
                                 dialog.start(new ProgressWorker() {
                                     @Override
                                     protected Object doInBackground() throws Exception {
-                                        dialog.setActivity("Importing File...", true);
-                                        AbstractImporter importer = new BinVoxImporter(toOpen, FileTools.extractNameWithoutExtension(toOpen));
-                                        importer.loadInto(data, true);
+                                        dialog.setActivity("Importing File...", false);
+                                        runImport(new ImportPipeline(data, true, dialog, console) {
+                                            @Override
+                                            protected AbstractImporter decode(ImportPipeline pipeline) throws IOException {
+                                                return new BinVoxImporter(toOpen, FileTools.extractNameWithoutExtension(toOpen), pipeline);
+                                            }
+                                        });
                                         return null;
                                     }
                                 });
@@ -272,9 +293,13 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
                                 dialog.start(new ProgressWorker() {
                                     @Override
                                     protected Object doInBackground() throws Exception {
-                                        dialog.setActivity("Importing File...", true);
-                                        AbstractImporter importer = new Kv6Importer(toOpen, FileTools.extractNameWithoutExtension(toOpen));
-                                        importer.loadInto(data, false);
+                                        dialog.setActivity("Importing File...", false);
+                                        runImport(new ImportPipeline(data, false, dialog, console) {
+                                            @Override
+                                            protected AbstractImporter decode(ImportPipeline pipeline) throws IOException {
+                                                return new Kv6Importer(toOpen, FileTools.extractNameWithoutExtension(toOpen), pipeline);
+                                            }
+                                        });
                                         return null;
                                     }
                                 });
@@ -284,9 +309,13 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
                                 dialog.start(new ProgressWorker() {
                                     @Override
                                     protected Object doInBackground() throws Exception {
-                                        dialog.setActivity("Importing File...", true);
-                                        AbstractImporter importer = new PnxImporter(toOpen, FileTools.extractNameWithoutExtension(toOpen));
-                                        importer.loadInto(data, false);
+                                        dialog.setActivity("Importing File...", false);
+                                        runImport(new ImportPipeline(data, false, dialog, console) {
+                                            @Override
+                                            protected AbstractImporter decode(ImportPipeline pipeline) throws IOException {
+                                                return new PnxImporter(toOpen, FileTools.extractNameWithoutExtension(toOpen), pipeline);
+                                            }
+                                        });
                                         return null;
                                     }
                                 });
@@ -296,9 +325,13 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
                                 dialog.start(new ProgressWorker() {
                                     @Override
                                     protected Object doInBackground() throws Exception {
-                                        dialog.setActivity("Importing File...", true);
-                                        AbstractImporter importer = new KvxImporter(toOpen, FileTools.extractNameWithoutExtension(toOpen));
-                                        importer.loadInto(data, false);
+                                        dialog.setActivity("Importing File...", false);
+                                        runImport(new ImportPipeline(data, false, dialog, console) {
+                                            @Override
+                                            protected AbstractImporter decode(ImportPipeline pipeline) throws IOException {
+                                                return new KvxImporter(toOpen, FileTools.extractNameWithoutExtension(toOpen), pipeline);
+                                            }
+                                        });
                                         return null;
                                     }
                                 });
@@ -308,9 +341,13 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
                                 dialog.start(new ProgressWorker() {
                                     @Override
                                     protected Object doInBackground() throws Exception {
-                                        dialog.setActivity("Importing File...", true);
-                                        AbstractImporter importer = new QbImporter(toOpen, FileTools.extractNameWithoutExtension(toOpen));
-                                        importer.loadInto(data, false);
+                                        dialog.setActivity("Importing File...", false);
+                                        runImport(new ImportPipeline(data, false, dialog, console) {
+                                            @Override
+                                            protected AbstractImporter decode(ImportPipeline pipeline) throws IOException {
+                                                return new QbImporter(toOpen, FileTools.extractNameWithoutExtension(toOpen), pipeline);
+                                            }
+                                        });
                                         return null;
                                     }
                                 });
@@ -320,9 +357,13 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
                                 dialog.start(new ProgressWorker() {
                                     @Override
                                     protected Object doInBackground() throws Exception {
-                                        dialog.setActivity("Importing File...", true);
-                                        AbstractImporter importer = new VoxImporter(toOpen, FileTools.extractNameWithoutExtension(toOpen));
-                                        importer.loadInto(data, false);
+                                        dialog.setActivity("Importing File...", false);
+                                        runImport(new ImportPipeline(data, false, dialog, console) {
+                                            @Override
+                                            protected AbstractImporter decode(ImportPipeline pipeline) throws IOException {
+                                                return new VoxImporter(toOpen, FileTools.extractNameWithoutExtension(toOpen), pipeline);
+                                            }
+                                        });
                                         return null;
                                     }
                                 });
@@ -332,9 +373,13 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
                                 dialog.start(new ProgressWorker() {
                                     @Override
                                     protected Object doInBackground() throws Exception {
-                                        dialog.setActivity("Importing File...", true);
-                                        AbstractImporter importer = new RawVoxImporter(toOpen, FileTools.extractNameWithoutExtension(toOpen));
-                                        importer.loadInto(data, false);
+                                        dialog.setActivity("Importing File...", false);
+                                        runImport(new ImportPipeline(data, false, dialog, console) {
+                                            @Override
+                                            protected AbstractImporter decode(ImportPipeline pipeline) throws IOException {
+                                                return new RawVoxImporter(toOpen, FileTools.extractNameWithoutExtension(toOpen), pipeline);
+                                            }
+                                        });
                                         return null;
                                     }
                                 });
@@ -344,9 +389,13 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
                                 dialog.start(new ProgressWorker() {
                                     @Override
                                     protected Object doInBackground() throws Exception {
-                                        dialog.setActivity("Importing File...", true);
-                                        AbstractImporter importer = new CCVxlImporter(toOpen, FileTools.extractNameWithoutExtension(toOpen));
-                                        importer.loadInto(data, false);
+                                        dialog.setActivity("Importing File...", false);
+                                        runImport(new ImportPipeline(data, false, dialog, console) {
+                                            @Override
+                                            protected AbstractImporter decode(ImportPipeline pipeline) throws IOException {
+                                                return new CCVxlImporter(toOpen, FileTools.extractNameWithoutExtension(toOpen), pipeline);
+                                            }
+                                        });
                                         return null;
                                     }
                                 });
@@ -1303,13 +1352,13 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
                     }
                     hullManager.computeExterior();
                     // fetch the empty interior
-                    int[] emptyInterior = hullManager.getEmptyInterior();
+                    long[] emptyInterior = hullManager.getEmptyInterior();
                     // create and add the missing voxels
                     Voxel[] voxels = new Voxel[emptyInterior.length];
                     Color color = ColorTools.hsbToColor((float[]) preferences.loadObject("currently_used_color"));
                     for (int i = 0; i < emptyInterior.length; i++) {
-                        short[] pos = CubeIndexer.getPos(emptyInterior[i]);
-                        voxels[i] = new Voxel(-1, new int[]{pos[0], pos[1], pos[2]}, color, false, null, data.getSelectedLayer());
+                        int[] pos = LongCubeIndexer.getPos(emptyInterior[i]);
+                        voxels[i] = new Voxel(-1, pos, color, false, null, data.getSelectedLayer());
                     }
                     data.massAddVoxel(voxels);
                 }
@@ -1332,13 +1381,12 @@ public class MainMenuLogic extends MenuLogicPrototype implements MenuLogicInterf
                     }
                     hullManager.computeExterior();
                     // fetch the filled interior
-                    int[] filledInterior = hullManager.getFilledInterior();
+                    long[] filledInterior = hullManager.getFilledInterior();
                     // search for the interior voxels and remove
                     Integer[] voxelIds = new Integer[filledInterior.length];
                     // todo: This will only remove the top voxel, change it so that it removes all voxels in all layers at this position
                     for (int i = 0; i < filledInterior.length; i++) {
-                        short[] pos = CubeIndexer.getPos(filledInterior[i]);
-                        Voxel voxel = data.searchVoxel(new int[]{pos[0], pos[1], pos[2]}, false);
+                        Voxel voxel = data.searchVoxel(LongCubeIndexer.getPos(filledInterior[i]), false);
                         assert voxel != null;
                         voxelIds[i] = voxel.id;
                     }
@@ -16,9 +16,7 @@ import javax.annotation.PostConstruct;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 
 public class SelectBarLogic extends MenuLogicPrototype implements MenuLogicInterface {
 
@@ -175,31 +173,9 @@ public class SelectBarLogic extends MenuLogicPrototype implements MenuLogicInter
 
             @Override
             public void action(ActionEvent actionEvent) {
-                // todo make this an intent (select layer) -> to prevent two history entries
-                // deselect voxels (this is necessary if there are voxel selected that are not in the current layer)
-                Integer[] selected = Voxel.convertVoxelsToIdArray(data.getSelectedVoxels());
-                Integer[] toSelect = getVoxelsToSelect();
-
-                if (selected.length > 0) {
-                    HashSet<Integer> toDeselectList = new HashSet<Integer>(Arrays.asList(selected));
-                    HashSet<Integer> toSelectList = new HashSet<Integer>(Arrays.asList(toSelect));
-                    toSelectList.removeAll(toDeselectList);
-                    toDeselectList.removeAll(Arrays.asList(toSelect));
-
-                    if (!toDeselectList.isEmpty()) {
-                        Integer[] toDeselectArray = new Integer[toDeselectList.size()];
-                        toDeselectList.toArray(toDeselectArray);
-                        data.massSetVoxelSelected(toDeselectArray, false);
-                    }
-
-                    toSelect = new Integer[toSelectList.size()];
-                    toSelectList.toArray(toSelect);
-                }
-
-                // select voxels
-                if (toSelect.length != 0) {
-                    data.massSetVoxelSelected(toSelect, true);
-                }
+                // select exactly these voxels (one history entry, voxels that are
+                // selected in other layers are deselected)
+                data.replaceVoxelSelection(getVoxelsToSelect());
             }
         };
 
@@ -245,8 +221,8 @@ public class SelectBarLogic extends MenuLogicPrototype implements MenuLogicInter
                     }
                     // identify which voxels to select
                     ArrayList<Integer> toSelect = new ArrayList<Integer>();
-                    for (Voxel voxel : data.getVisibleLayerVoxel()) {
-                        if (colors.contains(voxel.getColor())) {
+                    for (Color color : colors) {
+                        for (Voxel voxel : data.getVoxelsByColor(color, null)) {
                             toSelect.add(voxel.id);
                         }
                     }
@@ -319,7 +295,7 @@ public class SelectBarLogic extends MenuLogicPrototype implements MenuLogicInter
                     Voxel[] selectedVoxels = data.getSelectedVoxels();
                     int[] shift = data.getVoxelSelectionShift();
                     if (selectedVoxels.length > 0 && (shift[0] != 0 || shift[1] != 0 || shift[2] != 0)) {
-                        data.massMoveVoxel(data.getSelectedVoxels(), shift);
+                        data.massMoveVoxel(selectedVoxels, shift);
                     }
                 }
             }
@@ -579,8 +555,7 @@ public class SelectBarLogic extends MenuLogicPrototype implements MenuLogicInter
 
             @Override
             public void onVoxelDataChanged() {
-                // todo: rewrite voxel data to make fetching of these feasible (!)
-                boolean voxelsAreSelectedTemp = true;
+                boolean voxelsAreSelectedTemp = data.anyVoxelSelected();
                 boolean voxelsAreInLayerTemp = true;
                 if (voxelsAreSelected != voxelsAreSelectedTemp || voxelsAreInLayer != voxelsAreInLayerTemp) {
                     voxelsAreSelected = voxelsAreSelectedTemp;
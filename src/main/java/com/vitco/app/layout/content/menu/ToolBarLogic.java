@@ -1,5 +1,6 @@
 package com.vitco.app.layout.content.menu;
 
+import com.jidesoft.swing.JideButton;
 import com.jidesoft.swing.JideSplitButton;
 import com.vitco.app.core.data.container.VOXELMODE;
 import com.vitco.app.core.data.notification.DataChangeAdapter;
@@ -36,6 +37,26 @@ public class ToolBarLogic extends MenuLogicPrototype implements MenuLogicInterfa
     // status of voxel snap
     private boolean voxelSnap = true;
 
+    // true once the user was told that the history was trimmed
+    private boolean historyTrimmedShown = false;
+    // the history memory (MB) that is shown next to the clear history button
+    private long shownHistoryMemory = -1;
+
+    // helper - show the memory that is used by the voxel history
+    private void refreshHistoryMemory() {
+        final long memory = (data.getHistoryMemoryV() + 1048575) / 1048576;
+        if (memory != shownHistoryMemory) {
+            shownHistoryMemory = memory;
+            complexActionManager.performWhenActionIsReady("clear_history_button", new Runnable() {
+                @Override
+                public void run() {
+                    ((JideButton) complexActionManager.getAction("clear_history_button")).setText(
+                            String.format(langSelector.getString("history_memory_caption"), memory));
+                }
+            });
+        }
+    }
+
     // basic tool action to be reused
     private class ToolAction extends StateActionPrototype {
         private final VOXELMODE tool;
@@ -187,6 +208,9 @@ public class ToolBarLogic extends MenuLogicPrototype implements MenuLogicInterfa
             }
         });
         actionGroupManager.registerGroup("history_actions");
+        // to perform validity check we need to register this name
+        complexActionManager.registerActionIsUsed("clear_history_button");
+        refreshHistoryMemory();
         // =====================================
 
         // set initial preferences
@@ -239,6 +263,18 @@ public class ToolBarLogic extends MenuLogicPrototype implements MenuLogicInterfa
             @Override
             public void onVoxelDataChanged() {
                 actionGroupManager.refreshGroup("history_actions");
+                refreshHistoryMemory();
+            }
+
+            @Override
+            public void onHistoryTrimmed() {
+                refreshHistoryMemory();
+                // let the user know why old steps can no longer be undone (once)
+                if (!historyTrimmedShown) {
+                    historyTrimmedShown = true;
+                    console.addLine(String.format(langSelector.getString("history_memory_limit_reached"),
+                            VitcoSettings.HISTORY_MEMORY_BUDGET / 1048576));
+                }
             }
         });
     }
@@ -6,10 +6,14 @@ import com.threed.jpct.Config;
 import com.threed.jpct.SimpleVector;
 import com.vitco.app.core.EngineInteractionPrototype;
 import com.vitco.app.core.data.container.Voxel;
+import com.vitco.app.low.LongCubeIndexer;
 import com.vitco.app.low.hull.HullManager;
 import com.vitco.app.manager.async.AsyncAction;
 import com.vitco.app.manager.pref.PrefChangeListener;
 import com.vitco.app.settings.VitcoSettings;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
 
 import javax.swing.*;
 import java.awt.*;
@@ -19,8 +23,6 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 
 /**
  * Creates one side view instance (one perspective) and the specific user interaction.
@@ -137,12 +139,13 @@ public class SideView extends EngineInteractionPrototype implements SideViewInte
     }
 
     // index to keep it to "one voxel per position"
-    private final HashMap<String, Voxel> selectedAtPos = new HashMap<String, Voxel>();
-    private final HashMap<String, Integer> selectedCountAtPos = new HashMap<String, Integer>();
-    // list of known voxel
+    // (keyed by the position id of the projected position)
+    private final TLongObjectHashMap<Voxel> selectedAtPos = new TLongObjectHashMap<Voxel>();
+    private final TLongIntHashMap selectedCountAtPos = new TLongIntHashMap();
+    // list of known voxel (position ids)
     // Note: Not really necessary, but might save some trouble in the future
     // when selection and deselection of a voxel occurs withing the same frame
-    private final HashSet<String> liveVoxel = new HashSet<String>();
+    private final TLongHashSet liveVoxel = new TLongHashSet();
 
     @Override
     protected Voxel[][] getChangedSelectedVoxels() {
@@ -159,63 +162,58 @@ public class SideView extends EngineInteractionPrototype implements SideViewInte
         } else {
             // remove individual voxel
             for (Voxel remove : changed[0]) {
-                String strId = null;
+                long posId = 0;
                 switch (side) {
                     case 0:
-                        strId = remove.x + "_" + remove.y;
+                        posId = LongCubeIndexer.getId(remove.x, remove.y, 0);
                         break;
                     case 1:
-                        strId = remove.x + "_" + remove.z;
+                        posId = LongCubeIndexer.getId(remove.x, 0, remove.z);
                         break;
                     case 2:
-                        strId = remove.y + "_" + remove.z;
+                        posId = LongCubeIndexer.getId(0, remove.y, remove.z);
                         break;
                     default: break;
                 }
-                Integer count = selectedCountAtPos.get(strId);
-                if (count != null) {
-                    count -= 1;
-                    if (liveVoxel.remove(remove.getPosAsString())) {
+                if (selectedCountAtPos.containsKey(posId)) {
+                    int count = selectedCountAtPos.get(posId) - 1;
+                    if (liveVoxel.remove(remove.posId)) {
                         if (count == 0) {
-                            selectedCountAtPos.remove(strId);
-                            toRemove.add(selectedAtPos.remove(strId));
+                            selectedCountAtPos.remove(posId);
+                            toRemove.add(selectedAtPos.remove(posId));
                         } else {
-                            selectedCountAtPos.put(strId, count);
+                            selectedCountAtPos.put(posId, count);
                         }
                     }
                 }
             }
         }
         for (Voxel added : changed[1]) {
-            String strId = null;
             int[] pos = new int[3];
             switch (side) {
                 case 0:
-                    strId = added.x + "_" + added.y;
                     pos[0] = added.x;
                     pos[1] = added.y;
                     break;
                 case 1:
-                    strId = added.x + "_" + added.z;
                     pos[0] = added.x;
                     pos[2] = added.z;
                     break;
                 case 2:
-                    strId = added.y + "_" + added.z;
                     pos[1] = added.y;
                     pos[2] = added.z;
                     break;
                 default: break;
             }
-            Integer count = selectedCountAtPos.get(strId);
-            if (liveVoxel.add(added.getPosAsString())) {
-                if (count == null) {
-                    selectedCountAtPos.put(strId, 1);
+            long posId = LongCubeIndexer.getId(pos[0], pos[1], pos[2]);
+            if (liveVoxel.add(added.posId)) {
+                if (!selectedCountAtPos.containsKey(posId)) {
+                    selectedCountAtPos.put(posId, 1);
                     Voxel voxel = new Voxel(-1, pos, added.getColor(), false, null, 0);
-                    selectedAtPos.put(strId, voxel);
+                    selectedAtPos.put(posId, voxel);
                     toAdd.add(voxel);
                 } else {
-                    selectedCountAtPos.put(strId, count+1);
+                    selectedCountAtPos.adjustValue(posId, 1);
                 }
             }
         }
@@ -11,6 +11,7 @@ import com.vitco.app.manager.async.AsyncAction;
 import com.vitco.app.manager.async.AsyncActionManager;
 import com.vitco.app.manager.pref.PrefChangeListener;
 import com.vitco.app.settings.VitcoSettings;
+import com.vitco.app.util.graphic.GraphicTools;
 import com.vitco.app.util.misc.CFileDialog;
 import com.vitco.app.util.misc.SwingAsyncHelper;
 import com.vitco.app.util.misc.ThumbnailFileChooser;
@@ -197,10 +198,10 @@ public class TextureManager extends ViewPrototype implements TextureManagerInter
                     if (toOpen != null) {
                         try {
                             ImageIcon texture = new ImageIcon(ImageIO.read(toOpen));
-                            // make sure we can identify the texture
-                            ImageIcon textureDrawnOnTop = data.getTexture(selectedTexture);
-                            textureDrawnOnTop.getImage().getGraphics().drawImage(texture.getImage(), 0, 0, null);
-                            data.replaceTexture(selectedTexture, textureDrawnOnTop);
+                            // make sure we can identify the texture (the image of the data is shared)
+                            BufferedImage textureDrawnOnTop = GraphicTools.deepCopy(data.getTextureImage(selectedTexture));
+                            textureDrawnOnTop.getGraphics().drawImage(texture.getImage(), 0, 0, null);
+                            data.replaceTexture(selectedTexture, new ImageIcon(textureDrawnOnTop));
                         } catch (IOException error) {
                             console.addLine(langSelector.getString("texturemg_general_file_error"));
                         }
@@ -228,10 +229,7 @@ public class TextureManager extends ViewPrototype implements TextureManagerInter
                                         langSelector.getString("replace_file_query_title"),
                                         JOptionPane.OK_CANCEL_OPTION) == JOptionPane.OK_OPTION) {
 
-                            ImageIcon texture = data.getTexture(selectedTexture);
-                            BufferedImage img = new BufferedImage(texture.getIconWidth(),
-                                    texture.getIconHeight(), BufferedImage.TYPE_INT_ARGB);
-                            img.getGraphics().drawImage(texture.getImage(), 0, 0, null);
+                            BufferedImage img = data.getTextureImage(selectedTexture);
                             try {
                                 ImageIO.write(img, "png", exportTo);
                                 console.addLine(langSelector.getString("texturemg_export_success"));
@@ -44,6 +44,17 @@ public class CubeIndexer {
         return new short[]{x,y,z};
     }
 
+    // get a single coordinate of a position id (does not allocate)
+    public static int getX(int id) {
+        return IntegerTools.ifloormod2(id, width) - radius;
+    }
+    public static int getY(int id) {
+        return IntegerTools.ifloordiv2(id, widthwidth) - minOffset;
+    }
+    public static int getZ(int id) {
+        return IntegerTools.ifloordiv2(IntegerTools.ifloormod2(id, widthwidth), width) - radius;
+    }
+
     // change position depending on orientation (move into direction)
     public static int change(int pos, int orientation) {
         switch (orientation) {
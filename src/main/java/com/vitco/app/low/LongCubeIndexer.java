@@ -0,0 +1,97 @@
+package com.vitco.app.low;
+
+/**
+ * Indexes a 2097152 ^ 3 cube with 64 bit ids.
+ *
+ * Defines mappings X x Y x Z -> Long and reverse. Every axis uses 21 bits (y, z, x from
+ * high to low), so neighbours are reached by adding a constant (as for the CubeIndexer).
+ * The lower bits of the axis form the position inside a chunk, i.e. the chunk and the
+ * chunk relative (local) id are obtained by masking the id.
+ */
+public final class LongCubeIndexer {
+
+    // bits per axis
+    public static final int bits = 21;
+    // dimension/radius
+    public static final long width = 1L << bits;
+    public static final long radius = width >> 1;
+    public static final long widthwidth = width * width;
+
+    // mask for one axis
+    private static final long mask = width - 1;
+
+    // compute the 1d representation for the position (x right, y up, z into background)
+    public static long getId(int x, int y, int z) {
+        if (x < -radius || x >= radius || y < -radius || y >= radius || z < -radius || z >= radius) {
+            throw new IllegalArgumentException("Position " + x + "," + y + "," + z + " is out of range.");
+        }
+        return (x + radius) | ((z + radius) << bits) | ((y + radius) << (bits * 2));
+    }
+
+    // compute the 1d representation for the position (x right, y up, z into background)
+    public static long getId(int[] pos) {
+        return getId(pos[0], pos[1], pos[2]);
+    }
+
+    // get a single coordinate of a position id (does not allocate)
+    public static int getX(long id) {
+        return (int) ((id & mask) - radius);
+    }
+    public static int getY(long id) {
+        return (int) (((id >>> (bits * 2)) & mask) - radius);
+    }
+    public static int getZ(long id) {
+        return (int) (((id >>> bits) & mask) - radius);
+    }
+
+    // compute the operand that moves an id by the given offset
+    public static long getShiftOperand(int shiftX, int shiftY, int shiftZ) {
+        return shiftX + shiftZ * width + shiftY * widthwidth;
+    }
+
+    // compute the position for an id
+    public static int[] getPos(long id) {
+        return new int[] {getX(id), getY(id), getZ(id)};
+    }
+
+    // ---------------------
+    // chunks (the lower chunkBits of every axis are the chunk relative position)
+
+    // get the id of the chunk that contains the position (same for all positions in the chunk)
+    public static long getChunkId(long id, int chunkBits) {
+        long chunkMask = (1L << chunkBits) - 1;
+        return id & ~(chunkMask | (chunkMask << bits) | (chunkMask << (bits * 2)));
+    }
+
+    // get the position inside the chunk (x right, z into background, y up)
+    public static int getLocalId(long id, int chunkBits) {
+        long chunkMask = (1L << chunkBits) - 1;
+        return (int) ((id & chunkMask)
+                | (((id >>> bits) & chunkMask) << chunkBits)
+                | (((id >>> (bits * 2)) & chunkMask) << (chunkBits * 2)));
+    }
+
+    // ---------------------
+
+    // change position depending on orientation (move into direction)
+    public static long change(long pos, int orientation) {
+        switch (orientation) {
+            case 0: return changeX(pos, true);
+            case 1: return changeX(pos, false);
+            case 2: return changeY(pos, true);
+            case 3: return changeY(pos, false);
+            case 4: return changeZ(pos, true);
+            default: return changeZ(pos, false);
+        }
+    }
+
+    public static long changeX(long pos, boolean add) {
+        return pos + (add ? 1 : -1);
+    }
+    public static long changeY(long pos, boolean add) {
+        return pos + (add ? widthwidth : -widthwidth);
+    }
+    public static long changeZ(long pos, boolean add) {
+        return pos + (add ? width : -width);
+    }
+}
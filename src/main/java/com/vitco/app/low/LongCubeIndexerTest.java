@@ -0,0 +1,83 @@
+package com.vitco.app.low;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Test the 64 bit mapping (conversion, neighbours and chunks).
+ */
+public class LongCubeIndexerTest {
+
+    private static boolean testConversion(int x, int y, int z) {
+        long id = LongCubeIndexer.getId(x, y, z);
+        return LongCubeIndexer.getX(id) == x && LongCubeIndexer.getY(id) == y && LongCubeIndexer.getZ(id) == z;
+    }
+
+    @Test
+    public void testMapping() throws Exception {
+        int max = (int) LongCubeIndexer.radius - 1;
+        int min = (int) -LongCubeIndexer.radius;
+        assert testConversion(0, 0, 0);
+        assert testConversion(max, max, max);
+        assert testConversion(min, min, min);
+        assert testConversion(min, max, -1);
+        // far outside the old (int) cube
+        assert testConversion(100000, -200000, 300000);
+
+        Random rand = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            int x = rand.nextInt(max - min) + min;
+            int y = rand.nextInt(max - min) + min;
+            int z = rand.nextInt(max - min) + min;
+            assert testConversion(x, y, z);
+            long id = LongCubeIndexer.getId(x, y, z);
+            // neighbours
+            if (x < max) {
+                assert LongCubeIndexer.changeX(id, true) == LongCubeIndexer.getId(x + 1, y, z);
+            }
+            if (y > min) {
+                assert LongCubeIndexer.changeY(id, false) == LongCubeIndexer.getId(x, y - 1, z);
+            }
+            if (z < max) {
+                assert LongCubeIndexer.changeZ(id, true) == LongCubeIndexer.getId(x, y, z + 1);
+            }
+            assert id + LongCubeIndexer.getShiftOperand(-1, 0, 1) == LongCubeIndexer.getId(x - 1, y, z + 1)
+                    || x == min || z == max;
+        }
+    }
+
+    @Test
+    public void testChunks() throws Exception {
+        int chunkBits = 3;
+        Random rand = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            int x = rand.nextInt(2000) - 1000;
+            int y = rand.nextInt(2000) - 1000;
+            int z = rand.nextInt(2000) - 1000;
+            long id = LongCubeIndexer.getId(x, y, z);
+            // the chunk id is the id of the first position in the chunk
+            long chunkId = LongCubeIndexer.getChunkId(id, chunkBits);
+            assert chunkId == LongCubeIndexer.getId(x & ~7, y & ~7, z & ~7);
+            // the local id is the position inside the chunk
+            assert LongCubeIndexer.getLocalId(id, chunkBits) == ((x & 7) | ((z & 7) << 3) | ((y & 7) << 6));
+        }
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        // positions are not truncated
+        int[] pos = LongCubeIndexer.getPos(LongCubeIndexer.getId(40000, -40000, 1000000));
+        assert pos[0] == 40000 && pos[1] == -40000 && pos[2] == 1000000;
+        assert LongCubeIndexer.getId(pos) == LongCubeIndexer.getId(40000, -40000, 1000000);
+        // positions outside the cube are rejected (also when assertions are disabled)
+        boolean rejected = false;
+        try {
+            LongCubeIndexer.getId(0, (int) LongCubeIndexer.radius, 0);
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        assert rejected;
+    }
+
+}
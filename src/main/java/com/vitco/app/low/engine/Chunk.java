@@ -1,8 +1,180 @@
 package com.vitco.app.low.engine;
 
+import gnu.trove.procedure.TIntProcedure;
+
+import java.util.Arrays;
+
 /**
- * A chunk of voxel ( e.g. 32 ^ 3 )
+ * A chunk of voxel ( 8 ^ 3 )
+ *
+ * Stores one (non negative) int value per position in a dense array. The chunks
+ * are kept small, since layers are often sparse and spread out.
  */
 public class Chunk {
-    protected final static int CHUNK_SIZE = 32;
+    protected final static int CHUNK_SIZE = 8;
+    // bits needed to address one axis inside a chunk
+    protected final static int CHUNK_BITS = 3;
+    // mask to obtain the position inside a chunk
+    protected final static int CHUNK_MASK = CHUNK_SIZE - 1;
+    // amount of positions in a chunk
+    protected final static int CHUNK_VOLUME = CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE;
+
+    // value that marks a free position
+    public final static int EMPTY = -1;
+
+    // chunk position (in chunk coordinates)
+    protected final int cx;
+    protected final int cy;
+    protected final int cz;
+
+    // true if this chunk became empty and is only kept for reuse
+    protected boolean released = false;
+
+    // the values of this chunk (x right, z into background, y up)
+    private final int[] values = new int[CHUNK_VOLUME];
+    // the amount of used positions in this chunk
+    private int size = 0;
+    // amount of used positions per plane (allows to skip empty slices)
+    private final short[] countX = new short[CHUNK_SIZE];
+    private final short[] countY = new short[CHUNK_SIZE];
+    private final short[] countZ = new short[CHUNK_SIZE];
+
+    // constructor
+    protected Chunk(int cx, int cy, int cz) {
+        this.cx = cx;
+        this.cy = cy;
+        this.cz = cz;
+        Arrays.fill(values, EMPTY);
+    }
+
+    // get the value at a local id (see LongCubeIndexer.getLocalId)
+    protected final int get(int localId) {
+        return values[localId];
+    }
+
+    // set the value at a local id, returns the previous value
+    protected final int put(int localId, int value) {
+        int prev = values[localId];
+        values[localId] = value;
+        if (prev == EMPTY) {
+            size++;
+            countX[localId & CHUNK_MASK]++;
+            countZ[(localId >> CHUNK_BITS) & CHUNK_MASK]++;
+            countY[localId >> (CHUNK_BITS * 2)]++;
+        }
+        return prev;
+    }
+
+    // free the value at a local id, returns the previous value
+    protected final int remove(int localId) {
+        int prev = values[localId];
+        if (prev != EMPTY) {
+            values[localId] = EMPTY;
+            size--;
+            countX[localId & CHUNK_MASK]--;
+            countZ[(localId >> CHUNK_BITS) & CHUNK_MASK]--;
+            countY[localId >> (CHUNK_BITS * 2)]--;
+        }
+        return prev;
+    }
+
+    // the amount of used positions
+    protected final int size() {
+        return size;
+    }
+
+    // copy all values of this chunk into the result array, returns new offset
+    protected final int collect(int[] result, int offset) {
+        for (int value : values) {
+            if (value != EMPTY) {
+                result[offset++] = value;
+            }
+        }
+        return offset;
+    }
+
+    // count the values in a plane (local plane coordinate)
+    protected final int planeSize(int axis, int plane) {
+        switch (axis) {
+            case 0: return countX[plane];
+            case 1: return countY[plane];
+            default: return countZ[plane];
+        }
+    }
+
+    // the lowest used plane of an axis (local plane coordinate, CHUNK_SIZE if empty)
+    protected final int minPlane(int axis) {
+        short[] counts = axis == 0 ? countX : (axis == 1 ? countY : countZ);
+        int plane = 0;
+        while (plane < CHUNK_SIZE && counts[plane] == 0) {
+            plane++;
+        }
+        return plane;
+    }
+
+    // the highest used plane of an axis (local plane coordinate, -1 if empty)
+    protected final int maxPlane(int axis) {
+        short[] counts = axis == 0 ? countX : (axis == 1 ? countY : countZ);
+        int plane = CHUNK_MASK;
+        while (plane >= 0 && counts[plane] == 0) {
+            plane--;
+        }
+        return plane;
+    }
+
+    // visit the values in a box (local coordinates, inclusive), the box is clipped to the used
+    // planes first, returns false if the procedure stopped the visit
+    protected final boolean forEachInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+                                         TIntProcedure procedure) {
+        minX = Math.max(minX, minPlane(0));
+        minY = Math.max(minY, minPlane(1));
+        minZ = Math.max(minZ, minPlane(2));
+        maxX = Math.min(maxX, maxPlane(0));
+        maxY = Math.min(maxY, maxPlane(1));
+        maxZ = Math.min(maxZ, maxPlane(2));
+        for (int y = minY; y <= maxY; y++) {
+            if (countY[y] == 0) {
+                continue;
+            }
+            for (int z = minZ; z <= maxZ; z++) {
+                for (int i = minX | (z << CHUNK_BITS) | (y << (CHUNK_BITS * 2)),
+                             len = i + maxX - minX; i <= len; i++) {
+                    if (values[i] != EMPTY && !procedure.execute(values[i])) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    // copy the values of a plane into the result array, returns new offset
+    protected final int collectPlane(int axis, int plane, int[] result, int offset) {
+        switch (axis) {
+            case 0: // x plane (walk z and y)
+                for (int i = plane; i < CHUNK_VOLUME; i += CHUNK_SIZE) {
+                    if (values[i] != EMPTY) {
+                        result[offset++] = values[i];
+                    }
+                }
+                break;
+            case 1: // y plane (continuous block)
+                for (int i = plane << (CHUNK_BITS * 2), len = i + CHUNK_SIZE * CHUNK_SIZE; i < len; i++) {
+                    if (values[i] != EMPTY) {
+                        result[offset++] = values[i];
+                    }
+                }
+                break;
+            default: // z plane (walk x and y)
+                for (int y = 0; y < CHUNK_SIZE; y++) {
+                    for (int i = (plane << CHUNK_BITS) | (y << (CHUNK_BITS * 2)), len = i + CHUNK_SIZE; i < len; i++) {
+                        if (values[i] != EMPTY) {
+                            result[offset++] = values[i];
+                        }
+                    }
+                }
+                break;
+        }
+        return offset;
+    }
 }
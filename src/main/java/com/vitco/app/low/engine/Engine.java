@@ -1,13 +1,24 @@
 package com.vitco.app.low.engine;
 
-import com.vitco.app.low.CubeIndexer;
-import com.vitco.app.util.misc.IntegerTools;
+import com.vitco.app.low.LongCubeIndexer;
+import gnu.trove.iterator.TLongObjectIterator;
 import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.procedure.TIntProcedure;
 
 import java.util.HashMap;
 
 /**
  * Proves fast read/write access to voxel in the world.
+ *
+ * Positions are grouped into chunks (8 ^ 3) that store one int value per position
+ * in a dense array. Values need to be non negative, Chunk.EMPTY marks a free position.
+ *
+ * Positions can be addressed by coordinates or by their LongCubeIndexer id. Values in
+ * a box are found by visiting only the chunks (and the used planes of the chunks) that
+ * intersect the box. The bounds of all positions are cached.
+ *
+ * Reads do not change the engine and can run concurrently (as long as there are no changes).
  */
 public class Engine {
 
@@ -16,6 +27,8 @@ public class Engine {
 
     // holds the different known voxel types
     private static final HashMap<VoxelType, VoxelType> voxelTypes = new HashMap<VoxelType, VoxelType>();
+    // maps the unique ids to the voxel types
+    private static final TIntObjectHashMap<VoxelType> voxelTypeIds = new TIntObjectHashMap<VoxelType>();
 
     // generate unique ids for the voxel
     private static int uidCount = 1;
@@ -26,51 +39,380 @@ public class Engine {
     // -----------------------------
 
     // holds the different known chunks
-    private final TIntObjectHashMap<Chunk> chunks = new TIntObjectHashMap<Chunk>();
-
-    // obtain the appropriate chunk (create a new one if it doesn't exist)
-    private Chunk getChunk(int[] xyz) {
-        int chunkId = CubeIndexer.getId(
-                IntegerTools.ifloordiv2(xyz[0], Chunk.CHUNK_SIZE),
-                IntegerTools.ifloordiv2(xyz[1], Chunk.CHUNK_SIZE),
-                IntegerTools.ifloordiv2(xyz[2], Chunk.CHUNK_SIZE));
+    private final TLongObjectHashMap<Chunk> chunks = new TLongObjectHashMap<Chunk>();
+
+    // the amount of used positions (over all chunks)
+    private int size = 0;
+
+    // the amount of chunks that are allocated but hold no values (these
+    // are kept to avoid re-allocation when positions are freed and re-used)
+    private int emptyChunks = 0;
+    // the maximum amount of empty chunks that are kept
+    private static final int MAX_EMPTY_CHUNKS = 32;
+
+    // the last changed chunk (consecutive changes are usually local), this is
+    // only updated by changes, so reads can run concurrently
+    private Chunk lastChunk = null;
+    private long lastChunkId;
+
+    // the bounds of the used positions (min x, y, z and max x, y, z), null if unknown (only
+    // written with the computed bounds by reads, so concurrent reads are fine)
+    private volatile int[] bounds = null;
+
+    // obtain the appropriate chunk (create a new one if requested and it doesn't exist)
+    private Chunk getChunk(long posId, boolean create) {
+        long chunkId = LongCubeIndexer.getChunkId(posId, Chunk.CHUNK_BITS);
+        if (lastChunk != null && lastChunkId == chunkId) {
+            return lastChunk;
+        }
         Chunk result = chunks.get(chunkId);
+        if (create) {
+            if (result == null) {
+                result = new Chunk(
+                        LongCubeIndexer.getX(posId) >> Chunk.CHUNK_BITS,
+                        LongCubeIndexer.getY(posId) >> Chunk.CHUNK_BITS,
+                        LongCubeIndexer.getZ(posId) >> Chunk.CHUNK_BITS
+                );
+                chunks.put(chunkId, result);
+            }
+            lastChunk = result;
+            lastChunkId = chunkId;
+        }
+        return result;
+    }
+
+    // release all chunks that no longer hold any values
+    private void dropEmptyChunks() {
+        for (TLongObjectIterator<Chunk> it = chunks.iterator(); it.hasNext();) {
+            it.advance();
+            if (it.value().size() == 0) {
+                it.remove();
+            }
+        }
+        emptyChunks = 0;
+        lastChunk = null;
+    }
+
+    // ------------------------------
+    // value access
+
+    // get the value at a position (Chunk.EMPTY if not set)
+    public final int get(int x, int y, int z) {
+        return get(LongCubeIndexer.getId(x, y, z));
+    }
+
+    // get the value at a position id (Chunk.EMPTY if not set)
+    public final int get(long posId) {
+        Chunk chunk = getChunk(posId, false);
+        return chunk == null ? Chunk.EMPTY : chunk.get(LongCubeIndexer.getLocalId(posId, Chunk.CHUNK_BITS));
+    }
+
+    // check if a position is used
+    public final boolean contains(int x, int y, int z) {
+        return get(x, y, z) != Chunk.EMPTY;
+    }
+
+    // check if a position id is used
+    public final boolean contains(long posId) {
+        return get(posId) != Chunk.EMPTY;
+    }
+
+    // set the value at a position, returns the previous value (Chunk.EMPTY if not set)
+    public final int put(int x, int y, int z, int value) {
+        return put(LongCubeIndexer.getId(x, y, z), value);
+    }
+
+    // set the value at a position id, returns the previous value (Chunk.EMPTY if not set)
+    public final int put(long posId, int value) {
+        assert value != Chunk.EMPTY;
+        Chunk chunk = getChunk(posId, true);
+        if (chunk.size() == 0 && chunk.released) {
+            // an empty chunk is reused
+            chunk.released = false;
+            emptyChunks--;
+        }
+        int prev = chunk.put(LongCubeIndexer.getLocalId(posId, Chunk.CHUNK_BITS), value);
+        if (prev == Chunk.EMPTY) {
+            size++;
+            int[] known = bounds;
+            if (known != null) {
+                // extend the bounds
+                int x = LongCubeIndexer.getX(posId);
+                int y = LongCubeIndexer.getY(posId);
+                int z = LongCubeIndexer.getZ(posId);
+                if (size == 1) {
+                    bounds = new int[] {x, y, z, x, y, z};
+                } else if (x < known[0] || y < known[1] || z < known[2]
+                        || x > known[3] || y > known[4] || z > known[5]) {
+                    bounds = new int[] {
+                            Math.min(x, known[0]), Math.min(y, known[1]), Math.min(z, known[2]),
+                            Math.max(x, known[3]), Math.max(y, known[4]), Math.max(z, known[5])
+                    };
+                }
+            }
+        }
+        return prev;
+    }
+
+    // free a position, returns the previous value (Chunk.EMPTY if not set)
+    public final int remove(int x, int y, int z) {
+        return remove(LongCubeIndexer.getId(x, y, z));
+    }
+
+    // free a position id, returns the previous value (Chunk.EMPTY if not set)
+    public final int remove(long posId) {
+        Chunk chunk = getChunk(posId, false);
+        if (chunk == null) {
+            return Chunk.EMPTY;
+        }
+        int prev = chunk.remove(LongCubeIndexer.getLocalId(posId, Chunk.CHUNK_BITS));
+        if (prev != Chunk.EMPTY) {
+            size--;
+            int[] known = bounds;
+            if (known != null) {
+                // the bounds are only recomputed if a boundary position was freed
+                int x = LongCubeIndexer.getX(posId);
+                int y = LongCubeIndexer.getY(posId);
+                int z = LongCubeIndexer.getZ(posId);
+                if (x == known[0] || y == known[1] || z == known[2]
+                        || x == known[3] || y == known[4] || z == known[5]) {
+                    bounds = null;
+                }
+            }
+            if (chunk.size() == 0) {
+                chunk.released = true;
+                if (++emptyChunks > MAX_EMPTY_CHUNKS) {
+                    dropEmptyChunks();
+                }
+            }
+        }
+        return prev;
+    }
+
+    // the amount of used positions
+    public final int size() {
+        return size;
+    }
+
+    // the amount of chunks that hold values
+    public final int chunkCount() {
+        return chunks.size() - emptyChunks;
+    }
+
+    // remove all values
+    public final void clear() {
+        chunks.clear();
+        bounds = null;
+        lastChunk = null;
+        emptyChunks = 0;
+        size = 0;
+    }
+
+    // get all values
+    public final int[] getValues() {
+        int[] result = new int[size];
+        int offset = 0;
+        for (TLongObjectIterator<Chunk> it = chunks.iterator(); it.hasNext();) {
+            it.advance();
+            if (it.value().size() > 0) {
+                offset = it.value().collect(result, offset);
+            }
+        }
+        return result;
+    }
+
+    // get the bounds of the used positions (min and max position, inclusive), null if there
+    // are no used positions
+    public final int[][] getBounds() {
+        int[] result = bounds;
         if (result == null) {
-            result = new Chunk();
-            chunks.put(chunkId, result);
+            // compute from the chunk bounds
+            result = new int[] {
+                    Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                    Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE
+            };
+            for (TLongObjectIterator<Chunk> it = chunks.iterator(); it.hasNext();) {
+                it.advance();
+                Chunk chunk = it.value();
+                if (chunk.size() > 0) {
+                    int[] origin = new int[] {
+                            chunk.cx << Chunk.CHUNK_BITS, chunk.cy << Chunk.CHUNK_BITS, chunk.cz << Chunk.CHUNK_BITS
+                    };
+                    for (int axis = 0; axis < 3; axis++) {
+                        result[axis] = Math.min(result[axis], origin[axis] + chunk.minPlane(axis));
+                        result[axis + 3] = Math.max(result[axis + 3], origin[axis] + chunk.maxPlane(axis));
+                    }
+                }
+            }
+            bounds = result;
+        }
+        if (size == 0) {
+            return null;
+        }
+        return new int[][] {
+                new int[] {result[0], result[1], result[2]},
+                new int[] {result[3], result[4], result[5]}
+        };
+    }
+
+    // visit all values in a box (min and max position, inclusive), returns false if the
+    // procedure stopped the visit (the cost depends on the size of the box, not the size
+    // of the engine)
+    public final boolean forEachInBox(int[] min, int[] max, TIntProcedure procedure) {
+        int[][] used = getBounds();
+        if (used == null) {
+            return true;
+        }
+        // clip the box to the used positions
+        int minX = Math.max(min[0], used[0][0]);
+        int minY = Math.max(min[1], used[0][1]);
+        int minZ = Math.max(min[2], used[0][2]);
+        int maxX = Math.min(max[0], used[1][0]);
+        int maxY = Math.min(max[1], used[1][1]);
+        int maxZ = Math.min(max[2], used[1][2]);
+        if (minX > maxX || minY > maxY || minZ > maxZ) {
+            return true;
+        }
+        // the chunks that intersect the box
+        int cMinX = minX >> Chunk.CHUNK_BITS, cMaxX = maxX >> Chunk.CHUNK_BITS;
+        int cMinY = minY >> Chunk.CHUNK_BITS, cMaxY = maxY >> Chunk.CHUNK_BITS;
+        int cMinZ = minZ >> Chunk.CHUNK_BITS, cMaxZ = maxZ >> Chunk.CHUNK_BITS;
+        long chunkCount = (cMaxX - cMinX + 1L) * (cMaxY - cMinY + 1L) * (cMaxZ - cMinZ + 1L);
+        if (chunkCount <= chunks.size()) {
+            // look up the chunks of the box
+            for (int cy = cMinY; cy <= cMaxY; cy++) {
+                for (int cz = cMinZ; cz <= cMaxZ; cz++) {
+                    for (int cx = cMinX; cx <= cMaxX; cx++) {
+                        Chunk chunk = chunks.get(LongCubeIndexer.getId(
+                                cx << Chunk.CHUNK_BITS, cy << Chunk.CHUNK_BITS, cz << Chunk.CHUNK_BITS));
+                        if (chunk != null && !visitChunk(chunk, minX, minY, minZ, maxX, maxY, maxZ, procedure)) {
+                            return false;
+                        }
+                    }
+                }
+            }
+        } else {
+            // the box contains more chunks than there are, check all chunks instead
+            for (TLongObjectIterator<Chunk> it = chunks.iterator(); it.hasNext();) {
+                it.advance();
+                Chunk chunk = it.value();
+                if (chunk.cx >= cMinX && chunk.cx <= cMaxX && chunk.cy >= cMinY && chunk.cy <= cMaxY
+                        && chunk.cz >= cMinZ && chunk.cz <= cMaxZ
+                        && !visitChunk(chunk, minX, minY, minZ, maxX, maxY, maxZ, procedure)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // helper - visit the values of a chunk that are in a box (world coordinates)
+    private static boolean visitChunk(Chunk chunk, int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+                                      TIntProcedure procedure) {
+        if (chunk.size() == 0) {
+            return true;
+        }
+        int ox = chunk.cx << Chunk.CHUNK_BITS;
+        int oy = chunk.cy << Chunk.CHUNK_BITS;
+        int oz = chunk.cz << Chunk.CHUNK_BITS;
+        return chunk.forEachInBox(
+                Math.max(0, minX - ox), Math.max(0, minY - oy), Math.max(0, minZ - oz),
+                Math.min(Chunk.CHUNK_MASK, maxX - ox), Math.min(Chunk.CHUNK_MASK, maxY - oy),
+                Math.min(Chunk.CHUNK_MASK, maxZ - oz), procedure);
+    }
+
+    // helper - get all values in a plane
+    private int[] getPlane(int axis, int plane) {
+        int chunkPlane = plane >> Chunk.CHUNK_BITS;
+        int localPlane = plane & Chunk.CHUNK_MASK;
+        // find the size first
+        int count = 0;
+        for (TLongObjectIterator<Chunk> it = chunks.iterator(); it.hasNext();) {
+            it.advance();
+            Chunk chunk = it.value();
+            if ((axis == 0 ? chunk.cx : (axis == 1 ? chunk.cy : chunk.cz)) == chunkPlane) {
+                count += chunk.planeSize(axis, localPlane);
+            }
+        }
+        // collect the values
+        int[] result = new int[count];
+        if (count > 0) {
+            int offset = 0;
+            for (TLongObjectIterator<Chunk> it = chunks.iterator(); it.hasNext();) {
+                it.advance();
+                Chunk chunk = it.value();
+                if ((axis == 0 ? chunk.cx : (axis == 1 ? chunk.cy : chunk.cz)) == chunkPlane
+                        && chunk.planeSize(axis, localPlane) > 0) {
+                    offset = chunk.collectPlane(axis, localPlane, result, offset);
+                }
+            }
         }
         return result;
     }
 
-    // delete a voxel
+    // get all values with the given x coordinate
+    public final int[] getXPlane(int x) {
+        return getPlane(0, x);
+    }
+
+    // get all values with the given y coordinate
+    public final int[] getYPlane(int y) {
+        return getPlane(1, y);
+    }
+
+    // get all values with the given z coordinate
+    public final int[] getZPlane(int z) {
+        return getPlane(2, z);
+    }
+
+    // ------------------------------
+    // voxel type access
+
+    // delete voxels, returns true if any voxel was deleted
     public boolean delete(int[][] xyzs) {
-        return false;
+        boolean result = false;
+        for (int[] xyz : xyzs) {
+            int prev = remove(xyz[0], xyz[1], xyz[2]);
+            if (prev != Chunk.EMPTY) {
+                voxelTypeIds.get(prev).usedCount--;
+                result = true;
+            }
+        }
+        return result;
     }
 
-    // set a voxel
+    // set voxels
     public void set(int[][] xyzs, VoxelType newType) {
         // get the voxel type if it already exists, or create a new one
         VoxelType type = voxelTypes.get(newType);
         if (type == null) {
             voxelTypes.put(newType, newType);
             newType.uId = generateUID();
+            voxelTypeIds.put(newType.uId, newType);
             type = newType;
         }
         for (int[] xyz : xyzs) {
             // increase the used count
             type.usedCount++;
-            // get the chunk this voxel lives in
-            Chunk chunk = getChunk(xyz);
-            // check if the voxel already exists (and decrease used count of the type if so)
-            // ...
             // update the voxel in the chunk
-            // ...
+            int prev = put(xyz[0], xyz[1], xyz[2], type.uId);
+            // check if the voxel already exists (and decrease used count of the type if so)
+            if (prev != Chunk.EMPTY) {
+                voxelTypeIds.get(prev).usedCount--;
+            }
         }
     }
 
-    // get a voxel
-    public VoxelType get(int[][] xyz) {
-        return null;
+    // get voxels (null entries for free positions)
+    public VoxelType[] get(int[][] xyzs) {
+        VoxelType[] result = new VoxelType[xyzs.length];
+        for (int i = 0; i < xyzs.length; i++) {
+            int uId = get(xyzs[i][0], xyzs[i][1], xyzs[i][2]);
+            if (uId != Chunk.EMPTY) {
+                result[i] = voxelTypeIds.get(uId);
+            }
+        }
+        return result;
     }
 
 }
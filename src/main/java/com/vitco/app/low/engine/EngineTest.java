@@ -0,0 +1,197 @@
+package com.vitco.app.low.engine;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.procedure.TIntProcedure;
+import gnu.trove.set.hash.TIntHashSet;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test that the chunked engine behaves like a map (position -> value).
+ */
+public class EngineTest {
+
+    // helper - compute a reference key
+    private static int key(int x, int y, int z) {
+        return ((x + 100) * 256 + (y + 100)) * 256 + (z + 100);
+    }
+
+    @Test
+    public void testRandom() throws Exception {
+        Random rand = new Random(0);
+        Engine engine = new Engine();
+        TIntIntHashMap reference = new TIntIntHashMap(10, 0.5f, -1, Chunk.EMPTY);
+
+        for (int i = 0; i < 200000; i++) {
+            // positions are chosen to cross chunk borders (incl. negative coordinates)
+            int x = rand.nextInt(100) - 50;
+            int y = rand.nextInt(100) - 50;
+            int z = rand.nextInt(100) - 50;
+            if (rand.nextBoolean()) {
+                int value = rand.nextInt(1000);
+                assert engine.put(x, y, z, value) == reference.put(key(x, y, z), value);
+            } else {
+                assert engine.remove(x, y, z) == reference.remove(key(x, y, z));
+            }
+            assert engine.size() == reference.size();
+        }
+
+        // compare all values
+        for (int x = -50; x < 50; x++) {
+            for (int y = -50; y < 50; y++) {
+                for (int z = -50; z < 50; z++) {
+                    assert engine.get(x, y, z) == reference.get(key(x, y, z));
+                }
+            }
+        }
+        int[] values = engine.getValues();
+        int[] expected = reference.values();
+        Arrays.sort(values);
+        Arrays.sort(expected);
+        assert Arrays.equals(values, expected);
+
+        // compare planes
+        for (int plane = -50; plane < 50; plane++) {
+            int countX = 0, countY = 0, countZ = 0;
+            for (int a = -50; a < 50; a++) {
+                for (int b = -50; b < 50; b++) {
+                    if (reference.containsKey(key(plane, a, b))) countX++;
+                    if (reference.containsKey(key(a, plane, b))) countY++;
+                    if (reference.containsKey(key(a, b, plane))) countZ++;
+                }
+            }
+            assert engine.getXPlane(plane).length == countX;
+            assert engine.getYPlane(plane).length == countY;
+            assert engine.getZPlane(plane).length == countZ;
+        }
+
+        // empty chunks are not counted
+        for (int x = -50; x < 50; x++) {
+            for (int y = -50; y < 50; y++) {
+                for (int z = 0; z < 50; z++) {
+                    engine.remove(x, y, z);
+                }
+            }
+        }
+        TIntHashSet usedChunks = new TIntHashSet();
+        for (int x = -50; x < 50; x++) {
+            for (int y = -50; y < 50; y++) {
+                for (int z = -50; z < 0; z++) {
+                    if (reference.containsKey(key(x, y, z))) {
+                        usedChunks.add(key(x >> Chunk.CHUNK_BITS, y >> Chunk.CHUNK_BITS, z >> Chunk.CHUNK_BITS));
+                    }
+                }
+            }
+        }
+        assert engine.chunkCount() == usedChunks.size();
+        assert engine.getZPlane(10).length == 0;
+        assert engine.getValues().length == engine.size();
+
+        // all chunks are released
+        engine.clear();
+        assert engine.size() == 0;
+        assert engine.chunkCount() == 0;
+    }
+
+    @Test
+    public void testBox() throws Exception {
+        Random rand = new Random(1);
+        Engine engine = new Engine();
+        TIntIntHashMap reference = new TIntIntHashMap(10, 0.5f, -1, Chunk.EMPTY);
+        assert engine.getBounds() == null;
+
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 2000; i++) {
+                int x = rand.nextInt(60) - 30;
+                int y = rand.nextInt(40) - 10;
+                int z = rand.nextInt(30) - 25;
+                if (rand.nextInt(3) > 0) {
+                    engine.put(x, y, z, key(x, y, z));
+                    reference.put(key(x, y, z), key(x, y, z));
+                } else {
+                    engine.remove(x, y, z);
+                    reference.remove(key(x, y, z));
+                }
+            }
+            // compare the bounds
+            int[] min = new int[] {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE};
+            int[] max = new int[] {Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+            for (int k : reference.keys()) {
+                int[] pos = new int[] {k / 65536 - 100, (k / 256) % 256 - 100, k % 256 - 100};
+                for (int j = 0; j < 3; j++) {
+                    min[j] = Math.min(min[j], pos[j]);
+                    max[j] = Math.max(max[j], pos[j]);
+                }
+            }
+            int[][] bounds = engine.getBounds();
+            assert Arrays.equals(bounds[0], min) && Arrays.equals(bounds[1], max);
+
+            // compare a random box
+            int[] boxMin = new int[] {rand.nextInt(80) - 40, rand.nextInt(60) - 20, rand.nextInt(50) - 35};
+            int[] boxMax = new int[] {
+                    boxMin[0] + rand.nextInt(round < 25 ? 10 : 80),
+                    boxMin[1] + rand.nextInt(round < 25 ? 10 : 80),
+                    boxMin[2] + rand.nextInt(round < 25 ? 10 : 80)
+            };
+            final TIntHashSet found = new TIntHashSet();
+            assert engine.forEachInBox(boxMin, boxMax, new TIntProcedure() {
+                @Override
+                public boolean execute(int value) {
+                    assert found.add(value);
+                    return true;
+                }
+            });
+            TIntHashSet expected = new TIntHashSet();
+            for (int x = boxMin[0]; x <= boxMax[0]; x++) {
+                for (int y = boxMin[1]; y <= boxMax[1]; y++) {
+                    for (int z = boxMin[2]; z <= boxMax[2]; z++) {
+                        if (reference.containsKey(key(x, y, z))) {
+                            expected.add(key(x, y, z));
+                        }
+                    }
+                }
+            }
+            assert found.equals(expected);
+        }
+
+        // the visit can be stopped
+        final int[] count = new int[] {0};
+        assert !engine.forEachInBox(new int[] {-100, -100, -100}, new int[] {100, 100, 100}, new TIntProcedure() {
+            @Override
+            public boolean execute(int value) {
+                return ++count[0] < 5;
+            }
+        });
+        assert count[0] == 5;
+
+        engine.clear();
+        assert engine.getBounds() == null;
+        engine.put(3, -4, 5, 1);
+        assert Arrays.equals(engine.getBounds()[0], new int[] {3, -4, 5});
+        assert Arrays.equals(engine.getBounds()[1], new int[] {3, -4, 5});
+    }
+
+    @Test
+    public void testVoxelTypes() throws Exception {
+        Engine engine = new Engine();
+        int[][] positions = new int[][] {{0,0,0}, {-1,5,40}, {31,32,-33}};
+        engine.set(positions, new VoxelType(Color.RED));
+        VoxelType[] types = engine.get(positions);
+        for (VoxelType type : types) {
+            assert type.color.equals(Color.RED);
+        }
+        assert types[0].usedCount == 3;
+        // overwrite one position
+        engine.set(new int[][] {{0,0,0}}, new VoxelType(Color.BLUE));
+        assert types[0].usedCount == 2;
+        assert engine.get(new int[][] {{0,0,0}})[0].color.equals(Color.BLUE);
+        // delete
+        assert engine.delete(new int[][] {{-1,5,40}});
+        assert !engine.delete(new int[][] {{-1,5,40}});
+        assert types[0].usedCount == 1;
+        assert engine.get(new int[][] {{-1,5,40}})[0] == null;
+    }
+}
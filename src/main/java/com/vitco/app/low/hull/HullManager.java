@@ -1,12 +1,12 @@
 package com.vitco.app.low.hull;
 
 import com.threed.jpct.SimpleVector;
-import com.vitco.app.low.CubeIndexer;
+import com.vitco.app.low.LongCubeIndexer;
 import com.vitco.app.low.triangulate.util.Grid2PolyHelper;
 import com.vitco.app.settings.VitcoSettings;
-import gnu.trove.iterator.TIntIterator;
-import gnu.trove.map.hash.TIntObjectHashMap;
-import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -15,7 +15,7 @@ import java.util.Set;
 
 /**
  * Efficient way to compute the hull for a group of
- * objects in 3D space (with short values as coordinates)
+ * objects in 3D space (with int values as coordinates)
  */
 public class HullManager<T> implements HullManagerInterface<T>, Serializable {
     private static final long serialVersionUID = 1L;
@@ -23,37 +23,37 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
     // --------------
 
     // maps position to objects
-    private final TIntObjectHashMap<T> id2obj = new TIntObjectHashMap<T>();
+    private final TLongObjectHashMap<T> id2obj = new TLongObjectHashMap<T>();
 
     // border
-    private final TIntHashSet[] border = new TIntHashSet[]{
-            new TIntHashSet(),new TIntHashSet(),new TIntHashSet(),
-            new TIntHashSet(),new TIntHashSet(),new TIntHashSet()
+    private final TLongHashSet[] border = new TLongHashSet[]{
+            new TLongHashSet(),new TLongHashSet(),new TLongHashSet(),
+            new TLongHashSet(),new TLongHashSet(),new TLongHashSet()
     };
 
     // border changes
     @SuppressWarnings("unchecked")
-    private final TIntObjectHashMap<T>[] borderAdded = new TIntObjectHashMap[]{
-            new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),
-            new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>()
+    private final TLongObjectHashMap<T>[] borderAdded = new TLongObjectHashMap[]{
+            new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),
+            new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>()
     };
     @SuppressWarnings("unchecked")
-    private final TIntObjectHashMap<T>[] borderRemoved = new TIntObjectHashMap[]{
-            new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),
-            new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>()
+    private final TLongObjectHashMap<T>[] borderRemoved = new TLongObjectHashMap[]{
+            new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),
+            new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>()
     };
     
     // add/remove buffer
     @SuppressWarnings("unchecked")
-    private final TIntObjectHashMap<T>[] borderBufferAdded = new TIntObjectHashMap[]{
-            new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),
-            new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>()
+    private final TLongObjectHashMap<T>[] borderBufferAdded = new TLongObjectHashMap[]{
+            new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),
+            new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>()
     };
 
     @SuppressWarnings("unchecked")
-    private final TIntObjectHashMap<T>[] borderBufferRemoved = new TIntObjectHashMap[]{
-            new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),
-            new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>(),new TIntObjectHashMap<T>()
+    private final TLongObjectHashMap<T>[] borderBufferRemoved = new TLongObjectHashMap[]{
+            new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),
+            new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>(),new TLongObjectHashMap<T>()
     };
 
     // ---------------------
@@ -71,43 +71,43 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
     }
 
     @Override
-    public final boolean contains(short[] pos) {
-        return id2obj.containsKey(CubeIndexer.getId(pos));
+    public final boolean contains(int[] pos) {
+        return id2obj.containsKey(LongCubeIndexer.getId(pos));
     }
 
     @Override
-    public final boolean contains(int posId) {
+    public final boolean contains(long posId) {
         return id2obj.containsKey(posId);
     }
 
     @Override
-    public final boolean containsBorder(short[] pos, int orientation) {
-        return border[orientation].contains(CubeIndexer.getId(pos));
+    public final boolean containsBorder(int[] pos, int orientation) {
+        return border[orientation].contains(LongCubeIndexer.getId(pos));
     }
 
     @Override
-    public final boolean containsBorder(int posId, int orientation) {
+    public final boolean containsBorder(long posId, int orientation) {
         return border[orientation].contains(posId);
     }
 
     @Override
-    public final int[] getPosIds() {
+    public final long[] getPosIds() {
         return id2obj.keys();
     }
 
     @Override
-    public T get(short[] pos) {
-        return id2obj.get(CubeIndexer.getId(pos));
+    public T get(int[] pos) {
+        return id2obj.get(LongCubeIndexer.getId(pos));
     }
 
     @Override
-    public final void update(short[] pos, T object) {
+    public final void update(int[] pos, T object) {
         //System.out.println("U " + pos[0] + "," + pos[1] + "," + pos[2]);
-        update(CubeIndexer.getId(pos), object);
+        update(LongCubeIndexer.getId(pos), object);
     }
 
     @Override
-    public final void update(int posId, T object) {
+    public final void update(long posId, T object) {
         // store the object
         if (id2obj.put(posId, object) != null) {
             // the element was only updated (but existed already)
@@ -135,7 +135,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
             T obj = id2obj.get(posId);
 
             // check borders
-            int idOff = posId-1;
+            long idOff = posId-1;
             if (id2obj.containsKey(idOff)) {
                 border[0].remove(idOff);
                 if (null == borderBufferAdded[0].remove(idOff)) {
@@ -166,7 +166,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
             }
 
             // check borders
-            idOff = posId-CubeIndexer.widthwidth;
+            idOff = posId-LongCubeIndexer.widthwidth;
             if (id2obj.containsKey(idOff)) {
                 border[2].remove(idOff);
                 if (null == borderBufferAdded[2].remove(idOff)) {
@@ -181,7 +181,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
                 }
             }
             // check borders
-            idOff = posId+CubeIndexer.widthwidth;
+            idOff = posId+LongCubeIndexer.widthwidth;
             if (id2obj.containsKey(idOff)) {
                 border[3].remove(idOff);
                 if (null == borderBufferAdded[3].remove(idOff)) {
@@ -197,7 +197,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
             }
 
             // check borders
-            idOff = posId-CubeIndexer.width;
+            idOff = posId-LongCubeIndexer.width;
             if (id2obj.containsKey(idOff)) {
                 border[4].remove(idOff);
                 if (null == borderBufferAdded[4].remove(idOff)) {
@@ -212,7 +212,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
                 }
             }
             // check borders
-            idOff = posId+CubeIndexer.width;
+            idOff = posId+LongCubeIndexer.width;
             if (id2obj.containsKey(idOff)) {
                 border[5].remove(idOff);
                 if (null == borderBufferAdded[5].remove(idOff)) {
@@ -230,13 +230,13 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
     }
 
     @Override
-    public final boolean clearPosition(short[] pos) {
+    public final boolean clearPosition(int[] pos) {
         //System.out.println("C " + pos[0] + "," + pos[1] + "," + pos[2]);
-        return clearPosition(CubeIndexer.getId(pos));
+        return clearPosition(LongCubeIndexer.getId(pos));
     }
 
     @Override
-    public final boolean clearPosition(int posId) {
+    public final boolean clearPosition(long posId) {
 
         // remove the object (the actual removal needs to be done
         // last, because we still need the reference to the object
@@ -246,7 +246,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
             T objOff;
 
             // check borders
-            int idOff = posId-1;
+            long idOff = posId-1;
             if (id2obj.containsKey(idOff)) {
                 border[0].add(idOff);
                 objOff = id2obj.get(idOff);
@@ -279,7 +279,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
             }
 
             // check borders
-            idOff = posId-CubeIndexer.widthwidth;
+            idOff = posId-LongCubeIndexer.widthwidth;
             if (id2obj.containsKey(idOff)) {
                 border[2].add(idOff);
                 objOff = id2obj.get(idOff);
@@ -295,7 +295,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
                 }
             }
             // check borders
-            idOff = posId+CubeIndexer.widthwidth;
+            idOff = posId+LongCubeIndexer.widthwidth;
             if (id2obj.containsKey(idOff)) {
                 border[3].add(idOff);
                 objOff = id2obj.get(idOff);
@@ -312,7 +312,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
             }
 
             // check borders
-            idOff = posId-CubeIndexer.width;
+            idOff = posId-LongCubeIndexer.width;
             if (id2obj.containsKey(idOff)) {
                 border[4].add(idOff);
                 objOff = id2obj.get(idOff);
@@ -328,7 +328,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
                 }
             }
             // check borders
-            idOff = posId+CubeIndexer.width;
+            idOff = posId+LongCubeIndexer.width;
             if (id2obj.containsKey(idOff)) {
                 border[5].add(idOff);
                 objOff = id2obj.get(idOff);
@@ -358,7 +358,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
         borderAdded[direction].putAll(borderBufferRemoved[direction]);
 
         // remove the values that are pending as remove (remove is stronger!)
-        for (TIntIterator it = borderRemoved[direction].keySet().iterator(); it.hasNext();) {
+        for (TLongIterator it = borderRemoved[direction].keySet().iterator(); it.hasNext();) {
             borderAdded[direction].remove(it.next());
         }
 
@@ -380,7 +380,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
         Set<T> result = new HashSet<T>(borderRemoved[direction].valueCollection());
 
         // remove the values that are pending as remove (remove is stronger!)
-        for (TIntIterator it = borderRemoved[direction].keySet().iterator(); it.hasNext();) {
+        for (TLongIterator it = borderRemoved[direction].keySet().iterator(); it.hasNext();) {
             borderAdded[direction].remove(it.next());
         }
 
@@ -392,23 +392,19 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
 
     // get the current hull
     @Override
-    public final short[][] getHull(int direction) {
-        short[][] result = new short[border[direction].size()][3]; // allocate with correct size
+    public final int[][] getHull(int direction) {
+        int[][] result = new int[border[direction].size()][]; // allocate with correct size
         int count = 0;
-        for (TIntIterator it = border[direction].iterator(); it.hasNext();) {
-            short[] val = CubeIndexer.getPos(it.next());
-            result[count][0] = val[0];
-            result[count][1] = val[1];
-            result[count][2] = val[2];
-            count++;
+        for (TLongIterator it = border[direction].iterator(); it.hasNext();) {
+            result[count++] = LongCubeIndexer.getPos(it.next());
         }
         return result;
     }
 
     // get the visible voxel ids
     @Override
-    public final TIntHashSet getVisibleVoxelsIds() {
-        TIntHashSet visibleVoxels = new TIntHashSet();
+    public final TLongHashSet getVisibleVoxelsIds() {
+        TLongHashSet visibleVoxels = new TLongHashSet();
         for (int i = 0; i < 6; i++) {
             visibleVoxels.addAll(border[i]);
         }
@@ -417,7 +413,7 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
 
     // get the current hull as ids
     @Override
-    public final int[] getHullAsIds(int direction) {
+    public final long[] getHullAsIds(int direction) {
         return border[direction].toArray();
     }
 
@@ -444,20 +440,20 @@ public class HullManager<T> implements HullManagerInterface<T>, Serializable {
                     break;
             }
             // find minimum and range of the data
-            short minX = Short.MAX_VALUE;
-            short maxX = Short.MIN_VALUE;
-            short minY = Short.MAX_VALUE;
-            short maxY = Short.MIN_VALUE;
-            short[][] voxelPositions = this.getHull(orientation);
-            for (short[] pos : voxelPositions) {
-                minX = (short) Math.min(minX, pos[id1]);
-                maxX = (short) Math.max(maxX, pos[id1]);
-                minY = (short) Math.min(minY, pos[id2]);
-                maxY = (short) Math.max(maxY, pos[id2]);
+            int minX = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE;
+            int minY = Integer.MAX_VALUE;
+            int maxY = Integer.MIN_VALUE;
+            int[][] voxelPositions = this.getHull(orientation);
+            for (int[] pos : voxelPositions) {
+                minX = Math.min(minX, pos[id1]);
+                maxX = Math.max(maxX, pos[id1]);
+                minY = Math.min(minY, pos[id2]);
+                maxY = Math.max(maxY, pos[id2]);
             }
             // convert to boolean array
             boolean[][] data = new boolean[maxX - minX + 1][maxY - minY + 1];
-            for (short[] pos : voxelPositions) {
+            for (int[] pos : voxelPositions) {
                 data[pos[id1] - minX][pos[id2] - minY] = true;
             }
             // convert to polygon
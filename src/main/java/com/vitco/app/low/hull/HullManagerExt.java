@@ -1,11 +1,11 @@
 package com.vitco.app.low.hull;
 
 import com.threed.jpct.SimpleVector;
-import com.vitco.app.low.CubeIndexer;
-import gnu.trove.iterator.TIntIterator;
-import gnu.trove.list.array.TIntArrayList;
-import gnu.trove.map.hash.TIntShortHashMap;
-import gnu.trove.set.hash.TIntHashSet;
+import com.vitco.app.low.LongCubeIndexer;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.set.hash.TLongHashSet;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -23,12 +23,12 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
 
     // do a hit test against the voxels in this hull manager
     @Override
-    public short[] hitTest(SimpleVector origin, SimpleVector dir) {
+    public int[] hitTest(SimpleVector origin, SimpleVector dir) {
 
-        // If the origin is outside the max box of the CubeIndexer it needs to be
+        // If the origin is outside the max box of the LongCubeIndexer it needs to be
         // shifted into the cube before we can proceed
         // Note: Not necessary atm (since the camera is usually inside the max box)
-//        origin = CubeIndexer.validateRay(origin, dir);
+//        origin = LongCubeIndexer.validateRay(origin, dir);
 //        if (origin == null) {
 //            return null;
 //        }
@@ -50,10 +50,10 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
 
         // starting grid coordinates
         short lastHitSide;
-        int pos = CubeIndexer.getId(
-                (short) Math.floor(origin.x),
-                (short) Math.floor(origin.y),
-                (short) Math.floor(origin.z)
+        long pos = LongCubeIndexer.getId(
+                (int) Math.floor(origin.x),
+                (int) Math.floor(origin.y),
+                (int) Math.floor(origin.z)
         );
 
         // compute the offsets
@@ -92,22 +92,22 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
                 double diffZX = valZX * (tMaxX + offX) - (tMaxZ + offZ);
                 if (diffZX < 0) {
                     tMaxX++;
-                    pos = CubeIndexer.changeX(pos, stepXB);
+                    pos = LongCubeIndexer.changeX(pos, stepXB);
                     lastHitSide = sideX;
                 } else {
                     tMaxZ++;
-                    pos = CubeIndexer.changeZ(pos, stepZB);
+                    pos = LongCubeIndexer.changeZ(pos, stepZB);
                     lastHitSide = sideZ;
                 }
             } else {
                 double diffZY = valZY * (tMaxY + offY) - (tMaxZ + offZ);
                 if (diffZY < 0) {
                     tMaxY++;
-                    pos = CubeIndexer.changeY(pos, stepYB);
+                    pos = LongCubeIndexer.changeY(pos, stepYB);
                     lastHitSide = sideY;
                 } else {
                     tMaxZ++;
-                    pos = CubeIndexer.changeZ(pos, stepZB);
+                    pos = LongCubeIndexer.changeZ(pos, stepZB);
                     lastHitSide = sideZ;
                 }
             }
@@ -115,8 +115,7 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
             // check for containment
             if (containsBorder(pos, lastHitSide)) { // hit side has to be visible
                 //if (id2obj.containsKey(pos)) { // any voxel can be hit
-                short[] result = CubeIndexer.getPos(pos);
-                return new short[] {result[0], result[1], result[2], lastHitSide};
+                return new int[] {LongCubeIndexer.getX(pos), LongCubeIndexer.getY(pos), LongCubeIndexer.getZ(pos), lastHitSide};
             }
         }
         return null;
@@ -128,19 +127,19 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
     // ==============================
 
     // holds the computed exterior
-    private final TIntHashSet[] exterior = new TIntHashSet[] {
-            new TIntHashSet(), new TIntHashSet(), new TIntHashSet(),
-            new TIntHashSet(), new TIntHashSet(), new TIntHashSet()
+    private final TLongHashSet[] exterior = new TLongHashSet[] {
+            new TLongHashSet(), new TLongHashSet(), new TLongHashSet(),
+            new TLongHashSet(), new TLongHashSet(), new TLongHashSet()
     };
     // holds the computed interior
-    private final TIntHashSet[] interior = new TIntHashSet[] {
-            new TIntHashSet(), new TIntHashSet(), new TIntHashSet(),
-            new TIntHashSet(), new TIntHashSet(), new TIntHashSet()
+    private final TLongHashSet[] interior = new TLongHashSet[] {
+            new TLongHashSet(), new TLongHashSet(), new TLongHashSet(),
+            new TLongHashSet(), new TLongHashSet(), new TLongHashSet()
     };
 
     // helper, return true if given border is present in hull
     // if true -> add border to stack if not already present in processed
-    private boolean detectStepAdd(ArrayList<int[]> stack, int pos, int orientation, TIntHashSet[] processed) {
+    private boolean detectStepAdd(ArrayList<long[]> stack, long pos, int orientation, TLongHashSet[] processed) {
         boolean result = false;
         // (1) check if extension exists as border,
         if (containsBorder(pos, orientation)) {
@@ -148,7 +147,7 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
             if (!processed[orientation].contains(pos)) {
                 processed[orientation].add(pos);
                 // (3) add to stack
-                stack.add(new int[] {pos, orientation});
+                stack.add(new long[] {pos, orientation});
             }
             result = true;
         }
@@ -158,7 +157,7 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
     // check which borders are correct neighbouring borders for a given border
     // then add to stack if not already processed
     // Note: This uses a "fold down model" for checking the neighbouring borders
-    private void detectStep(ArrayList<int[]> stack, int pos, short orientation, TIntHashSet[] processed) {
+    private void detectStep(ArrayList<long[]> stack, long pos, short orientation, TLongHashSet[] processed) {
         int[][] axisToCheck;
         switch (orientation) {
             case 0:case 1:
@@ -183,14 +182,14 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
         // --
         for (int[] axis : axisToCheck) {
             // check negative
-            int posN = CubeIndexer.change(pos, axis[0]);
-            int posNOff = CubeIndexer.change(posN, orientation);
+            long posN = LongCubeIndexer.change(pos, axis[0]);
+            long posNOff = LongCubeIndexer.change(posN, orientation);
             boolean detectedN = detectStepAdd(stack, posNOff, axis[1], processed) ||
                     detectStepAdd(stack, posN, orientation, processed) ||
                     detectStepAdd(stack, pos, axis[0], processed);
             // check positive
-            int posP = CubeIndexer.change(pos, axis[1]);
-            int posPOff = CubeIndexer.change(posP, orientation);
+            long posP = LongCubeIndexer.change(pos, axis[1]);
+            long posPOff = LongCubeIndexer.change(posP, orientation);
             boolean detectedP = detectStepAdd(stack, posPOff, axis[0], processed) ||
                     detectStepAdd(stack, posP, orientation, processed) ||
                     detectStepAdd(stack, pos, axis[1], processed);
@@ -204,19 +203,19 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
     // follow an outline for a given starting border
     // store found borders in processed
     // returns the detected outline
-    private TIntHashSet[] detectContour(int pos, short orientation, TIntHashSet[] processed) {
-        TIntHashSet[] result = new TIntHashSet[] {
-                new TIntHashSet(), new TIntHashSet(), new TIntHashSet(),
-                new TIntHashSet(), new TIntHashSet(), new TIntHashSet()
+    private TLongHashSet[] detectContour(long pos, short orientation, TLongHashSet[] processed) {
+        TLongHashSet[] result = new TLongHashSet[] {
+                new TLongHashSet(), new TLongHashSet(), new TLongHashSet(),
+                new TLongHashSet(), new TLongHashSet(), new TLongHashSet()
         };
         // stack of currently processing voxel sides
-        ArrayList<int[]> stack = new ArrayList<int[]>();
+        ArrayList<long[]> stack = new ArrayList<long[]>();
         detectStepAdd(stack, pos, orientation, processed);
         // follow all path
         while (!stack.isEmpty()) {
-            int[] cur = stack.remove(0);
+            long[] cur = stack.remove(0);
             // add to result
-            result[cur[1]].add(cur[0]);
+            result[(int) cur[1]].add(cur[0]);
             // check all extensions and add to stack
             detectStep(stack, cur[0], (short) cur[1], processed);
         }
@@ -227,13 +226,13 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
     // helper class that wraps a (continuous set of sides)
     private static final class HullWrapper {
         // holds the data
-        private TIntHashSet[] data = new TIntHashSet[] {
-                new TIntHashSet(), new TIntHashSet(), new TIntHashSet(),
-                new TIntHashSet(), new TIntHashSet(), new TIntHashSet()
+        private TLongHashSet[] data = new TLongHashSet[] {
+                new TLongHashSet(), new TLongHashSet(), new TLongHashSet(),
+                new TLongHashSet(), new TLongHashSet(), new TLongHashSet()
         };
 
         // constructor
-        public HullWrapper(TIntHashSet[] data) {
+        public HullWrapper(TLongHashSet[] data) {
             for (int i = 0; i < 6; i++) {
                 this.data[i].addAll(data[i]);
             }
@@ -243,17 +242,17 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
         public boolean contains(HullWrapper other) {
             // -- check if the other HullWrapper is contained in this hull wrapper
             // fetch a first side into X direction
-            short[] side = CubeIndexer.getPos(other.data[0].iterator().next());
+            int[] side = LongCubeIndexer.getPos(other.data[0].iterator().next());
             // search for all sides at the found YZ position in the potential "outer" HullWrapper
-            ArrayList<Short> list = new ArrayList<Short>();
-            for (TIntIterator it = this.data[0].iterator(); it.hasNext();) {
-                short[] val = CubeIndexer.getPos(it.next());
+            ArrayList<Integer> list = new ArrayList<Integer>();
+            for (TLongIterator it = this.data[0].iterator(); it.hasNext();) {
+                int[] val = LongCubeIndexer.getPos(it.next());
                 if (val[1] == side[1] && val[2] == side[2]) {
                     list.add(val[0]);
                 }
             }
-            for (TIntIterator it = this.data[1].iterator(); it.hasNext();) {
-                short[] val = CubeIndexer.getPos(it.next());
+            for (TLongIterator it = this.data[1].iterator(); it.hasNext();) {
+                int[] val = LongCubeIndexer.getPos(it.next());
                 if (val[1] == side[1] && val[2] == side[2]) {
                     list.add(val[0]);
                 }
@@ -262,9 +261,9 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
             Collections.sort(list);
             // check if the initially selected side lives inside the extracted sides
             boolean inside = false;
-            short lastDepth = 0;
+            int lastDepth = 0;
             boolean foundInside = false;
-            for (short depth : list) {
+            for (int depth : list) {
                 inside = !inside;
                 if (!inside) {
                     if (side[0] < depth && side[0] > lastDepth) {
@@ -286,28 +285,28 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
         // holds known interior sides
         ArrayList<HullWrapper> interior = new ArrayList<HullWrapper>();
         // holds the processed sides
-        TIntHashSet[] processed = new TIntHashSet[]{
-                new TIntHashSet(), new TIntHashSet(), new TIntHashSet(),
-                new TIntHashSet(), new TIntHashSet(), new TIntHashSet()
+        TLongHashSet[] processed = new TLongHashSet[]{
+                new TLongHashSet(), new TLongHashSet(), new TLongHashSet(),
+                new TLongHashSet(), new TLongHashSet(), new TLongHashSet()
         };
         // true if a hole was found
         boolean interiorFound = false;
         // loop over all potential starting positions
         // (one direction is enough for this!)
-        for (int pos : getHullAsIds(0)) {
+        for (long pos : getHullAsIds(0)) {
             // check if this side was already processed with another starting position
             if (!processed[0].contains(pos)) {
                 // -- fetch the contour that this border belongs to
-                TIntHashSet[] detected = detectContour(pos, (short) 0, processed);
+                TLongHashSet[] detected = detectContour(pos, (short) 0, processed);
 
                 // -- analyse whether it's outside or inside facing hull
                 int minA = Integer.MAX_VALUE;
-                for (TIntIterator it = detected[0].iterator(); it.hasNext(); ) {
-                    minA = Math.min(minA, CubeIndexer.getPos(it.next())[0]);
+                for (TLongIterator it = detected[0].iterator(); it.hasNext(); ) {
+                    minA = Math.min(minA, LongCubeIndexer.getX(it.next()));
                 }
                 int minB = Integer.MAX_VALUE;
-                for (TIntIterator it = detected[1].iterator(); it.hasNext(); ) {
-                    minB = Math.min(minB, CubeIndexer.getPos(it.next())[0]);
+                for (TLongIterator it = detected[1].iterator(); it.hasNext(); ) {
+                    minB = Math.min(minB, LongCubeIndexer.getX(it.next()));
                 }
                 boolean isInsideHull = minA < minB;
 
@@ -360,15 +359,11 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
     // into a specific direction.
     // Required computeExterior() to be called before working
     @Override
-    public short[][] getExteriorHull(int direction) {
-        short[][] result = new short[exterior[direction].size()][3]; // allocate with correct size
+    public int[][] getExteriorHull(int direction) {
+        int[][] result = new int[exterior[direction].size()][]; // allocate with correct size
         int count = 0;
-        for (TIntIterator it = exterior[direction].iterator(); it.hasNext(); ) {
-            short[] val = CubeIndexer.getPos(it.next());
-            result[count][0] = val[0];
-            result[count][1] = val[1];
-            result[count][2] = val[2];
-            count++;
+        for (TLongIterator it = exterior[direction].iterator(); it.hasNext(); ) {
+            result[count++] = LongCubeIndexer.getPos(it.next());
         }
         return result;
     }
@@ -377,23 +372,19 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
     // into a specific direction.
     // Required computeExterior() to be called before working
     @Override
-    public short[][] getInteriorHull(int direction) {
-        short[][] result = new short[interior[direction].size()][3]; // allocate with correct size
+    public int[][] getInteriorHull(int direction) {
+        int[][] result = new int[interior[direction].size()][]; // allocate with correct size
         int count = 0;
-        for (TIntIterator it = interior[direction].iterator(); it.hasNext(); ) {
-            short[] val = CubeIndexer.getPos(it.next());
-            result[count][0] = val[0];
-            result[count][1] = val[1];
-            result[count][2] = val[2];
-            count++;
+        for (TLongIterator it = interior[direction].iterator(); it.hasNext(); ) {
+            result[count++] = LongCubeIndexer.getPos(it.next());
         }
         return result;
     }
 
     // comparator - order by depth
-    private static final Comparator<short[]> comparator = new Comparator<short[]>() {
+    private static final Comparator<int[]> comparator = new Comparator<int[]>() {
         @Override
-        public int compare(short[] o1, short[] o2) {
+        public int compare(int[] o1, int[] o2) {
             return o1[0] - o2[0];
         }
     };
@@ -401,12 +392,12 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
     // get the empty positions of voxels inside
     // Required computeExterior() to be called before working
     @Override
-    public int[] getEmptyInterior() {
+    public long[] getEmptyInterior() {
         // result
-        TIntArrayList list = new TIntArrayList();
+        TLongArrayList list = new TLongArrayList();
         // -- fetch the interior faces into two opposite directions
-        short[][] hullA = getInteriorHull(0);
-        short[][] hullB = getInteriorHull(1);
+        int[][] hullA = getInteriorHull(0);
+        int[][] hullB = getInteriorHull(1);
         if (hullA.length > 0 && hullB.length > 0) {
             // -- order by depth
             Arrays.sort(hullA, comparator);
@@ -414,17 +405,17 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
             // find places to fill
             int iA = 0;
             int iB = 0;
-            TIntShortHashMap buffer = new TIntShortHashMap();
+            TLongIntHashMap buffer = new TLongIntHashMap();
             while (iB < hullB.length || iA < hullA.length) {
                 if (iA < hullA.length && (!(iB < hullB.length) || hullA[iA][0] < hullB[iB][0])) {
                     // front face - add the starting position
-                    buffer.put(CubeIndexer.getId(0, hullA[iA][1], hullA[iA][2]), hullA[iA][0]);
+                    buffer.put(LongCubeIndexer.getId(0, hullA[iA][1], hullA[iA][2]), hullA[iA][0]);
                     iA++;
                 } else {
                     // back face - add missing until finish positions
-                    short val = buffer.remove(CubeIndexer.getId(0, hullB[iB][1], hullB[iB][2]));
-                    for (short pos = ++val; pos < hullB[iB][0]; pos++) {
-                        list.add(CubeIndexer.getId(pos, hullB[iB][1], hullB[iB][2]));
+                    int val = buffer.remove(LongCubeIndexer.getId(0, hullB[iB][1], hullB[iB][2]));
+                    for (int pos = ++val; pos < hullB[iB][0]; pos++) {
+                        list.add(LongCubeIndexer.getId(pos, hullB[iB][1], hullB[iB][2]));
                     }
                     iB++;
                 }
@@ -437,10 +428,10 @@ public class HullManagerExt<T> extends HullManager<T> implements HullManagerExtI
     // get the voxel positions of voxels inside
     // Required computeExterior() to be called before working
     @Override
-    public int[] getFilledInterior() {
-        TIntArrayList result = new TIntArrayList();
+    public long[] getFilledInterior() {
+        TLongArrayList result = new TLongArrayList();
         // loop over all objects
-        for (int posId : getPosIds()) {
+        for (long posId : getPosIds()) {
             // exclude positions that have an exterior face attached
             if (!exterior[0].contains(posId) && !exterior[1].contains(posId) &&
                     !exterior[2].contains(posId) && !exterior[3].contains(posId) &&
@@ -7,7 +7,7 @@ import com.threed.jpct.SimpleVector;
  */
 public interface HullManagerExtInterface {
     // do a hit test against the voxels in this hull manager
-    short[] hitTest(SimpleVector position, SimpleVector dir);
+    int[] hitTest(SimpleVector position, SimpleVector dir);
 
     // ==================
 
@@ -17,18 +17,18 @@ public interface HullManagerExtInterface {
     // fetch the "outside" face of the described object
     // into a specific direction.
     // Required computeExterior() to be called before working
-    short[][] getExteriorHull(int direction);
+    int[][] getExteriorHull(int direction);
 
     // fetch the "inside" faces of the described object
     // into a specific direction.
     // Required computeExterior() to be called before working
-    short[][] getInteriorHull(int direction);
+    int[][] getInteriorHull(int direction);
 
     // get the empty positions of voxels inside
     // Required computeExterior() to be called before working
-    int[] getEmptyInterior();
+    long[] getEmptyInterior();
 
     // get the voxel positions of voxels inside
     // Required computeExterior() to be called before working
-    int[] getFilledInterior();
+    long[] getFilledInterior();
 }
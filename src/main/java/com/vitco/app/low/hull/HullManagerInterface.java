@@ -1,13 +1,13 @@
 package com.vitco.app.low.hull;
 
 import com.threed.jpct.SimpleVector;
-import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.set.hash.TLongHashSet;
 
 import java.util.Set;
 
 /**
  * Interface - Efficient way to compute the hull for a group of
- * objects in 3D space (with short values as coordinates)
+ * objects in 3D space (with int values as coordinates)
  *
  * At most one object is expected in any position at any given time.
  */
@@ -15,30 +15,30 @@ public interface HullManagerInterface<T> {
 
     void clear();
 
-    boolean contains(short[] pos);
+    boolean contains(int[] pos);
 
-    boolean contains(int posId);
+    boolean contains(long posId);
 
-    boolean containsBorder(short[] pos, int orientation);
+    boolean containsBorder(int[] pos, int orientation);
 
-    boolean containsBorder(int posId, int orientation);
+    boolean containsBorder(long posId, int orientation);
 
-    int[] getPosIds();
+    long[] getPosIds();
 
     // obtain object by position
-    T get(short[] pos);
+    T get(int[] pos);
 
     // add an object to the hull finder
-    public void update(short[] pos, T object);
+    public void update(int[] pos, T object);
 
     // remove an object from this hull finder
-    void update(int posId, T object);
+    void update(long posId, T object);
 
     // remove an object from this hull finder
-    public boolean clearPosition(short[] pos);
+    public boolean clearPosition(int[] pos);
 
     // remove an object from this hull finder
-    boolean clearPosition(int posId);
+    boolean clearPosition(long posId);
 
     // get the hull additions (in direction 0-5)
     Set<T> getHullAdditions(int direction);
@@ -47,13 +47,13 @@ public interface HullManagerInterface<T> {
     Set<T> getHullRemovals(int direction);
 
     // get the current hull
-    short[][] getHull(int direction);
+    int[][] getHull(int direction);
 
     // get the visible voxel ids
-    TIntHashSet getVisibleVoxelsIds();
+    TLongHashSet getVisibleVoxelsIds();
 
     // get the current hull as ids
-    int[] getHullAsIds(int direction);
+    long[] getHullAsIds(int direction);
 
     // get the outline of all voxels into one direction
     SimpleVector[][] getOutline(int direction);
@@ -1,5 +1,6 @@
 package com.vitco.app.low.hull;
 
+import com.threed.jpct.SimpleVector;
 import org.junit.Test;
 
 /**
@@ -10,26 +11,26 @@ public class HullManagerTest {
     // todo create "big random" test case
 
     // helper - get point for one direction
-    private static short[] get(int val, int direction) {
+    private static int[] get(int val, int direction) {
         switch (direction) {
-            case 0: return new short[] {(short) val,50,570};
-            case 1: return new short[] {-10, (short) val,570};
-            default: return new short[] {-10,50, (short) val};
+            case 0: return new int[] {val,50,570};
+            case 1: return new int[] {-10,val,570};
+            default: return new int[] {-10,50,val};
         }
     }
 
     // helper
-    private static short[] get(int x, int y, int z) {
-        return new short[] {(short) x, (short) y, (short) z};
+    private static int[] get(int x, int y, int z) {
+        return new int[] {x, y, z};
     }
 
     // helper
-    private static String toString(short[] val) {
+    private static String toString(int[] val) {
         return val[0] + " " + val[1] + " " + val[2];
     }
 
     // helper
-    private static void update(HullManager<String> hullManager, short[] val) {
+    private static void update(HullManager<String> hullManager, int[] val) {
         hullManager.update(val, toString(val));
     }
 
@@ -38,9 +39,9 @@ public class HullManagerTest {
         HullManager<String> hullManager = new HullManager<String>();
 
         // one block
-        for (short x = 0; x < 10; x++) {
-            for (short y = 0; y < 10; y++) {
-                for (short z = 0; z < 10; z++) {
+        for (int x = 0; x < 10; x++) {
+            for (int y = 0; y < 10; y++) {
+                for (int z = 0; z < 10; z++) {
                     update(hullManager, get(x, y, z));
                 }
             }
@@ -52,9 +53,9 @@ public class HullManagerTest {
             assert hullManager.getHullRemovals(j).size() == 0;
         }
 
-        for (short x = 10; x < 20; x++) {
-            for (short y = 0; y < 10; y++) {
-                for (short z = 0; z < 10; z++) {
+        for (int x = 10; x < 20; x++) {
+            for (int y = 0; y < 10; y++) {
+                for (int z = 0; z < 10; z++) {
                     update(hullManager, get(x, y, z));
                 }
             }
@@ -75,9 +76,9 @@ public class HullManagerTest {
         HullManager<String> hullManager = new HullManager<String>();
 
         // one block
-        for (short x = 0; x < 10; x++) {
-            for (short y = 0; y < 10; y++) {
-                for (short z = 0; z < 10; z++) {
+        for (int x = 0; x < 10; x++) {
+            for (int y = 0; y < 10; y++) {
+                for (int z = 0; z < 10; z++) {
                     update(hullManager, get(x, y, z));
                 }
             }
@@ -180,10 +181,10 @@ public class HullManagerTest {
         long time = System.currentTimeMillis();
 
         // one million (as a block) 100 ^ 3
-        for (short x = 0; x < 100; x++) {
-            for (short y = 0; y < 100; y++) {
-                for (short z = 0; z < 100; z++) {
-                    hullManager.update(new short[]{x,y,z}, x + "," + y + "," + z);
+        for (int x = 0; x < 100; x++) {
+            for (int y = 0; y < 100; y++) {
+                for (int z = 0; z < 100; z++) {
+                    hullManager.update(new int[]{x,y,z}, x + "," + y + "," + z);
                 }
             }
         }
@@ -207,9 +208,9 @@ public class HullManagerTest {
             //   ---
             //  |   |
             //   ---
-            for (short x = 0; x < max; x++) {
-                for (short y = 0; y < max; y++) {
-                    for (short z = 0; z < max; z++) {
+            for (int x = 0; x < max; x++) {
+                for (int y = 0; y < max; y++) {
+                    for (int z = 0; z < max; z++) {
                         boolean valid = (x == 0 || x == max - 1) && (y > 0 && y < max - 1) && (z > 0 && z < max - 1) ||
                                 (y == 0 || y == max - 1) && (x > 0 && x < max - 1) && (z > 0 && z < max - 1) ||
                                 (z == 0 || z == max - 1) && (y > 0 && y < max - 1) && (x > 0 && x < max - 1);
@@ -231,4 +232,19 @@ public class HullManagerTest {
         }
 
     }
+
+    @Test
+    public void testFarPositions() {
+        // positions outside the short range keep their coordinates
+        HullManagerExt<String> hullManager = new HullManagerExt<String>();
+        update(hullManager, get(40000, -50000, 70000));
+        update(hullManager, get(40001, -50000, 70000));
+        assert hullManager.contains(get(40000, -50000, 70000));
+        assert !hullManager.contains(get(40000 - 65536, -50000, 70000));
+        int[][] hull = hullManager.getHull(0);
+        assert hull.length == 1 && hull[0][0] == 40001 && hull[0][1] == -50000 && hull[0][2] == 70000;
+        // the ray hits the voxel face at the far position
+        int[] hit = hullManager.hitTest(new SimpleVector(40000.5f, -49999.5f, 69990.5f), new SimpleVector(0, 0, 1));
+        assert hit != null && hit[0] == 40000 && hit[1] == -50000 && hit[2] == 70000 && hit[3] == 5;
+    }
 }
@@ -205,8 +205,25 @@ public final class VitcoSettings {
             new Color(243, 243, 243), new Color(255, 255, 255)
     };
 
-    // maximum voxel count per layer (and for picture import)
-    public static final int MAX_VOXEL_COUNT_PER_LAYER = 100000;
+    // memory budget for voxel data in bytes (all layers and picture import), can be set
+    // in MB with -Dvoxelshop.voxelMemoryBudget=<MB> and defaults to half of the heap
+    public static final long VOXEL_MEMORY_BUDGET = Long.getLong("voxelshop.voxelMemoryBudget",
+            Runtime.getRuntime().maxMemory() / 2 / 1048576) * 1048576;
+    // estimated memory per voxel (packed layer data, position indices and history)
+    public static final int VOXEL_MEMORY_ESTIMATE = 128;
+    // maximum voxel count that fits into the memory budget
+    public static final int MAX_VOXEL_COUNT = (int) Math.min(Integer.MAX_VALUE, VOXEL_MEMORY_BUDGET / VOXEL_MEMORY_ESTIMATE);
+    // memory budget for the undo history in bytes (old steps are moved to disk and the oldest
+    // steps are removed when it is exceeded), can be set in MB with -Dvoxelshop.historyMemoryBudget=<MB> and defaults
+    // to a quarter of the heap
+    public static final long HISTORY_MEMORY_BUDGET = Long.getLong("voxelshop.historyMemoryBudget",
+            Runtime.getRuntime().maxMemory() / 4 / 1048576) * 1048576;
+    // maximum size of the temporary file that holds the data of undo steps that are far away
+    // from the current step (in bytes), can be set in MB with -Dvoxelshop.historySpillLimit=<MB>
+    public static final long HISTORY_SPILL_LIMIT = Long.getLong("voxelshop.historySpillLimit", 2048) * 1048576;
+    // amount of changed positions that are remembered for the views (power of two), views
+    // that fall further behind are refreshed completely
+    public static final int CHANGE_JOURNAL_SIZE = 1 << 18;
 
     // grid size for triangulation
     public static final int TRI_GRID_SIZE = 13;
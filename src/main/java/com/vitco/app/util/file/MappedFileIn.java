@@ -0,0 +1,259 @@
+package com.vitco.app.util.file;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * To read a binary file that is mapped into memory.
+ *
+ * Numbers are read in little endian byte order (the order of most voxel formats), the
+ * big endian variants are named as such. Reading past the end of the file (or slice)
+ * throws an EOFException. A slice reads a part of the file without copying it.
+ */
+public final class MappedFileIn {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // the mapping (null for slices, they share the mapping of the file)
+    private MappedByteBuffer mapping;
+    // the part of the file that is read
+    private final ByteBuffer buffer;
+
+    // constructor
+    public MappedFileIn(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to be mapped.");
+            }
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            // the mapping stays valid when the channel is closed
+            raf.close();
+        }
+        buffer = mapping;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private MappedFileIn(ByteBuffer buffer) {
+        this.mapping = null;
+        this.buffer = buffer;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // helper - make sure that there are enough bytes left
+    private void require(int count) throws EOFException {
+        if (buffer.remaining() < count) {
+            throw new EOFException();
+        }
+    }
+
+    // ------------------
+
+    // the length of the file (or slice)
+    public final int length() {
+        return buffer.limit();
+    }
+
+    // the current position
+    public final int position() {
+        return buffer.position();
+    }
+
+    // the amount of bytes that are left
+    public final int remaining() {
+        return buffer.remaining();
+    }
+
+    // move to a position
+    public final void seek(int position) throws IOException {
+        if (position < 0 || position > buffer.limit()) {
+            throw new EOFException();
+        }
+        buffer.position(position);
+    }
+
+    // skip bytes, returns false if there are not enough bytes left (nothing is skipped)
+    public final boolean skip(int count) {
+        if (count < 0 || buffer.remaining() < count) {
+            return false;
+        }
+        buffer.position(buffer.position() + count);
+        return true;
+    }
+
+    // the next bytes as a separate reader (positions start at zero), the bytes are skipped
+    public final MappedFileIn slice(int length) throws IOException {
+        require(length);
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return new MappedFileIn(slice);
+    }
+
+    // ------------------
+
+    public final byte readByte() throws IOException {
+        require(1);
+        return buffer.get();
+    }
+
+    public final int readByteUnsigned() throws IOException {
+        require(1);
+        return buffer.get() & 0xFF;
+    }
+
+    public final short readShort() throws IOException {
+        require(2);
+        return buffer.getShort();
+    }
+
+    public final int readShortUnsigned() throws IOException {
+        return readShort() & 0xFFFF;
+    }
+
+    public final int readInt() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+
+    public final float readFloat() throws IOException {
+        require(4);
+        return buffer.getFloat();
+    }
+
+    public final int readIntBigEndian() throws IOException {
+        return Integer.reverseBytes(readInt());
+    }
+
+    public final double readDoubleBigEndian() throws IOException {
+        require(8);
+        return Double.longBitsToDouble(Long.reverseBytes(buffer.getLong()));
+    }
+
+    // ------------------
+
+    // read bytes
+    public final void get(byte[] dst) throws IOException {
+        get(dst, 0, dst.length);
+    }
+
+    public final void get(byte[] dst, int offset, int length) throws IOException {
+        require(length);
+        buffer.get(dst, offset, length);
+    }
+
+    // read (little endian) ints
+    public final void get(int[] dst) throws IOException {
+        get(dst, 0, dst.length);
+    }
+
+    public final void get(int[] dst, int offset, int length) throws IOException {
+        require(length * 4);
+        buffer.asIntBuffer().get(dst, offset, length);
+        buffer.position(buffer.position() + length * 4);
+    }
+
+    // read (little endian) unsigned shorts
+    public final void getUnsignedShorts(int[] dst, int offset, int length) throws IOException {
+        require(length * 2);
+        for (int i = 0; i < length; i++) {
+            dst[offset + i] = buffer.getShort() & 0xFFFF;
+        }
+    }
+
+    // ------------------
+
+    public final String readASCII(int length) throws IOException {
+        byte[] bytes = new byte[length];
+        get(bytes);
+        return new String(bytes, ASCII);
+    }
+
+    public final String readUTF8(int length) throws IOException {
+        byte[] bytes = new byte[length];
+        get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    // read a line (terminated by \n, \r or \r\n), returns null at the end of the file
+    public final String readLine() {
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+        StringBuilder line = new StringBuilder();
+        while (buffer.hasRemaining()) {
+            char c = (char) (buffer.get() & 0xFF);
+            if (c == '\n') {
+                break;
+            }
+            if (c == '\r') {
+                if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+                    buffer.get();
+                }
+                break;
+            }
+            line.append(c);
+        }
+        return line.toString();
+    }
+
+    // read an image that is prefixed with its length, null if the image is invalid
+    public final BufferedImage readImage() throws IOException {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        get(bytes);
+        return ImageIO.read(new ByteArrayInputStream(bytes));
+    }
+
+    // ------------------
+
+    // release the mapping (slices can not be used afterwards either)
+    public final void close() {
+        if (mapping != null) {
+            unmap(mapping);
+            mapping = null;
+        }
+    }
+
+    // release a mapping (best effort, there is no public api for this)
+    public static void unmap(MappedByteBuffer buffer) {
+        try {
+            // java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            invokeCleaner.invoke(field.get(null), buffer);
+        } catch (Exception e) {
+            try {
+                // java 8 and earlier
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (Exception ignored) {
+                // released by the garbage collector
+            }
+        }
+    }
+}
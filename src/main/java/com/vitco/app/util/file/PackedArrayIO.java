@@ -0,0 +1,161 @@
+package com.vitco.app.util.file;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Compact binary encoding of primitive arrays.
+ *
+ * Numbers are stored as the (zig zag encoded) difference to the previous value with a
+ * variable length, so sequential ids and neighbouring position ids only need one or two
+ * bytes. Booleans are stored as bits. A null array is stored as length -1.
+ */
+public final class PackedArrayIO {
+
+    // helper - write a variable length value
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    // helper - read a variable length value
+    private static long readVarLong(DataInput in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed variable length value.");
+    }
+
+    // helper - write the difference to the previous value
+    private static void writeDelta(DataOutput out, long delta) throws IOException {
+        writeVarLong(out, (delta << 1) ^ (delta >> 63));
+    }
+
+    // helper - read the difference to the previous value
+    private static long readDelta(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // helper - read an array length
+    private static int readLength(DataInput in) throws IOException {
+        int length = (int) readVarLong(in) - 1;
+        if (length < -1) {
+            throw new IOException("Invalid array length.");
+        }
+        return length;
+    }
+
+    // write a long array
+    public static void writeLongs(DataOutput out, long[] values) throws IOException {
+        writeVarLong(out, values == null ? 0 : values.length + 1L);
+        if (values != null) {
+            long last = 0;
+            for (long value : values) {
+                writeDelta(out, value - last);
+                last = value;
+            }
+        }
+    }
+
+    // read a long array
+    public static long[] readLongs(DataInput in) throws IOException {
+        int length = readLength(in);
+        if (length == -1) {
+            return null;
+        }
+        long[] result = new long[length];
+        long last = 0;
+        for (int i = 0; i < length; i++) {
+            last += readDelta(in);
+            result[i] = last;
+        }
+        return result;
+    }
+
+    // write an int array
+    public static void writeInts(DataOutput out, int[] values) throws IOException {
+        writeVarLong(out, values == null ? 0 : values.length + 1L);
+        if (values != null) {
+            long last = 0;
+            for (int value : values) {
+                writeDelta(out, value - last);
+                last = value;
+            }
+        }
+    }
+
+    // write a part of an int array (the length is not written, the reader needs to know it)
+    public static void writeInts(DataOutput out, int[] values, int offset, int count) throws IOException {
+        long last = 0;
+        for (int i = offset, len = offset + count; i < len; i++) {
+            writeDelta(out, values[i] - last);
+            last = values[i];
+        }
+    }
+
+    // read a part of an int array (written without the length)
+    public static void readInts(DataInput in, int[] target, int offset, int count) throws IOException {
+        long last = 0;
+        for (int i = offset, len = offset + count; i < len; i++) {
+            last += readDelta(in);
+            target[i] = (int) last;
+        }
+    }
+
+    // read an int array
+    public static int[] readInts(DataInput in) throws IOException {
+        int length = readLength(in);
+        if (length == -1) {
+            return null;
+        }
+        int[] result = new int[length];
+        long last = 0;
+        for (int i = 0; i < length; i++) {
+            last += readDelta(in);
+            result[i] = (int) last;
+        }
+        return result;
+    }
+
+    // write a boolean array
+    public static void writeBooleans(DataOutput out, boolean[] values) throws IOException {
+        writeVarLong(out, values == null ? 0 : values.length + 1L);
+        if (values != null) {
+            for (int i = 0; i < values.length; i += 8) {
+                int b = 0;
+                for (int j = i, len = Math.min(i + 8, values.length); j < len; j++) {
+                    if (values[j]) {
+                        b |= 1 << (j - i);
+                    }
+                }
+                out.writeByte(b);
+            }
+        }
+    }
+
+    // read a boolean array
+    public static boolean[] readBooleans(DataInput in) throws IOException {
+        int length = readLength(in);
+        if (length == -1) {
+            return null;
+        }
+        boolean[] result = new boolean[length];
+        for (int i = 0; i < length; i += 8) {
+            int b = in.readUnsignedByte();
+            for (int j = i, len = Math.min(i + 8, length); j < len; j++) {
+                result[j] = (b & (1 << (j - i))) != 0;
+            }
+        }
+        return result;
+    }
+}
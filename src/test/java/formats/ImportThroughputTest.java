@@ -0,0 +1,332 @@
+package formats;
+
+import com.vitco.app.importer.AbstractImporter;
+import com.vitco.app.importer.BinVoxImporter;
+import com.vitco.app.importer.CCVxlImporter;
+import com.vitco.app.importer.Kv6Importer;
+import com.vitco.app.importer.KvxImporter;
+import com.vitco.app.importer.PnxImporter;
+import com.vitco.app.importer.QbImporter;
+import com.vitco.app.importer.RawVoxImporter;
+import com.vitco.app.importer.VoxImporter;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Import every format a few times and check the amount of imported voxels.
+ *
+ * The sample files are used for the formats that have them, for the other formats a file
+ * with a known amount of voxels is generated. The throughput is printed for comparison.
+ */
+public class ImportThroughputTest {
+
+    private static final String directory = "src/test/resources/formats/";
+    private static final int ROUNDS = 20;
+    // the size of the generated files
+    private static final int SIZE = 16;
+
+    // creates the importer for a file
+    private interface Factory {
+        AbstractImporter create(File file) throws IOException;
+    }
+
+    // helper - import the files a few times, every import needs to result in the expected
+    // amount of voxels (a negative amount is replaced by the amount of the first import)
+    private static void measure(String name, File[] files, int[] expected, Factory factory) throws IOException {
+        assertTrue(name, files != null && files.length > 0);
+        expected = expected.clone();
+        long bytes = 0;
+        long start = 0;
+        // the first round warms up
+        for (int round = -1; round < ROUNDS; round++) {
+            if (round == 0) {
+                start = System.nanoTime();
+            }
+            for (int i = 0; i < files.length; i++) {
+                AbstractImporter importer = factory.create(files[i]);
+                assertTrue(files[i].getName(), importer.hasLoaded());
+                if (expected[i] < 0) {
+                    expected[i] = importer.getVoxelCount();
+                    assertTrue(files[i].getName(), expected[i] > 0);
+                }
+                assertEquals(files[i].getName(), expected[i], importer.getVoxelCount());
+                if (round >= 0) {
+                    bytes += files[i].length();
+                }
+            }
+        }
+        double seconds = Math.max(1, System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("import %s: %.1f MB/s", name, bytes / seconds / 1024 / 1024));
+    }
+
+    // helper - import the sample files of a folder
+    private static void measureSamples(String folder, Factory factory) throws IOException {
+        File[] files = new File(directory + folder).listFiles();
+        assertTrue(folder, files != null);
+        int[] expected = new int[files.length];
+        Arrays.fill(expected, -1);
+        measure(folder, files, expected, factory);
+    }
+
+    // helper - import a generated file
+    private static void measureGenerated(String name, ByteBuffer content, int expected, Factory factory) throws IOException {
+        File file = File.createTempFile("import", "." + name);
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(content.array(), 0, content.position());
+            } finally {
+                out.close();
+            }
+            measure(name, new File[] {file}, new int[] {expected}, factory);
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    // helper - a buffer for a generated file
+    private static ByteBuffer allocate() {
+        return ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // helper - true if a position of the generated files holds a voxel
+    private static boolean filled(int x, int y, int z) {
+        return (x + y + z) % 3 == 0;
+    }
+
+    // ---------------
+
+    @Test
+    public void testMagicaVox() throws IOException {
+        measureSamples("magica_vox/fit_to_size", new Factory() {
+            @Override
+            public AbstractImporter create(File file) throws IOException {
+                return new VoxImporter(file, "Importer");
+            }
+        });
+    }
+
+    @Test
+    public void testVoxLapEngine() throws IOException {
+        measureSamples("vox_lap_engine", new Factory() {
+            @Override
+            public AbstractImporter create(File file) throws IOException {
+                return new VoxImporter(file, "Importer");
+            }
+        });
+    }
+
+    @Test
+    public void testPnx() throws IOException {
+        measureSamples("pnx", new Factory() {
+            @Override
+            public AbstractImporter create(File file) throws IOException {
+                return new PnxImporter(file, "Importer");
+            }
+        });
+    }
+
+    @Test
+    public void testBinVox() throws IOException {
+        ByteBuffer buffer = allocate();
+        buffer.put(("#binvox 1\ndim " + SIZE + " " + SIZE + " " + SIZE + "\ntranslate 0 0 0\nscale 1\ndata\n")
+                .getBytes("US-ASCII"));
+        // runs of filled and empty positions
+        int expected = 0;
+        int index = 0;
+        boolean value = true;
+        while (index < SIZE * SIZE * SIZE) {
+            int count = Math.min(value ? 3 : 5, SIZE * SIZE * SIZE - index);
+            buffer.put((byte) (value ? 1 : 0));
+            buffer.put((byte) count);
+            if (value) {
+                expected += count;
+            }
+            index += count;
+            value = !value;
+        }
+        measureGenerated("binvox", buffer, expected, new Factory() {
+            @Override
+            public AbstractImporter create(File file) throws IOException {
+                return new BinVoxImporter(file, "Importer");
+            }
+        });
+    }
+
+    @Test
+    public void testRawVox() throws IOException {
+        ByteBuffer buffer = allocate();
+        buffer.put("XOVR".getBytes("US-ASCII"));
+        buffer.putInt(SIZE).putInt(SIZE).putInt(SIZE).putInt(8);
+        int expected = 0;
+        for (int z = 0; z < SIZE; z++) {
+            for (int y = 0; y < SIZE; y++) {
+                for (int x = 0; x < SIZE; x++) {
+                    boolean filled = filled(x, y, z);
+                    buffer.put((byte) (filled ? 1 : 0));
+                    if (filled) {
+                        expected++;
+                    }
+                }
+            }
+        }
+        measureGenerated("rawvox", buffer, expected, new Factory() {
+            @Override
+            public AbstractImporter create(File file) throws IOException {
+                return new RawVoxImporter(file, "Importer");
+            }
+        });
+    }
+
+    @Test
+    public void testQb() throws IOException {
+        ByteBuffer buffer = allocate();
+        // version, color format, z axis orientation, compressed, visibility mask, matrices
+        buffer.putInt(0x01010000).putInt(0).putInt(0).putInt(0).putInt(0).putInt(1);
+        buffer.put((byte) 4).put("body".getBytes("US-ASCII"));
+        buffer.putInt(SIZE).putInt(SIZE).putInt(SIZE);
+        buffer.putInt(-2).putInt(0).putInt(3);
+        int expected = 0;
+        for (int z = 0; z < SIZE; z++) {
+            for (int y = 0; y < SIZE; y++) {
+                for (int x = 0; x < SIZE; x++) {
+                    boolean filled = filled(x, y, z);
+                    buffer.putInt(filled ? 0xFF0000FF | (x << 8) : 0);
+                    if (filled) {
+                        expected++;
+                    }
+                }
+            }
+        }
+        measureGenerated("qb", buffer, expected, new Factory() {
+            @Override
+            public AbstractImporter create(File file) throws IOException {
+                return new QbImporter(file, "Importer");
+            }
+        });
+    }
+
+    @Test
+    public void testKv6() throws IOException {
+        ByteBuffer buffer = allocate();
+        buffer.putInt(0x6c78764b);
+        buffer.putInt(SIZE).putInt(SIZE).putInt(SIZE);
+        buffer.putFloat(SIZE / 2).putFloat(SIZE / 2).putFloat(SIZE / 2);
+        // two surface voxels per column, the positions between them are filled in
+        buffer.putInt(SIZE * SIZE * 2);
+        for (int column = 0; column < SIZE * SIZE; column++) {
+            buffer.put((byte) 10).put((byte) 20).put((byte) 30).put((byte) 128);
+            buffer.putShort((short) 0).put((byte) (1 << 4)).put((byte) 0);
+            buffer.put((byte) 10).put((byte) 20).put((byte) 30).put((byte) 128);
+            buffer.putShort((short) 5).put((byte) (1 << 5)).put((byte) 0);
+        }
+        for (int x = 0; x < SIZE; x++) {
+            buffer.putInt(SIZE * 2);
+        }
+        for (int column = 0; column < SIZE * SIZE; column++) {
+            buffer.putShort((short) 2);
+        }
+        measureGenerated("kv6", buffer, SIZE * SIZE * 6, new Factory() {
+            @Override
+            public AbstractImporter create(File file) throws IOException {
+                return new Kv6Importer(file, "Importer");
+            }
+        });
+    }
+
+    @Test
+    public void testKvx() throws IOException {
+        // one slab of three voxels per column (the visible faces do not fill anything in)
+        int slabBytes = 3 + 3;
+        int headerBytes = (SIZE + 1) * 4 + SIZE * (SIZE + 1) * 2;
+        ByteBuffer buffer = allocate();
+        buffer.putInt(0);
+        buffer.putInt(SIZE).putInt(SIZE).putInt(SIZE);
+        buffer.putInt(SIZE / 2 * 256).putInt(SIZE / 2 * 256).putInt(SIZE / 2 * 256);
+        for (int x = 0; x <= SIZE; x++) {
+            buffer.putInt(headerBytes + x * SIZE * slabBytes);
+        }
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y <= SIZE; y++) {
+                buffer.putShort((short) (y * slabBytes));
+            }
+        }
+        for (int column = 0; column < SIZE * SIZE; column++) {
+            buffer.put((byte) 2).put((byte) 3).put((byte) ((1 << 4) | (1 << 5)));
+            buffer.put((byte) 1).put((byte) 2).put((byte) 3);
+        }
+        // palette
+        for (int i = 0; i < 768; i++) {
+            buffer.put((byte) (i % 64));
+        }
+        measureGenerated("kvx", buffer, SIZE * SIZE * 3, new Factory() {
+            @Override
+            public AbstractImporter create(File file) throws IOException {
+                return new KvxImporter(file, "Importer");
+            }
+        });
+    }
+
+    @Test
+    public void testCCVxl() throws IOException {
+        // the columns where x + y is even are filled completely
+        int baseSize = SIZE * SIZE;
+        ByteBuffer body = allocate();
+        int[] colStart = new int[baseSize];
+        ByteBuffer data = allocate();
+        int expected = 0;
+        for (int i = 0; i < baseSize; i++) {
+            if ((i % SIZE + i / SIZE) % 2 == 0) {
+                colStart[i] = data.position();
+                data.put((byte) 0).put((byte) SIZE);
+                for (int z = 0; z < SIZE; z++) {
+                    data.put((byte) (16 + z)).put((byte) 0);
+                }
+                data.put((byte) SIZE);
+                expected += SIZE;
+            } else {
+                colStart[i] = -1;
+            }
+        }
+        for (int i = 0; i < baseSize; i++) {
+            body.putInt(colStart[i]);
+        }
+        for (int i = 0; i < baseSize; i++) {
+            body.putInt(colStart[i] == -1 ? -1 : colStart[i] + 2 + 2 * SIZE);
+        }
+        body.put(data.array(), 0, data.position());
+
+        ByteBuffer buffer = allocate();
+        buffer.put("Voxel Animation\0".getBytes("US-ASCII"));
+        buffer.putInt(1).putInt(1).putInt(1).putInt(body.position());
+        buffer.position(buffer.position() + 770);
+        // limb header
+        buffer.put("body\0\0\0\0\0\0\0\0\0\0\0\0".getBytes("US-ASCII"));
+        buffer.position(buffer.position() + 12);
+        buffer.put(body.array(), 0, body.position());
+        // limb footer
+        buffer.putInt(0);
+        buffer.position(buffer.position() + 8);
+        buffer.putFloat(1);
+        buffer.position(buffer.position() + 48);
+        for (int j = 0; j < 6; j++) {
+            buffer.putFloat(j < 3 ? 0 : SIZE);
+        }
+        buffer.put((byte) SIZE).put((byte) SIZE).put((byte) SIZE).put((byte) 4);
+        measureGenerated("vxl", buffer, expected, new Factory() {
+            @Override
+            public AbstractImporter create(File file) throws IOException {
+                return new CCVxlImporter(file, "Importer");
+            }
+        });
+    }
+}